@@ -0,0 +1,248 @@
+package Main.GameEngine;
+
+import Main.model.World;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A recorded list of commands in a compact form, for running whole playthroughs
+ * with {@link GameEngine#processBatch(CommandBatch, byte[])}.
+ * Each step is a verb code and a few argument numbers; the argument text is
+ * kept once in a name table, so a playthrough that says "Kitchen" a hundred
+ * times stores the word once. Free text is parsed when the batch is built, not
+ * when it is run.
+ * A batch can be written to and read back from a stream, and is not changed by
+ * running it, so the same batch may be replayed on many games at once.
+ * @author Arthur
+ */
+public final class CommandBatch {
+
+    // Verb code for a step that is not a command (no words, or an unknown first word)
+    static final byte NO_VERB = -1;
+
+    private static final int MAGIC = 0x47414D42; // "GAMB"
+    private static final Verb[] VERBS = Verb.values();
+
+    private byte[] verbs = new byte[16];
+    // Arguments of step i are names[args[argStart[i]] .. args[argStart[i + 1] - 1]]
+    private int[] argStart = new int[17];
+    private int[] args = new int[32];
+    private int size;
+
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIds = new HashMap<>();
+
+    /**
+     * Parses lines of free text into a batch, the way
+     * {@link GameEngine#processInput(String)} would read them.
+     *
+     * @param world the world the lines will be played in
+     * @param lines what the player typed, one command per line
+     * @return the batch
+     */
+    public static CommandBatch parse(World world, List<String> lines) {
+        CommandParser parser = CommandParser.forWorld(world);
+        CommandBatch batch = new CommandBatch();
+        for (String line : lines) {
+            CommandParser.Parsed command = parser.parse(line);
+            if (command == null) {
+                batch.append(NO_VERB);
+            } else if (command.getVerb() == null) {
+                batch.append(NO_VERB, command.getWord());
+            } else {
+                batch.add(command.getVerb(), command.getArgs());
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Adds a command to the end of the batch.
+     *
+     * @param verb the verb
+     * @param args its arguments, as they would be passed to {@link GameEngine#processCommand(String, String...)}
+     * @return this batch
+     */
+    public CommandBatch add(Verb verb, String... args) {
+        if (verb == null) {
+            throw new IllegalArgumentException("verb must not be null");
+        }
+        for (String arg : args) {
+            if (arg == null) {
+                throw new IllegalArgumentException("arguments must not be null");
+            }
+        }
+        append((byte) verb.ordinal(), args);
+        return this;
+    }
+
+    /**
+     * @return how many commands are in the batch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a step's verb.
+     *
+     * @param step the step number, from 0
+     * @return the verb, or {@code null} if the step is not a command
+     */
+    public Verb getVerb(int step) {
+        byte code = verbs[check(step)];
+        return code == NO_VERB ? null : VERBS[code];
+    }
+
+    /**
+     * Returns a step's arguments. For a step that is not a command this is the
+     * unknown word, if there was one.
+     *
+     * @param step the step number, from 0
+     * @return the arguments
+     */
+    public String[] getArgs(int step) {
+        check(step);
+        String[] out = new String[argStart[step + 1] - argStart[step]];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = names.get(args[argStart[step] + i]);
+        }
+        return out;
+    }
+
+    /**
+     * Returns a step as a line of text, for reports, which {@link #parse(World, List)}
+     * reads back as the same step ("give X to Y", "use X on Y").
+     *
+     * @param step the step number, from 0
+     * @return the verb and its arguments
+     */
+    public String describe(int step) {
+        Verb verb = getVerb(step);
+        String[] stepArgs = getArgs(step);
+        StringBuilder sb = new StringBuilder(verb == null ? "" : verb.getWords()[0]);
+        for (int i = 0; i < stepArgs.length; i++) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            if (i == 1 && (verb == Verb.GIVE || verb == Verb.USE)) {
+                sb.append(verb == Verb.GIVE ? "to " : "on ");
+            }
+            sb.append(stepArgs[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the batch to a stream.
+     *
+     * @param out where to write
+     * @throws IOException if writing fails
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(names.size());
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeByte(verbs[i]);
+            out.writeByte(argStart[i + 1] - argStart[i]);
+            for (int a = argStart[i]; a < argStart[i + 1]; a++) {
+                out.writeInt(args[a]);
+            }
+        }
+    }
+
+    /**
+     * Reads a batch written by {@link #write(DataOutput)}.
+     *
+     * @param in where to read from
+     * @return the batch
+     * @throws IOException if reading fails or the data is not a batch
+     */
+    public static CommandBatch read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a command batch");
+        }
+        CommandBatch batch = new CommandBatch();
+        int nameCount = in.readInt();
+        for (int i = 0; i < nameCount; i++) {
+            batch.nameId(in.readUTF());
+        }
+        int steps = in.readInt();
+        for (int i = 0; i < steps; i++) {
+            byte verb = in.readByte();
+            if (verb != NO_VERB && (verb < 0 || verb >= VERBS.length)) {
+                throw new IOException("Bad verb code " + verb + " at step " + i);
+            }
+            String[] stepArgs = new String[in.readUnsignedByte()];
+            for (int a = 0; a < stepArgs.length; a++) {
+                int id = in.readInt();
+                if (id < 0 || id >= nameCount) {
+                    throw new IOException("Bad name number " + id + " at step " + i);
+                }
+                stepArgs[a] = batch.names.get(id);
+            }
+            batch.append(verb, stepArgs);
+        }
+        return batch;
+    }
+
+    /**
+     * Runs one step against an engine.
+     */
+    Outcome run(int step, GameEngine engine) {
+        byte code = verbs[step];
+        int from = argStart[step];
+        int count = argStart[step + 1] - from;
+        if (code == NO_VERB) {
+            return engine.applyUnknown(count == 0 ? null : names.get(args[from]));
+        }
+        String[] stepArgs = new String[count];
+        for (int i = 0; i < count; i++) {
+            stepArgs[i] = names.get(args[from + i]);
+        }
+        return VERBS[code].apply(engine, stepArgs);
+    }
+
+    private void append(byte verb, String... stepArgs) {
+        if (size == verbs.length) {
+            verbs = Arrays.copyOf(verbs, size * 2);
+            argStart = Arrays.copyOf(argStart, size * 2 + 1);
+        }
+        int at = argStart[size];
+        if (at + stepArgs.length > args.length) {
+            args = Arrays.copyOf(args, Math.max(args.length * 2, at + stepArgs.length));
+        }
+        for (String arg : stepArgs) {
+            args[at++] = nameId(arg);
+        }
+        verbs[size++] = verb;
+        argStart[size] = at;
+    }
+
+    private int nameId(String name) {
+        Integer id = nameIds.get(name);
+        if (id == null) {
+            id = names.size();
+            names.add(name);
+            nameIds.put(name, id);
+        }
+        return id;
+    }
+
+    private int check(int step) {
+        if (step < 0 || step >= size) {
+            throw new IndexOutOfBoundsException("step " + step + " of " + size);
+        }
+        return step;
+    }
+}
@@ -0,0 +1,383 @@
+package Main.GameEngine;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counts what commands do and how long they take, cheaply enough to be left on
+ * in production. For each {@link Verb} it keeps a latency histogram of the
+ * verb's handler, plus one for input that was not a verb and one for whole
+ * commands (parsing, handler and message). It also counts every {@link Outcome},
+ * which covers rejections such as "You cannot go that way", locked locations,
+ * unwanted items and games lost to the turn limit.
+ * <p>
+ * Recording only increments slots of {@link AtomicLongArray}s, so it takes no
+ * locks, and any number of sessions can share one instance. The counters are
+ * split into stripes, up to one per core, and each thread records into the
+ * stripe its ID hashes to, so threads on different cores rarely write the same
+ * cache lines; a stripe is allocated by the first thread to use it, and
+ * snapshots add the stripes up. Histogram buckets are log-linear: 16 per power
+ * of two, so a percentile is within about 3% of the true value from 1 ns up to
+ * the largest long. Read the figures with {@link #snapshot()} or over JMX (see
+ * {@link CommandMetricsMXBean}); a snapshot taken while commands run may be a
+ * few counts apart between fields.
+ * </p>
+ * @author Arthur
+ */
+public final class CommandMetrics implements CommandMetricsMXBean {
+
+    /** The name the shared instance is registered under on the platform MBean server. */
+    public static final String OBJECT_NAME = "Main.GameEngine:type=CommandMetrics";
+
+    private static final Verb[] VERBS = Verb.values();
+    private static final Outcome[] OUTCOMES = Outcome.values();
+
+    // one series per verb, then input that was not a verb, then whole commands
+    private static final int UNKNOWN = VERBS.length;
+    private static final int COMMAND = VERBS.length + 1;
+    private static final int SERIES = VERBS.length + 2;
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB = 1 << SUB_BITS;
+    static final int BUCKETS = (64 - SUB_BITS) * SUB;
+
+    // per series: total nanoseconds, then the longest seen
+    private static final int SUM = 0;
+    private static final int MAX = 1;
+
+    // a power of two, at least the number of cores up to 64
+    private static final int STRIPES =
+            Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private final AtomicReferenceArray<Stripe> stripes = new AtomicReferenceArray<>(STRIPES);
+
+    /**
+     * One thread's share of the counters.
+     */
+    private static final class Stripe {
+        final AtomicLongArray buckets = new AtomicLongArray(SERIES * BUCKETS);
+        final AtomicLongArray totals = new AtomicLongArray(SERIES * 2);
+        final AtomicLongArray outcomes = new AtomicLongArray(OUTCOMES.length);
+    }
+
+    private static final class Shared {
+        static final CommandMetrics INSTANCE = register(new CommandMetrics());
+    }
+
+    /**
+     * Returns the instance every {@link GameEngine} records into unless told
+     * otherwise, registering it over JMX the first time.
+     *
+     * @return the shared metrics
+     */
+    public static CommandMetrics global() {
+        return Shared.INSTANCE;
+    }
+
+    private static CommandMetrics register(CommandMetrics metrics) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+        } catch (JMException | SecurityException e) {
+            System.err.println("Command metrics are not published over JMX: " + e);
+        }
+        return metrics;
+    }
+
+    /**
+     * Records one verb (or non-verb) being run.
+     *
+     * @param verb    the verb, or {@code null} if the input was not one
+     * @param outcome what it did
+     * @param nanos   how long it took
+     */
+    void recordVerb(Verb verb, Outcome outcome, long nanos) {
+        Stripe stripe = stripe();
+        stripe.outcomes.getAndIncrement(outcome.ordinal());
+        record(stripe, verb == null ? UNKNOWN : verb.ordinal(), nanos);
+    }
+
+    /**
+     * Records a whole command, from the text or verb coming in to its message going out.
+     *
+     * @param nanos how long it took
+     */
+    void recordCommand(long nanos) {
+        record(stripe(), COMMAND, nanos);
+    }
+
+    private Stripe stripe() {
+        long h = Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L;
+        int i = (int) (h >>> 32) & (STRIPES - 1);
+        Stripe stripe = stripes.get(i);
+        if (stripe == null) {
+            stripes.compareAndSet(i, null, new Stripe());
+            stripe = stripes.get(i);
+        }
+        return stripe;
+    }
+
+    private static void record(Stripe stripe, int series, long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        AtomicLongArray totals = stripe.totals;
+        stripe.buckets.getAndIncrement(series * BUCKETS + bucket(nanos));
+        totals.getAndAdd(series * 2 + SUM, nanos);
+        int max = series * 2 + MAX;
+        long seen;
+        while (nanos > (seen = totals.get(max)) && !totals.compareAndSet(max, seen, nanos)) {
+            // another thread raised the maximum first, look again
+        }
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < SUB) {
+            return (int) nanos;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(nanos);
+        return (exp - SUB_BITS + 1) * SUB + (int) ((nanos >>> (exp - SUB_BITS)) & (SUB - 1));
+    }
+
+    // the middle of a bucket's range, which is what a percentile falling in it reports
+    static long middle(int bucket) {
+        if (bucket < SUB) {
+            return bucket;
+        }
+        int exp = bucket / SUB + SUB_BITS - 1;
+        long low = (long) (SUB + bucket % SUB) << (exp - SUB_BITS);
+        return low + ((1L << (exp - SUB_BITS)) >>> 1);
+    }
+
+    /**
+     * Reads every counter and histogram.
+     *
+     * @return the figures as they are now
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    @Override
+    public void reset() {
+        for (int s = 0; s < STRIPES; s++) {
+            Stripe stripe = stripes.get(s);
+            if (stripe == null) {
+                continue;
+            }
+            for (int i = 0; i < stripe.buckets.length(); i++) {
+                stripe.buckets.set(i, 0);
+            }
+            for (int i = 0; i < stripe.totals.length(); i++) {
+                stripe.totals.set(i, 0);
+            }
+            for (int i = 0; i < stripe.outcomes.length(); i++) {
+                stripe.outcomes.set(i, 0);
+            }
+        }
+    }
+
+    @Override
+    public long getCommandCount() {
+        return snapshot().getCommandCount();
+    }
+
+    @Override
+    public long getSucceeded() {
+        return snapshot().getSucceeded();
+    }
+
+    @Override
+    public long getFailed() {
+        return snapshot().getFailed();
+    }
+
+    @Override
+    public long getTurnLimitGameOvers() {
+        return snapshot().getTurnLimitGameOvers();
+    }
+
+    @Override
+    public Map<String, Long> getOutcomeCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Map.Entry<Outcome, Long> e : snapshot().getOutcomeCounts().entrySet()) {
+            counts.put(e.getKey().name(), e.getValue());
+        }
+        return counts;
+    }
+
+    @Override
+    public List<Latency> getLatencies() {
+        return snapshot().getLatencies();
+    }
+
+    /**
+     * The latency figures of one verb, or of non-verbs or whole commands.
+     */
+    public static final class Latency {
+        private final String name;
+        private final long count;
+        private final long meanNanos;
+        private final long p50Nanos;
+        private final long p99Nanos;
+        private final long p999Nanos;
+        private final long maxNanos;
+
+        Latency(String name, long[] histogram, long sum, long max) {
+            long count = 0;
+            for (long n : histogram) {
+                count += n;
+            }
+            this.name = name;
+            this.count = count;
+            this.meanNanos = count == 0 ? 0 : sum / count;
+            this.p50Nanos = percentile(histogram, count, 0.5);
+            this.p99Nanos = percentile(histogram, count, 0.99);
+            this.p999Nanos = percentile(histogram, count, 0.999);
+            this.maxNanos = max;
+        }
+
+        private static long percentile(long[] histogram, long count, double fraction) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(count * fraction);
+            long seen = 0;
+            for (int b = 0; b < histogram.length; b++) {
+                seen += histogram[b];
+                if (seen >= rank) {
+                    return middle(b);
+                }
+            }
+            return middle(histogram.length - 1);
+        }
+
+        /** @return the verb's name, "unknown" for input that was not a verb, or "command" for whole commands */
+        public String getName() { return name; }
+        public long getCount() { return count; }
+        public long getMeanNanos() { return meanNanos; }
+        public long getP50Nanos() { return p50Nanos; }
+        public long getP99Nanos() { return p99Nanos; }
+        public long getP999Nanos() { return p999Nanos; }
+        public long getMaxNanos() { return maxNanos; }
+
+        @Override
+        public String toString() {
+            return String.format("%-10s n=%d mean=%dns p50=%dns p99=%dns p999=%dns max=%dns",
+                    name, count, meanNanos, p50Nanos, p99Nanos, p999Nanos, maxNanos);
+        }
+    }
+
+    /**
+     * Every figure read at one moment.
+     */
+    public static final class Snapshot {
+        private final Map<Outcome, Long> outcomeCounts = new EnumMap<>(Outcome.class);
+        private final Latency[] latencies = new Latency[SERIES];
+
+        private Snapshot(CommandMetrics metrics) {
+            long[] counts = new long[OUTCOMES.length];
+            long[] buckets = new long[SERIES * BUCKETS];
+            long[] totals = new long[SERIES * 2];
+            for (int s = 0; s < STRIPES; s++) {
+                Stripe stripe = metrics.stripes.get(s);
+                if (stripe == null) {
+                    continue;
+                }
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] += stripe.outcomes.get(i);
+                }
+                for (int i = 0; i < buckets.length; i++) {
+                    buckets[i] += stripe.buckets.get(i);
+                }
+                for (int series = 0; series < SERIES; series++) {
+                    totals[series * 2 + SUM] += stripe.totals.get(series * 2 + SUM);
+                    totals[series * 2 + MAX] = Math.max(totals[series * 2 + MAX], stripe.totals.get(series * 2 + MAX));
+                }
+            }
+            for (Outcome outcome : OUTCOMES) {
+                outcomeCounts.put(outcome, counts[outcome.ordinal()]);
+            }
+            for (int series = 0; series < SERIES; series++) {
+                long[] histogram = Arrays.copyOfRange(buckets, series * BUCKETS, (series + 1) * BUCKETS);
+                String name = series == UNKNOWN ? "unknown"
+                        : series == COMMAND ? "command" : VERBS[series].getWords()[0];
+                latencies[series] = new Latency(name, histogram, totals[series * 2 + SUM], totals[series * 2 + MAX]);
+            }
+        }
+
+        /**
+         * @return how many times each outcome happened
+         */
+        public Map<Outcome, Long> getOutcomeCounts() {
+            return Collections.unmodifiableMap(outcomeCounts);
+        }
+
+        /**
+         * @param outcome an outcome
+         * @return how many times it happened
+         */
+        public long getCount(Outcome outcome) {
+            return outcomeCounts.get(outcome);
+        }
+
+        /**
+         * @return how many verbs and non-verbs were run
+         */
+        public long getCommandCount() {
+            long count = 0;
+            for (long n : outcomeCounts.values()) {
+                count += n;
+            }
+            return count;
+        }
+
+        public long getSucceeded() {
+            long count = 0;
+            for (Map.Entry<Outcome, Long> e : outcomeCounts.entrySet()) {
+                if (e.getKey().succeeded()) {
+                    count += e.getValue();
+                }
+            }
+            return count;
+        }
+
+        public long getFailed() {
+            return getCommandCount() - getSucceeded();
+        }
+
+        public long getTurnLimitGameOvers() {
+            return getCount(Outcome.OUT_OF_TIME);
+        }
+
+        /**
+         * @param verb a verb
+         * @return how long its handler takes
+         */
+        public Latency getLatency(Verb verb) {
+            return latencies[verb.ordinal()];
+        }
+
+        /**
+         * @return how long whole commands take, parsing and message included
+         */
+        public Latency getCommandLatency() {
+            return latencies[COMMAND];
+        }
+
+        /**
+         * @return every verb's latency, then non-verbs', then whole commands'
+         */
+        public List<Latency> getLatencies() {
+            return List.of(latencies);
+        }
+    }
+}
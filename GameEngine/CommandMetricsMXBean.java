@@ -0,0 +1,49 @@
+package Main.GameEngine;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The JMX view of {@link CommandMetrics}, registered as
+ * {@value CommandMetrics#OBJECT_NAME}. Every attribute is read from a fresh
+ * {@link CommandMetrics.Snapshot}.
+ * @author Arthur
+ */
+public interface CommandMetricsMXBean {
+
+    /**
+     * @return how many commands have been run (verbs and non-verbs)
+     */
+    long getCommandCount();
+
+    /**
+     * @return how many commands did what the player asked (see {@link Outcome#succeeded()})
+     */
+    long getSucceeded();
+
+    /**
+     * @return how many commands were rejected or lost the game
+     */
+    long getFailed();
+
+    /**
+     * @return how many games were lost to the turn limit
+     */
+    long getTurnLimitGameOvers();
+
+    /**
+     * @return how many times each {@link Outcome} happened, by name
+     */
+    Map<String, Long> getOutcomeCounts();
+
+    /**
+     * @return the latency of each verb, of input that was not a verb ("unknown")
+     *         and of whole commands including parsing and the message ("command")
+     */
+    List<CommandMetrics.Latency> getLatencies();
+
+    /**
+     * Sets every counter and histogram back to zero.
+     */
+    void reset();
+}
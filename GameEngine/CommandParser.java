@@ -0,0 +1,272 @@
+package Main.GameEngine;
+
+import Main.model.Connection;
+import Main.model.GameObject;
+import Main.model.Location;
+import Main.model.NPC;
+import Main.model.World;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Turns a line of free text such as "give tylenol to dutch van der linde"
+ * into a {@link Verb} and its arguments.
+ * The line is split into lower-case words in a single pass. Verbs, including
+ * multi-word ones like "pick up", and the names of everything in the world are
+ * kept in word tries, so the longest name that fits wins ("car keys" rather
+ * than "car"). Text that is not a known name is passed on in lower case, and the
+ * engine reports that it cannot find it.
+ * A parser never changes after it is built, so one is shared by every game
+ * played in the same world.
+ * @author Arthur
+ */
+public final class CommandParser {
+
+    // Parsers already built, by world; dropped once the world is no longer used
+    private static final Map<World, CommandParser> PARSERS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    // Words skipped in front of a name
+    private static final Set<String> ARTICLES = Set.of("the", "a", "an", "my");
+    // Words that end the first name and start the second
+    private static final Set<String> GIVE_TO = Set.of("to");
+    private static final Set<String> USE_ON = Set.of("on", "with", "at", "in");
+
+    private static final String[] NO_ARGS = new String[0];
+
+    private final WordTrie<Verb> verbs = new WordTrie<>();
+    private final WordTrie<String> names = new WordTrie<>();
+
+    /**
+     * A parsed command.
+     */
+    public static final class Parsed {
+        private final Verb verb;
+        private final String word;
+        private final String[] args;
+
+        Parsed(Verb verb, String word, String[] args) {
+            this.verb = verb;
+            this.word = word;
+            this.args = args;
+        }
+
+        /** @return the verb, or {@code null} if the first word is not a verb */
+        public Verb getVerb() { return verb; }
+
+        /** @return the first word as typed, used to report unknown verbs */
+        public String getWord() { return word; }
+
+        /** @return the verb's arguments, with known names in their proper case */
+        public String[] getArgs() { return args.clone(); }
+    }
+
+    /**
+     * Builds a parser for a world. Prefer {@link #forWorld(World)}, which shares parsers.
+     *
+     * @param world the world whose names should be recognised
+     */
+    public CommandParser(World world) {
+        for (Verb verb : Verb.values()) {
+            for (String word : verb.getWords()) {
+                verbs.put(tokenize(word), verb);
+            }
+        }
+        for (Location loc : world.getLocations()) {
+            addName(loc.getName());
+            for (Connection con : loc.getConnections()) {
+                addName(con.getLabel());
+            }
+            for (NPC npc : loc.getCharacters()) {
+                addName(npc.getName());
+            }
+            for (GameObject obj : loc.getObjects()) {
+                addObject(obj);
+            }
+        }
+        if (world.getInventoryItems() != null) {
+            for (GameObject obj : world.getInventoryItems()) {
+                addObject(obj);
+            }
+        }
+    }
+
+    /**
+     * Returns the shared parser for a world, building it the first time.
+     *
+     * @param world the world being played
+     * @return its parser
+     */
+    public static CommandParser forWorld(World world) {
+        return PARSERS.computeIfAbsent(world, CommandParser::new);
+    }
+
+    /**
+     * Parses a line of input.
+     *
+     * @param input what the player typed
+     * @return the command, or {@code null} if the line has no words
+     */
+    public Parsed parse(String input) {
+        String[] tokens = tokenize(input);
+        if (tokens.length == 0) {
+            return null;
+        }
+        int verbEnd = verbs.longest(tokens, 0, tokens.length);
+        if (verbEnd < 0) {
+            return new Parsed(null, tokens[0], NO_ARGS);
+        }
+        Verb verb = verbs.valueAt(tokens, 0, verbEnd);
+        int pos = verbEnd;
+
+        switch (verb) {
+            case INVENTORY:
+                return new Parsed(verb, tokens[0], NO_ARGS);
+            case GIVE:
+            case USE: {
+                Set<String> separators = verb == Verb.GIVE ? GIVE_TO : USE_ON;
+                int[] end = new int[1];
+                String first = readName(tokens, pos, separators, end);
+                if (first == null) {
+                    return new Parsed(verb, tokens[0], NO_ARGS);
+                }
+                pos = end[0];
+                if (pos < tokens.length && separators.contains(tokens[pos])) {
+                    String second = readName(tokens, pos + 1, Set.of(), end);
+                    if (second != null) {
+                        return new Parsed(verb, tokens[0], new String[] {first, second});
+                    }
+                }
+                return new Parsed(verb, tokens[0], new String[] {first});
+            }
+            default: {
+                String arg = readName(tokens, pos, Set.of(), new int[1]);
+                return new Parsed(verb, tokens[0], arg == null ? NO_ARGS : new String[] {arg});
+            }
+        }
+    }
+
+    /**
+     * Splits a line into lower-case words in one pass. Letters, digits,
+     * apostrophes and hyphens make up words; everything else separates them.
+     *
+     * @param input the text to split
+     * @return its words, possibly none
+     */
+    public static String[] tokenize(String input) {
+        if (input == null) {
+            return NO_ARGS;
+        }
+        List<String> tokens = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0, n = input.length(); i < n; i++) {
+            char c = input.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == '\'' || c == '-') {
+                word.append(Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                tokens.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (word.length() > 0) {
+            tokens.add(word.toString());
+        }
+        return tokens.toArray(NO_ARGS);
+    }
+
+    /**
+     * Reads one name starting at a word, skipping articles. A known name is
+     * used if it ends at the end of the line or at a separator; otherwise the
+     * words up to the next separator are returned, in lower case.
+     *
+     * @param end receives the index just past the name
+     * @return the name, or {@code null} if there are no words left
+     */
+    private String readName(String[] tokens, int pos, Set<String> separators, int[] end) {
+        while (pos < tokens.length && ARTICLES.contains(tokens[pos])) {
+            pos++;
+        }
+        if (pos >= tokens.length) {
+            return null;
+        }
+        int known = names.longest(tokens, pos, tokens.length);
+        if (known > 0 && (known == tokens.length || separators.contains(tokens[known]))) {
+            end[0] = known;
+            return names.valueAt(tokens, pos, known);
+        }
+        int stop = pos + 1;
+        while (stop < tokens.length && !separators.contains(tokens[stop])) {
+            stop++;
+        }
+        end[0] = stop;
+        return String.join(" ", Arrays.asList(tokens).subList(pos, stop));
+    }
+
+    private void addObject(GameObject obj) {
+        addName(obj.getName());
+        if (obj.getContainedObjects() != null) {
+            for (GameObject inner : obj.getContainedObjects()) {
+                addObject(inner);
+            }
+        }
+    }
+
+    private void addName(String name) {
+        String[] tokens = tokenize(name);
+        if (tokens.length > 0) {
+            names.put(tokens, name);
+        }
+    }
+
+    /**
+     * A trie keyed by words rather than characters.
+     */
+    private static final class WordTrie<V> {
+        private Map<String, WordTrie<V>> children;
+        private V value;
+
+        void put(String[] words, V value) {
+            WordTrie<V> node = this;
+            for (String word : words) {
+                if (node.children == null) {
+                    node.children = new HashMap<>();
+                }
+                node = node.children.computeIfAbsent(word, w -> new WordTrie<>());
+            }
+            if (node.value == null) {
+                node.value = value; // the first name registered for these words wins
+            }
+        }
+
+        /**
+         * @return the index just past the longest entry starting at {@code from}, or -1 if none does
+         */
+        int longest(String[] words, int from, int to) {
+            int best = -1;
+            WordTrie<V> node = this;
+            for (int i = from; i < to && node.children != null; i++) {
+                node = node.children.get(words[i]);
+                if (node == null) {
+                    break;
+                }
+                if (node.value != null) {
+                    best = i + 1;
+                }
+            }
+            return best;
+        }
+
+        V valueAt(String[] words, int from, int to) {
+            WordTrie<V> node = this;
+            for (int i = from; i < to; i++) {
+                node = node.children.get(words[i]);
+            }
+            return node.value;
+        }
+    }
+}
@@ -5,9 +5,17 @@ import Main.model.Location;
 import Main.model.Inventory;
 import Main.model.Connection;
 import Main.model.GameObject;
+import Main.model.ItemRegistry;
 import Main.model.Item;
 import Main.model.NPC;
+import Main.model.NameIndex;
+import Main.model.RuleBook;
+import Main.model.TimerWheel;
+import Main.model.Timetable;
+import Main.model.WorldOverlay;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * The GameEngine class handles all player actions and game logic execution.
@@ -22,6 +30,72 @@ public class GameEngine {
 
     private GameState state;
 
+    // Where command latencies and outcomes are counted, null for none
+    private CommandMetrics metrics = CommandMetrics.global();
+
+    // What the last command did, read back when its message is built
+    private final Step step = new Step();
+
+    /** How many commands {@link #undo()} can take back unless changed with {@link #setUndoLimit(int)}. */
+    public static final int DEFAULT_UNDO_LIMIT = 1000;
+
+    // Snapshots that undo and redo go back to, newest first; shared with forks
+    private History undo;
+    private History redo;
+    private int undoLimit = DEFAULT_UNDO_LIMIT;
+
+    /**
+     * A stack of game snapshots. Never changed once built, so a forked engine
+     * can share its parent's history.
+     */
+    private static final class History {
+        final GameState.Snapshot snapshot;
+        final History next;
+        final int depth;
+
+        History(GameState.Snapshot snapshot, History next) {
+            this.snapshot = snapshot;
+            this.next = next;
+            this.depth = next == null ? 1 : next.depth + 1;
+        }
+    }
+
+    /**
+     * The facts a message is built from, filled in by each command.
+     * Reused from one command to the next, so it must be read before the next one runs.
+     */
+    private static final class Step {
+        Verb verb;
+        Outcome outcome;
+        String word;
+        GameObject item;
+        GameObject target;
+        NPC npc;
+        Location location;
+        String line;
+        final List<GameObject> rewards = new ArrayList<>();
+        final List<String> didYouMean = new ArrayList<>();
+        // what timed events told the player after the command, in the order they fired
+        final List<String> notices = new ArrayList<>();
+        // what the command itself did, when a timed event then ended the game
+        Outcome base;
+
+        void reset(Verb verb) {
+            this.verb = verb;
+            outcome = null;
+            word = null;
+            item = null;
+            target = null;
+            npc = null;
+            location = null;
+            line = null;
+            rewards.clear();
+            didYouMean.clear();
+            notices.clear();
+            base = null;
+        }
+    }
+
     /**
      * Creates a new GameEngine using a world and a starting inventory.
      *
@@ -50,65 +124,260 @@ public class GameEngine {
         return state;
     }
 
+    /**
+     * Returns where this engine counts its commands, {@link CommandMetrics#global()} unless changed.
+     *
+     * @return the metrics, or {@code null} if this engine does not record any
+     */
+    public CommandMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Changes where this engine counts its commands. Tools that run huge numbers
+     * of games (see {@link Simulator}) turn this off so they stay out of the figures
+     * for real players.
+     *
+     * @param metrics the metrics to record into, or {@code null} for none
+     */
+    public void setMetrics(CommandMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return how many commands can be undone, at least ({@link #DEFAULT_UNDO_LIMIT} unless changed)
+     */
+    public int getUndoLimit() {
+        return undoLimit;
+    }
+
+    /**
+     * Changes how many commands can be undone. Up to twice as many are kept
+     * before the oldest are dropped, so trimming costs O(1) per command.
+     * Only commands run through {@link #processCommand(String, String...)},
+     * {@link #processInput(String)} and the verb methods can be undone;
+     * batches and simulations never record any.
+     *
+     * @param undoLimit the number to keep, or 0 to stop recording and forget the history
+     */
+    public void setUndoLimit(int undoLimit) {
+        if (undoLimit < 0) {
+            throw new IllegalArgumentException("Undo limit cannot be negative: " + undoLimit);
+        }
+        this.undoLimit = undoLimit;
+        if (undoLimit == 0) {
+            undo = null;
+            redo = null;
+        }
+    }
+
+    /**
+     * Takes back the last command that changed the game, putting everything
+     * back as it was before it, turn count included. O(1).
+     *
+     * @return true if there was a command to take back
+     */
+    public boolean undo() {
+        if (undo == null) {
+            return false;
+        }
+        redo = new History(state.snapshot(), redo);
+        state.restore(undo.snapshot);
+        undo = undo.next;
+        GameEvents events = state.getEvents();
+        if (events != null) {
+            events.undone();
+        }
+        return true;
+    }
+
+    /**
+     * Runs the last undone command's changes again. O(1). Any new command
+     * that changes the game forgets what could be redone.
+     *
+     * @return true if there was an undone command to put back
+     */
+    public boolean redo() {
+        if (redo == null) {
+            return false;
+        }
+        undo = new History(state.snapshot(), undo);
+        state.restore(redo.snapshot);
+        redo = redo.next;
+        GameEvents events = state.getEvents();
+        if (events != null) {
+            events.redone();
+        }
+        return true;
+    }
+
+    /**
+     * @return true if {@link #undo()} has something to take back
+     */
+    public boolean canUndo() {
+        return undo != null;
+    }
+
+    /**
+     * @return true if {@link #redo()} has something to put back
+     */
+    public boolean canRedo() {
+        return redo != null;
+    }
+
+    /**
+     * Starts an independent copy of this game in O(1), e.g. to try a line of
+     * play without losing the real one. The copy has the same state, undo and
+     * redo history, metrics and undo limit, and the two share all of it until
+     * one of them changes something. The copy is not journaled.
+     *
+     * @return an engine running the copy
+     */
+    public GameEngine fork() {
+        GameEngine copy = new GameEngine(state.fork());
+        copy.metrics = metrics;
+        copy.undoLimit = undoLimit;
+        copy.undo = undo;
+        copy.redo = redo;
+        return copy;
+    }
+
     /**
      * Main command processor for player inputs.
-     * Supported verbs: go, pick/pickup, drop, examine, talk, give, use.
+     * Supported verbs: go, pick/pickup, drop, examine, talk, give, use, inventory,
+     * and the synonyms listed in {@link Verb}.
      *
      * @param verb the command verb entered by the user
      * @param args additional command arguments (e.g., item names or NPC names)
      * @return result message and state flags wrapped in a CommandResult
      */
     public CommandResult processCommand(String verb, String... args) {
-        if (state.isGameOver()) {
-            return new CommandResult("The game is already over.", true, state.isWin());
-        }
+        long start = metrics == null ? 0 : System.nanoTime();
+        GameState.Snapshot before = remember();
+        Outcome outcome;
+        // after game over a known verb still answers (and is counted) as itself, with ALREADY_OVER
         if (verb == null || verb.trim().isEmpty()) {
-            return new CommandResult("No command provided.", false, false);
+            outcome = notAVerb(start, applyUnknown(null));
+        } else {
+            Verb command = Verb.of(verb);
+            outcome = command == null ? notAVerb(start, applyUnknown(verb)) : command.apply(this, args);
         }
+        return timed(start, result(remembered(before, outcome)));
+    }
 
-        switch (verb.toLowerCase()) {
-            case "go":
-                if (args.length == 0) {
-                    return new CommandResult("Go where?", false, false);
-                }
-                return go(args[0]);
-            case "pickup":
-            case "pick":
-                if (args.length == 0) {
-                    return new CommandResult("Pick up what?", false, false);
-                }
-                return pickUp(args[0]);
-            case "drop":
-                if (args.length == 0) {
-                    return new CommandResult("Drop what?", false, false);
-                }
-                return drop(args[0]);
-            case "examine":
-                if (args.length == 0) {
-                    return new CommandResult("Examine what?", false, false);
-                }
-                return examine(args[0]);
-            case "talk":
-                if (args.length == 0) {
-                    return new CommandResult("Talk to whom?", false, false);
-                }
-                return talk(args[0]);
-            case "give":
-                if (args.length < 2) {
-                    return new CommandResult("Give what to whom?", false, false);
-                }
-                return give(args[0], args[1]);
-            case "use":
-                if (args.length < 1) {
-                    return new CommandResult("Use what?", false, false);
-                }
-                if (args.length == 1) {
-                    return use(args[0], null);
-                }
-                return use(args[0], args[1]);
-            default:
-                return new CommandResult("Command '" + verb + "' is not implemented yet.", false, false);
+    /**
+     * Processes a line of free text, such as "give tylenol to dutch van der linde".
+     * See {@link CommandParser} for what it understands.
+     *
+     * @param input the line the player typed
+     * @return result message and state flags wrapped in a CommandResult
+     */
+    public CommandResult processInput(String input) {
+        long start = metrics == null ? 0 : System.nanoTime();
+        GameState.Snapshot before = remember();
+        Outcome outcome;
+        CommandParser.Parsed command = CommandParser.forWorld(state.getWorld()).parse(input);
+        if (command == null) {
+            outcome = notAVerb(start, applyUnknown(null));
+        } else if (command.getVerb() == null) {
+            outcome = notAVerb(start, applyUnknown(command.getWord()));
+        } else {
+            outcome = command.getVerb().apply(this, command.getArgs());
+        }
+        return timed(start, result(remembered(before, outcome)));
+    }
+
+    // Runs a verb for one of the verb methods below, so it can be undone
+    private Outcome undoable(Verb verb, String... args) {
+        return remembered(remember(), verb.apply(this, args));
+    }
+
+    // The game before a command, or null if undo is off
+    private GameState.Snapshot remember() {
+        return undoLimit == 0 ? null : state.snapshot();
+    }
+
+    // Keeps the snapshot from before a command for undo if the command changed anything
+    private Outcome remembered(GameState.Snapshot before, Outcome outcome) {
+        if (before == null || (before.getTurnCount() == state.getTurnCount() && before.getHash() == state.getHash())) {
+            return outcome;
+        }
+        undo = new History(before, undo);
+        if (undo.depth > 2 * undoLimit) {
+            undo = newest(undo, undoLimit);
+        }
+        redo = null;
+        GameEvents events = state.getEvents();
+        if (events != null) {
+            events.checkpoint();
+        }
+        return outcome;
+    }
+
+    // The first n snapshots of a history, as a new stack
+    private static History newest(History history, int n) {
+        GameState.Snapshot[] kept = new GameState.Snapshot[n];
+        for (int i = 0; i < n; i++, history = history.next) {
+            kept[i] = history.snapshot;
+        }
+        History trimmed = null;
+        for (int i = n - 1; i >= 0; i--) {
+            trimmed = new History(kept[i], trimmed);
+        }
+        return trimmed;
+    }
+
+    // Counts input that never reached a verb (see Verb#apply for the ones that do)
+    private Outcome notAVerb(long start, Outcome outcome) {
+        if (metrics != null) {
+            metrics.recordVerb(null, outcome, System.nanoTime() - start);
+        }
+        return outcome;
+    }
+
+    private CommandResult timed(long start, CommandResult result) {
+        if (metrics != null) {
+            metrics.recordCommand(System.nanoTime() - start);
+        }
+        return result;
+    }
+
+    /**
+     * Runs a whole list of commands against this engine's game, without building
+     * any messages. Meant for replaying recorded playthroughs and generating
+     * load, where only the end state and what each step did matter.
+     * Every step gets an outcome, including those after the game has ended
+     * ({@link Outcome#ALREADY_OVER}).
+     *
+     * @param batch    the commands to run
+     * @param outcomes receives {@link Outcome#code()} of each step, or {@code null} if not wanted;
+     *                 must hold at least {@code batch.size()} codes
+     * @return the game state after the last command
+     */
+    public GameState processBatch(CommandBatch batch, byte[] outcomes) {
+        if (outcomes != null && outcomes.length < batch.size()) {
+            throw new IllegalArgumentException("outcomes holds " + outcomes.length
+                    + " codes but the batch has " + batch.size() + " steps");
+        }
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            Outcome outcome = batch.run(i, this);
+            if (outcomes != null) {
+                outcomes[i] = outcome.code();
+            }
         }
+        return state;
+    }
+
+    /**
+     * Runs one step of a batch and builds its message, as {@link #processCommand(String, String...)} would.
+     * Used to show what happened at a single step of a replay.
+     *
+     * @param batch the commands
+     * @param index which step to run
+     * @return the step's result
+     */
+    CommandResult processStep(CommandBatch batch, int index) {
+        return result(batch.run(index, this));
     }
 
     /**
@@ -119,57 +388,55 @@ public class GameEngine {
      * @return command feedback result
      */
     public CommandResult go(String label) {
-        if (state.isGameOver()) {
-            return new CommandResult("The game is already over.", true, state.isWin());
-        }
+        return result(undoable(Verb.GO, label));
+    }
+
+    Outcome applyGo(String label) {
+        step.reset(Verb.GO);
         Location current = state.getCurrentLocation();
-        Connection connection = current.getConnection(label);
+        Connection connection = find(label, current::getConnection);
         state.incrementTurn();
         if (connection == null) {
-            return postTurnCheck(new CommandResult("You cannot go that way.", false, false));
+            return postTurnCheck(Outcome.NO_EXIT);
         }
+        step.word = connection.getLabel();
         World world = state.getWorld();
-        Location destination = world.getLocation(connection.getTargetLocation());
-        if (destination == null) {
-            return postTurnCheck(new CommandResult("You try to go " + label + ", but something feels wrong.", false, false));
-        }
+        Location destination = connection.getTarget();
+        step.location = destination;
         
-        if (!destination.getAccessible()) {
+        WorldOverlay overlay = state.getOverlay();
+        if (overlay.isClosed(destination)) {
+            return postTurnCheck(Outcome.CLOSED_OFF);
+        }
+        if (!overlay.isAccessible(destination)) {
 
-            List<String> invNames = state.getInventory().invItemNames();
+            Inventory inv = state.getInventory();
 
             //check required inventory items
-            if (destination.getRequiredInv() != null &&
-                !invNames.containsAll(destination.getRequiredInv())) {
-                return postTurnCheck(new CommandResult(
-                        "You need certain items before accessing " + label + ".", false, false));
+            if (!inv.containsAll(destination.getRequiredInvMask())) {
+                return postTurnCheck(Outcome.NEEDS_ITEMS);
             }
 
             //check required usable items (like Bobby Pin for Washroom)
-            if (destination.getRequiredItems() != null &&
-                !invNames.containsAll(destination.getRequiredItems())) {
-                return postTurnCheck(new CommandResult(
-                        "You need to use something first to unlock " + label + ".", false, false));
+            if (!inv.containsAll(destination.getRequiredItemMask())) {
+                return postTurnCheck(Outcome.NEEDS_UNLOCK);
             }
             
             //this is for if we want items used when they are needed for areas
-            if (destination.getRequiredItems() != null) {
-                for (String used : destination.getRequiredItems()) {
-                    state.getInventory().removeItem(used);
-                }
+            for (int used : destination.getRequiredItemIds()) {
+                inv.removeItem(used);
             }
 
             
-            destination.setAccessible(true);
+            overlay.unlock(destination);
         }
         
         state.setCurrentLocation(destination);
         if (world.isEndLocation(destination.getName())) {
             state.endGame(true);
-            return new CommandResult(destination.getDescription() + "\n\nYou have reached your destination. Game over.", true, true);
+            return step.outcome = Outcome.WON;
         }
-        String msg = "You go to " + destination.getName() + ".\n" + destination.getDescription();
-        return postTurnCheck(new CommandResult(msg, false, false));
+        return postTurnCheck(Outcome.MOVED);
     }
 
     /**
@@ -179,23 +446,26 @@ public class GameEngine {
      * @return result explaining success or failure
      */
     public CommandResult pickUp(String objectName) {
-        if (state.isGameOver()) {
-            return new CommandResult("The game is already over.", true, state.isWin());
-        }
+        return result(undoable(Verb.PICK, objectName));
+    }
+
+    Outcome applyPickUp(String objectName) {
+        step.reset(Verb.PICK);
         Location current = state.getCurrentLocation();
-        List<GameObject> objects = current.getObjects();
-        GameObject found = findByName(objects, objectName);
+        GameObject found = find(objectName, name -> state.getOverlay().findObject(current, name));
         if (found == null) {
-            return new CommandResult("You don't see that here.", false, false);
+            return step.outcome = Outcome.NOT_HERE;
         }
+        step.item = found;
         if (!found.isPickable()) {
-            return new CommandResult("You can't pick that up.", false, false);
+            return step.outcome = Outcome.NOT_PICKABLE;
         }
-        current.removeObject(found.getName());
+        state.getOverlay().removeObject(current, found);
         state.getInventory().addItem(found);
         state.incrementTurn();
-        return postTurnCheck(new CommandResult("You pick up the " + found.getName() + ".", false, false));
+        return postTurnCheck(Outcome.PICKED_UP);
     }
+
     /**
      * Drops an item from inventory into the current location.
      *
@@ -203,21 +473,24 @@ public class GameEngine {
      * @return result explaining the drop outcome
      */
     public CommandResult drop(String objectName) {
-        if (state.isGameOver()) {
-            return new CommandResult("The game is already over.", true, state.isWin());
-        }
+        return result(undoable(Verb.DROP, objectName));
+    }
+
+    Outcome applyDrop(String objectName) {
+        step.reset(Verb.DROP);
         Inventory inv = state.getInventory();
-        GameObject item = inv.findItem(objectName);
+        GameObject item = find(objectName, inv::findItem);
         if (item == null) {
-            return new CommandResult("You are not carrying that.", false, false);
+            return step.outcome = Outcome.NOT_CARRIED;
         }
+        step.item = item;
         if (!item.isDroppable()) {
-            return new CommandResult("You can't drop that.", false, false);
+            return step.outcome = Outcome.NOT_DROPPABLE;
         }
         inv.removeItem(item.getName());
-        state.getCurrentLocation().addObject(item);
+        state.getOverlay().addObject(state.getCurrentLocation(), item);
         state.incrementTurn();
-        return postTurnCheck(new CommandResult("You drop the " + item.getName() + ".", false, false));
+        return postTurnCheck(Outcome.DROPPED);
     }
     
     /**
@@ -226,19 +499,16 @@ public class GameEngine {
      * @return a formatted inventory listing
      */
     public CommandResult inventory() {
-        if (state.isGameOver()) {
-            return new CommandResult("The game is already over.", true, state.isWin());
-        }
+        return result(undoable(Verb.INVENTORY));
+    }
 
+    Outcome applyInventory() {
+        step.reset(Verb.INVENTORY);
         var inv = state.getInventory();
         if (inv == null || inv.listItems().isEmpty()) {
-            return new CommandResult("You have nothing in your inventory.", false, false);
+            return step.outcome = Outcome.EMPTY_INVENTORY;
         }
-
-        StringBuilder sb = new StringBuilder("You are carrying:\n");
-        inv.listItems().forEach(item -> sb.append(" - ").append(item.getName()).append("\n"));
-
-        return postTurnCheck(new CommandResult(sb.toString(), false, false));
+        return postTurnCheck(Outcome.LISTED);
     }
 
     /**
@@ -249,29 +519,26 @@ public class GameEngine {
      * @return result with the object's description or error message
      */
     public CommandResult examine(String name) {
-        if (state.isGameOver()) {
-            return new CommandResult("The game is already over.", true, state.isWin());
-        }
+        return result(undoable(Verb.EXAMINE, name));
+    }
+
+    Outcome applyExamine(String name) {
+        step.reset(Verb.EXAMINE);
         Location current = state.getCurrentLocation();
-        GameObject obj = state.getInventory().findItem(name);
-        if (obj == null) {
-            obj = findByName(current.getObjects(), name);
-        }
+        GameObject obj = find(name, this::findCarriedOrHere);
         if (obj == null) {
-            return new CommandResult("You don't see that here.", false, false);
+            return step.outcome = Outcome.NOT_FOUND;
         }
+        step.item = obj;
         state.incrementTurn();
-        StringBuilder sb = new StringBuilder();
-        sb.append(obj.getDescription());
-        List<GameObject> contained = obj.getContainedObjects();
-        if (contained != null && !contained.isEmpty()) {
+        List<GameObject> contained = state.getOverlay().openContainer(obj);
+        if (!contained.isEmpty()) {
             for (GameObject hidden : contained) {
-                current.addObject(hidden);
+                state.getOverlay().addObject(current, hidden);
             }
-            contained.clear();
-            sb.append("\nYou discover something hidden!");
+            return postTurnCheck(Outcome.DISCOVERED);
         }
-        return postTurnCheck(new CommandResult(sb.toString(), false, false));
+        return postTurnCheck(Outcome.EXAMINED);
     }
 
     /**
@@ -281,17 +548,20 @@ public class GameEngine {
      * @return dialogue or error if NPC not present
      */
     public CommandResult talk(String npcName) {
-        if (state.isGameOver()) {
-            return new CommandResult("The game is already over.", true, state.isWin());
-        }
+        return result(undoable(Verb.TALK, npcName));
+    }
+
+    Outcome applyTalk(String npcName) {
+        step.reset(Verb.TALK);
         Location current = state.getCurrentLocation();
-        NPC npc = findNpcByName(current, npcName);
+        NPC npc = find(npcName, name -> state.getOverlay().findCharacter(current, name));
         if (npc == null) {
-            return new CommandResult("There is no one by that name here.", false, false);
+            return step.outcome = Outcome.NO_ONE_HERE;
         }
+        step.npc = npc;
         state.incrementTurn();
-        String line = npc.talk();
-        return postTurnCheck(new CommandResult(line, false, false));
+        step.line = state.getOverlay().talk(npc);
+        return postTurnCheck(Outcome.TALKED);
     }
 
     /**
@@ -302,177 +572,408 @@ public class GameEngine {
      * @return result describing the outcome
      */
     public CommandResult give(String itemName, String npcName) {
-        if (state.isGameOver()) {
-            return new CommandResult("The game is already over.", true, state.isWin());
-        }
+        return result(undoable(Verb.GIVE, itemName, npcName));
+    }
+
+    Outcome applyGive(String itemName, String npcName) {
+        step.reset(Verb.GIVE);
         Inventory inv = state.getInventory();
-        GameObject item = inv.findItem(itemName);
+        GameObject item = find(itemName, inv::findItem);
         if (item == null) {
-            return new CommandResult("You don't have that item.", false, false);
+            return step.outcome = Outcome.NOT_CARRIED;
         }
+        step.item = item;
         Location current = state.getCurrentLocation();
-        NPC npc = findNpcByName(current, npcName);
+        NPC npc = find(npcName, name -> state.getOverlay().findCharacter(current, name));
         if (npc == null) {
-            return new CommandResult("There is no one by that name here.", false, false);
-        }
-        List<String> wanted = npc.getWantedObjects();
-        if (wanted != null) {
-            for (String want : wanted) {
-                if (want != null && want.equalsIgnoreCase(item.getName())) {
-                    inv.removeItem(item.getName());
-                    state.incrementTurn();
-                    
-                    StringBuilder msg = new StringBuilder();
-                    msg.append(npc.getName()).append(" gladly accepts the ").append(item.getName()).append(".\n\n");
-                    
-                    // Get the next dialogue phrase (important dialogue)
-                    String dialogue = npc.talk();
-                    if (dialogue != null && !dialogue.equals(npc.getName() + " has nothing more to say.")) {
-                        msg.append(dialogue);
-                    }
-                    
-                    // Give items back if NPC has any
-                    List<String> givenItems = npc.getGivenItems();
-                    if (givenItems != null && !givenItems.isEmpty()) {
-                        World world = state.getWorld();
-                        for (String itemNameToGive : givenItems) {
-                            GameObject itemToGive = findItemInWorld(world, itemNameToGive);
-                            if (itemToGive != null) {
-                                inv.addItem(itemToGive);
-                                msg.append("\n\n").append(npc.getName()).append(" gives you ").append(itemToGive.getName()).append(".");
-                            } else {
-                                // Item not found in world or inventoryItems - this means JSON is misconfigured
-                                System.err.println("WARNING: NPC " + npc.getName() + " tried to give item '" + itemNameToGive + 
-                                    "' but it's not defined in inventoryItems or any location. Please add it to your JSON file.");
-                                msg.append("\n\n").append(npc.getName()).append(" tries to give you ").append(itemNameToGive)
-                                    .append(", but something went wrong...");
-                            }
-                        }
-                    }
-                    
-                    return postTurnCheck(new CommandResult(msg.toString(), false, false));
+            return step.outcome = Outcome.NO_ONE_HERE;
+        }
+        step.npc = npc;
+        RuleBook.Effect rule = state.getWorld().getRules().give(item.getId(), npc.getId());
+        if (rule != null) {
+            state.incrementTurn();
+            return fire(rule);
+        }
+        if (npc.wants(item.getId())) {
+            inv.removeItem(item.getName());
+            state.incrementTurn();
+            
+            // Get the next dialogue phrase (important dialogue)
+            step.line = state.getOverlay().talk(npc);
+            
+            // Give items back if NPC has any (already resolved when the world was linked)
+            for (GameObject itemToGive : npc.getRewards()) {
+                if (!state.getOverlay().claimReward(itemToGive)) {
+                    // already handed out, carried, or used up somewhere else (e.g. consumed by a locked door)
+                    continue;
                 }
+                inv.addItem(itemToGive);
+                step.rewards.add(itemToGive);
             }
+            
+            return postTurnCheck(Outcome.GAVE);
         }
-        return new CommandResult(npc.getName() + " does not seem interested in that.", false, false);
+        return step.outcome = Outcome.NOT_WANTED;
     }
 
     /**
-     * Attempts to use an item on another object in the current location.
-     * Currently placeholder logic for future rules.
+     * Attempts to use an item, on its own or on another object in the current location.
+     * What happens is decided by the world's use rules.
      *
      * @param itemName the item to use
      * @param targetName optional object to use the item on (may be null)
      * @return result describing the interaction outcome
      */
     public CommandResult use(String itemName, String targetName) {
-        if (state.isGameOver()) {
-            return new CommandResult("The game is already over.", true, state.isWin());
-        }
-        Inventory inv = state.getInventory();
-        GameObject item = inv.findItem(itemName);
-        if (item == null) {
-            item = findByName(state.getCurrentLocation().getObjects(), itemName);
-        }
+        return result(undoable(Verb.USE, itemName, targetName));
+    }
+
+    Outcome applyUse(String itemName, String targetName) {
+        step.reset(Verb.USE);
+        GameObject item = find(itemName, this::findCarriedOrHere);
         if (item == null) {
-            return new CommandResult("You don't have that, and it's not here.", false, false);
+            return step.outcome = Outcome.NOT_FOUND;
         }
+        step.item = item;
+        RuleBook rules = state.getWorld().getRules();
         if (targetName == null) {
+            RuleBook.Effect rule = rules.use(item.getId(), RuleBook.NO_TARGET);
             state.incrementTurn();
-            return postTurnCheck(new CommandResult("Nothing happens.", false, false));
+            return rule != null ? fire(rule) : postTurnCheck(Outcome.USED);
         }
         Location current = state.getCurrentLocation();
-        GameObject target = findByName(current.getObjects(), targetName);
+        GameObject target = find(targetName, name -> state.getOverlay().findObject(current, name));
         if (target == null) {
-            return new CommandResult("You don't see that here.", false, false);
+            return step.outcome = Outcome.NOT_HERE;
         }
+        step.target = target;
+        RuleBook.Effect rule = rules.use(item.getId(), target.getId());
         state.incrementTurn();
-        return postTurnCheck(new CommandResult("You try to use " + item.getName() + " on " + target.getName() + ", but nothing special happens (TODO rules).", false, false));
+        return rule != null ? fire(rule) : postTurnCheck(Outcome.USED_ON);
     }
 
     /**
-     * Helper method to find an object by name in a list of GameObjects.
+     * Carries out a use or give rule on {@code step.item}, after the turn has been counted.
      *
-     * @param objects list of objects to search
-     * @param name target name
-     * @return matching GameObject or null if not found
+     * @param rule what the rule does
+     * @return {@link Outcome#RULE_FIRED}, or the ending the rule or the turn limit brought about
      */
-    private GameObject findByName(List<GameObject> objects, String name) {
-        if (objects == null) {
-            return null;
+    private Outcome fire(RuleBook.Effect rule) {
+        WorldOverlay overlay = state.getOverlay();
+        ItemRegistry registry = overlay.getRegistry();
+        step.line = rule.getMessage();
+        if (rule.consumesItem()) {
+            registry.take(step.item);
+        }
+        for (Location loc : rule.getUnlocks()) {
+            overlay.unlock(loc);
         }
-        for (GameObject obj : objects) {
-            if (obj.getName() != null && obj.getName().equalsIgnoreCase(name)) {
-                return obj;
+        Inventory inv = state.getInventory();
+        for (GameObject given : rule.getGivenItems()) {
+            // only once: not if already handed out, carried, or used up
+            if (overlay.claimReward(given)) {
+                inv.addItem(given);
+                step.rewards.add(given);
             }
         }
-        return null;
+        if (rule.endsGame()) {
+            state.endGame(rule.isWin());
+            return step.outcome = rule.isWin() ? Outcome.RULE_WON : Outcome.RULE_LOST;
+        }
+        return postTurnCheck(Outcome.RULE_FIRED);
+    }
+
+    /**
+     * Records a command given after the game ended.
+     */
+    Outcome applyGameOver() {
+        step.reset(null);
+        return step.outcome = Outcome.ALREADY_OVER;
     }
 
     /**
-     * Finds an NPC with a matching name in a given location.
+     * Records input that was not a command.
      *
-     * @param location the current location to search
-     * @param npcName the target NPC name
-     * @return the NPC or null if not found
+     * @param word the unknown first word, or {@code null} if there were no words
      */
-    private NPC findNpcByName(Location location, String npcName) {
-        if (location.getCharacters() == null) {
-            return null;
+    Outcome applyUnknown(String word) {
+        if (state.isGameOver()) {
+            return applyGameOver();
         }
-        for (NPC npc : location.getCharacters()) {
-            if (npc.getName() != null && npc.getName().equalsIgnoreCase(npcName)) {
-                return npc;
+        step.reset(null);
+        step.word = word;
+        return step.outcome = word == null ? Outcome.NO_COMMAND : Outcome.UNKNOWN_VERB;
+    }
+
+    /**
+     * Records a verb that was given too few arguments.
+     */
+    Outcome applyMissingArgs(Verb verb) {
+        step.reset(verb);
+        return step.outcome = Outcome.MISSING_ARGS;
+    }
+
+    /**
+     * Builds the message for the command that just ran. This is the only place
+     * command text is put together, so commands run in a batch never pay for it.
+     * Anything timed events told the player comes after the command's own
+     * message, or before it if the turn limit then ended the game.
+     *
+     * @param outcome what the command did
+     * @return the result to show the player
+     */
+    private CommandResult result(Outcome outcome) {
+        boolean eventEnded = outcome == Outcome.EVENT_WON || outcome == Outcome.EVENT_LOST;
+        if (step.notices.isEmpty() && !eventEnded) {
+            return message(outcome);
+        }
+        CommandResult command = message(eventEnded ? step.base : outcome);
+        StringBuilder msg = new StringBuilder();
+        if (outcome == Outcome.OUT_OF_TIME) {
+            step.notices.forEach(notice -> msg.append(notice).append("\n\n"));
+            msg.append(command.getMessage());
+            return new CommandResult(msg.toString(), true, false);
+        }
+        msg.append(command.getMessage());
+        step.notices.forEach(notice -> msg.append("\n\n").append(notice));
+        if (outcome == Outcome.EVENT_WON) {
+            return new CommandResult(msg.append("\n\nYou win! Game over.").toString(), true, true);
+        }
+        if (outcome == Outcome.EVENT_LOST) {
+            return new CommandResult(msg.append("\n\nGame over.").toString(), true, false);
+        }
+        return new CommandResult(msg.toString(), command.isGameOver(), command.isWin());
+    }
+
+    private CommandResult message(Outcome outcome) {
+        switch (outcome) {
+            case MOVED:
+                return new CommandResult("You go to " + step.location.getName() + ".\n"
+                        + step.location.getDescription(), false, false);
+            case WON:
+                return new CommandResult(step.location.getDescription()
+                        + "\n\nYou have reached your destination. Game over.", true, true);
+            case NO_EXIT:
+                return notFound("You cannot go that way.");
+            case NEEDS_ITEMS:
+                return new CommandResult("You need certain items before accessing " + step.word + ".", false, false);
+            case NEEDS_UNLOCK:
+                return new CommandResult("You need to use something first to unlock " + step.word + ".", false, false);
+            case CLOSED_OFF:
+                return new CommandResult(step.location.getName() + " is closed now.", false, false);
+            case PICKED_UP:
+                return new CommandResult("You pick up the " + step.item.getName() + ".", false, false);
+            case DROPPED:
+                return new CommandResult("You drop the " + step.item.getName() + ".", false, false);
+            case NOT_PICKABLE:
+                return new CommandResult("You can't pick that up.", false, false);
+            case NOT_DROPPABLE:
+                return new CommandResult("You can't drop that.", false, false);
+            case NOT_HERE:
+                return notFound("You don't see that here.");
+            case NOT_CARRIED:
+                return notFound(step.verb == Verb.GIVE ? "You don't have that item." : "You are not carrying that.");
+            case NOT_FOUND:
+                return notFound(step.verb == Verb.USE ? "You don't have that, and it's not here." : "You don't see that here.");
+            case LISTED: {
+                StringBuilder sb = new StringBuilder("You are carrying:\n");
+                state.getInventory().listItems().forEach(item -> sb.append(" - ").append(item.getName()).append("\n"));
+                return new CommandResult(sb.toString(), false, false);
+            }
+            case EMPTY_INVENTORY:
+                return new CommandResult("You have nothing in your inventory.", false, false);
+            case EXAMINED:
+                return new CommandResult(step.item.getDescription(), false, false);
+            case DISCOVERED:
+                return new CommandResult(step.item.getDescription() + "\nYou discover something hidden!", false, false);
+            case TALKED:
+                return new CommandResult(step.line, false, false);
+            case NO_ONE_HERE:
+                return notFound("There is no one by that name here.");
+            case GAVE: {
+                NPC npc = step.npc;
+                StringBuilder msg = new StringBuilder();
+                msg.append(npc.getName()).append(" gladly accepts the ").append(step.item.getName()).append(".\n\n");
+                if (step.line != null && !step.line.equals(npc.getName() + " has nothing more to say.")) {
+                    msg.append(step.line);
+                }
+                for (GameObject reward : step.rewards) {
+                    msg.append("\n\n").append(npc.getName()).append(" gives you ").append(reward.getName()).append(".");
+                }
+                return new CommandResult(msg.toString(), false, false);
+            }
+            case NOT_WANTED:
+                return new CommandResult(step.npc.getName() + " does not seem interested in that.", false, false);
+            case USED:
+                return new CommandResult("Nothing happens.", false, false);
+            case USED_ON:
+                return new CommandResult("You try to use " + step.item.getName() + " on " + step.target.getName()
+                        + ", but nothing special happens.", false, false);
+            case RULE_FIRED:
+                return new CommandResult(ruleMessage(), false, false);
+            case RULE_WON:
+                return new CommandResult(ruleMessage() + "\n\nYou win! Game over.", true, true);
+            case RULE_LOST:
+                return new CommandResult(ruleMessage() + "\n\nGame over.", true, false);
+            case OUT_OF_TIME:
+                return new CommandResult("You ran out of time. Game over.", true, false);
+            case ALREADY_OVER:
+                return new CommandResult("The game is already over.", true, state.isWin());
+            case NO_COMMAND:
+                return new CommandResult("No command provided.", false, false);
+            case UNKNOWN_VERB:
+                return new CommandResult("Command '" + step.word + "' is not implemented yet.", false, false);
+            case MISSING_ARGS:
+                return new CommandResult(step.verb.getMissingArgs(), false, false);
+            default:
+                throw new IllegalStateException("No message for " + outcome);
+        }
+    }
+
+    /**
+     * Builds the message for a rule that fired: its own text, or a plain account
+     * of the command when it has none, then each item the player got.
+     */
+    private String ruleMessage() {
+        StringBuilder msg = new StringBuilder();
+        if (step.line != null) {
+            msg.append(step.line);
+        } else if (step.npc != null) {
+            msg.append(step.npc.getName()).append(" gladly accepts the ").append(step.item.getName()).append('.');
+        } else {
+            msg.append("You use ").append(step.item.getName());
+            if (step.target != null) {
+                msg.append(" on ").append(step.target.getName());
             }
+            msg.append('.');
+        }
+        for (GameObject reward : step.rewards) {
+            msg.append("\n\n").append(step.npc != null ? step.npc.getName() + " gives you " : "You get ")
+                    .append(reward.getName()).append('.');
+        }
+        return msg.toString();
+    }
+
+    /**
+     * Finds something by name, forgiving small typos. When nothing has the exact
+     * name, the world's {@link NameIndex} is asked for close names that
+     * {@code lookup} can find here; one clear winner is used, otherwise the
+     * close names are kept so the player can be asked what they meant.
+     *
+     * @param typed  the name as the player typed it
+     * @param lookup finds a thing by its exact name, or returns null
+     * @return the thing, or {@code null} if it could not be worked out
+     */
+    private <T> T find(String typed, Function<String, T> lookup) {
+        T found = lookup.apply(typed);
+        if (found != null || typed == null) {
+            return found;
+        }
+        NameIndex.Match match = state.getWorld().getNameIndex().resolve(typed, name -> lookup.apply(name) != null);
+        if (match.getName() != null) {
+            return lookup.apply(match.getName());
         }
+        step.didYouMean.addAll(match.getSuggestions());
         return null;
     }
 
     /**
-     * Checks game-over conditions after any turn-based action.
+     * Looks for an object in the inventory first, then in the current location.
+     *
+     * @param name the object name
+     * @return the object, or {@code null} if it is in neither
+     */
+    private GameObject findCarriedOrHere(String name) {
+        GameObject obj = state.getInventory().findItem(name);
+        return obj != null ? obj : state.getOverlay().findObject(state.getCurrentLocation(), name);
+    }
+
+    /**
+     * Builds a failure result, adding a "did you mean" question if there were close names.
+     *
+     * @param message what went wrong
+     * @return the result to show
+     */
+    private CommandResult notFound(String message) {
+        List<String> didYouMean = step.didYouMean;
+        if (didYouMean.isEmpty()) {
+            return new CommandResult(message, false, false);
+        }
+        StringBuilder sb = new StringBuilder(message).append(" Did you mean ");
+        for (int i = 0; i < didYouMean.size(); i++) {
+            if (i > 0) {
+                sb.append(i == didYouMean.size() - 1 ? " or " : ", ");
+            }
+            sb.append(didYouMean.get(i));
+        }
+        return new CommandResult(sb.append('?').toString(), false, false);
+    }
+
+    /**
+     * Checks game-over conditions after any turn-based action, first firing the
+     * timed events due by the new turn count.
      *
-     * @param base the initial command result
-     * @return same result if still playing, or override if turn limit reached
+     * @param base what the command did
+     * @return the same outcome if still playing, {@link Outcome#EVENT_WON} or
+     *         {@link Outcome#EVENT_LOST} if a timed event ended the game, or
+     *         {@link Outcome#OUT_OF_TIME} if the turn limit was reached
      */
-    private CommandResult postTurnCheck(CommandResult base) {
+    private Outcome postTurnCheck(Outcome base) {
+        TimerWheel timers = state.getTimers();
+        if (timers != null && !state.isGameOver()) {
+            timers.advance(state.getTurnCount());
+            for (int event = timers.next(); event >= 0; event = timers.next()) {
+                happen(timers.getTimetable().get(event));
+                if (state.isGameOver()) {
+                    step.base = base;
+                    return step.outcome = state.isWin() ? Outcome.EVENT_WON : Outcome.EVENT_LOST;
+                }
+            }
+        }
         if (state.hasReachedTurnLimit() && !state.isGameOver()) {
             state.endGame(false);
-            return new CommandResult("You ran out of time. Game over.", true, false);
+            return step.outcome = Outcome.OUT_OF_TIME;
         }
-        return base;
+        return step.outcome = base;
     }
-    
-     /**
-     * Searches for a named item in inventory items or locations in the world.
-     * Removes and returns the object when found.
+
+    /**
+     * Carries out a timed event that has come due, keeping what the player is told in {@code step.notices}.
      *
-     * @param world global world containing items and locations
-     * @param itemName name of item to retrieve
-     * @return the removed GameObject or null if not found
-     */
-    private GameObject findItemInWorld(World world, String itemName) {
-        // First check inventory items (items that can be given by NPCs)
-        if (world.getInventoryItems() != null) {
-            GameObject found = findByName(world.getInventoryItems(), itemName);
-            if (found != null) {
-                // Remove from inventory items and return a copy
-                world.getInventoryItems().remove(found);
-                return found;
-            }
+     * @param event the event
+     */
+    private void happen(Timetable.Event event) {
+        WorldOverlay overlay = state.getOverlay();
+        RuleBook.Effect effect = event.getEffect();
+        if (effect.getMessage() != null) {
+            step.notices.add(effect.getMessage());
         }
-        
-        // Then search all locations for the item
-        for (Location loc : world.getLocations()) {
-            if (loc.getObjects() != null) {
-                GameObject found = findByName(loc.getObjects(), itemName);
-                if (found != null) {
-                    // Remove from location and return it
-                    loc.removeObject(itemName);
-                    return found;
-                }
+        for (Location loc : event.getCloses()) {
+            overlay.close(loc);
+        }
+        for (Location loc : effect.getUnlocks()) {
+            overlay.unlock(loc);
+        }
+        for (NPC npc : event.getDeparts()) {
+            overlay.depart(npc);
+        }
+        for (GameObject given : effect.getGivenItems()) {
+            if (overlay.claimReward(given)) {
+                state.getInventory().addItem(given);
+                step.notices.add("You receive " + given.getName() + ".");
             }
         }
-        return null;
+        TimerWheel timers = state.getTimers();
+        for (int cancelled : event.getCancels()) {
+            timers.cancel(cancelled);
+        }
+        for (int scheduled : event.getSchedules()) {
+            timers.schedule(scheduled, state.getTurnCount() + timers.getTimetable().get(scheduled).getAfter());
+        }
+        if (effect.endsGame()) {
+            state.endGame(effect.isWin());
+        }
     }
     
+    
 }
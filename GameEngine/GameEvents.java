@@ -0,0 +1,48 @@
+package Main.GameEngine;
+
+import Main.model.Location;
+import Main.model.TimerWheel;
+import Main.model.WorldOverlay;
+
+/**
+ * Everything a game changes, reported as it happens: the world changes its
+ * {@link WorldOverlay} reports, the timed events its
+ * {@link TimerWheel} schedules and clears, plus the player's own progress kept in
+ * {@link GameState}. Attach one with {@link GameState#setEvents(GameEvents)}.
+ * @author Arthur
+ */
+public interface GameEvents extends WorldOverlay.Listener, TimerWheel.Listener {
+
+    /**
+     * @param loc the location the player is now in
+     */
+    void entered(Location loc);
+
+    /**
+     * A command used up a turn.
+     */
+    void turnTaken();
+
+    /**
+     * @param win true if the game was won, false if it was lost
+     */
+    void ended(boolean win);
+
+    /**
+     * The command that just ran changed the game and can be undone, back to how
+     * the game was at the checkpoint, undo or redo before it.
+     */
+    void checkpoint();
+
+    /**
+     * {@link GameEngine#undo()} put the game back to how it was before its last
+     * checkpoint. Nothing else is reported for it.
+     */
+    void undone();
+
+    /**
+     * {@link GameEngine#redo()} put the game forward again past the checkpoint
+     * the last undo went back over. Nothing else is reported for it.
+     */
+    void redone();
+}
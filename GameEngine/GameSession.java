@@ -0,0 +1,195 @@
+package Main.GameEngine;
+
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * One player's game, run off the caller's thread.
+ * Commands are queued in a mailbox and run one at a time, in the order they
+ * were submitted, so the engine never sees two commands at once. The mailbox
+ * is drained on an executor (the {@link GameSessionManager}'s, or the UI's
+ * own) and holds no thread while it is empty.
+ * @author Arthur
+ */
+public class GameSession {
+
+    private final String id;
+    private final GameEngine engine;
+    private final Executor executor;
+    // commits each command's changes to the journal, null if the game is not journaled
+    private final Journal.Recorder recorder;
+
+    private final Queue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private volatile long lastActive;
+    private volatile boolean closed;
+
+    /**
+     * Creates a stand-alone session, for a single game such as the desktop UI.
+     *
+     * @param engine   the engine holding the game
+     * @param executor where queued commands are run
+     */
+    public GameSession(GameEngine engine, Executor executor) {
+        this(UUID.randomUUID().toString(), engine, executor);
+    }
+
+    /**
+     * Creates a session around an engine.
+     *
+     * @param id       the session ID
+     * @param engine   the engine holding this player's game
+     * @param executor where queued commands are run
+     */
+    GameSession(String id, GameEngine engine, Executor executor) {
+        this(id, engine, executor, null);
+    }
+
+    /**
+     * Creates a journaled session: a command's future completes only once its
+     * changes are synced to the journal. It is completed by the journal's writer,
+     * so slow follow-up work should be chained with an async stage.
+     *
+     * @param id       the session ID
+     * @param engine   the engine holding this player's game
+     * @param executor where queued commands are run
+     * @param recorder the game's journal recorder, or {@code null} for none
+     */
+    GameSession(String id, GameEngine engine, Executor executor, Journal.Recorder recorder) {
+        this.id = id;
+        this.engine = engine;
+        this.executor = executor;
+        this.recorder = recorder;
+        this.lastActive = System.nanoTime();
+    }
+
+    /**
+     * @return the session ID
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Returns the game state. Only read it from commands run by this session,
+     * or once the session has been closed.
+     *
+     * @return the session's game state
+     */
+    public GameState getState() {
+        return engine.getState();
+    }
+
+    /**
+     * Queues a command for this session.
+     *
+     * @param verb the command verb
+     * @param args command arguments, as for {@link GameEngine#processCommand(String, String...)}
+     * @return a future completed with the command's result once it has run
+     */
+    public CompletableFuture<CommandResult> submit(String verb, String... args) {
+        return call(engine -> engine.processCommand(verb, args));
+    }
+
+    /**
+     * Queues a task that runs against the engine in turn with the commands,
+     * so it may read or change the game without racing them. Use it to run a
+     * command and copy what a caller on another thread needs to show.
+     *
+     * @param task the work to run with this session's engine
+     * @param <T>  the task's result type
+     * @return a future completed with the task's result once it has run
+     */
+    public <T> CompletableFuture<T> call(Function<GameEngine, T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new IllegalStateException("Session " + id + " is closed"));
+            return future;
+        }
+        lastActive = System.nanoTime();
+        mailbox.add(() -> {
+            try {
+                T result = task.apply(engine);
+                if (recorder == null) {
+                    future.complete(result);
+                    return;
+                }
+                // answered once durable, on the journal's writer thread; the next command need not wait for that
+                recorder.commit().whenComplete((synced, error) -> {
+                    if (error == null) {
+                        future.complete(result);
+                    } else {
+                        future.completeExceptionally(error);
+                    }
+                });
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        schedule();
+        return future;
+    }
+
+    /**
+     * @return true once the session has been closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} of the last submitted command
+     */
+    long getLastActive() {
+        return lastActive;
+    }
+
+    /**
+     * Stops accepting commands. Commands already queued still run, then the
+     * journal (if any) records that the session is over.
+     */
+    void close() {
+        closed = true;
+        if (recorder != null) {
+            // after every command already queued, so it is the game's last event
+            mailbox.add(recorder::close);
+            schedule();
+        }
+    }
+
+    /**
+     * Starts a drain on the executor unless one is already running.
+     */
+    private void schedule() {
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            Runnable next;
+            while ((next = mailbox.poll()) != null) {
+                try {
+                    next.run();
+                } catch (Throwable e) {
+                    // one failed task must not hold up the ones queued behind it
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+        } finally {
+            draining.set(false);
+        }
+        // a command may have been queued after the last poll but before the flag was cleared
+        if (!mailbox.isEmpty()) {
+            schedule();
+        }
+    }
+}
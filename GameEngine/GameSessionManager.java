@@ -0,0 +1,285 @@
+package Main.GameEngine;
+
+import Main.model.WorldTemplate;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts many independent games at once without a UI.
+ * Sessions are created, looked up and closed by ID. Each session runs its
+ * commands in order on virtual threads, and all sessions share one read-only
+ * {@link WorldTemplate}, so a slow session never holds up
+ * another one. Sessions that receive no commands for the idle timeout are
+ * closed automatically, and no more than {@code maxSessions} may be open.
+ * Given a {@link Journal}, every game is journaled so it can be restored
+ * after a crash with {@link #restore(String)} or {@link #restoreAll()}.
+ * @author Arthur
+ */
+public class GameSessionManager implements AutoCloseable {
+
+    private final WorldTemplate template;
+    private final int maxSessions;
+    private final long idleTimeoutNanos;
+    private final Journal journal;
+
+    private final Map<String, GameSession> sessions = new ConcurrentHashMap<>();
+    // sessions being restored, so two restores of one ID rebuild it only once
+    private final Map<String, CompletableFuture<GameSession>> restoring = new ConcurrentHashMap<>();
+    private final AtomicInteger liveCount = new AtomicInteger();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService sweeper;
+
+    private GameSessionManager(WorldTemplate template, int maxSessions, Duration idleTimeout, Journal journal) {
+        if (maxSessions <= 0) {
+            throw new IllegalArgumentException("maxSessions must be positive");
+        }
+        this.template = template;
+        this.maxSessions = maxSessions;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.journal = journal;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-idle-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Starts a session manager.
+     *
+     * @param template    the shared world every session plays
+     * @param maxSessions the most sessions that may be open at once
+     * @param idleTimeout how long a session may go without commands before it is closed
+     * @return the manager, already closing idle sessions
+     */
+    public static GameSessionManager start(WorldTemplate template, int maxSessions, Duration idleTimeout) {
+        return start(template, maxSessions, idleTimeout, null);
+    }
+
+    /**
+     * Starts a session manager that journals every game.
+     *
+     * @param template    the shared world every session plays
+     * @param maxSessions the most sessions that may be open at once
+     * @param idleTimeout how long a session may go without commands before it is closed
+     * @param journal     where games are journaled, or {@code null} for nowhere; not closed by this manager
+     * @return the manager, already closing idle sessions
+     */
+    public static GameSessionManager start(WorldTemplate template, int maxSessions, Duration idleTimeout,
+                                           Journal journal) {
+        GameSessionManager manager = new GameSessionManager(template, maxSessions, idleTimeout, journal);
+        // the sweeper only sees the manager once it is fully built
+        long sweepMillis = Math.max(10, Math.min(1000, idleTimeout.toMillis() / 4));
+        manager.sweeper.scheduleWithFixedDelay(manager::closeIdleSessions, sweepMillis, sweepMillis,
+                TimeUnit.MILLISECONDS);
+        return manager;
+    }
+
+    /**
+     * Starts a new game in a new session.
+     *
+     * @return the new session
+     * @throws IllegalStateException if the session limit has been reached
+     */
+    public GameSession create() {
+        reserve();
+        try {
+            return open(UUID.randomUUID().toString(), GameState.newGame(template));
+        } catch (RuntimeException | Error e) {
+            liveCount.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Reopens a journaled session, e.g. after a restart, with its game rebuilt
+     * as of its last synced command.
+     *
+     * @param id the session ID
+     * @return the session, already open if it was
+     * @throws IllegalStateException if there is no journal or the session limit has been reached
+     * @throws IllegalArgumentException if the journal has no such session
+     * @throws IOException if the journal cannot be read
+     */
+    public GameSession restore(String id) throws IOException {
+        if (journal == null) {
+            throw new IllegalStateException("Sessions are not journaled");
+        }
+        GameSession open = sessions.get(id);
+        if (open != null) {
+            return open;
+        }
+        CompletableFuture<GameSession> mine = new CompletableFuture<>();
+        CompletableFuture<GameSession> theirs = restoring.putIfAbsent(id, mine);
+        if (theirs != null) {
+            return awaitRestore(theirs);
+        }
+        try {
+            // another restore may have finished between the first look and the claim
+            open = sessions.get(id);
+            if (open == null) {
+                open = rebuild(id);
+            }
+            mine.complete(open);
+            return open;
+        } catch (IOException | RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            restoring.remove(id, mine);
+        }
+    }
+
+    // rebuilds and opens a session that is not open, holding its place in the limit only if it opens
+    private GameSession rebuild(String id) throws IOException {
+        GameState state = journal.rebuild(id, template);
+        if (state == null) {
+            throw new IllegalArgumentException("No session " + id + " in " + journal.getFile());
+        }
+        reserve();
+        try {
+            return open(id, state);
+        } catch (RuntimeException | Error e) {
+            liveCount.decrementAndGet();
+            throw e;
+        }
+    }
+
+    // waits for a restore running on another thread, rethrowing what it failed with
+    private static GameSession awaitRestore(CompletableFuture<GameSession> restore) throws IOException {
+        try {
+            return restore.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            if (cause instanceof Error err) {
+                throw err;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reopens every journaled session that was never closed, e.g. after a crash.
+     *
+     * @return the sessions reopened
+     * @throws IllegalStateException if there is no journal or the session limit is reached
+     * @throws IOException if the journal cannot be read
+     */
+    public List<GameSession> restoreAll() throws IOException {
+        if (journal == null) {
+            throw new IllegalStateException("Sessions are not journaled");
+        }
+        List<GameSession> restored = new ArrayList<>();
+        for (String id : journal.openSessions()) {
+            if (!sessions.containsKey(id)) {
+                restored.add(restore(id));
+            }
+        }
+        return restored;
+    }
+
+    private void reserve() {
+        if (liveCount.incrementAndGet() > maxSessions) {
+            liveCount.decrementAndGet();
+            throw new IllegalStateException("Session limit of " + maxSessions + " reached");
+        }
+    }
+
+    private GameSession open(String id, GameState state) {
+        Journal.Recorder recorder = journal == null ? null : journal.record(id, state);
+        GameSession session = new GameSession(id, new GameEngine(state), executor, recorder);
+        sessions.put(id, session);
+        return session;
+    }
+
+    /**
+     * Looks up an open session.
+     *
+     * @param id the session ID
+     * @return the session, or {@code null} if there is none with that ID
+     */
+    public GameSession get(String id) {
+        return sessions.get(id);
+    }
+
+    /**
+     * Queues a command for a session.
+     *
+     * @param id   the session ID
+     * @param verb the command verb
+     * @param args command arguments
+     * @return a future completed with the result, or failed if the session does not exist
+     */
+    public CompletableFuture<CommandResult> submit(String id, String verb, String... args) {
+        GameSession session = sessions.get(id);
+        if (session == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("No session " + id));
+        }
+        return session.submit(verb, args);
+    }
+
+    /**
+     * Closes a session. Commands already queued still finish.
+     *
+     * @param id the session ID
+     * @return true if the session was open
+     */
+    public boolean close(String id) {
+        GameSession session = sessions.remove(id);
+        if (session == null) {
+            return false;
+        }
+        session.close();
+        liveCount.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * @return the number of open sessions
+     */
+    public int size() {
+        return liveCount.get();
+    }
+
+    /**
+     * Closes every session that has been idle for longer than the timeout.
+     */
+    void closeIdleSessions() {
+        long now = System.nanoTime();
+        for (GameSession session : sessions.values()) {
+            if (now - session.getLastActive() > idleTimeoutNanos) {
+                close(session.getId());
+            }
+        }
+    }
+
+    /**
+     * Closes every session and stops the manager's threads.
+     */
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+        for (String id : sessions.keySet()) {
+            close(id);
+        }
+        executor.shutdown();
+    }
+}
@@ -3,6 +3,10 @@ package Main.GameEngine;
 import Main.model.World;
 import Main.model.Location;
 import Main.model.Inventory;
+import Main.model.TimerWheel;
+import Main.model.WorldOverlay;
+import Main.model.WorldTemplate;
+import Main.model.Zobrist;
 /**
  * Represents what is currently going on in the game at any given moment
  * It's functions include:
@@ -15,12 +19,27 @@ import Main.model.Inventory;
 public class GameState {
 
     private World world;
+    private WorldOverlay overlay;
     private Location currentLocation;
     private Inventory inventory;
+    // the world's timed events still to come, null if it has none
+    private TimerWheel timers;
 
     private int turnCount;
+    private int turnLimit;
     private boolean gameOver;
     private boolean win;
+
+    // Zobrist keys of the location and flags, the overlay keeps the rest
+    private long hash;
+
+    // told about every change, e.g. to journal it (null for none)
+    private GameEvents events;
+
+    /**
+     * Set with -Dgame.checkHash=true to check the hash against a full recomputation after every command
+     */
+    static final boolean CHECK_HASH = Boolean.getBoolean("game.checkHash");
     
     /** 
      * Constructor initializes a new GameState at the start of a new game 
@@ -31,12 +50,30 @@ public class GameState {
     public GameState(World world, Location startingLocation, Inventory startingInventory) { 
         this.world = world;
         this.currentLocation = startingLocation;
+        this.hash = Zobrist.at(startingLocation);
         this.inventory = startingInventory;
+        // the world is only read, everything this game changes goes in the overlay
+        this.overlay = WorldOverlay.create(world);
+        startingInventory.setRegistry(overlay.getRegistry());
         this.turnCount = 0;
+        this.turnLimit = world.getTurnLimit();
+        if (!world.getTimetable().isEmpty()) {
+            this.timers = new TimerWheel(world.getTimetable(), turnLimit);
+        }
         this.gameOver = false;
         this.win = false;
     }
     
+    /**
+     * Starts a new game on a shared template, no loading or copying needed
+     * @param template
+     * @return
+     */
+    public static GameState newGame(WorldTemplate template) {
+        World world = template.getWorld();
+        return new GameState(world, world.getStartLocation(), new Inventory());
+    }
+    
     /** 
      * Getters and setters
      * @return
@@ -45,17 +82,37 @@ public class GameState {
         return world;
     }
 
+    /**
+     * The changes this game has made to the world (rooms, locks, dialogue, containers)
+     * @return
+     */
+    public WorldOverlay getOverlay() {
+        return overlay;
+    }
+
     public Location getCurrentLocation() {
         return currentLocation;
     }
 
     public void setCurrentLocation(Location currentLocation) {
+        hash ^= Zobrist.at(this.currentLocation) ^ Zobrist.at(currentLocation);
         this.currentLocation = currentLocation;
+        if (events != null) {
+            events.entered(currentLocation);
+        }
     }
 
     public Inventory getInventory() {
         return inventory;
     }
+
+    /**
+     * The world's timed events still to come in this game
+     * @return the wheel, or null if the world has no timed events
+     */
+    public TimerWheel getTimers() {
+        return timers;
+    }
     
     /**
      * Tracks turn count and increments it (after an action occurs, like the player moving to a new room)
@@ -67,6 +124,9 @@ public class GameState {
 
     public void incrementTurn() {
         turnCount++;
+        if (events != null) {
+            events.turnTaken();
+        }
     }
     
     /**
@@ -82,11 +142,167 @@ public class GameState {
     }
 
     public void endGame(boolean winFlag) {
+        hash ^= flags(gameOver, win) ^ flags(true, winFlag);
         this.gameOver = true;
         this.win = winFlag;
+        if (events != null) {
+            events.ended(winFlag);
+        }
+    }
+
+    /**
+     * Reports every change this game makes from now on, including the world changes
+     * kept in the overlay (see {@link Journal})
+     * @param events who to tell, or null to stop
+     */
+    public void setEvents(GameEvents events) {
+        this.events = events;
+        overlay.setListener(events);
+        if (timers != null) {
+            timers.setListener(events);
+        }
+    }
+
+    public GameEvents getEvents() {
+        return events;
+    }
+
+    /**
+     * The number of turns this game allows, the world's limit unless changed (0 means no limit)
+     * @return
+     */
+    public int getTurnLimit() {
+        return turnLimit;
+    }
+
+    /**
+     * Changes the turn limit for this game only, e.g. to try out a different limit in the Simulator.
+     * Timed events given in turns left move with it
+     * @param turnLimit
+     */
+    public void setTurnLimit(int turnLimit) {
+        if (timers != null && turnLimit != this.turnLimit) {
+            timers.limitChanged(this.turnLimit, turnLimit);
+        }
+        this.turnLimit = turnLimit;
     }
 
     public boolean hasReachedTurnLimit() {
-        return world.getTurnLimit() > 0 && turnCount >= world.getTurnLimit();
+        return turnLimit > 0 && turnCount >= turnLimit;
+    }
+
+    /**
+     * A 64-bit fingerprint of where the player is, where every item is, what has been
+     * unlocked, said and opened, and whether the game is over. Two games in the same
+     * situation get the same hash however they got there, so it can be used to spot
+     * repeated states. The turn count is left out on purpose.
+     * Kept up to date by every change, so this is O(1)
+     * @return
+     */
+    public long getHash() {
+        return hash ^ overlay.getHash();
+    }
+
+    /**
+     * Works the hash out from scratch instead, O(items in the world)
+     * @return
+     */
+    public long recomputeHash() {
+        return Zobrist.at(currentLocation) ^ flags(gameOver, win) ^ overlay.recomputeHash();
+    }
+
+    /**
+     * Throws if the kept-up-to-date hash has drifted from a full recomputation (debug mode only)
+     * @param after what was just done, for the error message
+     */
+    void verifyHash(String after) {
+        long expected = recomputeHash();
+        if (getHash() != expected) {
+            throw new IllegalStateException(String.format("State hash %016x should be %016x after %s",
+                getHash(), expected, after));
+        }
+    }
+
+    /**
+     * The whole game at one moment: where the player is, what they carry, the
+     * overlay's changes, the timed events to come, turns and flags. Snapshots share everything they have
+     * in common with each other and with the live game, so keeping thousands
+     * (e.g. for undo) costs about what changed between them
+     */
+    public static final class Snapshot {
+        private final Location currentLocation;
+        private final Inventory.Snapshot inventory;
+        private final WorldOverlay.Snapshot overlay;
+        private final TimerWheel.Snapshot timers;
+        private final int turnCount;
+        private final boolean gameOver;
+        private final boolean win;
+        private final long hash;
+
+        private Snapshot(GameState state) {
+            currentLocation = state.currentLocation;
+            inventory = state.inventory.snapshot();
+            overlay = state.overlay.snapshot();
+            timers = state.timers == null ? null : state.timers.snapshot();
+            turnCount = state.turnCount;
+            gameOver = state.gameOver;
+            win = state.win;
+            hash = state.hash;
+        }
+
+        public int getTurnCount() {
+            return turnCount;
+        }
+
+        /**
+         * The state hash at the time (see {@link GameState#getHash()})
+         * @return
+         */
+        public long getHash() {
+            return hash ^ overlay.getHash();
+        }
+    }
+
+    /**
+     * Saves the game as it is now, O(1)
+     * @return
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Puts the game back as it was in a snapshot, O(1). The turn limit and the
+     * events listener stay as they are, and the listener is not told
+     * @param snapshot a snapshot of this game or of one forked from it
+     */
+    public void restore(Snapshot snapshot) {
+        overlay.restore(snapshot.overlay);
+        inventory.restore(snapshot.inventory);
+        if (timers != null) {
+            timers.restore(snapshot.timers);
+        }
+        currentLocation = snapshot.currentLocation;
+        turnCount = snapshot.turnCount;
+        gameOver = snapshot.gameOver;
+        win = snapshot.win;
+        hash = snapshot.hash;
+    }
+
+    /**
+     * Starts a second, independent game from exactly where this one is, O(1).
+     * The two share everything until one of them changes it. The copy has the
+     * same turn limit but reports to no events listener
+     * @return
+     */
+    public GameState fork() {
+        GameState copy = new GameState(world, currentLocation, new Inventory());
+        copy.turnLimit = turnLimit;
+        copy.restore(snapshot());
+        return copy;
+    }
+
+    private static long flags(boolean gameOver, boolean win) {
+        return (gameOver ? Zobrist.GAME_OVER : 0) ^ (win ? Zobrist.WIN : 0);
     }
 }
@@ -0,0 +1,990 @@
+package Main.GameEngine;
+
+import Main.model.GameObject;
+import Main.model.ItemRegistry;
+import Main.model.Location;
+import Main.model.NPC;
+import Main.model.TimerWheel;
+import Main.model.World;
+import Main.model.WorldOverlay;
+import Main.model.WorldTemplate;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only file of every change made by the games a server hosts, so
+ * any game can be rebuilt after a crash.
+ * <p>
+ * Each game records into its own {@link Recorder}, which encodes the changes
+ * reported through {@link GameEvents} as a few bytes each (small numbers for
+ * locations, items and NPCs rather than names). After every command the
+ * session hands them over with {@link Recorder#commit()}. One writer thread
+ * takes everything committed since its last write, appends it to the file as
+ * one checksummed frame and syncs the file once for the lot: while a sync is
+ * running the next commits pile up, so the busier the server, the more
+ * commits share each sync. A commit is durable when its future completes,
+ * which takes at most the sync in progress plus its own.
+ * </p>
+ * <p>
+ * Opening a journal checks every frame and cuts off a frame left half-written
+ * by a crash. {@link #rebuild(String, WorldTemplate)} replays one game's events
+ * into a fresh {@link GameState}, following any undo and redo, and
+ * {@link #openSessions()} lists the games that had not ended.
+ * </p>
+ * @author Arthur
+ */
+public final class Journal implements AutoCloseable {
+
+    private static final int MAGIC = 0x474A4E4C; // "GJNL"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER = 8;
+    private static final int FRAME_HEADER = 8;
+
+    // event types
+    private static final byte START = 1;
+    private static final byte ENTERED = 2;
+    private static final byte ITEM = 3;
+    private static final byte UNLOCKED = 4;
+    private static final byte TALKED = 5;
+    private static final byte OPENED = 6;
+    private static final byte TURN = 7;
+    private static final byte ENDED = 8;
+    private static final byte CLOSED = 9;
+    private static final byte CHECKPOINT = 10;
+    private static final byte UNDONE = 11;
+    private static final byte REDONE = 12;
+    private static final byte SHUT = 13;
+    private static final byte DEPARTED = 14;
+    private static final byte TIMER_SET = 15;
+    private static final byte TIMER_CLEARED = 16;
+    private static final byte HANDED_OUT = 17;
+
+    // where an ITEM event puts the item
+    private static final int GONE = 0;
+    private static final int IN_LOCATION = 1;
+    private static final int CARRIED = 2;
+    private static final int IN_CONTAINER = 3;
+    private static final int IN_POOL = 4;
+
+    private static final CompletableFuture<Void> NOTHING_TO_COMMIT = CompletableFuture.completedFuture(null);
+    private static final Map<World, Refs> REFS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int maxPendingBytes;
+    private final long lingerNanos;
+    private final AtomicInteger nextSession;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasWork = lock.newCondition();
+    private final Condition hasRoom = lock.newCondition();
+    // commits waiting for the writer, and the batch the writer is syncing; swapped each round
+    private byte[] pending = new byte[1 << 16];
+    private int pendingSize;
+    private byte[] writing = new byte[1 << 16];
+    private List<CompletableFuture<Void>> waiting = new ArrayList<>();
+    private List<CompletableFuture<Void>> syncing = new ArrayList<>();
+    private boolean closing;
+    private IOException failure;
+    private final Thread writer;
+
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+
+    private Journal(Path file, FileChannel channel, int maxPendingBytes, long lingerNanos, int sessions) {
+        this.file = file;
+        this.channel = channel;
+        this.maxPendingBytes = maxPendingBytes;
+        this.lingerNanos = lingerNanos;
+        this.nextSession = new AtomicInteger(sessions);
+        this.writer = new Thread(this::writeLoop, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Opens a journal, creating the file if needed, with up to 4 MB of commits
+     * waiting to be written and writes held back up to 1 ms to gather more.
+     *
+     * @param file the journal file
+     * @return the open journal, positioned after its last complete frame
+     * @throws IOException if the file cannot be read or is not a journal
+     */
+    public static Journal open(Path file) throws IOException {
+        return open(file, 4 << 20, Duration.ofMillis(1));
+    }
+
+    /**
+     * Opens a journal, creating the file if needed.
+     *
+     * @param file            the journal file
+     * @param maxPendingBytes how much committed data may wait for the writer before commits block
+     * @param linger          how long the writer waits for more commits to join a write that has
+     *                        few, adding at most this to each commit's latency
+     * @return the open journal, positioned after its last complete frame
+     * @throws IOException if the file cannot be read or is not a journal
+     */
+    public static Journal open(Path file, int maxPendingBytes, Duration linger) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            int sessions = 0;
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(FILE_HEADER).putInt(MAGIC).putInt(VERSION);
+                header.flip();
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                channel.force(true);
+            } else {
+                int[] highest = {-1};
+                long end = scan(file, (session, data, from, to) -> highest[0] = Math.max(highest[0], session));
+                if (end < channel.size()) {
+                    // the tail of the last write before a crash
+                    channel.truncate(end);
+                    channel.force(true);
+                }
+                sessions = highest[0] + 1;
+            }
+            channel.position(channel.size());
+            return new Journal(file, channel, maxPendingBytes, linger.toNanos(), sessions);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts recording a game, attaching the recorder with
+     * {@link GameState#setEvents(GameEvents)}. Call {@link Recorder#commit()}
+     * after each command. The start itself is committed straight away, so the
+     * game can be rebuilt even if no command has been run yet.
+     *
+     * @param key   the name to rebuild the game by, e.g. its session ID
+     * @param state the game, either new or rebuilt from this journal
+     * @return the game's recorder
+     */
+    public Recorder record(String key, GameState state) {
+        Recorder recorder = new Recorder(this, nextSession.getAndIncrement(), refs(state.getWorld()));
+        recorder.start(key);
+        state.setEvents(recorder);
+        recorder.commit();
+        return recorder;
+    }
+
+    /**
+     * Records one game's changes as they are made. Not thread-safe: use it only
+     * from the thread running the game's commands.
+     */
+    public static final class Recorder implements GameEvents {
+        private final Journal journal;
+        private final int session;
+        private final Refs refs;
+        private byte[] buf = new byte[64];
+        private int size;
+        private int count;
+
+        private Recorder(Journal journal, int session, Refs refs) {
+            this.journal = journal;
+            this.session = session;
+            this.refs = refs;
+        }
+
+        private void start(String key) {
+            byte[] name = key.getBytes(StandardCharsets.UTF_8);
+            event(START);
+            varint(name.length);
+            ensure(name.length);
+            System.arraycopy(name, 0, buf, size, name.length);
+            size += name.length;
+        }
+
+        @Override
+        public void entered(Location loc) {
+            event(ENTERED);
+            varint(refs.location(loc));
+        }
+
+        @Override
+        public void turnTaken() {
+            event(TURN);
+        }
+
+        @Override
+        public void ended(boolean win) {
+            event(ENDED);
+            varint(win ? 1 : 0);
+        }
+
+        @Override
+        public void checkpoint() {
+            event(CHECKPOINT);
+        }
+
+        @Override
+        public void undone() {
+            event(UNDONE);
+        }
+
+        @Override
+        public void redone() {
+            event(REDONE);
+        }
+
+        @Override
+        public void itemMoved(GameObject item, ItemRegistry.Place place, Object holder) {
+            event(ITEM);
+            varint(item.getId());
+            if (place == null) {
+                varint(GONE);
+                return;
+            }
+            switch (place) {
+                case LOCATION:
+                    varint(IN_LOCATION);
+                    varint(refs.location((Location) holder));
+                    break;
+                case INVENTORY:
+                    varint(CARRIED);
+                    break;
+                case CONTAINER:
+                    varint(IN_CONTAINER);
+                    varint(((GameObject) holder).getId());
+                    break;
+                default:
+                    varint(IN_POOL);
+            }
+        }
+
+        @Override
+        public void unlocked(Location loc) {
+            event(UNLOCKED);
+            varint(refs.location(loc));
+        }
+
+        @Override
+        public void talked(NPC npc, int index) {
+            event(TALKED);
+            long where = refs.npc(npc);
+            varint((int) (where >>> 32));
+            varint((int) where);
+            varint(index);
+        }
+
+        @Override
+        public void opened(GameObject container) {
+            event(OPENED);
+            varint(container.getId());
+        }
+
+        @Override
+        public void closed(Location loc) {
+            event(SHUT);
+            varint(refs.location(loc));
+        }
+
+        @Override
+        public void departed(NPC npc) {
+            event(DEPARTED);
+            long where = refs.npc(npc);
+            varint((int) (where >>> 32));
+            varint((int) where);
+        }
+
+        @Override
+        public void handedOut(GameObject reward) {
+            event(HANDED_OUT);
+            varint(reward.getId());
+        }
+
+        @Override
+        public void timerSet(int event, int turn) {
+            event(TIMER_SET);
+            varint(event);
+            varint(turn);
+        }
+
+        @Override
+        public void timerCleared(int event) {
+            event(TIMER_CLEARED);
+            varint(event);
+        }
+
+        /**
+         * Hands everything recorded since the last commit to the journal.
+         *
+         * @return a future completed once it is synced to disk, or failed if it could not be
+         */
+        public CompletableFuture<Void> commit() {
+            if (size == 0) {
+                return NOTHING_TO_COMMIT;
+            }
+            CompletableFuture<Void> done = journal.append(session, buf, size, count);
+            size = 0;
+            count = 0;
+            return done;
+        }
+
+        /**
+         * Records that the game's session has ended, so it is no longer one of
+         * {@link Journal#openSessions()}, and commits.
+         *
+         * @return a future completed once it is synced to disk
+         */
+        public CompletableFuture<Void> close() {
+            event(CLOSED);
+            return commit();
+        }
+
+        private void event(byte type) {
+            ensure(1);
+            buf[size++] = type;
+            count++;
+        }
+
+        private void varint(int value) {
+            ensure(5);
+            size = putVarint(buf, size, value);
+        }
+
+        private void ensure(int more) {
+            if (size + more > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + more));
+            }
+        }
+    }
+
+    private CompletableFuture<Void> append(int session, byte[] data, int length, int eventCount) {
+        lock.lock();
+        try {
+            if (failure != null) {
+                return CompletableFuture.failedFuture(failure);
+            }
+            if (closing) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Journal " + file + " is closed"));
+            }
+            int need = 10 + length;
+            // bound the memory used while the disk falls behind, but never turn away a lone large commit
+            while (pendingSize > 0 && pendingSize + need > maxPendingBytes && failure == null) {
+                hasRoom.awaitUninterruptibly();
+            }
+            if (failure != null) {
+                return CompletableFuture.failedFuture(failure);
+            }
+            if (pendingSize + need > pending.length) {
+                pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingSize + need));
+            }
+            boolean wasEmpty = pendingSize == 0;
+            pendingSize = putVarint(pending, pendingSize, session);
+            pendingSize = putVarint(pending, pendingSize, length);
+            System.arraycopy(data, 0, pending, pendingSize, length);
+            pendingSize += length;
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            waiting.add(done);
+            events.addAndGet(eventCount);
+            commits.incrementAndGet();
+            if (wasEmpty || pendingSize >= maxPendingBytes / 2) {
+                hasWork.signal();
+            }
+            return done;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeLoop() {
+        CRC32C crc = new CRC32C();
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+        while (true) {
+            int size;
+            lock.lock();
+            try {
+                while (pendingSize == 0 && !closing) {
+                    hasWork.awaitUninterruptibly();
+                }
+                if (pendingSize == 0) {
+                    return;
+                }
+                // give other sessions a moment to join this write, unless it is already big
+                long deadline = System.nanoTime() + lingerNanos;
+                long left;
+                while (pendingSize < maxPendingBytes / 2 && !closing && (left = deadline - System.nanoTime()) > 0) {
+                    try {
+                        hasWork.awaitNanos(left);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+                byte[] batch = pending;
+                pending = writing;
+                writing = batch;
+                size = pendingSize;
+                pendingSize = 0;
+                List<CompletableFuture<Void>> batchDone = waiting;
+                waiting = syncing;
+                syncing = batchDone;
+                hasRoom.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                crc.reset();
+                crc.update(writing, 0, size);
+                header.clear();
+                header.putInt(size).putInt((int) crc.getValue()).flip();
+                ByteBuffer[] frame = {header, ByteBuffer.wrap(writing, 0, size)};
+                while (frame[1].hasRemaining()) {
+                    channel.write(frame);
+                }
+                channel.force(false);
+                syncs.incrementAndGet();
+            } catch (IOException e) {
+                error = e;
+            }
+            if (error != null) {
+                fail(error);
+                return;
+            }
+            for (CompletableFuture<Void> done : syncing) {
+                done.complete(null);
+            }
+            syncing.clear();
+        }
+    }
+
+    /**
+     * Stops the journal after a write or sync failed. The file may now end in
+     * a torn frame, which the next {@link #open} cuts off along with anything
+     * after it, so nothing more is written: the batch that failed, every commit
+     * still waiting and every later commit fail with the same error.
+     */
+    private void fail(IOException error) {
+        List<CompletableFuture<Void>> failed = new ArrayList<>(syncing);
+        syncing.clear();
+        lock.lock();
+        try {
+            failure = error;
+            failed.addAll(waiting);
+            waiting.clear();
+            pendingSize = 0;
+            hasRoom.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (CompletableFuture<Void> done : failed) {
+            done.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * @return how many events have been committed
+     */
+    public long getEventCount() {
+        return events.get();
+    }
+
+    /**
+     * @return how many commits have been made
+     */
+    public long getCommitCount() {
+        return commits.get();
+    }
+
+    /**
+     * @return how many times the file has been synced; commits per sync shows how well they are grouped
+     */
+    public long getSyncCount() {
+        return syncs.get();
+    }
+
+    /**
+     * @return the journal file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Writes and syncs everything committed so far, then closes the file.
+     * Commits made after this fail.
+     *
+     * @throws IOException if the file could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closing = true;
+            hasWork.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    /**
+     * Rebuilds a game from the events synced to this journal so far.
+     *
+     * @param key      the name the game was recorded under
+     * @param template the world it was played on
+     * @return the game as of its last synced command, or {@code null} if the journal has no such game
+     * @throws IOException if the journal cannot be read
+     */
+    public GameState rebuild(String key, WorldTemplate template) throws IOException {
+        return rebuild(file, key, template);
+    }
+
+    /**
+     * Rebuilds a game from a journal file.
+     *
+     * @param file     the journal file
+     * @param key      the name the game was recorded under
+     * @param template the world it was played on
+     * @return the game as of its last synced command, or {@code null} if the journal has no such game
+     * @throws IOException if the journal cannot be read or has events this world cannot hold
+     */
+    public static GameState rebuild(Path file, String key, WorldTemplate template) throws IOException {
+        GameState state = GameState.newGame(template);
+        Refs refs = refs(state.getWorld());
+        // a game restored after a crash is recorded again under a new number
+        Set<Integer> sessions = new HashSet<>();
+        Rewind rewind = new Rewind();
+        scan(file, (session, data, from, to) -> {
+            Cursor in = new Cursor(data, from, to);
+            if (data[from] == START && key.equals(in.skip(1).string())) {
+                sessions.add(session);
+            }
+            if (sessions.contains(session)) {
+                apply(state, refs, new Cursor(data, from, to), rewind);
+            }
+        });
+        return sessions.isEmpty() ? null : state;
+    }
+
+    /**
+     * @return the keys of the games recorded in this journal whose sessions were
+     *         never closed, in the order they started
+     * @throws IOException if the journal cannot be read
+     */
+    public List<String> openSessions() throws IOException {
+        return openSessions(file);
+    }
+
+    /**
+     * @param file a journal file
+     * @return the keys of the games recorded in it whose sessions were never closed
+     * @throws IOException if the journal cannot be read
+     */
+    public static List<String> openSessions(Path file) throws IOException {
+        Map<Integer, String> keys = new HashMap<>();
+        Set<String> open = new LinkedHashSet<>();
+        scan(file, (session, data, from, to) -> {
+            Cursor in = new Cursor(data, from, to);
+            if (data[from] == START) {
+                String key = in.skip(1).string();
+                keys.put(session, key);
+                open.add(key);
+            }
+            if (keys.containsKey(session) && lastEvent(new Cursor(data, from, to)) == CLOSED) {
+                open.remove(keys.get(session));
+            }
+        });
+        return new ArrayList<>(open);
+    }
+
+    /**
+     * The undo history of a game being rebuilt, followed the way
+     * {@link GameEngine#undo()} and {@link GameEngine#redo()} did when it was played.
+     */
+    private static final class Rewind {
+        // the game at the last checkpoint, undo or redo: what the next checkpoint saves
+        GameState.Snapshot last;
+        final ArrayDeque<GameState.Snapshot> undo = new ArrayDeque<>();
+        final ArrayDeque<GameState.Snapshot> redo = new ArrayDeque<>();
+    }
+
+    private static void apply(GameState state, Refs refs, Cursor in, Rewind rewind) throws IOException {
+        WorldOverlay overlay = state.getOverlay();
+        ItemRegistry registry = overlay.getRegistry();
+        while (in.hasMore()) {
+            byte type = in.type();
+            switch (type) {
+                case START:
+                    in.string();
+                    rewind.last = state.snapshot();
+                    break;
+                case ENTERED:
+                    state.setCurrentLocation(refs.location(in.varint()));
+                    break;
+                case ITEM:
+                    moveItem(state, refs, registry.find(in.varint()), in);
+                    break;
+                case UNLOCKED:
+                    overlay.unlock(refs.location(in.varint()));
+                    break;
+                case TALKED: {
+                    NPC npc = refs.npc(in.varint(), in.varint());
+                    int index = in.varint();
+                    while (overlay.getDialogueIndex(npc) < index) {
+                        overlay.talk(npc);
+                    }
+                    break;
+                }
+                case OPENED:
+                    overlay.openContainer(registry.find(in.varint()));
+                    break;
+                case SHUT:
+                    overlay.close(refs.location(in.varint()));
+                    break;
+                case DEPARTED:
+                    overlay.depart(refs.npc(in.varint(), in.varint()));
+                    break;
+                case HANDED_OUT:
+                    overlay.handOut(registry.find(in.varint()));
+                    break;
+                case TIMER_SET:
+                    timers(state).schedule(timerEvent(state, in.varint()), in.varint());
+                    break;
+                case TIMER_CLEARED:
+                    timers(state).cancel(timerEvent(state, in.varint()));
+                    break;
+                case TURN:
+                    state.incrementTurn();
+                    break;
+                case ENDED:
+                    state.endGame(in.varint() != 0);
+                    break;
+                case CLOSED:
+                    break;
+                case CHECKPOINT:
+                    rewind.undo.push(rewind.last);
+                    rewind.redo.clear();
+                    rewind.last = state.snapshot();
+                    break;
+                case UNDONE:
+                    rewind.last = step(state, rewind.undo, rewind.redo);
+                    break;
+                case REDONE:
+                    rewind.last = step(state, rewind.redo, rewind.undo);
+                    break;
+                default:
+                    throw new IOException("Unknown journal event " + type);
+            }
+        }
+    }
+
+    private static TimerWheel timers(GameState state) throws IOException {
+        if (state.getTimers() == null) {
+            throw new IOException("Journal times events this world does not have");
+        }
+        return state.getTimers();
+    }
+
+    private static int timerEvent(GameState state, int event) throws IOException {
+        int count = timers(state).getTimetable().size();
+        if (event < 0 || event >= count) {
+            throw new IOException("Journal names timed event " + event + " of " + count);
+        }
+        return event;
+    }
+
+    // goes back (or forward) to the snapshot on top of from, saving where the game was on to
+    private static GameState.Snapshot step(GameState state, ArrayDeque<GameState.Snapshot> from,
+            ArrayDeque<GameState.Snapshot> to) throws IOException {
+        GameState.Snapshot target = from.poll();
+        if (target == null) {
+            throw new IOException("Journal undoes or redoes a command it never recorded");
+        }
+        to.push(state.snapshot());
+        state.restore(target);
+        return target;
+    }
+
+    // walks a commit's events without applying them
+    private static byte lastEvent(Cursor in) throws IOException {
+        byte type = 0;
+        while (in.hasMore()) {
+            type = in.type();
+            switch (type) {
+                case START:
+                    in.string();
+                    break;
+                case ITEM: {
+                    in.varint();
+                    int where = in.varint();
+                    if (where == IN_LOCATION || where == IN_CONTAINER) {
+                        in.varint();
+                    }
+                    break;
+                }
+                case TALKED:
+                    in.varint();
+                    in.varint();
+                    in.varint();
+                    break;
+                case DEPARTED: case TIMER_SET:
+                    in.varint();
+                    in.varint();
+                    break;
+                case ENTERED: case UNLOCKED: case OPENED: case ENDED: case SHUT: case TIMER_CLEARED: case HANDED_OUT:
+                    in.varint();
+                    break;
+                case TURN: case CLOSED: case CHECKPOINT: case UNDONE: case REDONE:
+                    break;
+                default:
+                    throw new IOException("Unknown journal event " + type);
+            }
+        }
+        return type;
+    }
+
+    private static void moveItem(GameState state, Refs refs, GameObject item, Cursor in) throws IOException {
+        WorldOverlay overlay = state.getOverlay();
+        ItemRegistry registry = overlay.getRegistry();
+        int where = in.varint();
+        if (item == null) {
+            throw new IOException("Journal moves an item this world does not have");
+        }
+        ItemRegistry.Place now = registry.placeOf(item);
+        switch (where) {
+            case GONE:
+                // e.g. taken out of a container that was opened by the event before
+                if (now != null) {
+                    registry.take(item);
+                }
+                break;
+            case IN_LOCATION: {
+                Location loc = refs.location(in.varint());
+                if (now != ItemRegistry.Place.LOCATION || registry.holderOf(item) != loc) {
+                    registry.take(item);
+                    overlay.addObject(loc, item);
+                }
+                break;
+            }
+            case CARRIED:
+                if (now != ItemRegistry.Place.INVENTORY) {
+                    registry.take(item);
+                    state.getInventory().addItem(item);
+                }
+                break;
+            default:
+                // the engine never puts items back into containers or the pool
+                throw new IOException("Journal puts " + item.getName() + " somewhere a game cannot");
+        }
+    }
+
+    /**
+     * Receives one commit read back from the file.
+     */
+    private interface CommitVisitor {
+        void visit(int session, byte[] data, int from, int to) throws IOException;
+    }
+
+    /**
+     * Reads every complete, intact frame of a journal file.
+     *
+     * @return the file position just after the last good frame
+     */
+    private static long scan(Path file, CommitVisitor visitor) throws IOException {
+        try (InputStream raw = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(raw, 1 << 16))) {
+            long available = Files.size(file);
+            if (available < FILE_HEADER || in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a game journal");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(file + " is journal version " + version + ", expected " + VERSION);
+            }
+            long position = FILE_HEADER;
+            CRC32C crc = new CRC32C();
+            byte[] frame = new byte[1 << 16];
+            while (position + FRAME_HEADER <= available) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length <= 0 || position + FRAME_HEADER + length > available) {
+                    break;
+                }
+                if (length > frame.length) {
+                    frame = new byte[length];
+                }
+                try {
+                    in.readFully(frame, 0, length);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(frame, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                Cursor commits = new Cursor(frame, 0, length);
+                while (commits.hasMore()) {
+                    int session = commits.varint();
+                    int size = commits.varint();
+                    int from = commits.position;
+                    commits.skip(size);
+                    visitor.visit(session, frame, from, from + size);
+                }
+                position += FRAME_HEADER + length;
+            }
+            return position;
+        }
+    }
+
+    private static int putVarint(byte[] buf, int at, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf[at++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[at++] = (byte) value;
+        return at;
+    }
+
+    /**
+     * Reads events back out of a frame.
+     */
+    private static final class Cursor {
+        private final byte[] data;
+        private final int end;
+        private int position;
+
+        Cursor(byte[] data, int from, int to) {
+            this.data = data;
+            this.position = from;
+            this.end = to;
+        }
+
+        boolean hasMore() {
+            return position < end;
+        }
+
+        Cursor skip(int bytes) throws IOException {
+            if (position + bytes > end) {
+                throw new IOException("Journal frame ends in the middle of an event");
+            }
+            position += bytes;
+            return this;
+        }
+
+        byte type() throws IOException {
+            skip(1);
+            return data[position - 1];
+        }
+
+        int varint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = type();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Bad number in journal");
+        }
+
+        String string() throws IOException {
+            int length = varint();
+            int from = position;
+            skip(length);
+            return new String(data, from, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Refs refs(World world) {
+        synchronized (REFS) {
+            return REFS.computeIfAbsent(world, Refs::new);
+        }
+    }
+
+    /**
+     * The small numbers a world's locations and NPCs are journaled as: a
+     * location's position in {@link World#getLocations()}, and an NPC's
+     * location and position among its characters.
+     */
+    private static final class Refs {
+        private final Location[] locations;
+        private final Map<Location, Integer> locationIndex = new IdentityHashMap<>();
+        private final Map<NPC, Long> npcIndex = new IdentityHashMap<>();
+
+        Refs(World world) {
+            List<Location> list = world.getLocations();
+            locations = list.toArray(new Location[0]);
+            for (int i = 0; i < locations.length; i++) {
+                locationIndex.put(locations[i], i);
+                List<NPC> characters = locations[i].getCharacters();
+                for (int j = 0; characters != null && j < characters.size(); j++) {
+                    npcIndex.putIfAbsent(characters.get(j), (long) i << 32 | j);
+                }
+            }
+        }
+
+        int location(Location loc) {
+            Integer index = locationIndex.get(loc);
+            if (index == null) {
+                throw new IllegalArgumentException("Location " + loc.getName() + " is not part of the world");
+            }
+            return index;
+        }
+
+        Location location(int index) throws IOException {
+            if (index < 0 || index >= locations.length) {
+                throw new IOException("Journal names location " + index + " of " + locations.length);
+            }
+            return locations[index];
+        }
+
+        long npc(NPC npc) {
+            Long where = npcIndex.get(npc);
+            if (where == null) {
+                throw new IllegalArgumentException("NPC " + npc.getName() + " is not part of the world");
+            }
+            return where;
+        }
+
+        NPC npc(int location, int index) throws IOException {
+            List<NPC> characters = location(location).getCharacters();
+            if (characters == null || index < 0 || index >= characters.size()) {
+                throw new IOException("Journal names an NPC this world does not have");
+            }
+            return characters.get(index);
+        }
+    }
+}
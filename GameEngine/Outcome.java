@@ -0,0 +1,120 @@
+package Main.GameEngine;
+
+/**
+ * What a single command did, as a small code instead of a message.
+ * {@link GameEngine#processBatch(CommandBatch, byte[])} records one of these per
+ * step (as its ordinal), which is enough to tell whether a replayed game went
+ * the same way as the recorded one without building any text.
+ * @author Arthur
+ */
+public enum Outcome {
+
+    /** The player walked to another location. */
+    MOVED,
+    /** The player reached the end location and won. */
+    WON,
+    /** There is no exit with that name here. */
+    NO_EXIT,
+    /** The destination needs items the player is not carrying. */
+    NEEDS_ITEMS,
+    /** The destination needs an item to be used to unlock it. */
+    NEEDS_UNLOCK,
+    /** An object was picked up. */
+    PICKED_UP,
+    /** An object was dropped. */
+    DROPPED,
+    /** The object is here but cannot be picked up. */
+    NOT_PICKABLE,
+    /** The object is carried but cannot be dropped. */
+    NOT_DROPPABLE,
+    /** The named object is not in the location. */
+    NOT_HERE,
+    /** The named object is not in the inventory. */
+    NOT_CARRIED,
+    /** The named object is neither carried nor in the location. */
+    NOT_FOUND,
+    /** The inventory was listed. */
+    LISTED,
+    /** The inventory is empty. */
+    EMPTY_INVENTORY,
+    /** An object was examined. */
+    EXAMINED,
+    /** An object was examined and had something hidden in it. */
+    DISCOVERED,
+    /** An NPC said their next line. */
+    TALKED,
+    /** There is no one by that name here. */
+    NO_ONE_HERE,
+    /** An NPC took the item they wanted. */
+    GAVE,
+    /** The NPC does not want that item. */
+    NOT_WANTED,
+    /** An item was used on nothing in particular. */
+    USED,
+    /** An item was used on another object. */
+    USED_ON,
+    /** The turn limit was reached and the game was lost. */
+    OUT_OF_TIME,
+    /** The game had already ended, nothing was done. */
+    ALREADY_OVER,
+    /** The input had no words. */
+    NO_COMMAND,
+    /** The first word is not a verb. */
+    UNKNOWN_VERB,
+    /** The verb was given too few arguments. */
+    MISSING_ARGS,
+    /** A use or give rule fired. */
+    RULE_FIRED,
+    /** A use or give rule fired and won the game. */
+    RULE_WON,
+    /** A use or give rule fired and lost the game. */
+    RULE_LOST,
+    /** The exit leads to a location a timed event has closed. */
+    CLOSED_OFF,
+    /** A timed event won the game after the command. */
+    EVENT_WON,
+    /** A timed event lost the game after the command. */
+    EVENT_LOST;
+
+    private static final Outcome[] VALUES = values();
+
+    /**
+     * Looks up an outcome from the code stored for it.
+     *
+     * @param code an outcome's ordinal, as recorded by a batch
+     * @return the outcome
+     */
+    public static Outcome of(byte code) {
+        return VALUES[code];
+    }
+
+    /**
+     * @return the code recorded for this outcome in a batch
+     */
+    public byte code() {
+        return (byte) ordinal();
+    }
+
+    /**
+     * @return true if the command did what the player asked, false if it was
+     *         rejected (no such exit, locked, unwanted item, ...) or lost the game
+     */
+    public boolean succeeded() {
+        switch (this) {
+            case MOVED: case WON: case PICKED_UP: case DROPPED: case LISTED: case EMPTY_INVENTORY:
+            case EXAMINED: case DISCOVERED: case TALKED: case GAVE: case USED: case USED_ON:
+            case RULE_FIRED: case RULE_WON: case EVENT_WON:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return true if the game is over after this outcome
+     */
+    public boolean endsGame() {
+        return this == WON || this == OUT_OF_TIME || this == ALREADY_OVER || this == RULE_WON || this == RULE_LOST
+                || this == EVENT_WON || this == EVENT_LOST;
+    }
+}
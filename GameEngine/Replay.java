@@ -0,0 +1,120 @@
+package Main.GameEngine;
+
+import Main.model.WorldTemplate;
+
+/**
+ * Records playthroughs and checks that they still play out the same way.
+ * A recording is a {@link CommandBatch} and the {@link Outcome} code of each of
+ * its steps. Verifying replays the batch on a fresh game and compares codes;
+ * no messages are built unless a step differs, and then only for that step.
+ * Every replay starts its own game on the shared template, so one Replay can
+ * check many recordings from many threads.
+ * @author Arthur
+ */
+public final class Replay {
+
+    private final WorldTemplate template;
+
+    /**
+     * Where a replay first went differently from its recording.
+     */
+    public static final class Mismatch {
+        private final Replay replay;
+        private final CommandBatch batch;
+        private final int step;
+        private final Outcome expected;
+        private final Outcome actual;
+        private String message;
+
+        private Mismatch(Replay replay, CommandBatch batch, int step, Outcome expected, Outcome actual) {
+            this.replay = replay;
+            this.batch = batch;
+            this.step = step;
+            this.expected = expected;
+            this.actual = actual;
+        }
+
+        /** @return the step number, from 0 */
+        public int getStep() { return step; }
+
+        /** @return the command at that step, as text */
+        public String getCommand() { return batch.describe(step); }
+
+        /** @return what the recording says happened */
+        public Outcome getExpected() { return expected; }
+
+        /** @return what happened this time */
+        public Outcome getActual() { return actual; }
+
+        /**
+         * Returns the message the player would see at this step now. It is built
+         * the first time it is asked for, by playing the game up to the step again.
+         *
+         * @return the message
+         */
+        public synchronized String getMessage() {
+            if (message == null) {
+                GameEngine engine = replay.newEngine();
+                for (int i = 0; i < step; i++) {
+                    batch.run(i, engine);
+                }
+                message = engine.processStep(batch, step).getMessage();
+            }
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "step " + step + " (" + getCommand() + "): expected " + expected + " but was " + actual;
+        }
+    }
+
+    /**
+     * Creates a replayer for games on a world.
+     *
+     * @param template the world the recordings were made in
+     */
+    public Replay(WorldTemplate template) {
+        this.template = template;
+    }
+
+    /**
+     * Plays a batch on a fresh game and records what each step did.
+     *
+     * @param batch the commands
+     * @return the outcome code of each step
+     */
+    public byte[] record(CommandBatch batch) {
+        byte[] outcomes = new byte[batch.size()];
+        newEngine().processBatch(batch, outcomes);
+        return outcomes;
+    }
+
+    /**
+     * Plays a batch on a fresh game and compares it with a recording.
+     *
+     * @param batch    the commands
+     * @param expected the outcome codes recorded for them
+     * @return the first step that went differently, or {@code null} if they all matched
+     */
+    public Mismatch verify(CommandBatch batch, byte[] expected) {
+        if (expected.length != batch.size()) {
+            throw new IllegalArgumentException("recording has " + expected.length
+                    + " outcomes but the batch has " + batch.size() + " steps");
+        }
+        byte[] actual = record(batch);
+        for (int i = 0; i < actual.length; i++) {
+            if (actual[i] != expected[i]) {
+                return new Mismatch(this, batch, i, Outcome.of(expected[i]), Outcome.of(actual[i]));
+            }
+        }
+        return null;
+    }
+
+    private GameEngine newEngine() {
+        GameEngine engine = new GameEngine(GameState.newGame(template));
+        // replays are not players, keep them out of the live command figures
+        engine.setMetrics(null);
+        return engine;
+    }
+}
@@ -0,0 +1,625 @@
+package Main.GameEngine;
+
+import Main.data.JsonWorldLoader;
+import Main.model.Connection;
+import Main.model.GameObject;
+import Main.model.Inventory;
+import Main.model.ItemRegistry;
+import Main.model.Location;
+import Main.model.NPC;
+import Main.model.RuleBook;
+import Main.model.World;
+import Main.model.WorldOverlay;
+import Main.model.WorldTemplate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays a world headlessly many times over, to see how hard it is before
+ * anyone sits down to play it. Each playthrough starts a fresh game on the
+ * shared {@link WorldTemplate} and picks moves with a {@link Policy} until the
+ * game ends, reaches a dead end, or runs out of steps. Commands go straight
+ * through the engine without building any messages.
+ * Playthroughs are split across a fork/join pool. Every task keeps its own
+ * {@link Report} and reports are only merged as tasks finish, so workers share
+ * nothing while they play. Each playthrough has its own random seed, derived
+ * from the simulator's seed and its number, so results do not depend on how
+ * many threads ran them.
+ * Run with: java Main.GameEngine.Simulator [world] [playthroughs] [random|greedy] [turnLimit]
+ * @author Arthur
+ */
+public final class Simulator {
+
+    /**
+     * How the simulated player picks their next move.
+     */
+    public enum Policy {
+        /** Any possible move, all equally likely. */
+        RANDOM,
+        /**
+         * Hands over wanted items first, then picks things up, then opens
+         * containers, and otherwise walks to the exit it has used least,
+         * skipping doors it cannot open yet.
+         */
+        GREEDY
+    }
+
+    // Playthroughs one task runs itself instead of splitting further
+    private static final int GAMES_PER_TASK = 256;
+
+    private final WorldTemplate template;
+    private final World world;
+    private final List<Location> locations;
+    private final Map<Location, Integer> locationIndex = new IdentityHashMap<>();
+
+    private Policy policy = Policy.GREEDY;
+    private int turnLimit = -1;
+    private int maxSteps = 1000;
+    private long seed = 1;
+
+    /**
+     * The combined results of a run.
+     */
+    public static final class Report {
+        private final List<Location> locations;
+        private final long[] visits;
+        // turnsToWin[t] = games won in exactly t turns
+        private final long[] turnsToWin;
+        private final Map<String, Long> deadEndCauses = new HashMap<>();
+        private long games;
+        private long wins;
+        private long timeouts;
+        private long deadEnds;
+        private long unfinished;
+
+        Report(List<Location> locations, int maxTurns) {
+            this.locations = locations;
+            this.visits = new long[locations.size()];
+            this.turnsToWin = new long[maxTurns + 1];
+        }
+
+        /** @return how many playthroughs were run */
+        public long getGames() { return games; }
+
+        /** @return how many were won */
+        public long getWins() { return wins; }
+
+        /** @return how many were lost to the turn limit */
+        public long getTimeouts() { return timeouts; }
+
+        /** @return how many reached a state from which the game could no longer be won */
+        public long getDeadEnds() { return deadEnds; }
+
+        /** @return how many were still going when the step limit was reached */
+        public long getUnfinished() { return unfinished; }
+
+        /** @return the fraction of playthroughs that were won */
+        public double getWinRate() {
+            return games == 0 ? 0 : (double) wins / games;
+        }
+
+        /**
+         * Returns the fraction of playthroughs won in at most the given number of
+         * turns, i.e. the win rate the world would have with that turn limit.
+         * Only meaningful for runs made without a turn limit or with a larger one.
+         *
+         * @param turns a turn limit
+         * @return the fraction of playthroughs won within it
+         */
+        public double getWinRateWithin(int turns) {
+            long within = 0;
+            for (int t = 0; t <= Math.min(turns, turnsToWin.length - 1); t++) {
+                within += turnsToWin[t];
+            }
+            return games == 0 ? 0 : (double) within / games;
+        }
+
+        /** @return the mean number of turns taken by the games that were won */
+        public double getMeanTurnsToWin() {
+            long total = 0;
+            for (int t = 0; t < turnsToWin.length; t++) {
+                total += t * turnsToWin[t];
+            }
+            return wins == 0 ? 0 : (double) total / wins;
+        }
+
+        /**
+         * Returns a percentile of the number of turns taken to win.
+         *
+         * @param p the percentile, from 0 to 100
+         * @return the least number of turns within which p% of the won games were won, or -1 if none were won
+         */
+        public int getTurnsToWinPercentile(double p) {
+            if (wins == 0) {
+                return -1;
+            }
+            long needed = Math.max(1, (long) Math.ceil(wins * p / 100.0));
+            long seen = 0;
+            for (int t = 0; t < turnsToWin.length; t++) {
+                seen += turnsToWin[t];
+                if (seen >= needed) {
+                    return t;
+                }
+            }
+            return turnsToWin.length - 1;
+        }
+
+        /**
+         * @return how many games were won in each number of turns, indexed by turns
+         */
+        public long[] getTurnsToWin() {
+            return turnsToWin.clone();
+        }
+
+        /**
+         * @return how many times each location was entered (including starting in it), in world order
+         */
+        public Map<String, Long> getVisits() {
+            Map<String, Long> out = new LinkedHashMap<>();
+            for (int i = 0; i < visits.length; i++) {
+                out.put(locations.get(i).getName(), visits[i]);
+            }
+            return out;
+        }
+
+        /**
+         * @return for each move that made a game unwinnable, how many games it did so in
+         */
+        public Map<String, Long> getDeadEndCauses() {
+            return Collections.unmodifiableMap(deadEndCauses);
+        }
+
+        /**
+         * Adds another report's counts to this one.
+         */
+        Report merge(Report other) {
+            games += other.games;
+            wins += other.wins;
+            timeouts += other.timeouts;
+            deadEnds += other.deadEnds;
+            unfinished += other.unfinished;
+            for (int i = 0; i < visits.length; i++) {
+                visits[i] += other.visits[i];
+            }
+            for (int t = 0; t < turnsToWin.length; t++) {
+                turnsToWin[t] += other.turnsToWin[t];
+            }
+            other.deadEndCauses.forEach((cause, count) -> deadEndCauses.merge(cause, count, Long::sum));
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.ROOT, "games=%d won=%d (%.1f%%) out_of_time=%d dead_ends=%d unfinished=%d%n",
+                    games, wins, 100 * getWinRate(), timeouts, deadEnds, unfinished));
+            if (wins > 0) {
+                sb.append(String.format(Locale.ROOT, "turns to win: mean=%.1f p10=%d p50=%d p90=%d p99=%d%n",
+                        getMeanTurnsToWin(), getTurnsToWinPercentile(10), getTurnsToWinPercentile(50),
+                        getTurnsToWinPercentile(90), getTurnsToWinPercentile(99)));
+            }
+            long most = 1;
+            for (long v : visits) {
+                most = Math.max(most, v);
+            }
+            sb.append("room visits:\n");
+            for (int i = 0; i < visits.length; i++) {
+                int bar = (int) (40 * visits[i] / most);
+                sb.append(String.format(Locale.ROOT, "  %-20s %12d %s%n", locations.get(i).getName(), visits[i],
+                        "#".repeat(bar)));
+            }
+            if (!deadEndCauses.isEmpty()) {
+                sb.append("dead ends caused by:\n");
+                deadEndCauses.entrySet().stream()
+                        .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                        .forEach(e -> sb.append(String.format(Locale.ROOT, "  %-40s %d%n", e.getKey(), e.getValue())));
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Creates a simulator for a world.
+     *
+     * @param template the world to play
+     */
+    public Simulator(WorldTemplate template) {
+        this.template = template;
+        this.world = template.getWorld();
+        this.locations = List.copyOf(world.getLocations());
+        for (int i = 0; i < locations.size(); i++) {
+            locationIndex.put(locations.get(i), i);
+        }
+    }
+
+    /**
+     * @param policy how moves are picked (GREEDY by default)
+     */
+    public void setPolicy(Policy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * @param turnLimit the turn limit to play with, 0 for none, or -1 for the world's own (the default)
+     */
+    public void setTurnLimit(int turnLimit) {
+        this.turnLimit = turnLimit;
+    }
+
+    /**
+     * @param maxSteps the most moves tried in one playthrough before it is given up on (1000 by default)
+     */
+    public void setMaxSteps(int maxSteps) {
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * @param seed the seed every playthrough's random numbers are derived from
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Runs playthroughs on the common fork/join pool.
+     *
+     * @param playthroughs how many games to play
+     * @return the combined results
+     */
+    public Report run(long playthroughs) {
+        return run(playthroughs, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Runs playthroughs on the given pool.
+     *
+     * @param playthroughs how many games to play
+     * @param pool         the pool to run on; its parallelism decides how many cores are used
+     * @return the combined results
+     */
+    public Report run(long playthroughs, ForkJoinPool pool) {
+        return pool.invoke(new Games(0, playthroughs));
+    }
+
+    /**
+     * Plays a range of playthroughs, splitting it in half until it is small enough.
+     */
+    private final class Games extends RecursiveTask<Report> {
+        private static final long serialVersionUID = 1L;
+
+        private final long from;
+        private final long to;
+
+        Games(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Report compute() {
+            if (to - from <= GAMES_PER_TASK) {
+                Player player = new Player();
+                for (long game = from; game < to; game++) {
+                    player.play(game);
+                }
+                return player.report;
+            }
+            long mid = (from + to) >>> 1;
+            Games left = new Games(from, mid);
+            left.fork();
+            Report right = new Games(mid, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * Plays games one after another, collecting results in its own report.
+     * The move list is reused from one step to the next.
+     */
+    private final class Player {
+        final Report report = new Report(locations, maxSteps);
+
+        // The moves possible in the current step
+        Verb[] verbs = new Verb[16];
+        String[] firsts = new String[16];
+        String[] seconds = new String[16];
+        int[] scores = new int[16];
+        int[] best = new int[16];
+        int moves;
+        // Times each location was entered in the current game, used by GREEDY
+        final int[] entered = new int[locations.size()];
+
+        void play(long game) {
+            SplittableRandom random = new SplittableRandom(mix(seed + game * 0x9E3779B97F4A7C15L));
+            GameState state = GameState.newGame(template);
+            if (turnLimit >= 0) {
+                state.setTurnLimit(turnLimit);
+            }
+            GameEngine engine = new GameEngine(state);
+            engine.setMetrics(null); // simulated games stay out of the live command figures
+            Arrays.fill(entered, 0);
+            enter(state.getCurrentLocation());
+            report.games++;
+
+            for (int step = 0; step < maxSteps && !state.isGameOver(); step++) {
+                collectMoves(state);
+                if (moves == 0) {
+                    deadEnd("nowhere to go from " + state.getCurrentLocation().getName());
+                    return;
+                }
+                int move = choose(random);
+                Location before = state.getCurrentLocation();
+                int unlockedBefore = state.getOverlay().getUnlocked().size();
+                Outcome outcome = verbs[move].apply(engine, seconds[move] == null
+                        ? new String[] {firsts[move]} : new String[] {firsts[move], seconds[move]});
+                if (state.getCurrentLocation() != before) {
+                    enter(state.getCurrentLocation());
+                }
+                // only handing items over and unlocking doors use things up, so only they can strand the player
+                boolean usedUp = outcome == Outcome.GAVE || state.getOverlay().getUnlocked().size() != unlockedBefore;
+                if (usedUp && !state.isGameOver() && !canStillWin(state)) {
+                    deadEnd(describe(move));
+                    return;
+                }
+            }
+            if (state.isGameOver() && state.isWin()) {
+                report.wins++;
+                report.turnsToWin[Math.min(state.getTurnCount(), report.turnsToWin.length - 1)]++;
+            } else if (state.isGameOver()) {
+                report.timeouts++;
+            } else {
+                report.unfinished++;
+            }
+        }
+
+        void enter(Location loc) {
+            Integer index = locationIndex.get(loc);
+            if (index != null) {
+                report.visits[index]++;
+                entered[index]++;
+            }
+        }
+
+        void deadEnd(String cause) {
+            report.deadEnds++;
+            report.deadEndCauses.merge(cause, 1L, Long::sum);
+        }
+
+        String describe(int move) {
+            return verbs[move].getWords()[0] + " " + firsts[move]
+                    + (seconds[move] == null ? "" : (verbs[move] == Verb.GIVE ? " to " : " on ") + seconds[move]);
+        }
+
+        /**
+         * Lists every move that could do something here, scored for GREEDY.
+         * Moves scored below zero are only ever picked by RANDOM.
+         */
+        void collectMoves(GameState state) {
+            moves = 0;
+            Location here = state.getCurrentLocation();
+            WorldOverlay overlay = state.getOverlay();
+            Inventory inv = state.getInventory();
+            List<GameObject> carried = inv.listItems();
+            RuleBook rules = world.getRules();
+
+            for (Connection con : here.getConnections()) {
+                Location target = con.getTarget();
+                boolean canEnter = overlay.isAccessible(target)
+                        || (inv.containsAll(target.getRequiredInvMask()) && inv.containsAll(target.getRequiredItemMask()));
+                Integer index = locationIndex.get(target);
+                int visits = index == null ? 0 : entered[index];
+                add(Verb.GO, con.getLabel(), null, canEnter ? 100 - Math.min(visits, 99) : 0);
+            }
+            List<GameObject> objects = overlay.getObjects(here);
+            for (GameObject obj : objects) {
+                if (obj.isPickable()) {
+                    add(Verb.PICK, obj.getName(), null, 300);
+                }
+                if (hasHidden(obj, overlay)) {
+                    add(Verb.EXAMINE, obj.getName(), null, 200);
+                }
+            }
+            for (GameObject item : carried) {
+                if (hasHidden(item, overlay)) {
+                    add(Verb.EXAMINE, item.getName(), null, 200);
+                }
+                if (item.isDroppable()) {
+                    add(Verb.DROP, item.getName(), null, -1);
+                }
+                add(Verb.USE, item.getName(), null, rules.use(item.getId(), RuleBook.NO_TARGET) != null ? 400 : -1);
+                for (GameObject target : objects) {
+                    add(Verb.USE, item.getName(), target.getName(),
+                            rules.use(item.getId(), target.getId()) != null ? 400 : -1);
+                }
+            }
+            for (NPC npc : overlay.getCharacters(here)) {
+                add(Verb.TALK, npc.getName(), null, -1);
+                for (GameObject item : carried) {
+                    boolean takes = rules.give(item.getId(), npc.getId()) != null || npc.wants(item.getId());
+                    add(Verb.GIVE, item.getName(), npc.getName(), takes ? 400 : -1);
+                }
+            }
+        }
+
+        void add(Verb verb, String first, String second, int score) {
+            if (moves == verbs.length) {
+                verbs = Arrays.copyOf(verbs, moves * 2);
+                firsts = Arrays.copyOf(firsts, moves * 2);
+                seconds = Arrays.copyOf(seconds, moves * 2);
+                scores = Arrays.copyOf(scores, moves * 2);
+                best = new int[moves * 2];
+            }
+            verbs[moves] = verb;
+            firsts[moves] = first;
+            seconds[moves] = second;
+            scores[moves] = score;
+            moves++;
+        }
+
+        int choose(SplittableRandom random) {
+            if (policy == Policy.RANDOM) {
+                return random.nextInt(moves);
+            }
+            int count = 0;
+            int top = Integer.MIN_VALUE;
+            for (int i = 0; i < moves; i++) {
+                if (scores[i] > top) {
+                    top = scores[i];
+                    count = 0;
+                }
+                if (scores[i] == top) {
+                    best[count++] = i;
+                }
+            }
+            return best[random.nextInt(count)];
+        }
+    }
+
+    /**
+     * Checks whether the game can still be won, being as generous as possible:
+     * every item the player could still get hold of counts as held at once,
+     * and nothing is used up along the way. So if this says no, the game
+     * really is lost; if it says yes, it may still be lost. Use and give rules
+     * and timed events are not modelled, so for a world that has any the
+     * answer is always yes.
+     *
+     * @param state the game to check
+     * @return false if no end location can be reached any more
+     */
+    boolean canStillWin(GameState state) {
+        if (!world.getRules().isEmpty() || !world.getTimetable().isEmpty()) {
+            return true;
+        }
+        WorldOverlay overlay = state.getOverlay();
+        ItemRegistry registry = overlay.getRegistry();
+        long[] have = new long[(world.getItemCount() >> 6) + 1];
+        boolean[] reached = new boolean[locations.size()];
+        for (GameObject item : state.getInventory().listItems()) {
+            obtain(item, overlay, registry, have);
+        }
+        Integer start = locationIndex.get(state.getCurrentLocation());
+        if (start == null) {
+            return true;
+        }
+        reached[start] = true;
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < reached.length; i++) {
+                if (!reached[i]) {
+                    continue;
+                }
+                Location loc = locations.get(i);
+                if (world.isEndLocation(loc.getName())) {
+                    return true;
+                }
+                for (GameObject obj : overlay.getObjects(loc)) {
+                    changed |= obtain(obj, overlay, registry, have);
+                }
+                for (NPC npc : loc.getCharacters()) {
+                    if (!wantsAnyOf(npc, have)) {
+                        continue;
+                    }
+                    for (GameObject reward : npc.getRewards()) {
+                        // a reward can still be had unless handed out before or used up
+                        if (!overlay.isHandedOut(reward) && registry.placeOf(reward) != null) {
+                            changed |= obtain(reward, overlay, registry, have);
+                        }
+                    }
+                }
+                for (Connection con : loc.getConnections()) {
+                    Integer target = locationIndex.get(con.getTarget());
+                    if (target == null || reached[target]) {
+                        continue;
+                    }
+                    Location dest = con.getTarget();
+                    if (overlay.isAccessible(dest)
+                            || (holdsAll(have, dest.getRequiredInvMask()) && holdsAll(have, dest.getRequiredItemMask()))) {
+                        reached[target] = true;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts an object, and anything still hidden inside it, as obtainable.
+     *
+     * @return true if anything new was added
+     */
+    private static boolean obtain(GameObject obj, WorldOverlay overlay, ItemRegistry registry, long[] have) {
+        boolean added = false;
+        int id = obj.getId();
+        if (id >= 0 && (have[id >> 6] & (1L << id)) == 0) {
+            have[id >> 6] |= 1L << id;
+            added = true;
+        }
+        if (obj.getContainedObjects() != null && !overlay.isOpened(obj)) {
+            for (GameObject inner : obj.getContainedObjects()) {
+                if (registry.holderOf(inner) == obj) {
+                    added |= obtain(inner, overlay, registry, have);
+                }
+            }
+        }
+        return added;
+    }
+
+    private static boolean hasHidden(GameObject obj, WorldOverlay overlay) {
+        return obj.getContainedObjects() != null && !obj.getContainedObjects().isEmpty() && !overlay.isOpened(obj);
+    }
+
+    private static boolean wantsAnyOf(NPC npc, long[] have) {
+        for (int id : npc.getWantedIds()) {
+            if (id >= 0 && (have[id >> 6] & (1L << id)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean holdsAll(long[] have, long[] mask) {
+        for (int i = 0; i < mask.length; i++) {
+            if ((mask[i] & ~(i < have.length ? have[i] : 0)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Spreads a seed's bits so neighbouring playthroughs get unrelated random numbers
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public static void main(String[] args) {
+        String path = args.length > 0 ? args[0] : "/games/midterm_madness.json";
+        long playthroughs = args.length > 1 ? Long.parseLong(args[1]) : 1_000_000;
+        Simulator simulator = new Simulator(JsonWorldLoader.loadTemplate(path));
+        if (args.length > 2) {
+            simulator.setPolicy(Policy.valueOf(args[2].toUpperCase(Locale.ROOT)));
+        }
+        if (args.length > 3) {
+            simulator.setTurnLimit(Integer.parseInt(args[3]));
+        }
+        long start = System.nanoTime();
+        Report report = simulator.run(playthroughs);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.print(report);
+        System.out.printf(Locale.ROOT, "%.0f playthroughs/s on %d threads%n",
+                playthroughs / seconds, ForkJoinPool.commonPool().getParallelism());
+    }
+}
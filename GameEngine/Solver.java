@@ -0,0 +1,717 @@
+package Main.GameEngine;
+
+import Main.data.JsonWorldLoader;
+import Main.model.Connection;
+import Main.model.GameObject;
+import Main.model.ItemRegistry;
+import Main.model.Location;
+import Main.model.NPC;
+import Main.model.World;
+import Main.model.WorldTemplate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Finds the shortest sequence of commands that wins a world, or proves there is none.
+ * <p>
+ * The search runs breadth-first over game states, one turn per layer, so the
+ * first win found uses the fewest turns. A state is packed into a few longs:
+ * the current location, where each item that matters is (where it started,
+ * carried, used up, or lying in some location), which doors have been unlocked
+ * and which containers opened. Identical states are only expanded once, using a
+ * hashed visited set split into locked shards, and each layer is expanded in
+ * parallel. States that could not reach an end location before the turn limit,
+ * even walking straight there, are dropped (the A* bound, with walking distance
+ * as the estimate).
+ * </p>
+ * <p>
+ * Only what can change whether the game is won is searched. Items that are
+ * not needed to unlock a location, not wanted by an NPC for something that is,
+ * and not hiding one of those, are left where they are. Dropping, talking and
+ * using are never tried: none of them opens anything up (dialogue moves on when
+ * an item is handed over anyway). The answer is then played through the real
+ * engine to make sure it wins. Worlds with use or give rules are not
+ * supported, since a rule can open up anything.
+ * </p>
+ * Run with: java Main.GameEngine.Solver [world...]
+ * @author Arthur
+ */
+public final class Solver {
+
+    // Where a tracked item is, stored in 16 bits per item (32 in worlds with too many locations for 16)
+    private static final int AT_START = 0;
+    private static final int HELD = 1;
+    private static final int GONE = 2;
+    private static final int ON_FLOOR = 3; // + location index
+
+    // How a tracked item starts out
+    private static final int IN_LOCATION = 0;
+    private static final int IN_CONTAINER = 1;
+    private static final int ELSEWHERE = 2; // the world's pool, only reachable as an NPC reward
+
+    // Move kinds, in the top bits of a move code above two 14-bit indexes
+    private static final int MOVE_INDEX_LIMIT = 1 << 14;
+    private static final int GO = 0;
+    private static final int PICK = 1;
+    private static final int EXAMINE = 2;
+    private static final int GIVE = 3;
+
+    // States one parallel task expands
+    private static final int CHUNK = 512;
+
+    private final WorldTemplate template;
+    private final World world;
+    private int turnLimit;
+
+    // Locations, by index
+    private final List<Location> locations;
+    private final Map<Location, Integer> locationIndex = new IdentityHashMap<>();
+    private final boolean[] isEnd;
+    private final int[] lockIndex;    // index among locked locations, or -1
+    private final int[][] targets;    // per location, target location of each connection
+    private final int[][] needHeld;   // per location, tracked items needed in the inventory to enter
+    private final int[][] needUsed;   // per location, tracked items used up on entering
+    private final int[] distanceToEnd;
+
+    // Tracked items, by index
+    private final GameObject[] items;
+    private final int[] startKind;
+    private final int[] startWhere;   // location index, or tracked index of the container
+    private final boolean[] pickable;
+    private final int[][] contents;   // per tracked container, tracked items inside it
+    private final int[][][] npcWants;   // per location and NPC, tracked items the NPC wants
+    private final int[][][] npcRewards; // per location and NPC, tracked items the NPC hands over
+
+    // Layout of a packed state
+    private final int posShift;       // log2 of the item positions held in one long
+    private final int posBits;
+    private final long posMask;
+    private final int width;
+    private final int unlockedAt;
+    private final int openedAt;
+
+    /**
+     * The result of a search.
+     */
+    public static final class Solution {
+        private final CommandBatch batch;
+        private final long states;
+        private final long millis;
+
+        private Solution(CommandBatch batch, long states, long millis) {
+            this.batch = batch;
+            this.states = states;
+            this.millis = millis;
+        }
+
+        /** @return true if the world can be won */
+        public boolean isWinnable() { return batch != null; }
+
+        /** @return the fewest turns a win takes, or -1 if it cannot be won */
+        public int getTurns() { return batch == null ? -1 : batch.size(); }
+
+        /** @return the winning commands, or {@code null} if there are none */
+        public CommandBatch getCommands() { return batch; }
+
+        /** @return how many distinct states were reached */
+        public long getStatesExplored() { return states; }
+
+        /** @return how long the search took */
+        public long getMillis() { return millis; }
+    }
+
+    /**
+     * Prepares a solver for a world.
+     *
+     * @param template the world to solve
+     * @throws IllegalArgumentException if the world has use or give rules or timed events, or
+     *         more than 16,383 items that matter, exits from one location or NPCs in one location
+     */
+    public Solver(WorldTemplate template) {
+        this.template = template;
+        this.world = template.getWorld();
+        if (!world.getRules().isEmpty()) {
+            throw new IllegalArgumentException("Cannot solve a world with use or give rules");
+        }
+        if (!world.getTimetable().isEmpty()) {
+            throw new IllegalArgumentException("Cannot solve a world with timed events");
+        }
+        this.turnLimit = world.getTurnLimit();
+        this.locations = List.copyOf(world.getLocations());
+        int n = locations.size();
+        for (int i = 0; i < n; i++) {
+            locationIndex.put(locations.get(i), i);
+        }
+
+        // Work out which items matter: those needed to enter somewhere, then anything an NPC
+        // wants in exchange for one of those, and any container one of them is hidden in
+        ItemRegistry registry = world.getItemRegistry();
+        boolean[] wanted = new boolean[world.getItemCount()];
+        for (Location loc : locations) {
+            mark(wanted, loc.getRequiredInvIds());
+            mark(wanted, loc.getRequiredItemIds());
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Location loc : locations) {
+                for (NPC npc : loc.getCharacters()) {
+                    for (GameObject reward : npc.getRewards()) {
+                        if (reward.getId() >= 0 && wanted[reward.getId()]) {
+                            changed |= mark(wanted, npc.getWantedIds());
+                        }
+                    }
+                }
+            }
+            for (int id = 0; id < wanted.length; id++) {
+                GameObject obj = registry.find(id);
+                if (wanted[id] && obj != null && registry.placeOf(obj) == ItemRegistry.Place.CONTAINER) {
+                    changed |= mark(wanted, new int[] {((GameObject) registry.holderOf(obj)).getId()});
+                }
+            }
+        }
+        int[] trackedIndex = new int[wanted.length];
+        List<GameObject> tracked = new ArrayList<>();
+        for (int id = 0; id < wanted.length; id++) {
+            GameObject obj = registry.find(id);
+            trackedIndex[id] = wanted[id] && obj != null ? tracked.size() : -1;
+            if (trackedIndex[id] >= 0) {
+                tracked.add(obj);
+            }
+        }
+        int m = tracked.size();
+        items = tracked.toArray(new GameObject[0]);
+        startKind = new int[m];
+        startWhere = new int[m];
+        pickable = new boolean[m];
+        List<List<Integer>> inside = new ArrayList<>();
+        for (int t = 0; t < m; t++) {
+            inside.add(new ArrayList<>());
+        }
+        for (int t = 0; t < m; t++) {
+            pickable[t] = items[t].isPickable();
+            ItemRegistry.Place place = registry.placeOf(items[t]);
+            Object holder = registry.holderOf(items[t]);
+            if (place == ItemRegistry.Place.LOCATION && locationIndex.containsKey(holder)) {
+                startKind[t] = IN_LOCATION;
+                startWhere[t] = locationIndex.get(holder);
+            } else if (place == ItemRegistry.Place.CONTAINER) {
+                startKind[t] = IN_CONTAINER;
+                startWhere[t] = trackedIndex[((GameObject) holder).getId()];
+                inside.get(startWhere[t]).add(t);
+            } else {
+                startKind[t] = ELSEWHERE;
+            }
+        }
+        contents = new int[m][];
+        for (int t = 0; t < m; t++) {
+            contents[t] = inside.get(t).stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        isEnd = new boolean[n];
+        lockIndex = new int[n];
+        targets = new int[n][];
+        needHeld = new int[n][];
+        needUsed = new int[n][];
+        npcWants = new int[n][][];
+        npcRewards = new int[n][][];
+        int locked = 0;
+        for (int i = 0; i < n; i++) {
+            Location loc = locations.get(i);
+            isEnd[i] = world.isEndLocation(loc.getName());
+            lockIndex[i] = loc.getAccessible() ? -1 : locked++;
+            List<Connection> cons = loc.getConnections();
+            targets[i] = new int[cons.size()];
+            for (int c = 0; c < cons.size(); c++) {
+                Integer target = cons.get(c).getTarget() == null ? null : locationIndex.get(cons.get(c).getTarget());
+                targets[i][c] = target == null ? -1 : target;
+            }
+            needHeld[i] = tracked(loc.getRequiredInvIds(), trackedIndex);
+            needUsed[i] = tracked(loc.getRequiredItemIds(), trackedIndex);
+            List<NPC> npcs = loc.getCharacters();
+            npcWants[i] = new int[npcs.size()][];
+            npcRewards[i] = new int[npcs.size()][];
+            for (int k = 0; k < npcs.size(); k++) {
+                npcWants[i][k] = tracked(npcs.get(k).getWantedIds(), trackedIndex);
+                npcRewards[i][k] = tracked(npcs.get(k).getRewards().stream().mapToInt(GameObject::getId).toArray(),
+                        trackedIndex);
+            }
+        }
+        distanceToEnd = distancesToEnd();
+
+        if (m >= MOVE_INDEX_LIMIT) {
+            throw new IllegalArgumentException("Cannot solve a world with " + m + " items that matter");
+        }
+        for (int i = 0; i < n; i++) {
+            if (targets[i].length >= MOVE_INDEX_LIMIT || npcWants[i].length >= MOVE_INDEX_LIMIT) {
+                throw new IllegalArgumentException("Cannot solve a world with " + targets[i].length + " exits and "
+                        + npcWants[i].length + " NPCs in " + locations.get(i).getName());
+            }
+        }
+
+        posShift = ON_FLOOR + n <= 0xFFFF ? 2 : 1;
+        posBits = 64 >> posShift;
+        posMask = (1L << posBits) - 1;
+        unlockedAt = 1 + ((m + (1 << posShift) - 1) >> posShift);
+        openedAt = unlockedAt + (locked + 63) / 64;
+        width = openedAt + (m + 63) / 64;
+    }
+
+    /**
+     * @param turnLimit the turn limit to solve for, 0 for none (the world's own by default)
+     */
+    public void setTurnLimit(int turnLimit) {
+        this.turnLimit = turnLimit;
+    }
+
+    /**
+     * Searches for the shortest win.
+     *
+     * @return the solution; see {@link Solution#isWinnable()}
+     * @throws IllegalStateException if the path found does not win when played through the engine
+     */
+    public Solution solve() {
+        long start = System.nanoTime();
+        StateSet visited = new StateSet(width);
+        long[] root = new long[width];
+        Integer startIndex = locationIndex.get(world.getStartLocation());
+        if (startIndex == null) {
+            return new Solution(null, 0, 0);
+        }
+        root[0] = startIndex;
+        long rootRef = visited.add(root, 0, -1, 0);
+        if (isEnd[startIndex]) {
+            return new Solution(new CommandBatch(), 1, 0);
+        }
+
+        Layer frontier = new Layer(width);
+        frontier.add(root, 0, rootRef);
+        for (int depth = 0; frontier.size > 0 && (turnLimit <= 0 || depth < turnLimit); depth++) {
+            final int d = depth;
+            final Layer current = frontier;
+            int chunks = (current.size + CHUNK - 1) / CHUNK;
+            List<Layer> next = IntStream.range(0, chunks).parallel()
+                    .mapToObj(c -> expand(current, c * CHUNK, Math.min(current.size, (c + 1) * CHUNK), d, visited))
+                    .toList();
+            for (Layer part : next) {
+                if (part.goalParent >= 0) {
+                    CommandBatch batch = path(visited, part.goalParent, part.goalMove);
+                    verify(batch);
+                    return new Solution(batch, visited.size(), (System.nanoTime() - start) / 1_000_000);
+                }
+            }
+            frontier = Layer.concat(next, width);
+        }
+        return new Solution(null, visited.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Expands part of a layer, adding new states to the visited set and
+     * returning them as part of the next layer.
+     */
+    private Layer expand(Layer layer, int from, int to, int depth, StateSet visited) {
+        Layer out = new Layer(width);
+        long[] next = new long[width];
+        for (int s = from; s < to && out.goalParent < 0; s++) {
+            long[] st = layer.states;
+            int off = s * width;
+            long parent = layer.refs[s];
+            int here = (int) st[off];
+
+            // walk through each exit that can be used
+            for (int c = 0; c < targets[here].length; c++) {
+                int target = targets[here][c];
+                if (target < 0) {
+                    continue;
+                }
+                System.arraycopy(st, off, next, 0, width);
+                int lock = lockIndex[target];
+                if (lock >= 0 && !bit(next, unlockedAt, lock)) {
+                    if (!allHeld(next, needHeld[target]) || !allHeld(next, needUsed[target])) {
+                        continue;
+                    }
+                    for (int t : needUsed[target]) {
+                        setPos(next, t, GONE);
+                    }
+                    next[unlockedAt + (lock >> 6)] |= 1L << lock;
+                }
+                next[0] = target;
+                if (isEnd[target]) {
+                    out.goalParent = parent;
+                    out.goalMove = move(GO, c, 0);
+                    return out;
+                }
+                offer(next, depth + 1, parent, move(GO, c, 0), visited, out);
+            }
+
+            for (int t = 0; t < items.length; t++) {
+                int pos = pos(st, off, t);
+                boolean lyingHere = pos == ON_FLOOR + here
+                        || (pos == AT_START && startKind[t] == IN_LOCATION && startWhere[t] == here);
+                // pick up what is lying here
+                if (lyingHere && pickable[t]) {
+                    System.arraycopy(st, off, next, 0, width);
+                    setPos(next, t, HELD);
+                    offer(next, depth + 1, parent, move(PICK, t, 0), visited, out);
+                }
+                // open a container that is here or carried
+                if (contents[t].length > 0 && (lyingHere || pos == HELD) && !bit(st, off + openedAt, t)) {
+                    System.arraycopy(st, off, next, 0, width);
+                    next[openedAt + (t >> 6)] |= 1L << t;
+                    for (int inner : contents[t]) {
+                        if (pos(next, 0, inner) == AT_START) {
+                            setPos(next, inner, ON_FLOOR + here);
+                        }
+                    }
+                    offer(next, depth + 1, parent, move(EXAMINE, t, 0), visited, out);
+                }
+            }
+
+            // hand an NPC something they want
+            for (int k = 0; k < npcWants[here].length; k++) {
+                for (int t : npcWants[here][k]) {
+                    if (pos(st, off, t) != HELD) {
+                        continue;
+                    }
+                    System.arraycopy(st, off, next, 0, width);
+                    setPos(next, t, GONE);
+                    for (int reward : npcRewards[here][k]) {
+                        // only a reward that is neither carried nor used up (nothing is ever dropped
+                        // here, so one handed out before is one of the two)
+                        int was = pos(next, 0, reward);
+                        if (was != HELD && was != GONE) {
+                            setPos(next, reward, HELD);
+                        }
+                    }
+                    offer(next, depth + 1, parent, move(GIVE, t, k), visited, out);
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Keeps a successor if it is new and can still make it to an end location in time.
+     */
+    private void offer(long[] state, int depth, long parent, int move, StateSet visited, Layer out) {
+        int here = (int) state[0];
+        if (distanceToEnd[here] == Integer.MAX_VALUE) {
+            return;
+        }
+        if (turnLimit > 0 && (depth >= turnLimit || depth + distanceToEnd[here] > turnLimit)) {
+            return;
+        }
+        long ref = visited.add(state, 0, parent, move);
+        if (ref >= 0) {
+            out.add(state, 0, ref);
+        }
+    }
+
+    /**
+     * Rebuilds the commands leading to a win by following parents back to the start.
+     */
+    private CommandBatch path(StateSet visited, long goalParent, int goalMove) {
+        Deque<long[]> steps = new ArrayDeque<>(); // {parent ref, move}
+        steps.push(new long[] {goalParent, goalMove});
+        for (long ref = goalParent; visited.parent(ref) >= 0; ref = visited.parent(ref)) {
+            steps.push(new long[] {visited.parent(ref), visited.move(ref)});
+        }
+        CommandBatch batch = new CommandBatch();
+        for (long[] step : steps) {
+            int here = (int) visited.state(step[0])[0];
+            int move = (int) step[1];
+            int a = (move >>> 14) & 0x3FFF;
+            int b = move & 0x3FFF;
+            Location loc = locations.get(here);
+            switch (move >>> 28) {
+                case GO:
+                    batch.add(Verb.GO, loc.getConnections().get(a).getLabel());
+                    break;
+                case PICK:
+                    batch.add(Verb.PICK, items[a].getName());
+                    break;
+                case EXAMINE:
+                    batch.add(Verb.EXAMINE, items[a].getName());
+                    break;
+                default:
+                    batch.add(Verb.GIVE, items[a].getName(), loc.getCharacters().get(b).getName());
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Plays the commands through the engine and checks they really win.
+     */
+    private void verify(CommandBatch batch) {
+        GameState state = GameState.newGame(template);
+        state.setTurnLimit(turnLimit);
+        byte[] outcomes = new byte[batch.size()];
+        GameEngine engine = new GameEngine(state);
+        engine.setMetrics(null);
+        engine.processBatch(batch, outcomes);
+        if (!state.isWin()) {
+            throw new IllegalStateException("Solver path does not win when played: "
+                    + Arrays.toString(IntStream.range(0, outcomes.length)
+                            .mapToObj(i -> batch.describe(i) + "=" + Outcome.of(outcomes[i])).toArray()));
+        }
+    }
+
+    /**
+     * Walking distance from every location to the nearest end location, ignoring locks.
+     */
+    private int[] distancesToEnd() {
+        int n = locations.size();
+        List<List<Integer>> incoming = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            incoming.add(new ArrayList<>());
+        }
+        for (int i = 0; i < n; i++) {
+            for (int target : targets[i]) {
+                if (target >= 0) {
+                    incoming.get(target).add(i);
+                }
+            }
+        }
+        int[] dist = new int[n];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int i = 0; i < n; i++) {
+            if (isEnd[i]) {
+                dist[i] = 0;
+                queue.add(i);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int at = queue.poll();
+            for (int from : incoming.get(at)) {
+                if (dist[from] == Integer.MAX_VALUE) {
+                    dist[from] = dist[at] + 1;
+                    queue.add(from);
+                }
+            }
+        }
+        return dist;
+    }
+
+    private static int move(int kind, int a, int b) {
+        return (kind << 28) | (a << 14) | b;
+    }
+
+    private int pos(long[] state, int off, int t) {
+        int shift = (t & ((1 << posShift) - 1)) * posBits;
+        return (int) ((state[off + 1 + (t >> posShift)] >>> shift) & posMask);
+    }
+
+    private void setPos(long[] state, int t, int pos) {
+        int word = 1 + (t >> posShift);
+        int shift = (t & ((1 << posShift) - 1)) * posBits;
+        state[word] = (state[word] & ~(posMask << shift)) | (((long) pos & posMask) << shift);
+    }
+
+    private boolean allHeld(long[] state, int[] tracked) {
+        for (int t : tracked) {
+            if (pos(state, 0, t) != HELD) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean bit(long[] state, int at, int i) {
+        return (state[at + (i >> 6)] & (1L << i)) != 0;
+    }
+
+    private static boolean mark(boolean[] wanted, int[] ids) {
+        boolean changed = false;
+        for (int id : ids) {
+            if (id >= 0 && id < wanted.length && !wanted[id]) {
+                wanted[id] = true;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static int[] tracked(int[] ids, int[] trackedIndex) {
+        return Arrays.stream(ids).filter(id -> id >= 0 && id < trackedIndex.length && trackedIndex[id] >= 0)
+                .map(id -> trackedIndex[id]).toArray();
+    }
+
+    /**
+     * The states of one search layer, packed one after another, with the
+     * visited-set reference of each.
+     */
+    private static final class Layer {
+        final int width;
+        long[] states;
+        long[] refs;
+        int size;
+        long goalParent = -1;
+        int goalMove;
+
+        Layer(int width) {
+            this.width = width;
+            this.states = new long[width * 64];
+            this.refs = new long[64];
+        }
+
+        void add(long[] state, int off, long ref) {
+            if (size == refs.length) {
+                refs = Arrays.copyOf(refs, size * 2);
+                states = Arrays.copyOf(states, size * 2 * width);
+            }
+            System.arraycopy(state, off, states, size * width, width);
+            refs[size++] = ref;
+        }
+
+        static Layer concat(List<Layer> parts, int width) {
+            Layer all = new Layer(width);
+            int total = parts.stream().mapToInt(p -> p.size).sum();
+            all.states = new long[Math.max(1, total) * width];
+            all.refs = new long[Math.max(1, total)];
+            for (Layer part : parts) {
+                System.arraycopy(part.states, 0, all.states, all.size * width, part.size * width);
+                System.arraycopy(part.refs, 0, all.refs, all.size, part.size);
+                all.size += part.size;
+            }
+            return all;
+        }
+    }
+
+    /**
+     * Every state reached so far, with the state and move it was reached from.
+     * Split into shards by hash, each with its own lock, so threads expanding a
+     * layer rarely wait for each other. Entries are never moved once added (only
+     * the hash index is rebuilt as a shard grows), so a reference stays valid.
+     */
+    private static final class StateSet {
+        private static final int SHARDS = 64;
+
+        private final int width;
+        private final Shard[] shards = new Shard[SHARDS];
+
+        StateSet(int width) {
+            this.width = width;
+            for (int i = 0; i < SHARDS; i++) {
+                shards[i] = new Shard();
+            }
+        }
+
+        /**
+         * @return a reference to the new entry, or -1 if the state was already there
+         */
+        long add(long[] state, int off, long parent, int move) {
+            long h = 0x9E3779B97F4A7C15L;
+            for (int i = 0; i < width; i++) {
+                h = (h ^ state[off + i]) * 0xBF58476D1CE4E5B9L;
+                h ^= h >>> 29;
+            }
+            int shard = (int) (h & (SHARDS - 1));
+            int entry = shards[shard].add(state, off, parent, move, (int) (h >>> 32), width);
+            return entry < 0 ? -1 : ((long) shard << 32) | entry;
+        }
+
+        long parent(long ref) {
+            return shards[(int) (ref >>> 32)].parents[(int) ref];
+        }
+
+        int move(long ref) {
+            return shards[(int) (ref >>> 32)].moves[(int) ref];
+        }
+
+        long[] state(long ref) {
+            Shard shard = shards[(int) (ref >>> 32)];
+            int entry = (int) ref;
+            return Arrays.copyOfRange(shard.keys, entry * width, (entry + 1) * width);
+        }
+
+        long size() {
+            long total = 0;
+            for (Shard shard : shards) {
+                total += shard.size;
+            }
+            return total;
+        }
+
+        private static final class Shard {
+            long[] keys = new long[0];
+            long[] parents = new long[16];
+            int[] moves = new int[16];
+            int[] hashes = new int[16];
+            int size;
+            // Open-addressed index of entry number + 1, 0 meaning empty
+            int[] table = new int[32];
+
+            synchronized int add(long[] state, int off, long parent, int move, int hash, int width) {
+                int mask = table.length - 1;
+                for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                    int entry = table[slot] - 1;
+                    if (entry < 0) {
+                        break;
+                    }
+                    if (hashes[entry] == hash && Arrays.equals(keys, entry * width, (entry + 1) * width,
+                            state, off, off + width)) {
+                        return -1;
+                    }
+                }
+                if (size == parents.length) {
+                    parents = Arrays.copyOf(parents, size * 2);
+                    moves = Arrays.copyOf(moves, size * 2);
+                    hashes = Arrays.copyOf(hashes, size * 2);
+                }
+                if ((size + 1) * width > keys.length) {
+                    keys = Arrays.copyOf(keys, Math.max(width * 16, keys.length * 2));
+                }
+                System.arraycopy(state, off, keys, size * width, width);
+                parents[size] = parent;
+                moves[size] = move;
+                hashes[size] = hash;
+                size++;
+                if (size * 2 > table.length) {
+                    table = new int[table.length * 2];
+                    for (int e = 0; e < size; e++) {
+                        insert(e);
+                    }
+                } else {
+                    insert(size - 1);
+                }
+                return size - 1;
+            }
+
+            private void insert(int entry) {
+                int mask = table.length - 1;
+                int slot = hashes[entry] & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = entry + 1;
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        String[] worlds = args.length > 0 ? args : new String[] {"/games/midterm_madness.json"};
+        for (String path : worlds) {
+            Solution solution = new Solver(JsonWorldLoader.loadTemplate(path)).solve();
+            if (!solution.isWinnable()) {
+                System.out.printf("%s: NOT winnable (%d states, %d ms)%n",
+                        path, solution.getStatesExplored(), solution.getMillis());
+                continue;
+            }
+            System.out.printf("%s: winnable in %d turns (%d states, %d ms)%n",
+                    path, solution.getTurns(), solution.getStatesExplored(), solution.getMillis());
+            CommandBatch commands = solution.getCommands();
+            for (int i = 0; i < commands.size(); i++) {
+                System.out.println("  " + commands.describe(i));
+            }
+        }
+    }
+}
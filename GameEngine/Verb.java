@@ -0,0 +1,117 @@
+package Main.GameEngine;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The commands the engine understands, with the words a player may use for
+ * each one and the engine call that carries it out. Both
+ * {@link GameEngine#processCommand(String, String...)} and
+ * {@link CommandParser} dispatch through this table, so a verb and its
+ * synonyms are only declared once.
+ * @author Arthur
+ */
+public enum Verb {
+
+    GO("Go where?", 1, (engine, args) -> engine.applyGo(args[0]),
+            "go", "walk", "move", "enter", "go to"),
+    PICK("Pick up what?", 1, (engine, args) -> engine.applyPickUp(args[0]),
+            "pick", "pickup", "pick up", "take", "get", "grab"),
+    DROP("Drop what?", 1, (engine, args) -> engine.applyDrop(args[0]),
+            "drop", "discard", "put down"),
+    EXAMINE("Examine what?", 1, (engine, args) -> engine.applyExamine(args[0]),
+            "examine", "inspect", "look at", "check", "x"),
+    TALK("Talk to whom?", 1, (engine, args) -> engine.applyTalk(args[0]),
+            "talk", "talk to", "speak", "speak to", "speak with", "chat with"),
+    GIVE("Give what to whom?", 2, (engine, args) -> engine.applyGive(args[0], args[1]),
+            "give", "hand", "offer"),
+    USE("Use what?", 1, (engine, args) -> engine.applyUse(args[0], args.length > 1 ? args[1] : null),
+            "use", "apply"),
+    INVENTORY(null, 0, (engine, args) -> engine.applyInventory(),
+            "inventory", "inv", "i");
+
+    /**
+     * Runs a verb against an engine.
+     */
+    @FunctionalInterface
+    interface Handler {
+        Outcome run(GameEngine engine, String[] args);
+    }
+
+    // Every word (or words, separated by one space) that names a verb
+    private static final Map<String, Verb> BY_WORD = new HashMap<>();
+
+    static {
+        for (Verb verb : values()) {
+            for (String word : verb.words) {
+                BY_WORD.put(word, verb);
+            }
+        }
+    }
+
+    private final String missingArgs;
+    private final int minArgs;
+    private final Handler handler;
+    private final String[] words;
+
+    Verb(String missingArgs, int minArgs, Handler handler, String... words) {
+        this.missingArgs = missingArgs;
+        this.minArgs = minArgs;
+        this.handler = handler;
+        this.words = words;
+    }
+
+    /**
+     * Looks up the verb for a word, ignoring case.
+     *
+     * @param word a verb or one of its synonyms, multi-word ones separated by a space
+     * @return the verb, or {@code null} if the word is not a verb
+     */
+    public static Verb of(String word) {
+        return word == null ? null : BY_WORD.get(word.trim().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return every word that names this verb, the first one being its usual name
+     */
+    public String[] getWords() {
+        return words.clone();
+    }
+
+    /**
+     * @return what to ask for when this verb is given too few arguments
+     */
+    String getMissingArgs() {
+        return missingArgs;
+    }
+
+    /**
+     * Runs this verb without building a message, or records that arguments
+     * are missing if too few were given. Timed into the engine's
+     * {@link CommandMetrics}, if it has any.
+     *
+     * @param engine the engine to run against
+     * @param args   the verb's arguments
+     * @return what the command did
+     */
+    Outcome apply(GameEngine engine, String... args) {
+        CommandMetrics metrics = engine.getMetrics();
+        long start = metrics == null ? 0 : System.nanoTime();
+        Outcome outcome;
+        if (engine.getState().isGameOver()) {
+            outcome = engine.applyGameOver();
+        } else if (args.length < minArgs) {
+            outcome = engine.applyMissingArgs(this);
+        } else {
+            outcome = handler.run(engine, args);
+            if (GameState.CHECK_HASH) {
+                engine.getState().verifyHash(this + " " + String.join(" ", args));
+            }
+        }
+        if (metrics != null) {
+            metrics.recordVerb(this, outcome, System.nanoTime() - start);
+        }
+        return outcome;
+    }
+}
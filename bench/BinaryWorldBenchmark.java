@@ -0,0 +1,86 @@
+package Main.bench;
+
+import Main.GameEngine.GameEngine;
+import Main.GameEngine.GameState;
+import Main.data.BinaryWorldCompiler;
+import Main.data.BinaryWorldLoader;
+import Main.data.JsonWorldLoader;
+import Main.model.Location;
+import Main.model.WorldTemplate;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares starting a game from world JSON with starting it from a compiled,
+ * memory-mapped binary world, up to the end of the first move. Every
+ * measurement is a single cold start in a fresh JVM: the setup only writes the
+ * files, from a world built in memory, so neither loader has run before.
+ * Run with: java -jar bench/target/benchmarks.jar BinaryWorldBenchmark -prof gc
+ * @author Makaato
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 5, jvmArgsAppend = "-Xmx4g")
+public class BinaryWorldBenchmark {
+
+    /**
+     * A ring world written both as JSON and compiled.
+     */
+    @State(Scope.Benchmark)
+    public static class WorldFiles {
+        @Param({"200000"})
+        public int locations;
+
+        Path json;
+        Path bin;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            json = Files.createTempFile("world", ".json");
+            bin = Files.createTempFile("world", ".bin");
+            SyntheticWorlds.writeRingJson(json, locations, 3);
+            BinaryWorldCompiler.compile(SyntheticWorlds.ring(locations, 3), bin);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(json);
+            Files.deleteIfExists(bin);
+        }
+    }
+
+    /** Load the JSON world and make the first move. */
+    @Benchmark
+    public Location startFromJson(WorldFiles files) {
+        return firstMove(new WorldTemplate(JsonWorldLoader.loadWorld(files.json, null)));
+    }
+
+    /** Map the compiled world and make the first move. */
+    @Benchmark
+    public Location startFromBinary(WorldFiles files) throws IOException {
+        return firstMove(BinaryWorldLoader.loadTemplate(files.bin));
+    }
+
+    private static Location firstMove(WorldTemplate template) {
+        GameEngine engine = new GameEngine(GameState.newGame(template));
+        engine.go("Next");
+        return engine.getState().getCurrentLocation();
+    }
+}
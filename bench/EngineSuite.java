@@ -0,0 +1,338 @@
+package Main.bench;
+
+import Main.GameEngine.CommandResult;
+import Main.GameEngine.GameEngine;
+import Main.GameEngine.GameState;
+import Main.data.JsonWorldLoader;
+import Main.model.GameObject;
+import Main.model.Inventory;
+import Main.model.ItemRegistry;
+import Main.model.Location;
+import Main.model.RuleBook;
+import Main.model.TimerWheel;
+import Main.model.Timetable;
+import Main.model.World;
+import Main.model.WorldTemplate;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The JMH benchmark suite for the hot paths of the engine, model and loader,
+ * on generated worlds of 10 up to 1,000,000 objects ({@code -p objects=...}):
+ * <ul>
+ *   <li>{@link GameEngine#processCommand(String, String...)} for every verb,</li>
+ *   <li>"go" into locked locations, both let in and turned away,</li>
+ *   <li>"give" to NPCs that hand over a reward from elsewhere in the world,</li>
+ *   <li>"use" firing a use rule, with one rule per junk item of the world,</li>
+ *   <li>a timing wheel with one timed event per object,</li>
+ *   <li>{@link Inventory#findItem(String)} and {@link Inventory#invItemNames()}
+ *       with every object of the world carried,</li>
+ *   <li>a full {@link JsonWorldLoader#loadWorld(Path, JsonWorldLoader.ProgressListener)}.</li>
+ * </ul>
+ * Build with {@code mvn -f bench/pom.xml package}, then run with
+ * {@code java -jar bench/target/benchmarks.jar EngineSuite -prof gc -rf json -rff engine-bench.json}
+ * for allocation and GC figures and a JSON report.
+ * @author Arthur
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class EngineSuite {
+
+    private static final int OBJECTS_PER_ROOM = 10;
+
+    /**
+     * The world size every state is built for.
+     */
+    @State(Scope.Thread)
+    public abstract static class Sized {
+        @Param({"10", "1000", "100000", "1000000"})
+        public int objects;
+
+        int rooms() {
+            return Math.max(2, objects / OBJECTS_PER_ROOM);
+        }
+
+        int perRoom() {
+            return Math.max(1, objects / rooms());
+        }
+    }
+
+    /**
+     * A game on a ring world.
+     */
+    @State(Scope.Thread)
+    public static class Ring extends Sized {
+        GameEngine engine;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            engine = new GameEngine(GameState.newGame(new WorldTemplate(SyntheticWorlds.ring(rooms(), perRoom()))));
+        }
+    }
+
+    /**
+     * A game on a {@link SyntheticWorlds#village(int, int)} world, carrying the
+     * pass, with the commands' arguments named up front so only the engine is
+     * measured. Each iteration starts a new game.
+     */
+    @State(Scope.Thread)
+    public static class Village extends Sized {
+        WorldTemplate template;
+        String[] gems;
+        String[] keepers;
+        GameEngine engine;
+        int room;
+
+        @Setup(Level.Trial)
+        public void setUpWorld() {
+            int rooms = rooms();
+            // the village has a gem, a keeper and a coin per room besides the junk
+            template = new WorldTemplate(SyntheticWorlds.village(rooms, Math.max(1, perRoom() - 3)));
+            gems = new String[rooms];
+            keepers = new String[rooms];
+            for (int i = 0; i < rooms; i++) {
+                gems[i] = "Gem " + i;
+                keepers[i] = "Keeper " + i;
+            }
+        }
+
+        @Setup(Level.Iteration)
+        public void setUpGame() {
+            newGame();
+        }
+
+        void newGame() {
+            engine = new GameEngine(GameState.newGame(template));
+            room = 0;
+            if (carriesPass()) {
+                engine.processCommand("pick", "Pass");
+            }
+        }
+
+        boolean carriesPass() {
+            return true;
+        }
+
+        // Called after each move to the next room: a lap round the village starts a new game
+        void moved() {
+            room = (room + 1) % gems.length;
+            if (room == 0) {
+                newGame();
+            }
+        }
+    }
+
+    /**
+     * A village game without the pass.
+     */
+    @State(Scope.Thread)
+    public static class Stranger extends Village {
+        @Override
+        boolean carriesPass() {
+            return false;
+        }
+    }
+
+    /**
+     * A timing wheel with one event per object, each due somewhere in the next
+     * 2^20 turns and put back as far ahead again when it fires, so the number
+     * waiting stays the same from turn to turn.
+     */
+    @State(Scope.Thread)
+    public static class Timers extends Sized {
+        private static final int SPREAD = 1 << 20;
+        TimerWheel wheel;
+        int turn;
+        private long seed = 0x9E3779B97F4A7C15L;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            RuleBook.Effect nothing = new RuleBook.Effect(null, false, false, false, null, null);
+            List<Timetable.Event> list = new ArrayList<>(objects);
+            for (int i = 0; i < objects; i++) {
+                list.add(new Timetable.Event(null, 1 + nextInt(SPREAD), 0, 0, nothing, List.of(), List.of(),
+                        new int[0], new int[0]));
+            }
+            wheel = new TimerWheel(new Timetable(list), 0);
+        }
+
+        int nextInt(int bound) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            return (int) ((seed >>> 33) % bound);
+        }
+    }
+
+    /**
+     * An inventory holding every object of a ring world, as the player would
+     * after picking them all up.
+     */
+    @State(Scope.Thread)
+    public static class Carried extends Sized {
+        Inventory inventory;
+        String[] names;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            World world = SyntheticWorlds.ring(rooms(), perRoom());
+            GameState state = GameState.newGame(new WorldTemplate(world));
+            inventory = state.getInventory();
+            ItemRegistry registry = state.getOverlay().getRegistry();
+            for (Location loc : world.getLocations()) {
+                for (GameObject obj : new ArrayList<>(state.getOverlay().getObjects(loc))) {
+                    registry.take(obj);
+                    inventory.addItem(obj);
+                }
+            }
+            // look names up in a scattered order, but a fixed one so runs compare
+            List<GameObject> items = inventory.listItems();
+            names = new String[Math.min(items.size(), 4096)];
+            long seed = 0x9E3779B97F4A7C15L;
+            for (int i = 0; i < names.length; i++) {
+                seed = seed * 6364136223846793005L + 1442695040888963407L;
+                names[i] = items.get((int) ((seed >>> 33) % items.size())).getName();
+            }
+        }
+    }
+
+    /**
+     * A ring world written to a JSON file.
+     */
+    @State(Scope.Thread)
+    public static class WorldFile extends Sized {
+        Path file;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            file = Files.createTempFile("world", ".json");
+            SyntheticWorlds.writeRingJson(file, rooms(), perRoom());
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /** Go to the next room of a ring. */
+    @Benchmark
+    public CommandResult go(Ring ring) {
+        return ring.engine.processCommand("go", "Next");
+    }
+
+    /** Go into the next locked room carrying the pass (a new game every lap). */
+    @Benchmark
+    public CommandResult goLocked(Village village) {
+        CommandResult result = village.engine.processCommand("go", "Next");
+        village.moved();
+        return result;
+    }
+
+    /** Try a locked room without the pass. */
+    @Benchmark
+    public CommandResult goLockedDenied(Stranger village) {
+        return village.engine.processCommand("go", "Next");
+    }
+
+    /** Pick up an item, then drop it again. */
+    @Benchmark
+    public CommandResult pickDrop(Village village) {
+        village.engine.processCommand("pick", "Item 0-0");
+        return village.engine.processCommand("drop", "Item 0-0");
+    }
+
+    /** List what is carried. */
+    @Benchmark
+    public CommandResult inventory(Village village) {
+        return village.engine.processCommand("inventory");
+    }
+
+    /** Examine an item in the room. */
+    @Benchmark
+    public CommandResult examine(Village village) {
+        return village.engine.processCommand("examine", "Item 0-0");
+    }
+
+    /** Talk to the NPC in the room. */
+    @Benchmark
+    public CommandResult talk(Village village) {
+        return village.engine.processCommand("talk", "Keeper 0");
+    }
+
+    /** Use the pass on an item in the room. */
+    @Benchmark
+    public CommandResult use(Village village) {
+        return village.engine.processCommand("use", "Pass", "Item 0-0");
+    }
+
+    /** Use an item on the gem in the room, firing one of the world's use rules (one per junk item). */
+    @Benchmark
+    public CommandResult useRule(Village village) {
+        return village.engine.processCommand("use", "Item 0-0", "Gem 0");
+    }
+
+    /** Pick up the room's gem, give it to its keeper for a coin, go on (a new game every lap). */
+    @Benchmark
+    public CommandResult giveReward(Village village) {
+        int room = village.room;
+        village.engine.processCommand("pick", village.gems[room]);
+        CommandResult result = village.engine.processCommand("give", village.gems[room], village.keepers[room]);
+        village.engine.processCommand("go", "Next");
+        village.moved();
+        return result;
+    }
+
+    /** Move the timing wheel on a turn, rescheduling whatever fired up to 2^20 turns ahead. */
+    @Benchmark
+    public long timerTurn(Timers timers) {
+        TimerWheel wheel = timers.wheel;
+        int turn = ++timers.turn;
+        wheel.advance(turn);
+        long sink = 0;
+        for (int event = wheel.next(); event >= 0; event = wheel.next()) {
+            wheel.schedule(event, turn + 1 + timers.nextInt(Timers.SPREAD));
+            sink += event;
+        }
+        return sink;
+    }
+
+    /** Find a carried item by name, all objects carried. */
+    @Benchmark
+    public GameObject inventoryFindItem(Carried carried) {
+        String name = carried.names[carried.next];
+        carried.next = (carried.next + 1) % carried.names.length;
+        return carried.inventory.findItem(name);
+    }
+
+    /** List the names of all carried objects. */
+    @Benchmark
+    public List<String> inventoryInvItemNames(Carried carried) {
+        return carried.inventory.invItemNames();
+    }
+
+    /** Stream a ring world from a JSON file and link it. */
+    @Benchmark
+    public World loadWorld(WorldFile world) throws IOException {
+        return JsonWorldLoader.loadWorld(world.file, null);
+    }
+}
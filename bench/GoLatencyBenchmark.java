@@ -0,0 +1,55 @@
+package Main.bench;
+
+import Main.GameEngine.CommandResult;
+import Main.GameEngine.GameEngine;
+import Main.model.Inventory;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the average cost of a "go" command as the world grows.
+ * With the hashed location index the numbers should stay flat from
+ * 10 to 100k locations.
+ * Run with: java -jar bench/target/benchmarks.jar GoLatencyBenchmark
+ * @author Makaato
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GoLatencyBenchmark {
+
+    /**
+     * An engine on an empty ring of locations.
+     */
+    @State(Scope.Thread)
+    public static class Ring {
+        @Param({"10", "100", "1000", "10000", "100000"})
+        public int locations;
+
+        GameEngine engine;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            engine = new GameEngine(SyntheticWorlds.ring(locations, 0), new Inventory());
+        }
+    }
+
+    /** Go to the next location. */
+    @Benchmark
+    public CommandResult go(Ring ring) {
+        return ring.engine.go("Next");
+    }
+}
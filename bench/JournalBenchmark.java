@@ -0,0 +1,112 @@
+package Main.bench;
+
+import Main.GameEngine.CommandResult;
+import Main.GameEngine.GameSession;
+import Main.GameEngine.GameSessionManager;
+import Main.GameEngine.Journal;
+import Main.data.JsonWorldLoader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Plays the winning route of the shipped game in many journaled sessions at
+ * once, one per benchmark thread ({@code -t}), each player waiting for every
+ * command to be synced before sending the next. Samples how long a command
+ * takes to become durable, so the percentiles show how commits share syncs.
+ * Run with: java -jar bench/target/benchmarks.jar JournalBenchmark -t 256 -p lingerMicros=0,1000
+ * @author Arthur
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(64)
+public class JournalBenchmark {
+
+    private static final String[] ROUTE = {
+        "take neverclear alcohol", "go living room", "give neverclear alcohol to pauline",
+        "go kitchen", "take cat food", "go upstairs bedroom", "take bobby pin", "take tylenol",
+        "go washroom", "take phone", "go upstairs bedroom", "go kitchen",
+        "give tylenol to dutch van der linde", "go basement",
+        "give cat food to fluffy princess sunshine sparkles", "go kitchen", "examine car keys",
+        "go living room", "go outside"};
+
+    /**
+     * A journal in a temporary file and a session manager recording into it.
+     */
+    @State(Scope.Benchmark)
+    public static class Server {
+        @Param({"1000"})
+        public int lingerMicros;
+
+        Path file;
+        Journal journal;
+        GameSessionManager manager;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            file = Files.createTempFile("games", ".journal");
+            Files.deleteIfExists(file);
+            journal = Journal.open(file, 4 << 20, Duration.ofNanos(1000L * lingerMicros));
+            manager = GameSessionManager.start(JsonWorldLoader.loadTemplate("/games/midterm_madness.json"),
+                    1 << 16, Duration.ofMinutes(1), journal);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            manager.close();
+            journal.close();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * One player's game, started over once the route is done.
+     */
+    @State(Scope.Thread)
+    public static class Player {
+        GameSessionManager manager;
+        GameSession session;
+        int step;
+
+        @Setup(Level.Trial)
+        public void setUp(Server server) {
+            manager = server.manager;
+            session = manager.create();
+        }
+
+        String nextLine() {
+            if (step == ROUTE.length) {
+                manager.close(session.getId());
+                session = manager.create();
+                step = 0;
+            }
+            return ROUTE[step++];
+        }
+    }
+
+    /** Send the next command of the route and wait until it is synced. */
+    @Benchmark
+    public CommandResult durableCommand(Player player) {
+        String line = player.nextLine();
+        return player.session.call(engine -> engine.processInput(line)).join();
+    }
+}
@@ -0,0 +1,82 @@
+package Main.bench;
+
+import Main.data.JsonWorldLoader;
+import Main.data.WorldLinker;
+import Main.model.World;
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the streaming {@link JsonWorldLoader} with the old approach of
+ * handing the whole file to {@code gson.fromJson(reader, World.class)}, on a
+ * generated ring world JSON file. Run with {@code -prof gc} to compare how much
+ * each allocates.
+ * Run with: java -jar bench/target/benchmarks.jar LoaderBenchmark -prof gc
+ * @author Makaato
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LoaderBenchmark {
+
+    /**
+     * A ring world written to a JSON file.
+     */
+    @State(Scope.Thread)
+    public static class WorldFile {
+        @Param({"20000", "200000"})
+        public int locations;
+
+        @Param({"3"})
+        public int itemsPerRoom;
+
+        Path file;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            file = Files.createTempFile("world", ".json");
+            SyntheticWorlds.writeRingJson(file, locations, itemsPerRoom);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /** Read the whole file reflectively, then link it. */
+    @Benchmark
+    public World reflective(WorldFile world) throws IOException {
+        try (Reader in = Files.newBufferedReader(world.file, StandardCharsets.UTF_8)) {
+            World loaded = new Gson().fromJson(in, World.class);
+            WorldLinker.link(loaded);
+            return loaded;
+        }
+    }
+
+    /** Stream the file one location at a time, then link it. */
+    @Benchmark
+    public World streaming(WorldFile world) {
+        return JsonWorldLoader.loadWorld(world.file, null);
+    }
+}
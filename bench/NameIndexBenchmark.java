@@ -0,0 +1,109 @@
+package Main.bench;
+
+import Main.model.NameIndex;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long {@link NameIndex} takes to resolve a misspelled name as
+ * the number of names grows. Names are made-up two and three word phrases
+ * ("Velo Karun Tisam"); each query is a known name with one or two random typos.
+ * Run with: java -jar bench/target/benchmarks.jar NameIndexBenchmark
+ * @author Makaato
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NameIndexBenchmark {
+
+    private static final int QUERIES = 20_000;
+    private static final String[] SYLLABLES = {
+        "ka", "ro", "ve", "lo", "tin", "sa", "mer", "du", "pa", "li", "nor", "zu",
+        "an", "bel", "cy", "fo", "gra", "hi", "jen", "qua", "sto", "wy", "xe", "yo",
+    };
+
+    /**
+     * An index of made-up names and misspelled queries for them, the same for
+     * every run of a size.
+     */
+    @State(Scope.Thread)
+    public static class Names {
+        @Param({"1000", "10000", "100000"})
+        public int size;
+
+        NameIndex index;
+        String[] queries;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Random random = new Random(size);
+            List<String> names = new ArrayList<>(size);
+            index = new NameIndex();
+            while (index.size() < size) {
+                String name = phrase(random);
+                if (!index.contains(name)) {
+                    index.add(name);
+                    names.add(name);
+                }
+            }
+            queries = new String[QUERIES];
+            for (int i = 0; i < QUERIES; i++) {
+                queries[i] = typo(names.get(random.nextInt(names.size())), random, 1 + random.nextInt(2));
+            }
+        }
+    }
+
+    /** Resolve the next misspelled name. */
+    @Benchmark
+    public NameIndex.Match resolve(Names names) {
+        String query = names.queries[names.next];
+        names.next = (names.next + 1) % names.queries.length;
+        return names.index.resolve(query, name -> true);
+    }
+
+    private static String phrase(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int words = 2 + random.nextInt(2);
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                sb.append(' ');
+            }
+            int syllables = 2 + random.nextInt(2);
+            for (int s = 0; s < syllables; s++) {
+                String syl = SYLLABLES[random.nextInt(SYLLABLES.length)];
+                sb.append(s == 0 ? Character.toUpperCase(syl.charAt(0)) + syl.substring(1) : syl);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String typo(String name, Random random, int edits) {
+        StringBuilder sb = new StringBuilder(name.toLowerCase());
+        for (int e = 0; e < edits; e++) {
+            int at = random.nextInt(sb.length());
+            switch (random.nextInt(3)) {
+                case 0: sb.deleteCharAt(at); break;
+                case 1: sb.insert(at, (char) ('a' + random.nextInt(26))); break;
+                default: sb.setCharAt(at, (char) ('a' + random.nextInt(26)));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,106 @@
+package Main.bench;
+
+import Main.GameEngine.CommandParser;
+import Main.GameEngine.CommandResult;
+import Main.GameEngine.GameEngine;
+import Main.data.JsonWorldLoader;
+import Main.model.Inventory;
+import Main.model.World;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how many free-text commands per second {@link CommandParser} handles,
+ * parsing only and parsing and running them through the engine.
+ * Runs against the shipped world and against a generated world with tens of
+ * thousands of names, to show the name trie does not slow down as the world grows.
+ * Run with: java -jar bench/target/benchmarks.jar ParserBenchmark
+ * @author Arthur
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    private static final String[] MIDTERM_LINES = {
+        "give tylenol to dutch van der linde",
+        "pick up the car keys",
+        "grab bobby pin",
+        "look at the neverclear alcohol",
+        "talk to Fluffy Princess Sunshine Sparkles",
+        "use scissors on the cat food",
+        "go to the upstairs bedroom",
+        "examine something that is not there",
+        "dance wildly",
+        "inventory",
+    };
+
+    private static final String[] RING_LINES = {
+        "go next",
+        "take item 9999-2",
+        "examine the item 5000-1",
+        "use item 1-1 with item 2-2",
+        "go back",
+        "look at nothing in particular",
+    };
+
+    /**
+     * A parser and an engine on one of the worlds, and the lines typed into it.
+     */
+    @State(Scope.Thread)
+    public static class Typed {
+        @Param({"midterm_madness", "ring_10000x3"})
+        public String world;
+
+        CommandParser parser;
+        GameEngine engine;
+        String[] lines;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            World loaded;
+            if (world.equals("midterm_madness")) {
+                loaded = JsonWorldLoader.loadWorld("/games/midterm_madness.json");
+                loaded.setTurnLimit(0); // keep the game going for the whole run
+                lines = MIDTERM_LINES;
+            } else {
+                loaded = SyntheticWorlds.ring(10_000, 3);
+                lines = RING_LINES;
+            }
+            parser = CommandParser.forWorld(loaded);
+            engine = new GameEngine(loaded, new Inventory());
+        }
+
+        String nextLine() {
+            String line = lines[next];
+            next = (next + 1) % lines.length;
+            return line;
+        }
+    }
+
+    /** Parse a line without running it. */
+    @Benchmark
+    public CommandParser.Parsed parse(Typed typed) {
+        return typed.parser.parse(typed.nextLine());
+    }
+
+    /** Parse a line and run it through the engine. */
+    @Benchmark
+    public CommandResult parseAndRun(Typed typed) {
+        return typed.engine.processInput(typed.nextLine());
+    }
+}
@@ -0,0 +1,94 @@
+package Main.bench;
+
+import Main.GameEngine.CommandBatch;
+import Main.GameEngine.GameEngine;
+import Main.GameEngine.GameState;
+import Main.GameEngine.Replay;
+import Main.data.JsonWorldLoader;
+import Main.model.WorldTemplate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Plays the winning route of the shipped game from the start, one command at
+ * a time through {@link GameEngine#processInput(String)}, as a
+ * {@link CommandBatch} through {@link GameEngine#processBatch(CommandBatch, byte[])},
+ * and checked against a recording with {@link Replay}. Times are per playthrough.
+ * Run with: java -jar bench/target/benchmarks.jar ReplayBenchmark
+ * @author Arthur
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplayBenchmark {
+
+    private static final List<String> ROUTE = Arrays.asList(
+        "take neverclear alcohol", "go living room", "give neverclear alcohol to pauline",
+        "go kitchen", "take cat food", "go upstairs bedroom", "take bobby pin", "take tylenol",
+        "go washroom", "take phone", "go upstairs bedroom", "go kitchen",
+        "give tylenol to dutch van der linde", "go basement",
+        "give cat food to fluffy princess sunshine sparkles", "go kitchen", "examine car keys",
+        "go living room", "go outside");
+
+    /**
+     * The shipped world, its winning route as a batch and a recording of it.
+     */
+    @State(Scope.Thread)
+    public static class Route {
+        WorldTemplate template;
+        CommandBatch batch;
+        Replay replay;
+        byte[] recording;
+        byte[] outcomes;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            template = JsonWorldLoader.loadTemplate("/games/midterm_madness.json");
+            batch = CommandBatch.parse(template.getWorld(), ROUTE);
+            replay = new Replay(template);
+            recording = replay.record(batch);
+            outcomes = new byte[batch.size()];
+        }
+    }
+
+    /** Type the route in one line at a time. */
+    @Benchmark
+    public void processInput(Route route, Blackhole bh) {
+        GameEngine engine = new GameEngine(GameState.newGame(route.template));
+        for (String line : ROUTE) {
+            bh.consume(engine.processInput(line));
+        }
+    }
+
+    /** Run the route as one batch. */
+    @Benchmark
+    public GameState processBatch(Route route) {
+        GameEngine engine = new GameEngine(GameState.newGame(route.template));
+        return engine.processBatch(route.batch, route.outcomes);
+    }
+
+    /** Replay the route and compare every step with the recording. */
+    @Benchmark
+    public Replay.Mismatch replayAndVerify(Route route) {
+        Replay.Mismatch mismatch = route.replay.verify(route.batch, route.recording);
+        if (mismatch != null) {
+            throw new IllegalStateException("Replay differs at " + mismatch + ": " + mismatch.getMessage());
+        }
+        return mismatch;
+    }
+}
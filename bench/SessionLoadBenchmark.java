@@ -0,0 +1,100 @@
+package Main.bench;
+
+import Main.GameEngine.GameSession;
+import Main.GameEngine.GameSessionManager;
+import Main.data.JsonWorldLoader;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Opens 10k concurrent sessions on a {@link GameSessionManager} and plays a
+ * short scripted route in every one of them at the same time, each session
+ * sending its next command once the previous one completes. Also times
+ * creating and closing a session while the others are open.
+ * Run with: java -jar bench/target/benchmarks.jar SessionLoadBenchmark
+ * @author Arthur
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionLoadBenchmark {
+
+    private static final String[][] ROUTE = {
+        {"pick", "Neverclear Alcohol"}, {"go", "Living Room"}, {"give", "Neverclear Alcohol", "Pauline"},
+        {"go", "Kitchen"}, {"pick", "Cat Food"}, {"go", "Basement"}, {"talk", "Fluffy Princess Sunshine Sparkles"},
+        {"go", "Kitchen"}, {"go", "Living Room"}, {"go", "Bedroom"}
+    };
+
+    /**
+     * A manager with the sessions open, and room for one more.
+     */
+    @State(Scope.Thread)
+    public static class Sessions {
+        @Param({"10000"})
+        public int count;
+
+        GameSessionManager manager;
+        GameSession[] sessions;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            manager = GameSessionManager.start(JsonWorldLoader.loadTemplate("/games/midterm_madness.json"),
+                    count + 1, Duration.ofMinutes(5));
+            sessions = new GameSession[count];
+            for (int i = 0; i < count; i++) {
+                sessions[i] = manager.create();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            manager.close();
+        }
+    }
+
+    /** Play the route in every session at once (it walks back to the bedroom, so rounds repeat). */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void playRoute(Sessions sessions) {
+        CompletableFuture<?>[] players = new CompletableFuture<?>[sessions.sessions.length];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = play(sessions.sessions[i], 0);
+        }
+        CompletableFuture.allOf(players).join();
+    }
+
+    /** Start a session and close it again. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public boolean createAndClose(Sessions sessions) {
+        return sessions.manager.close(sessions.manager.create().getId());
+    }
+
+    /**
+     * Submits the route one command at a time, each after the previous one completes.
+     */
+    private static CompletableFuture<Void> play(GameSession session, int step) {
+        if (step == ROUTE.length) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String[] cmd = ROUTE[step];
+        return session.submit(cmd[0], Arrays.copyOfRange(cmd, 1, cmd.length))
+                .thenCompose(r -> play(session, step + 1));
+    }
+}
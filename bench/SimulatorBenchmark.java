@@ -0,0 +1,81 @@
+package Main.bench;
+
+import Main.GameEngine.Simulator;
+import Main.data.JsonWorldLoader;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how {@link Simulator} throughput grows with the number of threads
+ * ({@code -p threads=...}), and checks that every thread count gets exactly
+ * the same results as one thread (each playthrough has its own seed).
+ * Run with: java -jar bench/target/benchmarks.jar SimulatorBenchmark
+ * @author Arthur
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimulatorBenchmark {
+
+    /**
+     * A simulator on the shipped world, a pool of the given size, and the
+     * results one thread gets.
+     */
+    @State(Scope.Thread)
+    public static class Pool {
+        @Param({"1", "2", "4", "8"})
+        public int threads;
+
+        @Param({"20000"})
+        public long playthroughs;
+
+        Simulator simulator;
+        ForkJoinPool pool;
+        Simulator.Report expected;
+        Simulator.Report last;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            simulator = new Simulator(JsonWorldLoader.loadTemplate("/games/midterm_madness.json"));
+            pool = new ForkJoinPool(threads);
+            ForkJoinPool single = new ForkJoinPool(1);
+            try {
+                expected = simulator.run(playthroughs, single);
+            } finally {
+                single.shutdown();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.shutdown();
+            if (last != null && (last.getWins() != expected.getWins()
+                    || !Arrays.equals(last.getTurnsToWin(), expected.getTurnsToWin()))) {
+                throw new IllegalStateException(threads + " threads gave different results than 1");
+            }
+        }
+    }
+
+    /** Play a batch of games on the pool. */
+    @Benchmark
+    public Simulator.Report run(Pool pool) {
+        pool.last = pool.simulator.run(pool.playthroughs, pool.pool);
+        return pool.last;
+    }
+}
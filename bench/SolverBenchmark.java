@@ -0,0 +1,63 @@
+package Main.bench;
+
+import Main.GameEngine.Solver;
+import Main.data.JsonWorldLoader;
+import Main.model.WorldTemplate;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times {@link Solver} on the shipped world and on generated corridors of
+ * locked rooms (see {@link SyntheticWorlds#corridor(int, int)}) with hundreds
+ * of items, most of them junk.
+ * Run with: java -jar bench/target/benchmarks.jar SolverBenchmark
+ * @author Arthur
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class SolverBenchmark {
+
+    private static final int JUNK_PER_ROOM = 3;
+
+    /**
+     * The world to solve: 0 rooms is the shipped world, otherwise a corridor that long.
+     */
+    @State(Scope.Thread)
+    public static class Puzzle {
+        @Param({"0", "10", "30", "100", "300"})
+        public int rooms;
+
+        WorldTemplate template;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            template = rooms == 0
+                    ? JsonWorldLoader.loadTemplate("/games/midterm_madness.json")
+                    : new WorldTemplate(SyntheticWorlds.corridor(rooms, JUNK_PER_ROOM));
+        }
+    }
+
+    /** Search for the shortest win. */
+    @Benchmark
+    public Solver.Solution solve(Puzzle puzzle) {
+        Solver.Solution solution = new Solver(puzzle.template).solve();
+        if (!solution.isWinnable()) {
+            throw new IllegalStateException("No win found");
+        }
+        return solution;
+    }
+}
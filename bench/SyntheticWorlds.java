@@ -0,0 +1,273 @@
+package Main.bench;
+
+import Main.data.WorldLinker;
+import Main.model.Connection;
+import Main.model.GameObject;
+import Main.model.Location;
+import Main.model.NPC;
+import Main.model.UseRule;
+import Main.model.World;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds generated worlds of a given size for the benchmarks.
+ * Rooms are laid out in a ring ("Room 0" .. "Room n-1"), each one linked
+ * to the next and previous room, with a few items per room.
+ * @author Makaato
+ */
+public final class SyntheticWorlds {
+
+    private SyntheticWorlds() {}
+
+    /**
+     * Creates a ring world with the given number of locations.
+     *
+     * @param locationCount number of rooms (at least 2)
+     * @param itemsPerRoom  number of pickable items placed in each room
+     * @return the generated world, already linked
+     */
+    public static World ring(int locationCount, int itemsPerRoom) {
+        World world = new World();
+        List<Location> locations = new ArrayList<>(locationCount);
+        for (int i = 0; i < locationCount; i++) {
+            Location loc = new Location();
+            loc.setName(roomName(i));
+            loc.setDescription("Generated room " + i + ".");
+            loc.setAccessible(true);
+            loc.getConnections().add(connection("Next", roomName((i + 1) % locationCount)));
+            loc.getConnections().add(connection("Back", roomName((i - 1 + locationCount) % locationCount)));
+            for (int j = 0; j < itemsPerRoom; j++) {
+                GameObject item = new GameObject();
+                item.setName("Item " + i + "-" + j);
+                item.setDescription("A generated item.");
+                item.setPickable(true);
+                item.setExaminable(true);
+                loc.addObject(item);
+            }
+            locations.add(loc);
+        }
+        world.setLocations(locations);
+        world.setStartLocation(roomName(0));
+        world.setTurnLimit(0);
+        WorldLinker.link(world);
+        return world;
+    }
+
+    /**
+     * Creates a corridor of locked rooms that has to be solved to reach the exit.
+     * Room i+1 is locked with "Key i", which is used up on the way in. The key is
+     * lying in room i, hidden in "Chest i" there, or handed over by "Keeper i"
+     * in exchange for "Gem i" found one room back. The exit also needs the
+     * "Badge" from room 0. Each room has some junk items that play no part.
+     *
+     * @param roomCount    number of rooms before the exit (at least 1)
+     * @param junkPerRoom  number of useless pickable items in each room
+     * @return the generated world, already linked
+     */
+    public static World corridor(int roomCount, int junkPerRoom) {
+        World world = new World();
+        List<Location> locations = new ArrayList<>(roomCount + 1);
+        List<GameObject> pool = new ArrayList<>();
+        for (int i = 0; i < roomCount; i++) {
+            Location loc = new Location();
+            loc.setName(roomName(i));
+            loc.setDescription("Generated room " + i + ".");
+            loc.setAccessible(i == 0);
+            if (i > 0) {
+                loc.setRequiredItems(new ArrayList<>(List.of("Key " + (i - 1))));
+                loc.getConnections().add(connection("Back", roomName(i - 1)));
+            }
+            loc.getConnections().add(connection("Next", i + 1 < roomCount ? roomName(i + 1) : "Exit"));
+
+            GameObject key = item("Key " + i, true);
+            switch (i % 3) {
+                case 0:
+                    loc.addObject(key);
+                    break;
+                case 1: {
+                    GameObject chest = item("Chest " + i, false);
+                    chest.addObject(key);
+                    loc.addObject(chest);
+                    break;
+                }
+                default: {
+                    pool.add(key);
+                    NPC keeper = new NPC();
+                    keeper.setName("Keeper " + i);
+                    keeper.setDescription("Guards a key.");
+                    keeper.setPhrases(new ArrayList<>(List.of("A gem for a key.")));
+                    keeper.setWantedObjects(new ArrayList<>(List.of("Gem " + i)));
+                    keeper.setGivenItems(new ArrayList<>(List.of("Key " + i)));
+                    loc.setCharacters(new ArrayList<>(List.of(keeper)));
+                    locations.get(i - 1).addObject(item("Gem " + i, true));
+                }
+            }
+            if (i == 0) {
+                loc.addObject(item("Badge", true));
+            }
+            for (int j = 0; j < junkPerRoom; j++) {
+                loc.addObject(item("Junk " + i + "-" + j, true));
+            }
+            locations.add(loc);
+        }
+        Location exit = new Location();
+        exit.setName("Exit");
+        exit.setDescription("The way out.");
+        exit.setAccessible(false);
+        exit.setRequiredItems(new ArrayList<>(List.of("Key " + (roomCount - 1))));
+        exit.setRequiredInv(new ArrayList<>(List.of("Badge")));
+        locations.add(exit);
+
+        world.setLocations(locations);
+        world.setInventoryItems(pool);
+        world.setStartLocation(roomName(0));
+        world.setEndLocations(new ArrayList<>(List.of("Exit")));
+        world.setTurnLimit(0);
+        WorldLinker.link(world);
+        return world;
+    }
+
+    /**
+     * Creates a ring world where every room but the first is locked and can only
+     * be entered while carrying the "Pass" lying in room 0. Room i also has
+     * "Keeper i", who hands over "Coin i" in exchange for the "Gem i" lying in
+     * the same room, and some junk items ("Item i-j"). Using a junk item on the
+     * gem in its room fires a use rule, so the world has one rule per junk item.
+     *
+     * @param locationCount number of rooms (at least 2)
+     * @param junkPerRoom   number of junk items placed in each room
+     * @return the generated world, already linked
+     */
+    public static World village(int locationCount, int junkPerRoom) {
+        World world = new World();
+        List<Location> locations = new ArrayList<>(locationCount);
+        List<GameObject> pool = new ArrayList<>(locationCount);
+        List<UseRule> rules = new ArrayList<>(locationCount * junkPerRoom);
+        for (int i = 0; i < locationCount; i++) {
+            Location loc = new Location();
+            loc.setName(roomName(i));
+            loc.setDescription("Generated room " + i + ".");
+            loc.setAccessible(i == 0);
+            if (i > 0) {
+                loc.setRequiredInv(new ArrayList<>(List.of("Pass")));
+            }
+            loc.getConnections().add(connection("Next", roomName((i + 1) % locationCount)));
+            loc.getConnections().add(connection("Back", roomName((i - 1 + locationCount) % locationCount)));
+            if (i == 0) {
+                loc.addObject(item("Pass", true));
+            }
+            loc.addObject(item("Gem " + i, true));
+            for (int j = 0; j < junkPerRoom; j++) {
+                loc.addObject(item("Item " + i + "-" + j, true));
+                UseRule rule = new UseRule();
+                rule.setObj1("Item " + i + "-" + j);
+                rule.setObj2("Gem " + i);
+                rule.setMessage("The gem glints.");
+                rules.add(rule);
+            }
+            pool.add(item("Coin " + i, true));
+            NPC keeper = new NPC();
+            keeper.setName("Keeper " + i);
+            keeper.setDescription("Trades coins for gems.");
+            keeper.setPhrases(new ArrayList<>(List.of("Got a gem?", "Thanks.")));
+            keeper.setWantedObjects(new ArrayList<>(List.of("Gem " + i)));
+            keeper.setGivenItems(new ArrayList<>(List.of("Coin " + i)));
+            loc.setCharacters(new ArrayList<>(List.of(keeper)));
+            locations.add(loc);
+        }
+        world.setLocations(locations);
+        world.setInventoryItems(pool);
+        world.setUseRules(rules);
+        world.setStartLocation(roomName(0));
+        world.setTurnLimit(0);
+        WorldLinker.link(world);
+        return world;
+    }
+
+    /**
+     * Writes the same ring world as {@link #ring(int, int)} to a JSON file in the
+     * game's world format, streaming it out so huge worlds can be generated.
+     *
+     * @param file          where to write
+     * @param locationCount number of rooms (at least 2)
+     * @param itemsPerRoom  number of pickable items placed in each room
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeRingJson(Path file, int locationCount, int itemsPerRoom) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+             JsonWriter json = new JsonWriter(out)) {
+            json.beginObject();
+            json.name("startLocation").value(roomName(0));
+            json.name("endLocations").beginArray().endArray();
+            json.name("turnLimit").value(0);
+            json.name("inventoryItems").beginArray().endArray();
+            json.name("locations").beginArray();
+            for (int i = 0; i < locationCount; i++) {
+                json.beginObject();
+                json.name("name").value(roomName(i));
+                json.name("description").value("Generated room " + i + ".");
+                json.name("imagePath").value("/images/Bedroom.png");
+                json.name("accessible").value(true);
+                json.name("requiredItems").beginArray().endArray();
+                json.name("requiredInv").beginArray().endArray();
+                json.name("connections").beginArray();
+                writeConnection(json, "Next", roomName((i + 1) % locationCount));
+                writeConnection(json, "Back", roomName((i - 1 + locationCount) % locationCount));
+                json.endArray();
+                json.name("objects").beginArray();
+                for (int j = 0; j < itemsPerRoom; j++) {
+                    json.beginObject();
+                    json.name("name").value("Item " + i + "-" + j);
+                    json.name("description").value("A generated item.");
+                    json.name("imagePath").value("/images/scissors.png");
+                    json.name("attributes").beginArray().endArray();
+                    json.name("containedObjects").beginArray().endArray();
+                    json.name("pickable").value(true);
+                    json.name("selectable").value(true);
+                    json.name("examinable").value(true);
+                    json.endObject();
+                }
+                json.endArray();
+                json.name("characters").beginArray().endArray();
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+        }
+    }
+
+    private static void writeConnection(JsonWriter json, String label, String target) throws IOException {
+        json.beginObject().name("label").value(label).name("targetLocation").value(target).endObject();
+    }
+
+    /**
+     * @param i room number
+     * @return the generated name of room {@code i}
+     */
+    public static String roomName(int i) {
+        return "Room " + i;
+    }
+
+    private static GameObject item(String name, boolean pickable) {
+        GameObject item = new GameObject();
+        item.setName(name);
+        item.setDescription("A generated item.");
+        item.setPickable(pickable);
+        item.setExaminable(true);
+        return item;
+    }
+
+    private static Connection connection(String label, String target) {
+        Connection c = new Connection();
+        c.setLabel(label);
+        c.setTargetLocation(target);
+        return c;
+    }
+}
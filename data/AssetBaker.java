@@ -0,0 +1,247 @@
+package Main.data;
+
+import Main.model.GameObject;
+import Main.model.Location;
+import Main.model.NPC;
+import Main.model.World;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.imageio.ImageIO;
+
+/**
+ * Author: Makaato Serumaga
+ * Offline step that pre-scales every image a world uses to the size the game shows it at.
+ * Scene backdrops are written at exactly the scene size under {@link SpriteAtlas#BAKED_ROOT},
+ * and NPC and item sprites are packed into a single atlas described by {@link SpriteAtlas}.
+ * Run from the command line with: java Main.data.AssetBaker world.json resources
+ */
+public class AssetBaker {
+
+    // Display sizes used by the game screen
+    public static final int SCENE_WIDTH = 603;
+    public static final int SCENE_HEIGHT = 300;
+    public static final int NPC_WIDTH = 100;
+    public static final int NPC_HEIGHT = 150;
+    public static final int ITEM_WIDTH = 80;
+    public static final int ITEM_HEIGHT = 80;
+
+    private static final int ATLAS_WIDTH = 512;
+    // Empty pixels around each sprite so smoothing never samples a neighbour
+    private static final int PADDING = 1;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private AssetBaker() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: AssetBaker <world.json> <resources dir>");
+            System.exit(2);
+        }
+        World world = JsonWorldLoader.loadWorld(Paths.get(args[0]), null);
+        bake(world, Paths.get(args[1]));
+    }
+
+    /**
+     * Bakes every image referenced by a world.
+     * Images that cannot be found are reported and left out.
+     *
+     * @param world     a loaded world
+     * @param resources the resources folder the {@code imagePath}s are relative to
+     * @throws IOException if an image cannot be read or written
+     */
+    public static void bake(World world, Path resources) throws IOException {
+        // Sprite path -> the box it is shown in; a sprite shown in two sizes is baked at the larger one
+        Map<String, int[]> sprites = new LinkedHashMap<>();
+        int scenes = 0;
+        for (Location loc : world.getLocations()) {
+            if (bakeScene(loc.getImagePath(), resources)) {
+                scenes++;
+            }
+            for (NPC npc : loc.getCharacters()) {
+                addSprite(sprites, npc.getImagePath(), NPC_WIDTH, NPC_HEIGHT);
+            }
+            for (GameObject obj : loc.getObjects()) {
+                addItemSprites(sprites, obj);
+            }
+        }
+        if (world.getInventoryItems() != null) {
+            for (GameObject obj : world.getInventoryItems()) {
+                addItemSprites(sprites, obj);
+            }
+        }
+        int packed = bakeAtlas(sprites, resources);
+        System.out.println("Baked " + scenes + " scene(s) and " + packed + " sprite(s) into "
+                + resources.resolve(SpriteAtlas.BAKED_ROOT.substring(1)));
+    }
+
+    // An item's sprite and those of everything hidden inside it, which show once it is opened
+    private static void addItemSprites(Map<String, int[]> sprites, GameObject obj) {
+        addSprite(sprites, obj.getImagePath(), ITEM_WIDTH, ITEM_HEIGHT);
+        if (obj.getContainedObjects() != null) {
+            for (GameObject inner : obj.getContainedObjects()) {
+                addItemSprites(sprites, inner);
+            }
+        }
+    }
+
+    private static void addSprite(Map<String, int[]> sprites, String path, int width, int height) {
+        if (path == null || path.isBlank()) {
+            return;
+        }
+        int[] box = sprites.get(path);
+        if (box == null) {
+            sprites.put(path, new int[] {width, height});
+        } else {
+            box[0] = Math.max(box[0], width);
+            box[1] = Math.max(box[1], height);
+        }
+    }
+
+    /**
+     * Writes one scene at exactly the scene size, in the same format as the original.
+     */
+    private static boolean bakeScene(String path, Path resources) throws IOException {
+        if (path == null || path.isBlank()) {
+            return false;
+        }
+        BufferedImage src = read(path, resources);
+        if (src == null) {
+            return false;
+        }
+        String format = formatOf(path);
+        boolean opaque = !format.equals("png");
+        BufferedImage scaled = scale(src, SCENE_WIDTH, SCENE_HEIGHT, opaque);
+        Path out = resources.resolve(SpriteAtlas.bakedScenePath(path).substring(1));
+        Files.createDirectories(out.getParent());
+        if (!ImageIO.write(scaled, format, out.toFile())) {
+            throw new IOException("No image writer for " + format + " (" + path + ")");
+        }
+        return true;
+    }
+
+    /**
+     * Scales every sprite to fit its box, packs them into rows, and writes the atlas and its index.
+     */
+    private static int bakeAtlas(Map<String, int[]> sprites, Path resources) throws IOException {
+        List<String> paths = new ArrayList<>();
+        List<BufferedImage> images = new ArrayList<>();
+        for (Map.Entry<String, int[]> e : sprites.entrySet()) {
+            BufferedImage src = read(e.getKey(), resources);
+            if (src == null) {
+                continue;
+            }
+            // Fit inside the box keeping the aspect ratio, as the ImageView would
+            double fit = Math.min((double) e.getValue()[0] / src.getWidth(),
+                    (double) e.getValue()[1] / src.getHeight());
+            int w = Math.max(1, (int) Math.round(src.getWidth() * fit));
+            int h = Math.max(1, (int) Math.round(src.getHeight() * fit));
+            paths.add(e.getKey());
+            images.add(scale(src, w, h, false));
+        }
+
+        // Shelf packing, tallest first so each row wastes little height
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < images.size(); i++) {
+            order.add(i);
+        }
+        order.sort((a, b) -> images.get(b).getHeight() - images.get(a).getHeight());
+
+        Map<String, SpriteAtlas.Region> regions = new LinkedHashMap<>();
+        int x = 0;
+        int y = 0;
+        int rowHeight = 0;
+        for (int i : order) {
+            BufferedImage img = images.get(i);
+            int cellW = img.getWidth() + 2 * PADDING;
+            int cellH = img.getHeight() + 2 * PADDING;
+            if (x + cellW > ATLAS_WIDTH && x > 0) {
+                x = 0;
+                y += rowHeight;
+                rowHeight = 0;
+            }
+            regions.put(paths.get(i), new SpriteAtlas.Region(x + PADDING, y + PADDING, img.getWidth(), img.getHeight()));
+            x += cellW;
+            rowHeight = Math.max(rowHeight, cellH);
+        }
+        int height = Math.max(1, y + rowHeight);
+
+        BufferedImage atlas = new BufferedImage(ATLAS_WIDTH, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = atlas.createGraphics();
+        for (int i = 0; i < images.size(); i++) {
+            SpriteAtlas.Region r = regions.get(paths.get(i));
+            g.drawImage(images.get(i), r.getX(), r.getY(), null);
+        }
+        g.dispose();
+
+        Path imageOut = resources.resolve(SpriteAtlas.IMAGE.substring(1));
+        Files.createDirectories(imageOut.getParent());
+        ImageIO.write(atlas, "png", imageOut.toFile());
+
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        try (Writer w = Files.newBufferedWriter(resources.resolve(SpriteAtlas.INDEX.substring(1)), StandardCharsets.UTF_8)) {
+            gson.toJson(new SpriteAtlas(ATLAS_WIDTH, height, regions), w);
+        }
+        return regions.size();
+    }
+
+    private static BufferedImage read(String path, Path resources) throws IOException {
+        Path file = resources.resolve(path.startsWith("/") ? path.substring(1) : path);
+        if (!Files.exists(file)) {
+            System.err.println("Skipping missing image " + path);
+            return null;
+        }
+        BufferedImage img = ImageIO.read(file.toFile());
+        if (img == null) {
+            throw new IOException("Could not decode " + file);
+        }
+        return img;
+    }
+
+    private static String formatOf(String path) {
+        String ext = path.substring(path.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+        return ext.equals("jpeg") ? "jpg" : ext;
+    }
+
+    /**
+     * Scales an image to the given size. Large reductions are done in halving steps,
+     * which keeps detail that a single bilinear pass would skip over.
+     */
+    private static BufferedImage scale(BufferedImage src, int width, int height, boolean opaque) {
+        int type = opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        BufferedImage current = src;
+        int w = src.getWidth();
+        int h = src.getHeight();
+        do {
+            w = Math.max(width, w / 2);
+            h = Math.max(height, h / 2);
+            if (w < width || w == current.getWidth() && h == current.getHeight()) {
+                w = width;
+                h = height;
+            }
+            BufferedImage next = new BufferedImage(w, h, type);
+            Graphics2D g = next.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(current, 0, 0, w, h, null);
+            g.dispose();
+            current = next;
+        } while (w != width || h != height);
+        return current;
+    }
+}
@@ -0,0 +1,378 @@
+package Main.data;
+
+import static Main.data.BinaryWorldFormat.*;
+
+import Main.model.Connection;
+import Main.model.GameObject;
+import Main.model.ItemRegistry;
+import Main.model.Location;
+import Main.model.NPC;
+import Main.model.RuleBook;
+import Main.model.Timetable;
+import Main.model.World;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Author: Makaato Serumaga
+ * Compiles a world into the binary format described in {@link BinaryWorldFormat},
+ * which {@link BinaryWorldLoader} maps straight into memory instead of parsing JSON.
+ * Run from the command line with: java Main.data.BinaryWorldCompiler world.json world.bin
+ */
+public class BinaryWorldCompiler {
+
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final List<byte[]> strings = new ArrayList<>();
+    private final Map<GameObject, Integer> objectIndex = new IdentityHashMap<>();
+    private final List<GameObject> objects = new ArrayList<>();
+    private final Map<Location, Integer> locationIndex = new IdentityHashMap<>();
+
+    private IntList pool = new IntList();
+
+    private BinaryWorldCompiler() {
+        strings.add(null); // string 0 is the null string
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: BinaryWorldCompiler <world.json> <world.bin>");
+            System.exit(2);
+        }
+        World world = JsonWorldLoader.loadWorld(Paths.get(args[0]), null);
+        compile(world, Paths.get(args[1]));
+    }
+
+    /**
+     * Writes a linked world to a binary file.
+     *
+     * @param world a world that has been through {@link WorldLinker}
+     * @param out   the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void compile(World world, Path out) throws IOException {
+        new BinaryWorldCompiler().write(world, out);
+    }
+
+    private void write(World world, Path out) throws IOException {
+        List<Location> locations = world.getLocations();
+        for (int i = 0; i < locations.size(); i++) {
+            locationIndex.put(locations.get(i), i);
+        }
+        // Number every object up front so records can point at each other
+        for (GameObject obj : world.getInventoryItems()) {
+            numberObjects(obj);
+        }
+        for (Location loc : locations) {
+            for (GameObject obj : loc.getObjects()) {
+                numberObjects(obj);
+            }
+        }
+
+        IntList locRecords = new IntList();
+        IntList connRecords = new IntList();
+        IntList npcRecords = new IntList();
+        int connections = 0;
+        int npcs = 0;
+        for (Location loc : locations) {
+            int flags = (loc.getAccessible() ? LOC_ACCESSIBLE : 0)
+                    | (world.isEndLocation(loc.getName()) ? LOC_END : 0);
+            locRecords.add(string(loc.getName()), string(loc.getDescription()), string(loc.getImagePath()), flags);
+            poolRef(locRecords, loc.getRequiredItemIds());
+            poolRef(locRecords, loc.getRequiredInvIds());
+            locRecords.add(connections, loc.getConnections().size());
+            for (Connection c : loc.getConnections()) {
+                connRecords.add(string(c.getLabel()), locationIndex.get(c.getTarget()));
+                connections++;
+            }
+            poolRef(locRecords, objectRefs(loc.getObjects()));
+            locRecords.add(npcs, loc.getCharacters().size());
+            for (NPC npc : loc.getCharacters()) {
+                npcRecords.add(string(npc.getName()), string(npc.getDescription()), string(npc.getImagePath()));
+                poolRef(npcRecords, stringRefs(npc.getPhrases()));
+                poolRef(npcRecords, npc.getWantedIds());
+                poolRef(npcRecords, itemIds(world, npc.getGivenItems()));
+                poolRef(npcRecords, objectRefs(npc.getRewards()));
+                npcs++;
+            }
+        }
+
+        IntList objRecords = new IntList();
+        for (GameObject obj : objects) {
+            int flags = (obj.isPickable() ? OBJ_PICKABLE : 0) | (obj.isSelectable() ? OBJ_SELECTABLE : 0)
+                    | (obj.isExaminable() ? OBJ_EXAMINABLE : 0) | (obj.isDroppable() ? OBJ_DROPPABLE : 0);
+            objRecords.add(string(obj.getName()), string(obj.getDescription()), string(obj.getImagePath()),
+                    flags, obj.getId());
+            poolRef(objRecords, stringRefs(obj.getAttributes()));
+            poolRef(objRecords, objectRefs(obj.getContainedObjects()));
+        }
+
+        IntList itemRecords = new IntList();
+        ItemRegistry registry = world.getItemRegistry();
+        int itemCount = world.getItemCount();
+        for (int id = 0; id < itemCount; id++) {
+            GameObject obj = registry.find(id);
+            int place = PLACE_POOL;
+            int holder = -1;
+            if (obj != null && registry.placeOf(obj) == ItemRegistry.Place.LOCATION) {
+                place = PLACE_LOCATION;
+                holder = locationIndex.get((Location) registry.holderOf(obj));
+            } else if (obj != null && registry.placeOf(obj) == ItemRegistry.Place.CONTAINER) {
+                place = PLACE_CONTAINER;
+                holder = objectIndex.get((GameObject) registry.holderOf(obj));
+            }
+            itemRecords.add(string(obj == null ? null : obj.getName()), obj == null ? -1 : objectIndex.get(obj),
+                    place, holder);
+        }
+
+        int[] locHash = new int[tableSize(locations.size())];
+        for (int i = 0; i < locations.size(); i++) {
+            insert(locHash, locations.get(i).getName(), i);
+        }
+        int[] itemHash = new int[tableSize(itemCount)];
+        for (int id = 0; id < itemCount; id++) {
+            GameObject obj = registry.find(id);
+            if (obj != null) {
+                insert(itemHash, obj.getName(), id);
+            }
+        }
+        IntList ruleRecords = new IntList();
+        world.getRules().forEach((give, itemId, targetId, effect) -> {
+            int flags = (effect.endsGame() ? RULE_ENDS_GAME : 0) | (effect.isWin() ? RULE_WIN : 0)
+                    | (effect.consumesItem() ? RULE_CONSUMES : 0);
+            ruleRecords.add(give ? RULE_GIVE : RULE_USE, itemId, targetId, string(effect.getMessage()), flags);
+            poolRef(ruleRecords, objectRefs(effect.getGivenItems()));
+            poolRef(ruleRecords, locationRefs(effect.getUnlocks()));
+        });
+        IntList eventRecords = new IntList();
+        for (Timetable.Event event : world.getTimetable().getEvents()) {
+            RuleBook.Effect effect = event.getEffect();
+            int flags = (effect.endsGame() ? RULE_ENDS_GAME : 0) | (effect.isWin() ? RULE_WIN : 0);
+            eventRecords.add(string(event.getName()), event.getAtTurn(), event.getTurnsLeft(), event.getAfter(),
+                    string(effect.getMessage()), flags);
+            poolRef(eventRecords, objectRefs(effect.getGivenItems()));
+            poolRef(eventRecords, locationRefs(effect.getUnlocks()));
+            poolRef(eventRecords, locationRefs(event.getCloses()));
+            int[] departs = new int[event.getDeparts().size()];
+            for (int i = 0; i < departs.length; i++) {
+                departs[i] = event.getDeparts().get(i).getId();
+            }
+            poolRef(eventRecords, departs);
+            poolRef(eventRecords, event.getSchedules());
+            poolRef(eventRecords, event.getCancels());
+        }
+        int poolItemsOffset = pool.size;
+        for (GameObject obj : world.getInventoryItems()) {
+            pool.add(objectIndex.get(obj));
+        }
+
+        // Lay the sections out one after another
+        ByteArrayOutputStream stringData = new ByteArrayOutputStream();
+        int[] stringOffsets = new int[strings.size() + 1];
+        for (int i = 0; i < strings.size(); i++) {
+            byte[] bytes = strings.get(i);
+            stringOffsets[i] = bytes == null ? -1 : stringData.size();
+            if (bytes != null) {
+                stringData.write(bytes);
+            }
+        }
+        stringOffsets[strings.size()] = stringData.size();
+
+        int[] header = new int[HEADER_INTS];
+        header[H_MAGIC] = MAGIC;
+        header[H_VERSION] = VERSION;
+        header[H_STRING_COUNT] = strings.size();
+        header[H_LOCATION_COUNT] = locations.size();
+        header[H_CONNECTION_COUNT] = connections;
+        header[H_OBJECT_COUNT] = objects.size();
+        header[H_NPC_COUNT] = npcs;
+        header[H_ITEM_COUNT] = itemCount;
+        Location start = world.getStartLocation();
+        header[H_START_LOCATION] = start == null ? -1 : locationIndex.get(start);
+        header[H_TURN_LIMIT] = world.getTurnLimit();
+        header[H_POOL_OFFSET] = poolItemsOffset;
+        header[H_POOL_COUNT] = world.getInventoryItems().size();
+        header[H_RULE_COUNT] = ruleRecords.size / RULE_INTS;
+        header[H_EVENT_COUNT] = eventRecords.size / EVENT_INTS;
+
+        long offset = HEADER_INTS * 4L;
+        header[H_STRING_INDEX] = (int) offset;
+        offset += stringOffsets.length * 4L;
+        header[H_STRING_DATA] = (int) offset;
+        offset += (stringData.size() + 3) & ~3;
+        header[H_LOCATIONS] = (int) offset;
+        offset += locRecords.size * 4L;
+        header[H_CONNECTIONS] = (int) offset;
+        offset += connRecords.size * 4L;
+        header[H_OBJECTS] = (int) offset;
+        offset += objRecords.size * 4L;
+        header[H_NPCS] = (int) offset;
+        offset += npcRecords.size * 4L;
+        header[H_ITEMS] = (int) offset;
+        offset += itemRecords.size * 4L;
+        header[H_RULES] = (int) offset;
+        offset += ruleRecords.size * 4L;
+        header[H_EVENTS] = (int) offset;
+        offset += eventRecords.size * 4L;
+        header[H_LOCATION_HASH] = (int) offset;
+        header[H_LOCATION_HASH_SIZE] = locHash.length;
+        offset += locHash.length * 4L;
+        header[H_ITEM_HASH] = (int) offset;
+        header[H_ITEM_HASH_SIZE] = itemHash.length;
+        offset += itemHash.length * 4L;
+        header[H_INT_POOL] = (int) offset;
+        offset += pool.size * 4L;
+        if (offset > Integer.MAX_VALUE) {
+            throw new IOException("World is too large for the binary format (" + offset + " bytes)");
+        }
+
+        try (FileChannel ch = FileChannel.open(out, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeInts(ch, header, header.length);
+            writeInts(ch, stringOffsets, stringOffsets.length);
+            byte[] data = stringData.toByteArray();
+            ByteBuffer padded = ByteBuffer.allocate((data.length + 3) & ~3);
+            padded.put(data).rewind();
+            writeFully(ch, padded);
+            writeInts(ch, locRecords.values, locRecords.size);
+            writeInts(ch, connRecords.values, connRecords.size);
+            writeInts(ch, objRecords.values, objRecords.size);
+            writeInts(ch, npcRecords.values, npcRecords.size);
+            writeInts(ch, itemRecords.values, itemRecords.size);
+            writeInts(ch, ruleRecords.values, ruleRecords.size);
+            writeInts(ch, eventRecords.values, eventRecords.size);
+            writeInts(ch, locHash, locHash.length);
+            writeInts(ch, itemHash, itemHash.length);
+            writeInts(ch, pool.values, pool.size);
+        }
+    }
+
+    private void numberObjects(GameObject obj) {
+        if (objectIndex.putIfAbsent(obj, objects.size()) == null) {
+            objects.add(obj);
+            for (GameObject inner : obj.getContainedObjects()) {
+                numberObjects(inner);
+            }
+        }
+    }
+
+    private int string(String s) {
+        if (s == null) {
+            return 0;
+        }
+        Integer id = stringIds.get(s);
+        if (id == null) {
+            id = strings.size();
+            stringIds.put(s, id);
+            strings.add(s.getBytes(StandardCharsets.UTF_8));
+        }
+        return id;
+    }
+
+    private int[] stringRefs(List<String> values) {
+        if (values == null) {
+            return new int[0];
+        }
+        int[] ids = new int[values.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = string(values.get(i));
+        }
+        return ids;
+    }
+
+    private int[] objectRefs(List<GameObject> values) {
+        if (values == null) {
+            return new int[0];
+        }
+        int[] refs = new int[values.size()];
+        for (int i = 0; i < refs.length; i++) {
+            refs[i] = objectIndex.get(values.get(i));
+        }
+        return refs;
+    }
+
+    private int[] locationRefs(List<Location> values) {
+        int[] refs = new int[values.size()];
+        for (int i = 0; i < refs.length; i++) {
+            refs[i] = locationIndex.get(values.get(i));
+        }
+        return refs;
+    }
+
+    private static int[] itemIds(World world, List<String> names) {
+        if (names == null) {
+            return new int[0];
+        }
+        int[] ids = new int[names.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = world.getItemId(names.get(i));
+        }
+        return ids;
+    }
+
+    /**
+     * Appends a list to the int pool and its (offset, count) to a record.
+     */
+    private void poolRef(IntList record, int[] values) {
+        record.add(pool.size, values.length);
+        for (int v : values) {
+            pool.add(v);
+        }
+    }
+
+    private static void insert(int[] table, String name, int index) {
+        int mask = table.length - 1;
+        int slot = hash(name) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = index + 1;
+    }
+
+    private static void writeInts(FileChannel ch, int[] values, int count) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+        for (int i = 0; i < count; i++) {
+            if (!buf.hasRemaining()) {
+                buf.flip();
+                writeFully(ch, buf);
+                buf.clear();
+            }
+            buf.putInt(values[i]);
+        }
+        buf.flip();
+        writeFully(ch, buf);
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+    }
+
+    /**
+     * Growable int array.
+     */
+    private static final class IntList {
+        int[] values = new int[256];
+        int size;
+
+        void add(int... vs) {
+            if (size + vs.length > values.length) {
+                values = Arrays.copyOf(values, Math.max(size + vs.length, values.length * 2));
+            }
+            System.arraycopy(vs, 0, values, size, vs.length);
+            size += vs.length;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package Main.data;
+
+import java.util.Locale;
+
+/**
+ * Author: Makaato Serumaga
+ * Layout of the compiled binary world file written by {@link BinaryWorldCompiler}
+ * and read by {@link BinaryWorldLoader}. Everything is a big-endian int unless noted.
+ * <pre>
+ * header       HEADER_INTS ints (see the H_ constants)
+ * string index stringCount + 1 byte offsets into the string data (-1 marks a null string)
+ * string data  UTF-8 bytes
+ * locations    LOCATION_INTS per location
+ * connections  CONNECTION_INTS per connection
+ * objects      OBJECT_INTS per object
+ * npcs         NPC_INTS per NPC
+ * items        ITEM_INTS per item ID: where the item starts out
+ * rules        RULE_INTS per use or give rule
+ * events       EVENT_INTS per timed event, in timetable order
+ * hash tables  open addressing, lower-cased name hash -> index + 1 (0 = empty)
+ * int pool     variable-length lists referenced as (offset, count) by the records
+ * </pre>
+ */
+final class BinaryWorldFormat {
+
+    static final int MAGIC = 0x4D4D5742; // "MMWB"
+    static final int VERSION = 3;
+
+    // Header fields, as int positions
+    static final int H_MAGIC = 0;
+    static final int H_VERSION = 1;
+    static final int H_STRING_COUNT = 2;
+    static final int H_LOCATION_COUNT = 3;
+    static final int H_CONNECTION_COUNT = 4;
+    static final int H_OBJECT_COUNT = 5;
+    static final int H_NPC_COUNT = 6;
+    static final int H_ITEM_COUNT = 7;
+    static final int H_START_LOCATION = 8;
+    static final int H_TURN_LIMIT = 9;
+    static final int H_POOL_OFFSET = 10;
+    static final int H_POOL_COUNT = 11;
+    static final int H_STRING_INDEX = 12;
+    static final int H_STRING_DATA = 13;
+    static final int H_LOCATIONS = 14;
+    static final int H_CONNECTIONS = 15;
+    static final int H_OBJECTS = 16;
+    static final int H_NPCS = 17;
+    static final int H_ITEMS = 18;
+    static final int H_LOCATION_HASH = 19;
+    static final int H_LOCATION_HASH_SIZE = 20;
+    static final int H_ITEM_HASH = 21;
+    static final int H_ITEM_HASH_SIZE = 22;
+    static final int H_INT_POOL = 23;
+    static final int H_RULE_COUNT = 24;
+    static final int H_RULES = 25;
+    static final int H_EVENT_COUNT = 26;
+    static final int H_EVENTS = 27;
+    static final int HEADER_INTS = 28;
+
+    // Location record: name, description, imagePath, flags, requiredItems (off, n),
+    // requiredInv (off, n), first connection, connection count, objects (off, n), first NPC, NPC count
+    static final int LOCATION_INTS = 14;
+    static final int LOC_ACCESSIBLE = 1;
+    static final int LOC_END = 2;
+
+    // Connection record: label, target location index
+    static final int CONNECTION_INTS = 2;
+
+    // Object record: name, description, imagePath, flags, item ID, attributes (off, n), contained objects (off, n)
+    static final int OBJECT_INTS = 9;
+    static final int OBJ_PICKABLE = 1;
+    static final int OBJ_SELECTABLE = 2;
+    static final int OBJ_EXAMINABLE = 4;
+    static final int OBJ_DROPPABLE = 8;
+
+    // NPC record: name, description, imagePath, phrases (off, n), wanted item IDs (off, n),
+    // given item IDs (off, n), reward objects (off, n)
+    static final int NPC_INTS = 11;
+
+    // Item record: name, object index, place, holder index (location or object, -1 for the pool)
+    static final int ITEM_INTS = 4;
+    static final int PLACE_POOL = 0;
+    static final int PLACE_LOCATION = 1;
+    static final int PLACE_CONTAINER = 2;
+
+    // Rule record: kind, item ID, target (item ID or NO_TARGET for use, NPC index for give),
+    // message, flags, given objects (off, n), unlocked location indexes (off, n)
+    static final int RULE_INTS = 9;
+    static final int RULE_USE = 0;
+    static final int RULE_GIVE = 1;
+    static final int RULE_ENDS_GAME = 1;
+    static final int RULE_WIN = 2;
+    static final int RULE_CONSUMES = 4;
+
+    // Timed event record: name, atTurn, turnsLeft, after, message, flags (RULE_ENDS_GAME, RULE_WIN),
+    // given objects (off, n), unlocked location indexes (off, n), closed location indexes (off, n),
+    // departing NPC indexes (off, n), scheduled event indexes (off, n), cancelled event indexes (off, n)
+    static final int EVENT_INTS = 18;
+
+    private BinaryWorldFormat() {}
+
+    /**
+     * Hash used by the name tables; the same on every JVM.
+     */
+    static int hash(String name) {
+        int h = name.toLowerCase(Locale.ROOT).hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return a power-of-two table size with room for {@code entries} at half load
+     */
+    static int tableSize(int entries) {
+        int size = 2;
+        while (size < entries * 2) {
+            size <<= 1;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,62 @@
+package Main.data;
+
+import Main.model.World;
+import Main.model.WorldTemplate;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Author: Makaato Serumaga
+ * Opens worlds compiled by {@link BinaryWorldCompiler}.
+ * The file is memory-mapped read-only, so nothing is parsed up front: each
+ * location, object and item is decoded the first time the game touches it.
+ * Every JVM on the machine that maps the same file shares its pages through
+ * the OS page cache.
+ * All methods are static; this class is not meant to be instantiated.
+ */
+public class BinaryWorldLoader {
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private BinaryWorldLoader() {}
+
+    /**
+     * Maps a compiled world file. The returned world is already read-only.
+     *
+     * @param file the .bin file
+     * @return the mapped world
+     * @throws IOException if the file cannot be read
+     * @throws IllegalStateException if the file is not a compiled world of this version
+     */
+    public static World load(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.capacity() < BinaryWorldFormat.HEADER_INTS * 4
+                    || buf.getInt(BinaryWorldFormat.H_MAGIC * 4) != BinaryWorldFormat.MAGIC) {
+                throw new IllegalStateException(file + " is not a compiled world");
+            }
+            int version = buf.getInt(BinaryWorldFormat.H_VERSION * 4);
+            if (version != BinaryWorldFormat.VERSION) {
+                throw new IllegalStateException(file + " has format version " + version
+                        + ", expected " + BinaryWorldFormat.VERSION);
+            }
+            return new MappedWorld(buf);
+        }
+    }
+
+    /**
+     * Maps a compiled world file as a shareable template.
+     *
+     * @param file the .bin file
+     * @return a template over the mapped world
+     * @throws IOException if the file cannot be read
+     */
+    public static WorldTemplate loadTemplate(Path file) throws IOException {
+        return new WorldTemplate(load(file));
+    }
+}
@@ -1,46 +1,241 @@
 package Main.data;
 
+import Main.model.GameObject;
+import Main.model.GiveRule;
+import Main.model.Location;
+import Main.model.TimedEvent;
+import Main.model.UseRule;
 import Main.model.World;
+import Main.model.WorldTemplate;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  *Author: Makaato Serumaga
  * Utility class for loading {@link World} data from JSON resources.
+ * The JSON is read as a stream: each location is parsed and handed to the
+ * world on its own, so the parser only ever holds one location's worth of
+ * JSON no matter how big the file is. Only that parse overhead is bounded:
+ * the loaded {@link World} itself keeps every location and object in memory.
  * All methods are static; this class is not meant to be instantiated.
  */
 public class JsonWorldLoader {
 
+    /**
+     * Receives progress updates while a world loads.
+     */
+    public interface ProgressListener {
+        /**
+         * Called after each location has been read.
+         *
+         * @param bytesRead       bytes of the file read so far
+         * @param totalBytes      size of the file, or -1 if it is not known
+         * @param locationsLoaded locations read so far
+         */
+        void progress(long bytesRead, long totalBytes, int locationsLoaded);
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Templates already loaded, by classpath resource
+    private static final Map<String, WorldTemplate> TEMPLATES = new ConcurrentHashMap<>();
+
     /**
      * Private constructor to prevent instantiation.
      */
     private JsonWorldLoader() {}
 
+    /**
+     * Returns the shared, read-only template for a JSON world on the classpath.
+     * The file is only read the first time; later calls return the same template.
+     *
+     * @param resourcePath the classpath path of the JSON file
+     * @return the cached {@link WorldTemplate}
+     */
+    public static WorldTemplate loadTemplate(String resourcePath) {
+        return TEMPLATES.computeIfAbsent(resourcePath, p -> new WorldTemplate(loadWorld(p)));
+    }
+
     /**
      * Loads a {@link World} from a JSON file on the classpath.
      *
      * @param resourcePath the classpath path of the JSON file
-     *   
-     * @return the deserialized {@link World} instance
+     *
+     * @return the deserialized and linked {@link World} instance
      * @throws RuntimeException if the resource cannot be found or the JSON cannot be parsed
+     * @throws IllegalStateException if the world has dangling references (see {@link WorldLinker})
      */
     public static World loadWorld(String resourcePath) {
-        try {
-            InputStream in = JsonWorldLoader.class.getResourceAsStream(resourcePath);
-            if (in == null) {
-                throw new IllegalStateException("Could not find resource" + resourcePath);
-            }
+        return loadWorld(resourcePath, null);
+    }
 
-            Reader reader = new InputStreamReader(in);
-            Gson gson = new GsonBuilder().create();
-            World world = gson.fromJson(reader, World.class);
+    /**
+     * Loads a {@link World} from a JSON file on the classpath, reporting progress.
+     *
+     * @param resourcePath the classpath path of the JSON file
+     * @param listener     told after every location, may be {@code null}
+     * @return the deserialized and linked {@link World} instance
+     * @throws RuntimeException if the resource cannot be found or the JSON cannot be parsed
+     * @throws IllegalStateException if the world has dangling references (see {@link WorldLinker})
+     */
+    public static World loadWorld(String resourcePath, ProgressListener listener) {
+        InputStream in = JsonWorldLoader.class.getResourceAsStream(resourcePath);
+        if (in == null) {
+            throw new RuntimeException("Failed to load json",
+                    new IllegalStateException("Could not find resource " + resourcePath));
+        }
+        World world = parse(in, -1, listener);
+        WorldLinker.link(world);
+        return world;
+    }
 
+    /**
+     * Loads a {@link World} from a JSON file on disk, reporting progress.
+     * Meant for generated worlds too big to ship on the classpath.
+     *
+     * @param file     the JSON file
+     * @param listener told after every location, may be {@code null}
+     * @return the deserialized and linked {@link World} instance
+     */
+    public static World loadWorld(Path file, ProgressListener listener) {
+        try {
+            World world = parse(Files.newInputStream(file), Files.size(file), listener);
+            WorldLinker.link(world);
+            return world;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load json", e);
+        }
+    }
+
+    /**
+     * Reads the raw JSON into a {@link World} without linking it.
+     * Top-level fields may come in any order; unknown ones are skipped.
+     * The stream is always closed.
+     */
+    private static World parse(InputStream raw, long totalBytes, ProgressListener listener) {
+        CountingInputStream in = new CountingInputStream(raw);
+        Gson gson = new GsonBuilder().create();
+        try (JsonReader reader = new JsonReader(new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE))) {
+            World world = new World();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.skipValue();
+                    continue;
+                }
+                switch (field) {
+                    case "startLocation":
+                        world.setStartLocation(reader.nextString());
+                        break;
+                    case "endLocations":
+                        world.setEndLocations(readStrings(reader));
+                        break;
+                    case "turnLimit":
+                        world.setTurnLimit(reader.nextInt());
+                        break;
+                    case "inventoryItems":
+                        List<GameObject> items = new ArrayList<>();
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            items.add(gson.fromJson(reader, GameObject.class));
+                        }
+                        reader.endArray();
+                        world.setInventoryItems(items);
+                        break;
+                    case "locations":
+                        reader.beginArray();
+                        int loaded = 0;
+                        while (reader.hasNext()) {
+                            world.addLocation(gson.fromJson(reader, Location.class));
+                            loaded++;
+                            if (listener != null) {
+                                listener.progress(in.count, totalBytes, loaded);
+                            }
+                        }
+                        reader.endArray();
+                        break;
+                    case "useRules":
+                        world.setUseRules(readList(reader, gson, UseRule.class));
+                        break;
+                    case "giveRules":
+                        world.setGiveRules(readList(reader, gson, GiveRule.class));
+                        break;
+                    case "timedEvents":
+                        world.setTimedEvents(readList(reader, gson, TimedEvent.class));
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
             return world;
         } catch (Exception e) {
             throw new RuntimeException("Failed to load json", e);
         }
     }
+
+    private static <T> List<T> readList(JsonReader reader, Gson gson, Class<T> type) throws IOException {
+        List<T> list = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            list.add(gson.fromJson(reader, type));
+        }
+        reader.endArray();
+        return list;
+    }
+
+    private static List<String> readStrings(JsonReader reader) throws IOException {
+        List<String> values = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            values.add(reader.nextString());
+        }
+        reader.endArray();
+        return values;
+    }
+
+    /**
+     * Counts the bytes read through it, for progress reporting.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = super.read(buf, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
 }
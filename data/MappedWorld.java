@@ -0,0 +1,486 @@
+package Main.data;
+
+import static Main.data.BinaryWorldFormat.*;
+
+import Main.model.Connection;
+import Main.model.GameObject;
+import Main.model.ItemRegistry;
+import Main.model.Location;
+import Main.model.NPC;
+import Main.model.RuleBook;
+import Main.model.Timetable;
+import Main.model.World;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Author: Makaato Serumaga
+ * A read-only {@link World} backed by a memory-mapped compiled world file.
+ * Locations, objects and item placements are decoded on first access and
+ * cached, so a game only pays for the parts of the world it visits.
+ * Decoding is synchronized, so one instance can be shared by many games.
+ */
+class MappedWorld extends World {
+
+    private final ByteBuffer buf;
+    private final int[] header = new int[HEADER_INTS];
+
+    private final String[] strings;
+    private final AtomicReferenceArray<Location> locations;
+    private final AtomicReferenceArray<GameObject> objects;
+    private final ItemRegistry registry;
+    private volatile List<GameObject> poolItems;
+    private volatile RuleBook rules;
+    private volatile Timetable timetable;
+
+    MappedWorld(ByteBuffer buf) {
+        this.buf = buf;
+        for (int i = 0; i < HEADER_INTS; i++) {
+            header[i] = buf.getInt(i * 4);
+        }
+        strings = new String[header[H_STRING_COUNT]];
+        locations = new AtomicReferenceArray<>(header[H_LOCATION_COUNT]);
+        objects = new AtomicReferenceArray<>(header[H_OBJECT_COUNT]);
+        registry = new ItemRegistry(this, header[H_ITEM_COUNT], this::loadItem);
+        setTurnLimit(header[H_TURN_LIMIT]);
+        freeze();
+    }
+
+    @Override
+    public List<Location> getLocations() {
+        return new AbstractList<Location>() {
+            @Override
+            public Location get(int index) {
+                return location(index);
+            }
+
+            @Override
+            public int size() {
+                return locations.length();
+            }
+        };
+    }
+
+    @Override
+    public Location getLocation(String name) {
+        int index = findLocation(name);
+        return index < 0 ? null : location(index);
+    }
+
+    @Override
+    public String getStartLocationName() {
+        int start = header[H_START_LOCATION];
+        return start < 0 ? null : string(locInt(start, 0));
+    }
+
+    @Override
+    public Location getStartLocation() {
+        int start = header[H_START_LOCATION];
+        return start < 0 ? null : location(start);
+    }
+
+    @Override
+    public List<String> getEndLocationNames() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < locations.length(); i++) {
+            if ((locInt(i, 3) & LOC_END) != 0) {
+                names.add(string(locInt(i, 0)));
+            }
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    @Override
+    public boolean isEndLocation(String name) {
+        int index = findLocation(name);
+        return index >= 0 && (locInt(index, 3) & LOC_END) != 0;
+    }
+
+    @Override
+    public List<GameObject> getInventoryItems() {
+        List<GameObject> items = poolItems;
+        if (items == null) {
+            items = Collections.unmodifiableList(objectList(header[H_POOL_OFFSET], header[H_POOL_COUNT]));
+            poolItems = items;
+        }
+        return items;
+    }
+
+    /**
+     * Decodes every rule the first time any is asked for; rule lookups are then
+     * as fast as for a world loaded from JSON.
+     */
+    @Override
+    public RuleBook getRules() {
+        RuleBook book = rules;
+        if (book == null) {
+            synchronized (this) {
+                book = rules;
+                if (book == null) {
+                    book = decodeRules();
+                    rules = book;
+                }
+            }
+        }
+        return book;
+    }
+
+    /**
+     * Decodes every timed event the first time any is asked for, along with
+     * the locations and NPCs they name.
+     */
+    @Override
+    public Timetable getTimetable() {
+        Timetable events = timetable;
+        if (events == null) {
+            synchronized (this) {
+                events = timetable;
+                if (events == null) {
+                    events = decodeTimetable();
+                    timetable = events;
+                }
+            }
+        }
+        return events;
+    }
+
+    @Override
+    public int getItemId(String name) {
+        if (name == null) {
+            return -1;
+        }
+        int mask = header[H_ITEM_HASH_SIZE] - 1;
+        for (int slot = hash(name) & mask; ; slot = (slot + 1) & mask) {
+            int entry = buf.getInt(header[H_ITEM_HASH] + slot * 4);
+            if (entry == 0) {
+                return -1;
+            }
+            int id = entry - 1;
+            if (name.equalsIgnoreCase(string(itemInt(id, 0)))) {
+                return id;
+            }
+        }
+    }
+
+    @Override
+    public int internItem(String name) {
+        int id = getItemId(name);
+        if (id < 0) {
+            throw new UnsupportedOperationException("A compiled world cannot gain new items");
+        }
+        return id;
+    }
+
+    @Override
+    public int getItemCount() {
+        return header[H_ITEM_COUNT];
+    }
+
+    @Override
+    public ItemRegistry getItemRegistry() {
+        return registry;
+    }
+
+    /**
+     * Returns location {@code index}, decoding it the first time.
+     */
+    Location location(int index) {
+        Location loc = locations.get(index);
+        if (loc != null) {
+            return loc;
+        }
+        synchronized (this) {
+            loc = locations.get(index);
+            if (loc == null) {
+                loc = decodeLocation(index);
+                locations.set(index, loc);
+            }
+            return loc;
+        }
+    }
+
+    /**
+     * Returns object {@code index}, decoding it (and anything inside it) the first time.
+     */
+    GameObject object(int index) {
+        GameObject obj = objects.get(index);
+        if (obj != null) {
+            return obj;
+        }
+        synchronized (this) {
+            obj = objects.get(index);
+            if (obj == null) {
+                obj = decodeObject(index);
+                objects.set(index, obj);
+            }
+            return obj;
+        }
+    }
+
+    private Location decodeLocation(int index) {
+        Location loc = new Location();
+        loc.setName(string(locInt(index, 0)));
+        loc.setDescription(string(locInt(index, 1)));
+        loc.setImagePath(string(locInt(index, 2)));
+        loc.setAccessible((locInt(index, 3) & LOC_ACCESSIBLE) != 0);
+
+        int[] requiredItems = ints(locInt(index, 4), locInt(index, 5));
+        loc.setRequiredItems(itemNames(requiredItems));
+        loc.setRequiredItemIds(requiredItems);
+        int[] requiredInv = ints(locInt(index, 6), locInt(index, 7));
+        loc.setRequiredInv(itemNames(requiredInv));
+        loc.setRequiredInvIds(requiredInv);
+
+        int firstConnection = locInt(index, 8);
+        int connectionCount = locInt(index, 9);
+        List<Connection> connections = new ArrayList<>(connectionCount);
+        for (int c = firstConnection; c < firstConnection + connectionCount; c++) {
+            int at = header[H_CONNECTIONS] + c * CONNECTION_INTS * 4;
+            connections.add(new MappedConnection(string(buf.getInt(at)), buf.getInt(at + 4)));
+        }
+        loc.setConnections(connections);
+
+        loc.setObjects(objectList(locInt(index, 10), locInt(index, 11)));
+
+        int firstNpc = locInt(index, 12);
+        int npcCount = locInt(index, 13);
+        List<NPC> npcs = new ArrayList<>(npcCount);
+        for (int n = firstNpc; n < firstNpc + npcCount; n++) {
+            npcs.add(decodeNpc(n));
+        }
+        loc.setCharacters(npcs);
+
+        adopt(loc);
+        return loc;
+    }
+
+    private NPC decodeNpc(int index) {
+        int at = header[H_NPCS] + index * NPC_INTS * 4;
+        NPC npc = new NPC();
+        npc.setId(index);
+        npc.setName(string(buf.getInt(at)));
+        npc.setDescription(string(buf.getInt(at + 4)));
+        npc.setImagePath(string(buf.getInt(at + 8)));
+        npc.setPhrases(stringList(ints(buf.getInt(at + 12), buf.getInt(at + 16))));
+        int[] wanted = ints(buf.getInt(at + 20), buf.getInt(at + 24));
+        npc.setWantedObjects(itemNames(wanted));
+        npc.setWantedIds(wanted);
+        npc.setGivenItems(itemNames(ints(buf.getInt(at + 28), buf.getInt(at + 32))));
+        npc.setRewards(objectList(buf.getInt(at + 36), buf.getInt(at + 40)));
+        return npc;
+    }
+
+    private GameObject decodeObject(int index) {
+        int at = header[H_OBJECTS] + index * OBJECT_INTS * 4;
+        GameObject obj = new GameObject();
+        obj.setName(string(buf.getInt(at)));
+        obj.setDescription(string(buf.getInt(at + 4)));
+        obj.setImagePath(string(buf.getInt(at + 8)));
+        int flags = buf.getInt(at + 12);
+        obj.setPickable((flags & OBJ_PICKABLE) != 0);
+        obj.setSelectable((flags & OBJ_SELECTABLE) != 0);
+        obj.setExaminable((flags & OBJ_EXAMINABLE) != 0);
+        obj.setDroppable((flags & OBJ_DROPPABLE) != 0);
+        obj.setId(buf.getInt(at + 16));
+        obj.setAttributes(stringList(ints(buf.getInt(at + 20), buf.getInt(at + 24))));
+        obj.setContainedObjects(objectList(buf.getInt(at + 28), buf.getInt(at + 32)));
+        return obj;
+    }
+
+    private RuleBook decodeRules() {
+        RuleBook.Builder book = new RuleBook.Builder();
+        for (int r = 0; r < header[H_RULE_COUNT]; r++) {
+            int at = header[H_RULES] + r * RULE_INTS * 4;
+            int flags = buf.getInt(at + 16);
+            RuleBook.Effect effect = new RuleBook.Effect(string(buf.getInt(at + 12)),
+                    (flags & RULE_ENDS_GAME) != 0, (flags & RULE_WIN) != 0, (flags & RULE_CONSUMES) != 0,
+                    objectList(buf.getInt(at + 20), buf.getInt(at + 24)),
+                    locationList(buf.getInt(at + 28), buf.getInt(at + 32)));
+            if (buf.getInt(at) == RULE_GIVE) {
+                book.addGive(buf.getInt(at + 4), buf.getInt(at + 8), effect);
+            } else {
+                book.addUse(buf.getInt(at + 4), buf.getInt(at + 8), effect);
+            }
+        }
+        return book.build();
+    }
+
+    private Timetable decodeTimetable() {
+        int count = header[H_EVENT_COUNT];
+        if (count == 0) {
+            return Timetable.EMPTY;
+        }
+        List<Timetable.Event> events = new ArrayList<>(count);
+        for (int e = 0; e < count; e++) {
+            int at = header[H_EVENTS] + e * EVENT_INTS * 4;
+            int flags = buf.getInt(at + 20);
+            RuleBook.Effect effect = new RuleBook.Effect(string(buf.getInt(at + 16)),
+                    (flags & RULE_ENDS_GAME) != 0, (flags & RULE_WIN) != 0, false,
+                    objectList(buf.getInt(at + 24), buf.getInt(at + 28)),
+                    locationList(buf.getInt(at + 32), buf.getInt(at + 36)));
+            List<NPC> departs = new ArrayList<>();
+            for (int index : ints(buf.getInt(at + 48), buf.getInt(at + 52))) {
+                departs.add(npc(index));
+            }
+            events.add(new Timetable.Event(string(buf.getInt(at)), buf.getInt(at + 4), buf.getInt(at + 8),
+                    buf.getInt(at + 12), effect, locationList(buf.getInt(at + 40), buf.getInt(at + 44)), departs,
+                    ints(buf.getInt(at + 56), buf.getInt(at + 60)), ints(buf.getInt(at + 64), buf.getInt(at + 68))));
+        }
+        return new Timetable(events);
+    }
+
+    private List<Location> locationList(int offset, int count) {
+        List<Location> list = new ArrayList<>(count);
+        for (int index : ints(offset, count)) {
+            list.add(location(index));
+        }
+        return list;
+    }
+
+    /**
+     * Returns NPC {@code index} as it appears in its location. NPCs are stored
+     * location by location, so the location is the last one whose first NPC
+     * comes at or before it.
+     */
+    private NPC npc(int index) {
+        int low = 0;
+        int high = locations.length() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (locInt(mid, 12) <= index) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return location(low).getCharacters().get(index - locInt(low, 12));
+    }
+
+    /**
+     * {@link ItemRegistry.Source}: reports where item {@code id} starts out.
+     */
+    private void loadItem(int id, ItemRegistry into) {
+        int objectIndex = itemInt(id, 1);
+        if (objectIndex < 0) {
+            return;
+        }
+        GameObject obj = object(objectIndex);
+        int holder = itemInt(id, 3);
+        switch (itemInt(id, 2)) {
+            case PLACE_LOCATION:
+                into.placed(obj, ItemRegistry.Place.LOCATION, location(holder));
+                break;
+            case PLACE_CONTAINER:
+                into.placed(obj, ItemRegistry.Place.CONTAINER, object(holder));
+                break;
+            default:
+                into.placed(obj, ItemRegistry.Place.POOL, this);
+        }
+    }
+
+    private int findLocation(String name) {
+        if (name == null) {
+            return -1;
+        }
+        int mask = header[H_LOCATION_HASH_SIZE] - 1;
+        for (int slot = hash(name) & mask; ; slot = (slot + 1) & mask) {
+            int entry = buf.getInt(header[H_LOCATION_HASH] + slot * 4);
+            if (entry == 0) {
+                return -1;
+            }
+            if (name.equalsIgnoreCase(string(locInt(entry - 1, 0)))) {
+                return entry - 1;
+            }
+        }
+    }
+
+    private int locInt(int index, int field) {
+        return buf.getInt(header[H_LOCATIONS] + (index * LOCATION_INTS + field) * 4);
+    }
+
+    private int itemInt(int id, int field) {
+        return buf.getInt(header[H_ITEMS] + (id * ITEM_INTS + field) * 4);
+    }
+
+    private int[] ints(int poolOffset, int count) {
+        int[] values = new int[count];
+        int at = header[H_INT_POOL] + poolOffset * 4;
+        for (int i = 0; i < count; i++) {
+            values[i] = buf.getInt(at + i * 4);
+        }
+        return values;
+    }
+
+    private List<GameObject> objectList(int poolOffset, int count) {
+        List<GameObject> list = new ArrayList<>(count);
+        for (int index : ints(poolOffset, count)) {
+            list.add(object(index));
+        }
+        return list;
+    }
+
+    private List<String> stringList(int[] ids) {
+        List<String> list = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            list.add(string(id));
+        }
+        return list;
+    }
+
+    private List<String> itemNames(int[] ids) {
+        List<String> names = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            names.add(string(itemInt(id, 0)));
+        }
+        return names;
+    }
+
+    /**
+     * Decodes string {@code id} from the string table. Results are cached;
+     * two threads racing here just decode the same immutable string twice.
+     */
+    private String string(int id) {
+        String s = strings[id];
+        if (s == null) {
+            int start = buf.getInt(header[H_STRING_INDEX] + id * 4);
+            if (start < 0) {
+                return null;
+            }
+            // only string 0 (null) has a negative offset, so the next entry is always an end
+            int end = buf.getInt(header[H_STRING_INDEX] + (id + 1) * 4);
+            byte[] bytes = new byte[end - start];
+            buf.get(header[H_STRING_DATA] + start, bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+            strings[id] = s;
+        }
+        return s;
+    }
+
+    /**
+     * A connection whose target location is decoded when first followed.
+     */
+    private final class MappedConnection extends Connection {
+        private final int targetIndex;
+
+        MappedConnection(String label, int targetIndex) {
+            this.targetIndex = targetIndex;
+            setLabel(label);
+            setTargetLocation(string(locInt(targetIndex, 0)));
+        }
+
+        @Override
+        public Location getTarget() {
+            Location target = super.getTarget();
+            if (target == null) {
+                target = location(targetIndex);
+                setTarget(target);
+            }
+            return target;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package Main.data;
+
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Author: Makaato Serumaga
+ * Index of the sprite atlas written by {@link AssetBaker}.
+ * Every NPC and item sprite is packed, already scaled to its display size,
+ * into one image; this class maps each original {@code imagePath} to the
+ * rectangle of the atlas that holds it.
+ */
+public class SpriteAtlas {
+
+    /** Classpath folder the baked assets live in; baked scenes keep their original path under it. */
+    public static final String BAKED_ROOT = "/baked";
+    /** Classpath path of the atlas image. */
+    public static final String IMAGE = BAKED_ROOT + "/atlas.png";
+    /** Classpath path of the atlas index. */
+    public static final String INDEX = BAKED_ROOT + "/atlas.json";
+
+    /**
+     * A rectangle of the atlas image, in pixels.
+     */
+    public static class Region {
+        private int x;
+        private int y;
+        private int width;
+        private int height;
+
+        public Region(int x, int y, int width, int height) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        public int getX() { return x; }
+        public int getY() { return y; }
+        public int getWidth() { return width; }
+        public int getHeight() { return height; }
+    }
+
+    private int width;
+    private int height;
+    private Map<String, Region> sprites = new LinkedHashMap<>();
+
+    SpriteAtlas(int width, int height, Map<String, Region> sprites) {
+        this.width = width;
+        this.height = height;
+        this.sprites = sprites;
+    }
+
+    /**
+     * Loads the atlas index from the classpath.
+     *
+     * @return the index, or {@code null} if the assets have not been baked
+     */
+    public static SpriteAtlas load() {
+        InputStream in = SpriteAtlas.class.getResourceAsStream(INDEX);
+        if (in == null) {
+            return null;
+        }
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return new Gson().fromJson(reader, SpriteAtlas.class);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load sprite atlas", e);
+        }
+    }
+
+    /**
+     * Returns the classpath path of the pre-scaled copy of a scene image.
+     *
+     * @param imagePath the path used in the world JSON
+     * @return the path of the baked copy (which may not exist)
+     */
+    public static String bakedScenePath(String imagePath) {
+        return BAKED_ROOT + imagePath;
+    }
+
+    /**
+     * Finds where a sprite was packed.
+     *
+     * @param imagePath the path used in the world JSON
+     * @return its region of the atlas, or {@code null} if it is not in the atlas
+     */
+    public Region find(String imagePath) {
+        return imagePath == null ? null : sprites.get(imagePath);
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+    public Map<String, Region> getSprites() { return Collections.unmodifiableMap(sprites); }
+}
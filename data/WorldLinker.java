@@ -0,0 +1,362 @@
+package Main.data;
+
+import Main.model.Connection;
+import Main.model.GameObject;
+import Main.model.GiveRule;
+import Main.model.ItemRegistry;
+import Main.model.Location;
+import Main.model.NPC;
+import Main.model.RuleBook;
+import Main.model.TimedEvent;
+import Main.model.Timetable;
+import Main.model.UseRule;
+import Main.model.World;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Author: Makaato Serumaga
+ * Resolves the string references in a freshly loaded {@link World} into
+ * direct references and interned item IDs, so the engine never has to look
+ * names up while the game is running.
+ * All methods are static; this class is not meant to be instantiated.
+ */
+public class WorldLinker {
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private WorldLinker() {}
+
+    /**
+     * Links every connection, NPC reward, NPC want and location gate in the world,
+     * numbers the NPCs and compiles the use and give rules and the timed events.
+     * Every dangling reference is collected first and reported together.
+     *
+     * @param world the world to link
+     * @throws IllegalStateException if any reference points at something that does not exist
+     */
+    public static void link(World world) {
+        world.buildIndexes();
+        List<String> problems = new ArrayList<>();
+
+        // Give every item name an ID before resolving anything that points at items,
+        // and record where each one starts out
+        ItemRegistry registry = world.getItemRegistry();
+        Map<Integer, GameObject> named = new HashMap<>();
+        for (GameObject obj : world.getInventoryItems()) {
+            internTree(world, obj, named, problems);
+            registry.placed(obj, ItemRegistry.Place.POOL, world);
+        }
+        for (Location loc : world.getLocations()) {
+            for (GameObject obj : loc.getObjects()) {
+                internTree(world, obj, named, problems);
+                registry.placed(obj, ItemRegistry.Place.LOCATION, loc);
+            }
+        }
+
+        if (world.getStartLocation() == null) {
+            problems.add("startLocation -> unknown location '" + world.getStartLocationName() + "'");
+        }
+        for (String end : world.getEndLocationNames()) {
+            if (world.getLocation(end) == null) {
+                problems.add("endLocations -> unknown location '" + end + "'");
+            }
+        }
+
+        Map<String, List<NPC>> npcsByName = new HashMap<>();
+        int npcCount = 0;
+        for (Location loc : world.getLocations()) {
+            String where = "Location '" + loc.getName() + "'";
+            for (Connection c : loc.getConnections()) {
+                Location target = world.getLocation(c.getTargetLocation());
+                if (target == null) {
+                    problems.add(where + " connection '" + c.getLabel()
+                            + "' -> unknown location '" + c.getTargetLocation() + "'");
+                }
+                c.setTarget(target);
+            }
+            loc.setRequiredItemIds(itemIds(world, loc.getRequiredItems(), where + " requiredItems", problems));
+            loc.setRequiredInvIds(itemIds(world, loc.getRequiredInv(), where + " requiredInv", problems));
+
+            for (NPC npc : loc.getCharacters()) {
+                npc.setId(npcCount++);
+                if (npc.getName() != null) {
+                    npcsByName.computeIfAbsent(key(npc.getName()), k -> new ArrayList<>()).add(npc);
+                }
+                String who = "NPC '" + npc.getName() + "'";
+                npc.setWantedIds(itemIds(world, npc.getWantedObjects(), who + " wantedObjects", problems));
+                List<GameObject> rewards = new ArrayList<>();
+                if (npc.getGivenItems() != null) {
+                    for (String name : npc.getGivenItems()) {
+                        GameObject reward = findReward(world, name);
+                        if (reward == null) {
+                            problems.add(who + " givenItems -> unknown item '" + name + "'");
+                        } else {
+                            rewards.add(reward);
+                        }
+                    }
+                }
+                npc.setRewards(rewards);
+            }
+        }
+
+        world.setRules(compileRules(world, npcsByName, problems));
+        world.setTimetable(compileTimetable(world, npcsByName, problems));
+
+        if (!problems.isEmpty()) {
+            StringBuilder sb = new StringBuilder("World has ")
+                    .append(problems.size()).append(" dangling reference(s):");
+            for (String p : problems) {
+                sb.append("\n - ").append(p);
+            }
+            throw new IllegalStateException(sb.toString());
+        }
+    }
+
+    /**
+     * Resolves every use and give rule and compiles them into the world's decision tables.
+     * A give rule applies to every NPC with its name. When two rules have the same
+     * item and target the first one wins.
+     */
+    private static RuleBook compileRules(World world, Map<String, List<NPC>> npcsByName, List<String> problems) {
+        RuleBook.Builder rules = new RuleBook.Builder();
+        List<UseRule> useRules = world.getUseRules() == null ? List.of() : world.getUseRules();
+        for (int i = 0; i < useRules.size(); i++) {
+            UseRule rule = useRules.get(i);
+            String where = "useRules[" + i + "]";
+            int item = ruleItem(world, rule.getObj1(), where + " obj1", problems);
+            int target = rule.getObj2() == null ? RuleBook.NO_TARGET
+                    : ruleItem(world, rule.getObj2(), where + " obj2", problems);
+            RuleBook.Effect effect = new RuleBook.Effect(rule.getMessage(), rule.isEndsGame(), rule.isWin(),
+                    rule.isConsumed(), ruleObjects(world, rule.getGivenItems(), where, problems),
+                    ruleLocations(world, rule.getUnlocks(), where, problems));
+            if (item >= 0 && (target >= 0 || rule.getObj2() == null)) {
+                rules.addUse(item, target, effect);
+            }
+        }
+        List<GiveRule> giveRules = world.getGiveRules() == null ? List.of() : world.getGiveRules();
+        for (int i = 0; i < giveRules.size(); i++) {
+            GiveRule rule = giveRules.get(i);
+            String where = "giveRules[" + i + "]";
+            int item = ruleItem(world, rule.getItem(), where + " item", problems);
+            List<NPC> npcs = rule.getNpc() == null ? null : npcsByName.get(key(rule.getNpc()));
+            if (npcs == null) {
+                problems.add(where + " npc -> unknown NPC '" + rule.getNpc() + "'");
+            }
+            RuleBook.Effect effect = new RuleBook.Effect(rule.getMessage(), rule.isEndsGame(), rule.isWin(),
+                    true, ruleObjects(world, rule.getGivenItems(), where, problems),
+                    ruleLocations(world, rule.getUnlocks(), where, problems));
+            if (item >= 0 && npcs != null) {
+                for (NPC npc : npcs) {
+                    rules.addGive(item, npc.getId(), effect);
+                }
+            }
+        }
+        return rules.build();
+    }
+
+    /**
+     * Resolves every timed event. Events are numbered in the order they are
+     * declared, and all of them are named before any is resolved so that an
+     * event can schedule or call off one declared after it.
+     */
+    private static Timetable compileTimetable(World world, Map<String, List<NPC>> npcsByName, List<String> problems) {
+        List<TimedEvent> declared = world.getTimedEvents() == null ? List.of() : world.getTimedEvents();
+        if (declared.isEmpty()) {
+            return Timetable.EMPTY;
+        }
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < declared.size(); i++) {
+            String name = declared.get(i).getName();
+            if (name != null && indexes.putIfAbsent(key(name), i) != null) {
+                problems.add("timedEvents[" + i + "] name -> duplicate event '" + name + "'");
+            }
+        }
+        List<Timetable.Event> events = new ArrayList<>();
+        for (int i = 0; i < declared.size(); i++) {
+            TimedEvent event = declared.get(i);
+            String where = "timedEvents[" + i + "]";
+            if (event.getAtTurn() < 0 || event.getTurnsLeft() < 0 || event.getAfter() < 0) {
+                problems.add(where + " -> atTurn, turnsLeft and after cannot be negative");
+            }
+            if (event.getAtTurn() > 0 && event.getTurnsLeft() > 0) {
+                problems.add(where + " -> give atTurn or turnsLeft, not both");
+            }
+            RuleBook.Effect effect = new RuleBook.Effect(event.getMessage(), event.isEndsGame(), event.isWin(),
+                    false, ruleObjects(world, event.getGivenItems(), where, problems),
+                    ruleLocations(world, event.getUnlocks(), where, problems));
+            List<Location> closes = new ArrayList<>();
+            if (event.getCloses() != null) {
+                for (String name : event.getCloses()) {
+                    Location loc = world.getLocation(name);
+                    if (loc == null) {
+                        problems.add(where + " closes -> unknown location '" + name + "'");
+                    } else {
+                        closes.add(loc);
+                    }
+                }
+            }
+            List<NPC> departs = new ArrayList<>();
+            if (event.getDeparts() != null) {
+                for (String name : event.getDeparts()) {
+                    List<NPC> npcs = name == null ? null : npcsByName.get(key(name));
+                    if (npcs == null) {
+                        problems.add(where + " departs -> unknown NPC '" + name + "'");
+                    } else {
+                        departs.addAll(npcs);
+                    }
+                }
+            }
+            int[] schedules = eventIndexes(declared, indexes, event.getSchedules(), true, where + " schedules", problems);
+            int[] cancels = eventIndexes(declared, indexes, event.getCancels(), false, where + " cancels", problems);
+            events.add(new Timetable.Event(event.getName(), event.getAtTurn(), event.getTurnsLeft(), event.getAfter(),
+                    effect, closes, departs, schedules, cancels));
+        }
+        return new Timetable(events);
+    }
+
+    /**
+     * Converts a list of event names into their indexes, recording unknown names
+     * and scheduled events that have no {@code after} to be scheduled with.
+     */
+    private static int[] eventIndexes(List<TimedEvent> declared, Map<String, Integer> indexes, List<String> names,
+                                      boolean scheduled, String where, List<String> problems) {
+        if (names == null) {
+            return new int[0];
+        }
+        int[] result = new int[names.size()];
+        for (int i = 0; i < result.length; i++) {
+            String name = names.get(i);
+            Integer index = name == null ? null : indexes.get(key(name));
+            if (index == null) {
+                problems.add(where + " -> unknown event '" + name + "'");
+                result[i] = -1;
+                continue;
+            }
+            result[i] = index;
+            if (scheduled && declared.get(index).getAfter() < 1) {
+                problems.add(where + " -> event '" + name + "' needs an after of at least 1 turn");
+            }
+        }
+        return result;
+    }
+
+    private static int ruleItem(World world, String name, String where, List<String> problems) {
+        int id = world.getItemId(name);
+        if (id < 0) {
+            problems.add(where + " -> unknown item '" + name + "'");
+        }
+        return id;
+    }
+
+    /**
+     * Finds the objects a rule hands over through the registry, so hidden objects can be given too.
+     */
+    private static List<GameObject> ruleObjects(World world, List<String> names, String where, List<String> problems) {
+        List<GameObject> objects = new ArrayList<>();
+        if (names != null) {
+            for (String name : names) {
+                GameObject obj = world.getItemRegistry().find(world.getItemId(name));
+                if (obj == null) {
+                    problems.add(where + " givenItems -> unknown item '" + name + "'");
+                } else {
+                    objects.add(obj);
+                }
+            }
+        }
+        return objects;
+    }
+
+    private static List<Location> ruleLocations(World world, List<String> names, String where, List<String> problems) {
+        List<Location> locations = new ArrayList<>();
+        if (names != null) {
+            for (String name : names) {
+                Location loc = world.getLocation(name);
+                if (loc == null) {
+                    problems.add(where + " unlocks -> unknown location '" + name + "'");
+                } else {
+                    locations.add(loc);
+                }
+            }
+        }
+        return locations;
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Assigns IDs to an object and everything hidden inside it. Items are
+     * tracked by name, so a name given to two items is recorded as a problem.
+     */
+    private static void internTree(World world, GameObject obj, Map<Integer, GameObject> named,
+                                   List<String> problems) {
+        obj.setId(world.internItem(obj.getName()));
+        GameObject other = named.putIfAbsent(obj.getId(), obj);
+        if (other != null && other != obj) {
+            problems.add("Item '" + obj.getName() + "' -> name already used by another item");
+        }
+        if (obj.getContainedObjects() == null) {
+            return;
+        }
+        for (GameObject inner : obj.getContainedObjects()) {
+            internTree(world, inner, named, problems);
+            world.getItemRegistry().placed(inner, ItemRegistry.Place.CONTAINER, obj);
+        }
+    }
+
+    /**
+     * Converts a list of item names into their IDs, recording unknown names.
+     */
+    private static int[] itemIds(World world, List<String> names, String where, List<String> problems) {
+        if (names == null) {
+            return new int[0];
+        }
+        int[] ids = new int[names.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = world.getItemId(names.get(i));
+            if (ids[i] < 0) {
+                problems.add(where + " -> unknown item '" + names.get(i) + "'");
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Finds the object an NPC hands over: the inventory pool first, then the
+     * locations, looking inside containers too. One placed in a room is taken
+     * from wherever it lies when handed over, once per game (see
+     * {@link Main.model.WorldOverlay#claimReward(GameObject)}).
+     */
+    private static GameObject findReward(World world, String name) {
+        GameObject found = findNamed(world.getInventoryItems(), name);
+        for (Location loc : world.getLocations()) {
+            if (found != null) {
+                break;
+            }
+            found = findNamed(loc.getObjects(), name);
+        }
+        return found;
+    }
+
+    private static GameObject findNamed(List<GameObject> objects, String name) {
+        if (objects == null) {
+            return null;
+        }
+        for (GameObject obj : objects) {
+            if (obj.getName().equalsIgnoreCase(name)) {
+                return obj;
+            }
+            GameObject inner = findNamed(obj.getContainedObjects(), name);
+            if (inner != null) {
+                return inner;
+            }
+        }
+        return null;
+    }
+}
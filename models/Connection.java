@@ -11,6 +11,10 @@ public class Connection {
      */
     private String label;
     private String targetLocation;
+    /**
+     * target is the resolved destination, filled in by the world link step
+     */
+    private transient Location target;
 
     public Connection() {}
     /**
@@ -22,4 +26,7 @@ public class Connection {
 
     public String getTargetLocation() { return targetLocation; }
     public void setTargetLocation(String targetLocation) { this.targetLocation = targetLocation; }
+
+    public Location getTarget() { return target; }
+    public void setTarget(Location target) { this.target = target; }
 }
@@ -21,6 +21,21 @@ public class GameObject {
 
     private boolean droppable = true;
 
+    // Interned item ID assigned by the world link step, -1 until linked
+    private transient int id = -1;
+
+    /**
+     * Returns the interned item ID shared by every object with this name.
+     */
+    public int getId() { return id; }
+
+    /**
+     * Sets the interned item ID.
+     *
+     * @param id dense ID from {@link World#internItem(String)}
+     */
+    public void setId(int id) { this.id = id; }
+
     /**
      * Returns whether this object can be dropped.
      */
@@ -1,4 +1,7 @@
 package Main.model;
+
+import java.util.ArrayList;
+import java.util.List;
 /** 
  * Used to create the rules that the give action is supposed to follow in the game
  * @author Terence
@@ -9,18 +12,36 @@ public class GiveRule {
     private String item;
     private String message;
     private boolean endsGame;
+    private boolean win;
+    private List<String> givenItems = new ArrayList<>();
+    private List<String> unlocks = new ArrayList<>();
     /** 
      * Store the rule (the character wants this item),
      * the trigger for the rule (being given the item),
      * the message that displays when the rule is triggered,
      * and check if the game should end after the item is given (such as the player running out of turns)
+     * + whether that ending is a win, the items the character hands back
+     * and the locations that open up
      * @return
      */
     public String getNpc() { return npc; }
+    public void setNpc(String npc) { this.npc = npc; }
 
     public String getItem() { return item; }
+    public void setItem(String item) { this.item = item; }
 
     public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
 
     public boolean isEndsGame() { return endsGame; }
+    public void setEndsGame(boolean endsGame) { this.endsGame = endsGame; }
+
+    public boolean isWin() { return win; }
+    public void setWin(boolean win) { this.win = win; }
+
+    public List<String> getGivenItems() { return givenItems; }
+    public void setGivenItems(List<String> givenItems) { this.givenItems = givenItems; }
+
+    public List<String> getUnlocks() { return unlocks; }
+    public void setUnlocks(List<String> unlocks) { this.unlocks = unlocks; }
 }
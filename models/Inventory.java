@@ -1,22 +1,118 @@
 package Main.model;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 /**
  * Holds the collection of {@link GameObject} items a player carries.
+ * Items are kept in pickup order for display, and also indexed by their
+ * interned item ID with a bitset of which IDs are held, so membership and
+ * "has all of these" checks do not compare strings.
+ * <p>
+ * {@link #snapshot()} and {@link #restore(Snapshot)} take O(1): the pickup
+ * order is a {@link PersistentSequence} and the ID index a {@link PersistentMap},
+ * so a change after a snapshot copies O(log n) nodes, not the whole inventory.
+ * The bitset is shared with snapshots and copied on the first change after
+ * one, which costs one long per 64 item IDs.
+ * </p>
  * @author Makaato
  */
 public class Inventory {
 
-    private List<GameObject> items = new ArrayList<>();
+    private final PersistentSequence<GameObject> items = new PersistentSequence<>();
+    private final List<GameObject> view = new AbstractList<GameObject>() {
+        @Override
+        public GameObject get(int index) {
+            return items.get(index);
+        }
+
+        @Override
+        public int size() {
+            return items.size();
+        }
+
+        @Override
+        public Iterator<GameObject> iterator() {
+            return items.list().iterator();
+        }
+    };
+
+    // Bit i of held is set while at least one item with ID i is carried
+    private long[] held = new long[1];
+    // True while a snapshot shares held, so the next change must copy it
+    private boolean heldShared;
+    // The first carried item with each ID
+    private final PersistentMap<Integer, GameObject> byId = new PersistentMap<>();
+    // How many more items are carried with an ID than the one in byId
+    private final PersistentMap<Integer, Integer> copies = new PersistentMap<>();
+    // Items that were never linked (ID -1) can only be found by scanning
+    private int unlinked;
+
+    // Registry of the world this inventory plays in, told about every add and remove
+    private ItemRegistry registry;
+
+    /**
+     * Connects this inventory to a world's item registry.
+     * Items already held are recorded as being in this inventory.
+     *
+     * @param registry the registry to keep up to date, or {@code null} to stop tracking
+     */
+    public void setRegistry(ItemRegistry registry) {
+        this.registry = registry;
+        if (registry != null) {
+            registry.carriedIn(this);
+            for (GameObject obj : items.list()) {
+                registry.placed(obj, ItemRegistry.Place.INVENTORY, this);
+            }
+        }
+    }
+
+    /**
+     * Builds the bit mask for a set of item IDs, for use with {@link #containsAll(long[])}.
+     *
+     * @param ids item IDs assigned by the world link step
+     * @return a mask with one bit set per ID
+     */
+    public static long[] mask(int[] ids) {
+        int max = -1;
+        for (int id : ids) {
+            max = Math.max(max, id);
+        }
+        long[] mask = new long[(max >> 6) + 1];
+        for (int id : ids) {
+            if (id >= 0) {
+                mask[id >> 6] |= 1L << id;
+            }
+        }
+        return mask;
+    }
 
     /**
      * Adds an item to the inventory.
      *
      * @param item the object to add
      */
-    public void addItem(GameObject item) { items.add(item); }
+    public void addItem(GameObject item) {
+        if (!items.add(item)) {
+            return;
+        }
+        int id = item.getId();
+        if (id < 0) {
+            unlinked++;
+        } else if (byId.get(id) == null) {
+            byId.put(id, item);
+            writableHeld(id)[id >> 6] |= 1L << id;
+        } else {
+            Integer more = copies.get(id);
+            copies.put(id, more == null ? 1 : more + 1);
+        }
+        if (registry != null) {
+            registry.placed(item, ItemRegistry.Place.INVENTORY, this);
+        }
+    }
 
     /**
      * Removes the first item with the given name (case-insensitive).
@@ -24,29 +120,107 @@ public class Inventory {
      * @param name the item name to remove
      */
     public void removeItem(String name) {
-        items.removeIf(i -> i.getName().equalsIgnoreCase(name));
+        GameObject item = findItem(name);
+        if (item != null) {
+            removeItem(item);
+        }
+    }
+
+    /**
+     * Removes an item with the given interned ID.
+     *
+     * @param id the item ID assigned by the world link step
+     */
+    public void removeItem(int id) {
+        if (hasItem(id)) {
+            removeItem(byId.get(id));
+        }
     }
 
     /**
-     * Returns the list of items in the inventory.
+     * Removes this exact object from the inventory.
      *
-     * @return mutable list of items
+     * @param item the object to remove
      */
-    public List<GameObject> listItems() { return items; }
+    public void removeItem(GameObject item) {
+        if (!items.remove(item)) {
+            return;
+        }
+        int id = item.getId();
+        Integer more = id < 0 ? null : copies.get(id);
+        if (id < 0) {
+            unlinked--;
+        } else if (more == null) {
+            byId.remove(id);
+            writableHeld(id)[id >> 6] &= ~(1L << id);
+        } else {
+            if (more == 1) {
+                copies.remove(id);
+            } else {
+                copies.put(id, more - 1);
+            }
+            if (byId.get(id) == item) {
+                // another copy with the same name is still carried
+                for (GameObject other : items.list()) {
+                    if (other.getId() == id) {
+                        byId.put(id, other);
+                        break;
+                    }
+                }
+            }
+        }
+        if (registry != null) {
+            registry.removed(item, this);
+        }
+    }
+
+    /**
+     * Returns the items in the inventory, in the order they were picked up.
+     * Use {@link #addItem(GameObject)} and {@link #removeItem(String)} to change it.
+     *
+     * @return read-only view of the items
+     */
+    public List<GameObject> listItems() { return view; }
 
     /**
      * Returns a list of item names currently in the inventory.
      *
-     * @return list of item names
+     * @return a new list of item names
      */
     public List<String> invItemNames() {
-        List<String> itemNames = new ArrayList<>();
-        for (GameObject obj : items) {
+        List<String> itemNames = new ArrayList<>(items.size());
+        for (GameObject obj : items.list()) {
             itemNames.add(obj.getName());
         }
         return itemNames;
     }
 
+    /**
+     * Checks whether an item with the given interned ID is held.
+     *
+     * @param id the item ID assigned by the world link step
+     * @return true if the inventory holds such an item
+     */
+    public boolean hasItem(int id) {
+        return id >= 0 && (id >> 6) < held.length && (held[id >> 6] & (1L << id)) != 0;
+    }
+
+    /**
+     * Checks whether every item in a mask from {@link #mask(int[])} is held.
+     *
+     * @param mask the required item bits
+     * @return true if all of them are held
+     */
+    public boolean containsAll(long[] mask) {
+        for (int i = 0; i < mask.length; i++) {
+            long have = i < held.length ? held[i] : 0;
+            if ((have & mask[i]) != mask[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Finds the first item with the given name (case-insensitive).
      *
@@ -54,9 +228,77 @@ public class Inventory {
      * @return the matching item, or {@code null} if not found
      */
     public GameObject findItem(String name) {
-        return items.stream()
-                .filter(i -> i.getName().equalsIgnoreCase(name))
-                .findFirst()
-                .orElse(null);
+        if (registry != null) {
+            int id = registry.getWorld().getItemId(name);
+            GameObject held = id >= 0 ? byId.get(id) : null;
+            if (held != null) {
+                return held;
+            }
+            if (unlinked == 0) {
+                return null;
+            }
+        }
+        for (GameObject obj : items.list()) {
+            if (obj.getName().equalsIgnoreCase(name)) {
+                return obj;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * What was carried at one moment. Never changes itself, so it can be kept
+     * and restored any number of times.
+     */
+    public static final class Snapshot {
+        private final PersistentSequence<GameObject> items;
+        private final PersistentMap<Integer, GameObject> byId;
+        private final PersistentMap<Integer, Integer> copies;
+        private final long[] held;
+        private final int unlinked;
+
+        private Snapshot(Inventory inventory) {
+            items = inventory.items.copy();
+            byId = inventory.byId.copy();
+            copies = inventory.copies.copy();
+            held = inventory.held;
+            unlinked = inventory.unlinked;
+        }
+    }
+
+    /**
+     * Saves what is carried, in O(1).
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        heldShared = true;
+        return new Snapshot(this);
+    }
+
+    /**
+     * Carries exactly what a snapshot says, in O(1). The registry is not told:
+     * restore the game's {@link WorldOverlay} from the same moment, which
+     * already places these items here.
+     *
+     * @param snapshot a snapshot of this inventory or of another in the same game
+     */
+    public void restore(Snapshot snapshot) {
+        items.setTo(snapshot.items);
+        byId.setTo(snapshot.byId);
+        copies.setTo(snapshot.copies);
+        held = snapshot.held;
+        heldShared = true;
+        unlinked = snapshot.unlinked;
+    }
+
+    // The bitset, ready to change the word holding this ID
+    private long[] writableHeld(int id) {
+        int words = (id >> 6) + 1;
+        if (heldShared || words > held.length) {
+            held = Arrays.copyOf(held, words > held.length ? Math.max(words, held.length * 2) : held.length);
+            heldShared = false;
+        }
+        return held;
     }
 }
@@ -0,0 +1,313 @@
+package Main.model;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of where every item in the world currently is, so an item can
+ * be found and moved by name without searching every location.
+ * Entries are indexed by the item IDs handed out by {@link World#internItem(String)}.
+ * {@link Location} and {@link Inventory} update it whenever objects move in or out.
+ * <p>
+ * A world's own registry records where items start. Each game played from a
+ * shared template gets a child registry (see {@link WorldOverlay}) that only
+ * stores the items that have moved and reads everything else from the parent.
+ * </p>
+ * @author Makaato
+ */
+public class ItemRegistry {
+
+    /**
+     * The kinds of places an item can be.
+     */
+    public enum Place {
+        /** The world's pool of items not yet placed (see {@link World#getInventoryItems()}). */
+        POOL,
+        /** Lying in a {@link Location}. */
+        LOCATION,
+        /** Hidden inside another {@link GameObject}. */
+        CONTAINER,
+        /** Carried by the player in an {@link Inventory}. */
+        INVENTORY
+    }
+
+    /**
+     * Where one item is. A slot with a null place means the item is gone.
+     * Slots are never changed once stored, so a child can share its parent's
+     * and saved copies of a game can share each other's.
+     */
+    static final class Slot {
+        final GameObject item;
+        final Place place;
+        final Object holder;
+
+        Slot(GameObject item, Place place, Object holder) {
+            this.item = item;
+            this.place = place;
+            this.holder = holder;
+        }
+    }
+
+    /**
+     * Supplies where an item starts out, for worlds that decode their items on
+     * first use (see Main.data.BinaryWorldLoader). It reports back through
+     * {@link ItemRegistry#placed(GameObject, Place, Object)}.
+     */
+    public interface Source {
+        void load(int id, ItemRegistry registry);
+    }
+
+    private final World world;
+
+    // Root registry: one slot per item ID
+    private Slot[] slots;
+    private final Source source;
+
+    // Child registry: changes on top of the parent, routed through the game's overlay
+    private final ItemRegistry parent;
+    private final WorldOverlay overlay;
+    private final PersistentMap<Integer, Slot> changes;
+    // The game's inventory, which every slot saying INVENTORY refers to (see #holder)
+    private Inventory carrier;
+
+    /**
+     * Creates an empty registry for a world.
+     *
+     * @param world the world whose item pool this registry tracks
+     */
+    public ItemRegistry(World world) {
+        this.world = world;
+        this.slots = new Slot[16];
+        this.source = null;
+        this.parent = null;
+        this.overlay = null;
+        this.changes = null;
+    }
+
+    /**
+     * Creates a registry that fills itself in from a {@link Source} the first
+     * time each item is asked about. Safe to share between threads.
+     *
+     * @param world     the world being tracked
+     * @param itemCount number of item IDs in the world
+     * @param source    decodes an item's starting place
+     */
+    public ItemRegistry(World world, int itemCount, Source source) {
+        this.world = world;
+        this.slots = new Slot[itemCount];
+        this.source = source;
+        this.parent = null;
+        this.overlay = null;
+        this.changes = null;
+    }
+
+    /**
+     * Creates a child registry for one game played on a shared world.
+     *
+     * @param parent  the world's registry, never written through this child
+     * @param overlay the game's overlay, which owns its copies of changed rooms
+     */
+    ItemRegistry(ItemRegistry parent, WorldOverlay overlay) {
+        this.world = parent.world;
+        this.slots = null;
+        this.source = null;
+        this.parent = parent;
+        this.overlay = overlay;
+        this.changes = new PersistentMap<>();
+    }
+
+    /**
+     * @return the world this registry belongs to
+     */
+    public World getWorld() {
+        return world;
+    }
+
+    /**
+     * Records that an object is now held somewhere.
+     *
+     * @param obj    the object that moved
+     * @param place  what kind of place it is now in
+     * @param holder the world (for the pool), location, container or inventory holding it
+     */
+    public void placed(GameObject obj, Place place, Object holder) {
+        int id = obj.getId();
+        if (id >= 0) {
+            store(id, new Slot(obj, place, holder));
+        }
+    }
+
+    /**
+     * Records that an object has left a holder. Ignored if the registry
+     * already has it somewhere else (it was added there first).
+     *
+     * @param obj    the object that left
+     * @param holder the holder it left
+     */
+    public void removed(GameObject obj, Object holder) {
+        int id = obj.getId();
+        Slot slot = slot(id);
+        if (slot == null || slot.item != obj || holder(slot) != holder) {
+            return;
+        }
+        store(id, new Slot(obj, null, null));
+    }
+
+    /**
+     * Returns the tracked object with the given item name.
+     *
+     * @param name item name (case-insensitive)
+     * @return the object, or {@code null} if no such item is tracked
+     */
+    public GameObject find(String name) {
+        return find(world.getItemId(name));
+    }
+
+    /**
+     * Returns the tracked object with the given item ID.
+     *
+     * @param id the item ID
+     * @return the object, or {@code null} if none is tracked
+     */
+    public GameObject find(int id) {
+        Slot slot = slot(id);
+        return slot == null ? null : slot.item;
+    }
+
+    /**
+     * Returns what kind of place an object is in.
+     *
+     * @param obj the object
+     * @return its place, or {@code null} if it is not anywhere the registry knows of
+     */
+    public Place placeOf(GameObject obj) {
+        Slot slot = slot(obj.getId());
+        return slot != null && slot.item == obj ? slot.place : null;
+    }
+
+    /**
+     * Returns the location, container, inventory or world holding an object.
+     *
+     * @param obj the object
+     * @return its holder, or {@code null} if unknown
+     */
+    public Object holderOf(GameObject obj) {
+        Slot slot = slot(obj.getId());
+        return slot != null && slot.item == obj ? holder(slot) : null;
+    }
+
+    /**
+     * Removes an object from wherever it currently is, without searching.
+     *
+     * @param obj the object to take
+     * @return true if it was found in a known place and removed
+     */
+    public boolean take(GameObject obj) {
+        Place place = placeOf(obj);
+        if (place == null) {
+            return false;
+        }
+        Object holder = holderOf(obj);
+        switch (place) {
+            case POOL:
+                if (overlay == null) {
+                    world.getInventoryItems().remove(obj);
+                }
+                removed(obj, holder);
+                break;
+            case LOCATION:
+                if (overlay == null) {
+                    ((Location) holder).removeObject(obj);
+                } else {
+                    overlay.removeObject((Location) holder, obj);
+                }
+                break;
+            case CONTAINER:
+                // a game's overlay only reveals contents the registry still places in the container
+                if (overlay == null) {
+                    ((GameObject) holder).getContainedObjects().remove(obj);
+                }
+                removed(obj, holder);
+                break;
+            case INVENTORY:
+                ((Inventory) holder).removeItem(obj);
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * @return how many items have moved in this child registry (0 for a root registry)
+     */
+    public int changeCount() {
+        return changes == null ? 0 : changes.size();
+    }
+
+    /**
+     * Records which inventory this game's carried items are in. Slots saved
+     * from another copy of the game name that copy's inventory, so they are
+     * read as naming this one.
+     *
+     * @param inventory the inventory that uses this registry
+     */
+    void carriedIn(Inventory inventory) {
+        if (overlay != null) {
+            carrier = inventory;
+        }
+    }
+
+    /**
+     * @return a copy of the moved items, for {@link WorldOverlay#snapshot()}
+     */
+    PersistentMap<Integer, Slot> copyChanges() {
+        return changes.copy();
+    }
+
+    /**
+     * Puts the moved items back as they were in a copy from {@link #copyChanges()}.
+     */
+    void restoreChanges(PersistentMap<Integer, Slot> saved) {
+        changes.setTo(saved);
+    }
+
+    private Object holder(Slot slot) {
+        return slot.place == Place.INVENTORY && carrier != null ? carrier : slot.holder;
+    }
+
+    private static long key(Slot slot) {
+        return slot == null ? 0 : Zobrist.item(slot.item, slot.place, slot.holder);
+    }
+
+    private Slot slot(int id) {
+        if (id < 0) {
+            return null;
+        }
+        if (changes != null) {
+            Slot changed = changes.get(id);
+            return changed != null ? changed : parent.slot(id);
+        }
+        Slot slot = id < slots.length ? slots[id] : null;
+        if (slot == null && source != null && id < slots.length) {
+            synchronized (this) {
+                slot = slots[id];
+                if (slot == null) {
+                    source.load(id, this);
+                    slot = slots[id];
+                }
+            }
+        }
+        return slot;
+    }
+
+    private void store(int id, Slot slot) {
+        if (changes != null) {
+            overlay.toggleHash(key(slot(id)) ^ key(slot));
+            changes.put(id, slot);
+            overlay.itemMoved(slot.item, slot.place, slot.holder);
+            return;
+        }
+        if (id >= slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(id + 1, slots.length * 2));
+        }
+        slots[id] = slot;
+    }
+}
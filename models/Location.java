@@ -1,3 +1,11 @@
+package Main.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  *Author Makaato Serumaga
  * A place in the game world with objects, characters, and connections.
@@ -12,19 +20,45 @@ public class Location {
     private boolean accessible;
     private List<String> requiredItems = new ArrayList<>();
     private List<String> requiredInv = new ArrayList<>();
+    // Item IDs for the two lists above, filled in by the world link step
+    private transient int[] requiredItemIds = new int[0];
+    private transient int[] requiredInvIds = new int[0];
+    // Same requirements as bit masks for Inventory.containsAll
+    private transient long[] requiredItemMask = new long[0];
+    private transient long[] requiredInvMask = new long[0];
 
     private List<Connection> connections = new ArrayList<>();
     private List<GameObject> objects = new ArrayList<>();
     private List<NPC> characters = new ArrayList<>();
 
+    // World whose name index holds this location; not part of the JSON
+    private transient World world;
+
+    /**
+     * Runtime indexes over the lists above, built on first use.
+     * objectIndex keeps arrival order and gives O(1) lookup and removal; objects is only the loaded list.
+     */
+    private transient ObjectIndex objectIndex;
+    private transient Map<String, NPC> characterIndex;
+
     /** Creates an empty location. */
     public Location() {}
 
     /** @return the location name. */
     public String getName() { return name; }
 
-    /** @param name new location name. */
-    public void setName(String name) { this.name = name; }
+    /** @param name new location name; keeps the owning world's index in sync. */
+    public void setName(String name) {
+        checkWritable();
+        String old = this.name;
+        this.name = name;
+        if (world != null) {
+            world.locationRenamed(this, old);
+        }
+    }
+
+    /** @param world the world that indexes this location. */
+    void setWorld(World world) { this.world = world; }
 
     /** @return the location description. */
     public String getDescription() { return description; }
@@ -38,11 +72,14 @@ public class Location {
     /** @param imagePath resource path to the image. */
     public void setImagePath(String imagePath) { this.imagePath = imagePath; }
 
-    /** @return true if the location is currently accessible. */
+    /** @return true if the location starts out accessible; unlocks made during a game live in its {@link WorldOverlay}. */
     public boolean getAccessible() { return accessible; }
 
     /** @param accessible whether the location can be entered. */
-    public void setAccessible(boolean accessible) { this.accessible = accessible; }
+    public void setAccessible(boolean accessible) {
+        checkWritable();
+        this.accessible = accessible;
+    }
 
     /** @return item names required to enter this location. */
     public List<String> getRequiredItems() { return requiredItems; }
@@ -56,30 +93,170 @@ public class Location {
     /** @param requiredInv new list of required inventory names. */
     public void setRequiredInv(List<String> requiredInv) { this.requiredInv = requiredInv; }
 
+    /** @return linked item IDs of {@link #getRequiredItems()}. */
+    public int[] getRequiredItemIds() { return requiredItemIds; }
+
+    /** @param requiredItemIds item IDs consumed when unlocking; also rebuilds the mask. */
+    public void setRequiredItemIds(int[] requiredItemIds) {
+        this.requiredItemIds = requiredItemIds;
+        this.requiredItemMask = Inventory.mask(requiredItemIds);
+    }
+
+    /** @return linked item IDs of {@link #getRequiredInv()}. */
+    public int[] getRequiredInvIds() { return requiredInvIds; }
+
+    /** @param requiredInvIds item IDs that must be held to enter; also rebuilds the mask. */
+    public void setRequiredInvIds(int[] requiredInvIds) {
+        this.requiredInvIds = requiredInvIds;
+        this.requiredInvMask = Inventory.mask(requiredInvIds);
+    }
+
+    /** @return bit mask of {@link #getRequiredItemIds()}. */
+    public long[] getRequiredItemMask() { return requiredItemMask; }
+
+    /** @return bit mask of {@link #getRequiredInvIds()}. */
+    public long[] getRequiredInvMask() { return requiredInvMask; }
+
     /** @return outgoing connections. */
     public List<Connection> getConnections() { return connections; }
 
     /** @param connections new connections list. */
     public void setConnections(List<Connection> connections) { this.connections = connections; }
 
-    /** @return objects currently in this location. */
-    public List<GameObject> getObjects() { return objects; }
+    /** @return objects currently in this location, in the order they arrived (read-only). */
+    public List<GameObject> getObjects() {
+        return objectIndex().list();
+    }
 
     /** @param objects new list of objects in this location. */
-    public void setObjects(List<GameObject> objects) { this.objects = objects; }
+    public void setObjects(List<GameObject> objects) {
+        checkWritable();
+        if (world != null) {
+            for (GameObject old : getObjects()) {
+                world.objectChanged(old, false);
+            }
+        }
+        this.objects = objects;
+        this.objectIndex = null;
+        if (world != null) {
+            for (GameObject obj : objects) {
+                world.getItemRegistry().placed(obj, ItemRegistry.Place.LOCATION, this);
+                world.objectChanged(obj, true);
+            }
+        }
+    }
 
-    /** @return characters present in this location. */
-    public List<NPC> getCharacters() { return characters; }
+    /** @return characters present in this location (read-only). */
+    public List<NPC> getCharacters() {
+        indexCharacters();
+        return Collections.unmodifiableList(characters);
+    }
 
     /** @param characters new list of characters in this location. */
-    public void setCharacters(List<NPC> characters) { this.characters = characters; }
+    public void setCharacters(List<NPC> characters) {
+        checkWritable();
+        if (world != null) {
+            for (NPC old : getCharacters()) {
+                world.characterChanged(old, false);
+            }
+            if (characters != null) {
+                for (NPC npc : characters) {
+                    world.characterChanged(npc, true);
+                }
+            }
+        }
+        this.characters = characters;
+        this.characterIndex = null;
+    }
 
     /** Adds an object to this location. */
-    public void addObject(GameObject obj) { objects.add(obj); }
+    public void addObject(GameObject obj) {
+        checkWritable();
+        if (objectIndex().add(obj) && world != null) {
+            world.getItemRegistry().placed(obj, ItemRegistry.Place.LOCATION, this);
+            world.objectChanged(obj, true);
+        }
+    }
 
-    /** Removes an object with the given name from this location. */
+    /** Removes the first object with the given name from this location. */
     public void removeObject(String name) {
-        objects.removeIf(o -> o.getName().equalsIgnoreCase(name));
+        GameObject obj = findObject(name);
+        if (obj != null) {
+            removeObject(obj);
+        }
+    }
+
+    /** Removes this exact object from this location. */
+    public void removeObject(GameObject obj) {
+        checkWritable();
+        if (objectIndex().remove(obj) && world != null) {
+            world.getItemRegistry().removed(obj, this);
+            world.objectChanged(obj, false);
+        }
+    }
+
+    /**
+     * Finds an object in this location by name (case-insensitive).
+     *
+     * @param name object name
+     * @return the first object with that name, or null if none.
+     */
+    public GameObject findObject(String name) {
+        return objectIndex().find(name);
+    }
+
+    /**
+     * Finds a character in this location by name (case-insensitive).
+     *
+     * @param name NPC name
+     * @return the first NPC with that name, or null if none.
+     */
+    public NPC findCharacter(String name) {
+        if (name == null) {
+            return null;
+        }
+        indexCharacters();
+        return characterIndex.get(ObjectIndex.key(name));
+    }
+
+    /**
+     * Builds the runtime indexes now, so a frozen world is never written to
+     * by lazy initialisation while several games read it.
+     */
+    void buildIndexes() {
+        objectIndex().list();
+        indexCharacters();
+    }
+
+    /** @return the object index for this location, built from the loaded list on first use. */
+    ObjectIndex objectIndex() {
+        if (objectIndex == null) {
+            objectIndex = new ObjectIndex(objects);
+        }
+        return objectIndex;
+    }
+
+    private void indexCharacters() {
+        if (characterIndex != null) {
+            return;
+        }
+        if (characters == null) {
+            characters = new ArrayList<>();
+        }
+        Map<String, NPC> index = new HashMap<>();
+        for (NPC npc : characters) {
+            if (npc.getName() != null) {
+                index.putIfAbsent(ObjectIndex.key(npc.getName()), npc);
+            }
+        }
+        characterIndex = index;
+    }
+
+    /** Throws if this location belongs to a frozen (shared, read-only) world. */
+    private void checkWritable() {
+        if (world != null && world.isFrozen()) {
+            throw new IllegalStateException("Location '" + name + "' belongs to a read-only world template");
+        }
     }
 
     /**
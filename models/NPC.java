@@ -25,6 +25,14 @@ public class NPC {
 
     private int dialogueIndex = 0;
 
+    /**
+     * Resolved versions of the name lists above, filled in by the world link step
+     */
+    private transient int[] wantedIds = new int[0];
+    private transient List<GameObject> rewards = new ArrayList<>();
+    // Position among the world's NPCs, so give rules can be keyed by an int; -1 until linked
+    private transient int id = -1;
+
     public NPC() {}
 
     public String getName() { return name; }
@@ -45,9 +53,46 @@ public class NPC {
     public List<String> getGivenItems() { return givenItems; }
     public void setGivenItems(List<String> givenItems) { this.givenItems = givenItems; }
 
+    public int[] getWantedIds() { return wantedIds; }
+    public void setWantedIds(int[] wantedIds) { this.wantedIds = wantedIds; }
+
+    public List<GameObject> getRewards() { return rewards; }
+    public void setRewards(List<GameObject> rewards) { this.rewards = rewards; }
+
+    public int getId() { return id; }
+    public void setId(int id) { this.id = id; }
+
+    /**
+     * Checks if the NPC wants an item, using the linked IDs
+     * @param itemId
+     * @return
+     */
+    public boolean wants(int itemId) {
+        for (int id : wantedIds) {
+            if (id == itemId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public String talk() {
+        String line = phraseAt(dialogueIndex);
         if (dialogueIndex < phrases.size()) {
-            return phrases.get(dialogueIndex++);
+            dialogueIndex++;
+        }
+        return line;
+    }
+
+    /**
+     * Returns the line for a given point in the conversation, without advancing it.
+     * Games played from a shared template keep their own dialogue index (see WorldOverlay)
+     * @param index
+     * @return
+     */
+    public String phraseAt(int index) {
+        if (index < phrases.size()) {
+            return phrases.get(index);
         }
         return name + " has nothing more to say.";
     }
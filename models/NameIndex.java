@@ -0,0 +1,350 @@
+package Main.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Finds names that are close to a misspelled one, so "fluffy princes sunshine sparkle"
+ * still reaches "Fluffy Princess Sunshine Sparkles".
+ * Closeness is edit distance (Levenshtein) between lower-case forms, and how many
+ * typos are forgiven depends on the length of what was typed.
+ * Lookups use the pigeonhole rule: if a name is cut into k+1 pieces, any text
+ * within k edits of it still contains one of those pieces unchanged, shifted by
+ * at most k characters. Every name is indexed by its pieces for each k, so a
+ * lookup only checks the few names that share a piece with what was typed,
+ * and confirms them with the bit-parallel edit distance.
+ * Names are counted, so the same name may be added once per object that has it and
+ * only disappears once every one of them has been removed.
+ * Reads may happen from many threads once the index stops changing (a frozen world).
+ * @author Makaato
+ */
+public class NameIndex {
+
+    /** The most names offered in a "did you mean" list. */
+    public static final int MAX_SUGGESTIONS = 5;
+
+    /**
+     * The outcome of resolving a name.
+     */
+    public static final class Match {
+        private static final Match NONE = new Match(null, Collections.emptyList());
+
+        private final String name;
+        private final List<String> suggestions;
+
+        private Match(String name, List<String> suggestions) {
+            this.name = name;
+            this.suggestions = suggestions;
+        }
+
+        /** @return the one name that was meant, or {@code null} if it is not clear */
+        public String getName() { return name; }
+
+        /** @return close names to offer when there is no single best one, nearest first */
+        public List<String> getSuggestions() { return suggestions; }
+    }
+
+    private static final class Node {
+        final String key;
+        final String name;
+        int count;
+
+        Node(String key, String name) {
+            this.key = key;
+            this.name = name;
+        }
+    }
+
+    // Largest number of typos ever forgiven, see maxDistance
+    private static final int MAX_K = 3;
+
+    private final Map<String, Node> byKey = new HashMap<>();
+    // Names by piece: see pieceKey for what goes into the key
+    private final Map<Long, List<Node>> byPiece = new HashMap<>();
+    private int size;
+
+    /**
+     * Adds a name, or counts it again if it is already known.
+     *
+     * @param name the name as it should be shown
+     */
+    public void add(String name) {
+        if (name == null || name.isBlank()) {
+            return;
+        }
+        String key = key(name);
+        Node node = byKey.get(key);
+        if (node == null) {
+            node = new Node(key, name);
+            byKey.put(key, node);
+            addPieces(node);
+        }
+        if (node.count++ == 0) {
+            size++;
+        }
+    }
+
+    /**
+     * Forgets one use of a name. The name stops matching once it has been
+     * removed as many times as it was added.
+     *
+     * @param name the name to remove
+     */
+    public void remove(String name) {
+        if (name == null) {
+            return;
+        }
+        Node node = byKey.get(key(name));
+        if (node != null && node.count > 0 && --node.count == 0) {
+            size--;
+        }
+    }
+
+    /**
+     * @param name a name, any case
+     * @return true if the exact name is known
+     */
+    public boolean contains(String name) {
+        Node node = name == null ? null : byKey.get(key(name));
+        return node != null && node.count > 0;
+    }
+
+    /** @return how many distinct names are known */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the most typos forgiven for something of this length:
+     * none up to 3 characters, 1 up to 6, 2 up to 15 and 3 beyond that.
+     *
+     * @param length length of what was typed
+     * @return the largest edit distance accepted
+     */
+    public static int maxDistance(int length) {
+        return length <= 3 ? 0 : length <= 6 ? 1 : length <= 15 ? 2 : 3;
+    }
+
+    /**
+     * Resolves what a player typed to a known name.
+     * An exact match always wins. Otherwise the closest names within
+     * {@link #maxDistance(int)} are found; if one is strictly closer than the rest
+     * it is the match, and if several tie they are returned as suggestions.
+     *
+     * @param typed  what the player typed
+     * @param accept only names this accepts are considered (for example, things in the room)
+     * @return the match, never {@code null}
+     */
+    public Match resolve(String typed, Predicate<String> accept) {
+        if (typed == null || typed.isBlank()) {
+            return Match.NONE;
+        }
+        String key = key(typed);
+        Node exact = byKey.get(key);
+        if (exact != null && exact.count > 0 && accept.test(exact.name)) {
+            return new Match(exact.name, Collections.emptyList());
+        }
+        List<Node> found = new ArrayList<>();
+        int[] dist = search(key, maxDistance(key.length()), accept, found);
+        if (found.isEmpty()) {
+            return Match.NONE;
+        }
+
+        // nearest first, then alphabetical so the list is stable
+        Integer[] order = new Integer[found.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> dist[a] != dist[b] ? dist[a] - dist[b] : found.get(a).key.compareTo(found.get(b).key));
+
+        List<String> suggestions = new ArrayList<>();
+        for (int i = 0; i < order.length && suggestions.size() < MAX_SUGGESTIONS; i++) {
+            suggestions.add(found.get(order[i]).name);
+        }
+        boolean unique = order.length == 1 || dist[order[0]] < dist[order[1]];
+        if (unique) {
+            return new Match(suggestions.get(0), Collections.emptyList());
+        }
+        return new Match(null, Collections.unmodifiableList(suggestions));
+    }
+
+    /**
+     * Collects every live name within {@code k} edits of the key.
+     *
+     * @return the distance of each collected node, by position in {@code out}
+     */
+    private int[] search(String key, int k, Predicate<String> accept, List<Node> out) {
+        int[] dists = new int[8];
+        if (k == 0) {
+            return dists; // only an exact match counts, and there was none
+        }
+        Distance distance = new Distance(key);
+        Set<Node> checked = Collections.newSetFromMap(new IdentityHashMap<>());
+        int q = key.length();
+        for (int length = Math.max(k + 1, q - k); length <= q + k; length++) {
+            for (int piece = 0; piece <= k; piece++) {
+                int start = pieceStart(length, k, piece);
+                int size = pieceStart(length, k, piece + 1) - start;
+                // Where the piece can sit in what was typed. If it is the first unchanged piece,
+                // the pieces before it hold at least one edit each and the ones after it share
+                // the rest, which bounds how far it moved (the window used by Pass-Join).
+                int delta = q - length;
+                int from = Math.max(0, Math.max(start - piece, start + delta - (k - piece)));
+                int to = Math.min(q - size, Math.min(start + piece, start + delta + (k - piece)));
+                for (int at = from; at <= to; at++) {
+                    List<Node> nodes = byPiece.get(pieceKey(k, length, piece, key, at, size));
+                    if (nodes == null) {
+                        continue;
+                    }
+                    for (Node node : nodes) {
+                        if (node.key.length() != length || node.count == 0 || !checked.add(node)) {
+                            continue;
+                        }
+                        int d = distance.to(node.key);
+                        if (d <= k && accept.test(node.name)) {
+                            if (out.size() == dists.length) {
+                                dists = Arrays.copyOf(dists, dists.length * 2);
+                            }
+                            dists[out.size()] = d;
+                            out.add(node);
+                        }
+                    }
+                }
+            }
+        }
+        return dists;
+    }
+
+    /**
+     * Indexes a new name by its pieces for every number of typos it could be looked up with.
+     */
+    private void addPieces(Node node) {
+        int length = node.key.length();
+        for (int k = 1; k <= MAX_K && length >= k + 1; k++) {
+            for (int piece = 0; piece <= k; piece++) {
+                int start = pieceStart(length, k, piece);
+                int size = pieceStart(length, k, piece + 1) - start;
+                byPiece.computeIfAbsent(pieceKey(k, length, piece, node.key, start, size), x -> new ArrayList<>(2))
+                        .add(node);
+            }
+        }
+    }
+
+    /**
+     * Where piece {@code piece} of {@code k + 1} starts in a name of the given length.
+     * Pieces differ in length by at most one, longer ones last.
+     */
+    private static int pieceStart(int length, int k, int piece) {
+        int pieces = k + 1;
+        int base = length / pieces;
+        int shorter = pieces - length % pieces;
+        return piece * base + Math.max(0, piece - shorter);
+    }
+
+    /**
+     * Hashes a piece's text together with the scheme it was cut by (k, name length and
+     * which piece). Different pieces may share a key; every candidate is checked anyway.
+     */
+    private static long pieceKey(int k, int length, int piece, String text, int start, int size) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < start + size; i++) {
+            h = (h ^ text.charAt(i)) * 0x100000001b3L;
+        }
+        return h * 31 + (((long) length << 8) | (k << 4) | piece);
+    }
+
+    private static String key(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Levenshtein distance from one fixed string to many others.
+     * Strings of up to 64 characters use Myers' bit-vector algorithm
+     * (as formulated by Hyyro), which does a handful of word operations per
+     * character; longer ones fall back to the usual two-row table.
+     */
+    static final class Distance {
+        private final String pattern;
+        private final long[] ascii;
+        private Map<Character, Long> other;
+
+        Distance(String pattern) {
+            this.pattern = pattern;
+            if (pattern.length() <= 64) {
+                ascii = new long[128];
+                for (int i = 0; i < pattern.length(); i++) {
+                    char c = pattern.charAt(i);
+                    if (c < 128) {
+                        ascii[c] |= 1L << i;
+                    } else {
+                        if (other == null) {
+                            other = new HashMap<>();
+                        }
+                        other.merge(c, 1L << i, (a, b) -> a | b);
+                    }
+                }
+            } else {
+                ascii = null;
+            }
+        }
+
+        int to(String text) {
+            int m = pattern.length();
+            if (m == 0) {
+                return text.length();
+            }
+            if (ascii == null) {
+                return table(pattern, text);
+            }
+            long last = 1L << (m - 1);
+            long pv = m == 64 ? -1L : (1L << m) - 1;
+            long mv = 0;
+            int score = m;
+            for (int j = 0, n = text.length(); j < n; j++) {
+                char c = text.charAt(j);
+                long eq = c < 128 ? ascii[c] : other == null ? 0 : other.getOrDefault(c, 0L);
+                long xv = eq | mv;
+                long xh = (((eq & pv) + pv) ^ pv) | eq;
+                long ph = mv | ~(xh | pv);
+                long mh = pv & xh;
+                if ((ph & last) != 0) {
+                    score++;
+                } else if ((mh & last) != 0) {
+                    score--;
+                }
+                ph = (ph << 1) | 1;
+                mh <<= 1;
+                pv = mh | ~(xv | ph);
+                mv = ph & xv;
+            }
+            return score;
+        }
+
+        static int table(String a, String b) {
+            int[] prev = new int[b.length() + 1];
+            int[] cur = new int[b.length() + 1];
+            for (int j = 0; j <= b.length(); j++) {
+                prev[j] = j;
+            }
+            for (int i = 1; i <= a.length(); i++) {
+                cur[0] = i;
+                for (int j = 1; j <= b.length(); j++) {
+                    int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                    cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                }
+                int[] swap = prev;
+                prev = cur;
+                cur = swap;
+            }
+            return prev[b.length()];
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package Main.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The objects lying in one room: kept in the order they arrived, with a
+ * case-insensitive name index holding every object of each name, so lookup
+ * and removal do not scan the room.
+ * Rooms of up to {@value #SMALL} objects skip the index and keep a plain
+ * array that is scanned instead, which is as fast at that size and makes
+ * copying the room a single array copy.
+ * Larger rooms keep their objects in a {@link PersistentSequence} and the
+ * name index in a {@link PersistentMap} of per-name buckets, so copying one is O(1) and the
+ * copy's changes cost O(log n) each.
+ * Used by {@link Location} for the loaded world and copied by
+ * {@link WorldOverlay} when a game first changes a room (and again after each
+ * snapshot, since snapshots share the copy).
+ * @author Makaato
+ */
+class ObjectIndex {
+
+    static final int SMALL = 16;
+
+    // While the room is small: its objects in arrival order, otherwise null
+    private GameObject[] small;
+    private int size;
+    // Once the room has grown past SMALL
+    private PersistentSequence<GameObject> objects;
+    // Every object of each name, in arrival order; a bucket is replaced, never changed
+    private PersistentMap<String, GameObject[]> byName;
+    // The small array as a list, cached until the next change
+    private List<GameObject> view;
+    // The overlay edit allowed to change this copy in place (see WorldOverlay#writableRoom)
+    Object owner;
+
+    /**
+     * Creates an index over the given objects.
+     *
+     * @param initial starting objects, in display order
+     */
+    ObjectIndex(List<GameObject> initial) {
+        small = new GameObject[initial == null ? 0 : Math.min(initial.size(), SMALL)];
+        if (initial != null) {
+            for (GameObject obj : initial) {
+                add(obj);
+            }
+        }
+    }
+
+    /**
+     * Creates an independent copy of another index.
+     *
+     * @param other the index to copy
+     */
+    ObjectIndex(ObjectIndex other) {
+        if (other.small != null) {
+            small = other.small.clone();
+        } else {
+            objects = other.objects.copy();
+            byName = other.byName.copy();
+        }
+        size = other.size;
+        view = other.view;
+    }
+
+    /**
+     * @return the objects in arrival order (read-only, cached until the next change)
+     */
+    List<GameObject> list() {
+        if (small == null) {
+            return objects.list();
+        }
+        if (view == null) {
+            view = Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(small, size)));
+        }
+        return view;
+    }
+
+    /**
+     * @return true if the object is in this index
+     */
+    boolean contains(GameObject obj) {
+        return small != null ? indexOf(obj) >= 0 : objects.contains(obj);
+    }
+
+    /**
+     * @return the first object with that name, or null
+     */
+    GameObject find(String name) {
+        if (name == null) {
+            return null;
+        }
+        if (small == null) {
+            GameObject[] named = byName.get(key(name));
+            return named == null ? null : named[0];
+        }
+        for (int i = 0; i < size; i++) {
+            String other = small[i].getName();
+            if (other == null ? name.isEmpty() : other.equalsIgnoreCase(name)) {
+                return small[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds an object at the end.
+     *
+     * @return false if it was already present
+     */
+    boolean add(GameObject obj) {
+        if (small != null) {
+            if (indexOf(obj) >= 0) {
+                return false;
+            }
+            if (size == SMALL) {
+                index();
+            } else {
+                if (size == small.length) {
+                    small = Arrays.copyOf(small, Math.min(SMALL, Math.max(4, size * 2)));
+                }
+                small[size++] = obj;
+                view = null;
+                return true;
+            }
+        }
+        if (!objects.add(obj)) {
+            return false;
+        }
+        size++;
+        named(obj);
+        return true;
+    }
+
+    /**
+     * Removes this exact object.
+     *
+     * @return false if it was not present
+     */
+    boolean remove(GameObject obj) {
+        if (small != null) {
+            int i = indexOf(obj);
+            if (i < 0) {
+                return false;
+            }
+            System.arraycopy(small, i + 1, small, i, size - i - 1);
+            small[--size] = null;
+            view = null;
+            return true;
+        }
+        if (!objects.remove(obj)) {
+            return false;
+        }
+        size--;
+        String key = key(obj.getName());
+        GameObject[] named = byName.get(key);
+        if (named.length == 1) {
+            byName.remove(key);
+        } else {
+            GameObject[] rest = new GameObject[named.length - 1];
+            for (int k = 0, n = 0; k < named.length; k++) {
+                if (named[k] != obj) {
+                    rest[n++] = named[k];
+                }
+            }
+            byName.put(key, rest);
+        }
+        return true;
+    }
+
+    private int indexOf(GameObject obj) {
+        for (int i = 0; i < size; i++) {
+            if (small[i] == obj) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // The room has outgrown scanning: move its objects into the sequence and name index
+    private void index() {
+        objects = new PersistentSequence<>();
+        byName = new PersistentMap<>();
+        for (int i = 0; i < size; i++) {
+            objects.add(small[i]);
+            named(small[i]);
+        }
+        small = null;
+        view = null;
+    }
+
+    // Adds an object at the end of its name's bucket
+    private void named(GameObject obj) {
+        String key = key(obj.getName());
+        GameObject[] named = byName.get(key);
+        if (named == null) {
+            byName.put(key, new GameObject[] {obj});
+        } else {
+            GameObject[] more = Arrays.copyOf(named, named.length + 1);
+            more[named.length] = obj;
+            byName.put(key, more);
+        }
+    }
+
+    static String key(String name) {
+        return name == null ? "" : name.toLowerCase(Locale.ROOT);
+    }
+}
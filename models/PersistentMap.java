@@ -0,0 +1,335 @@
+package Main.model;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * A hash map whose copies share structure, used for everything one game
+ * changes so that a game can be saved, restored and forked in O(1).
+ * <p>
+ * Entries live in a hash array mapped trie: 32-way nodes indexed by five bits
+ * of the key's hash at a time, holding only the slots in use. {@link #copy()}
+ * hands out the current trie and stops this map from changing any node it
+ * already has; from then on a change copies just the nodes on the path to
+ * the changed entry (a few dozen bytes for small maps), and both maps go on
+ * sharing the rest. Until the next copy, changes reuse the nodes this map has
+ * already copied, so a map that is never copied costs about what a
+ * {@link java.util.HashMap} would. Keys use {@code equals}/{@code hashCode}, which
+ * for the model's locations, NPCs and objects means identity.
+ * </p>
+ * Not thread-safe, but tries handed out by {@link #copy()} never change and can
+ * be read from any thread.
+ * @author Makaato
+ */
+final class PersistentMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final Object[] NO_ENTRIES = new Object[0];
+
+    /**
+     * One level of the trie. {@code array} holds a key and value for each bit
+     * set in {@code bitmap}; a null key means the value is the next level down.
+     * Below the last level (all 32 hash bits used) a node is a plain list of
+     * keys and values whose hashes are equal, and its bitmap is unused.
+     */
+    private static final class Node {
+        final Object edit;
+        int bitmap;
+        Object[] array;
+
+        Node(Object edit, int bitmap, Object[] array) {
+            this.edit = edit;
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+    }
+
+    private Node root;
+    private int size;
+    // Nodes created under this token may be changed in place; a copy replaces it
+    private Object edit = new Object();
+    // Set by put and remove when the size changes
+    private boolean resized;
+
+    /**
+     * Creates an empty map.
+     */
+    PersistentMap() {
+    }
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @return the number of entries
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the value for the key, or null if it has none
+     */
+    @SuppressWarnings("unchecked")
+    V get(Object key) {
+        int hash = key.hashCode();
+        Node node = root;
+        for (int shift = 0; node != null; shift += BITS) {
+            Object[] array = node.array;
+            if (shift >= Integer.SIZE) {
+                for (int i = 0; i < array.length; i += 2) {
+                    if (key.equals(array[i])) {
+                        return (V) array[i + 1];
+                    }
+                }
+                return null;
+            }
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            int i = 2 * Integer.bitCount(node.bitmap & (bit - 1));
+            Object k = array[i];
+            if (k != null) {
+                return key.equals(k) ? (V) array[i + 1] : null;
+            }
+            node = (Node) array[i + 1];
+        }
+        return null;
+    }
+
+    /**
+     * Looks up an item-ID key without boxing it.
+     *
+     * @return the value for the key, or null if it has none
+     */
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        Node node = root;
+        for (int shift = 0; node != null; shift += BITS) {
+            Object[] array = node.array;
+            if (shift >= Integer.SIZE) {
+                for (int i = 0; i < array.length; i += 2) {
+                    if (array[i] instanceof Integer && (Integer) array[i] == key) {
+                        return (V) array[i + 1];
+                    }
+                }
+                return null;
+            }
+            int bit = 1 << ((key >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            int i = 2 * Integer.bitCount(node.bitmap & (bit - 1));
+            Object k = array[i];
+            if (k != null) {
+                return k instanceof Integer && (Integer) k == key ? (V) array[i + 1] : null;
+            }
+            node = (Node) array[i + 1];
+        }
+        return null;
+    }
+
+    /**
+     * Sets the value for a key.
+     *
+     * @param value the value, never null
+     */
+    void put(K key, V value) {
+        resized = false;
+        root = put(root == null ? new Node(edit, 0, NO_ENTRIES) : root, 0, key.hashCode(), key, value);
+        if (resized) {
+            size++;
+        }
+    }
+
+    /**
+     * Removes a key and its value, if present.
+     */
+    void remove(Object key) {
+        if (root == null) {
+            return;
+        }
+        resized = false;
+        root = remove(root, 0, key.hashCode(), key);
+        if (resized) {
+            size--;
+        }
+    }
+
+    /**
+     * Returns a map with the same entries, in O(1). Neither map's later
+     * changes show in the other.
+     *
+     * @return the copy
+     */
+    PersistentMap<K, V> copy() {
+        edit = new Object();
+        return new PersistentMap<>(root, size);
+    }
+
+    /**
+     * Makes this map hold the same entries as another, in O(1), e.g. to go back
+     * to a copy saved earlier. Neither map's later changes show in the other.
+     *
+     * @param other the map to take the entries of
+     */
+    void setTo(PersistentMap<K, V> other) {
+        other.edit = new Object();
+        edit = new Object();
+        root = other.root;
+        size = other.size;
+    }
+
+    /**
+     * Calls the action for every entry, in no particular order.
+     */
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        if (root != null) {
+            forEach(root, action);
+        }
+    }
+
+    /**
+     * @return a read-only view of the keys, showing later changes
+     */
+    Set<K> keys() {
+        return new AbstractSet<K>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o != null && get(o) != null;
+            }
+
+            @Override
+            public Iterator<K> iterator() {
+                List<K> keys = new ArrayList<>(size);
+                PersistentMap.this.forEach((k, v) -> keys.add(k));
+                return Collections.unmodifiableList(keys).iterator();
+            }
+        };
+    }
+
+    private Node put(Node node, int shift, int hash, Object key, Object value) {
+        Object[] array = node.array;
+        if (shift >= Integer.SIZE) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return array[i + 1] == value ? node : set(node, i, key, value);
+                }
+            }
+            resized = true;
+            Object[] grown = Arrays.copyOf(array, array.length + 2);
+            grown[array.length] = key;
+            grown[array.length + 1] = value;
+            return replace(node, 0, grown);
+        }
+        int bit = 1 << ((hash >>> shift) & MASK);
+        int i = 2 * Integer.bitCount(node.bitmap & (bit - 1));
+        if ((node.bitmap & bit) == 0) {
+            resized = true;
+            Object[] grown = new Object[array.length + 2];
+            System.arraycopy(array, 0, grown, 0, i);
+            grown[i] = key;
+            grown[i + 1] = value;
+            System.arraycopy(array, i, grown, i + 2, array.length - i);
+            return replace(node, node.bitmap | bit, grown);
+        }
+        Object k = array[i];
+        Object v = array[i + 1];
+        if (k == null) {
+            Node child = put((Node) v, shift + BITS, hash, key, value);
+            return child == v ? node : set(node, i, null, child);
+        }
+        if (key.equals(k)) {
+            return v == value ? node : set(node, i, k, value);
+        }
+        // two keys share this slot, so both move one level down
+        Node child = put(new Node(edit, 0, NO_ENTRIES), shift + BITS, k.hashCode(), k, v);
+        child = put(child, shift + BITS, hash, key, value);
+        return set(node, i, null, child);
+    }
+
+    private Node remove(Node node, int shift, int hash, Object key) {
+        Object[] array = node.array;
+        if (shift >= Integer.SIZE) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    resized = true;
+                    return array.length == 2 ? null : replace(node, 0, without(array, i));
+                }
+            }
+            return node;
+        }
+        int bit = 1 << ((hash >>> shift) & MASK);
+        if ((node.bitmap & bit) == 0) {
+            return node;
+        }
+        int i = 2 * Integer.bitCount(node.bitmap & (bit - 1));
+        Object k = array[i];
+        if (k == null) {
+            Node child = remove((Node) array[i + 1], shift + BITS, hash, key);
+            if (child == array[i + 1]) {
+                return node;
+            }
+            if (child != null) {
+                return set(node, i, null, child);
+            }
+        } else if (!key.equals(k)) {
+            return node;
+        } else {
+            resized = true;
+        }
+        return node.bitmap == bit ? null : replace(node, node.bitmap & ~bit, without(array, i));
+    }
+
+    private static Object[] without(Object[] array, int i) {
+        Object[] shrunk = new Object[array.length - 2];
+        System.arraycopy(array, 0, shrunk, 0, i);
+        System.arraycopy(array, i + 2, shrunk, i, array.length - i - 2);
+        return shrunk;
+    }
+
+    // Changes one slot, in place if this map owns the node
+    private Node set(Node node, int i, Object key, Object value) {
+        Node owned = node.edit == edit ? node : new Node(edit, node.bitmap, node.array.clone());
+        owned.array[i] = key;
+        owned.array[i + 1] = value;
+        return owned;
+    }
+
+    // Swaps in a new bitmap and array, in place if this map owns the node
+    private Node replace(Node node, int bitmap, Object[] array) {
+        if (node.edit != edit) {
+            return new Node(edit, bitmap, array);
+        }
+        node.bitmap = bitmap;
+        node.array = array;
+        return node;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> void forEach(Node node, BiConsumer<? super K, ? super V> action) {
+        Object[] array = node.array;
+        for (int i = 0; i < array.length; i += 2) {
+            if (array[i] == null) {
+                forEach((Node) array[i + 1], action);
+            } else {
+                action.accept((K) array[i], (V) array[i + 1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package Main.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An insertion-ordered set whose copies share structure, used where a game
+ * keeps things in the order they arrived (a room's objects, the items
+ * carried) so that saving and restoring them stays O(1).
+ * <p>
+ * Each element gets the next sequence number when it is added. The elements
+ * live in a treap keyed by that number, with priorities taken from a hash of
+ * it, whose nodes never change once built; a {@link PersistentMap} finds an
+ * element's number. Adding, removing and reading by position copy or walk
+ * O(log n) nodes, and {@link #copy()} and {@link #list()} hand out the current
+ * tree without copying anything.
+ * </p>
+ * Not thread-safe, but lists handed out by {@link #list()} never change and can
+ * be read from any thread.
+ * @author Makaato
+ */
+final class PersistentSequence<T> {
+
+    private static final class Node {
+        final int seq;
+        final Object value;
+        final Node left;
+        final Node right;
+        final int size;
+
+        Node(int seq, Object value, Node left, Node right) {
+            this.seq = seq;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + size(left) + size(right);
+        }
+    }
+
+    private Node root;
+    // The sequence number the next added element gets
+    private int next;
+    private final PersistentMap<T, Integer> seqOf;
+
+    /**
+     * Creates an empty sequence.
+     */
+    PersistentSequence() {
+        seqOf = new PersistentMap<>();
+    }
+
+    private PersistentSequence(PersistentSequence<T> other) {
+        root = other.root;
+        next = other.next;
+        seqOf = other.seqOf.copy();
+    }
+
+    /**
+     * @return the number of elements
+     */
+    int size() {
+        return size(root);
+    }
+
+    /**
+     * @return true if the element is in this sequence
+     */
+    boolean contains(Object value) {
+        return value != null && seqOf.get(value) != null;
+    }
+
+    /**
+     * @param index position in arrival order
+     * @return the element at that position
+     */
+    T get(int index) {
+        return get(root, index);
+    }
+
+    /**
+     * Adds an element at the end.
+     *
+     * @return false if it was already present
+     */
+    boolean add(T value) {
+        if (seqOf.get(value) != null) {
+            return false;
+        }
+        seqOf.put(value, next);
+        root = merge(root, new Node(next, value, null, null));
+        next++;
+        return true;
+    }
+
+    /**
+     * Removes an element.
+     *
+     * @return false if it was not present
+     */
+    boolean remove(Object value) {
+        Integer seq = value == null ? null : seqOf.get(value);
+        if (seq == null) {
+            return false;
+        }
+        seqOf.remove(value);
+        root = remove(root, seq);
+        return true;
+    }
+
+    /**
+     * @return the elements in arrival order, as they are now (read-only, never changes)
+     */
+    List<T> list() {
+        return new View<>(root);
+    }
+
+    /**
+     * Returns a sequence with the same elements, in O(1). Neither sequence's
+     * later changes show in the other.
+     *
+     * @return the copy
+     */
+    PersistentSequence<T> copy() {
+        return new PersistentSequence<>(this);
+    }
+
+    /**
+     * Makes this sequence hold the same elements as another, in O(1). Neither
+     * sequence's later changes show in the other.
+     *
+     * @param other the sequence to take the elements of
+     */
+    void setTo(PersistentSequence<T> other) {
+        root = other.root;
+        next = other.next;
+        seqOf.setTo(other.seqOf);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T get(Node root, int index) {
+        if (index < 0 || index >= size(root)) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        Node node = root;
+        while (true) {
+            int left = size(node.left);
+            if (index < left) {
+                node = node.left;
+            } else if (index == left) {
+                return (T) node.value;
+            } else {
+                index -= left + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static int priority(int seq) {
+        int h = seq * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+
+    // Joins two trees where every number in a is below every number in b
+    private static Node merge(Node a, Node b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (priority(a.seq) >= priority(b.seq)) {
+            return new Node(a.seq, a.value, a.left, merge(a.right, b));
+        }
+        return new Node(b.seq, b.value, merge(a, b.left), b.right);
+    }
+
+    private static Node remove(Node node, int seq) {
+        if (seq < node.seq) {
+            return new Node(node.seq, node.value, remove(node.left, seq), node.right);
+        }
+        if (seq > node.seq) {
+            return new Node(node.seq, node.value, node.left, remove(node.right, seq));
+        }
+        return merge(node.left, node.right);
+    }
+
+    /** A read-only list over one version of the tree. */
+    private static final class View<T> extends AbstractList<T> {
+        private final Node root;
+
+        View(Node root) {
+            this.root = root;
+        }
+
+        @Override
+        public T get(int index) {
+            return PersistentSequence.get(root, index);
+        }
+
+        @Override
+        public int size() {
+            return PersistentSequence.size(root);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+                // The nodes still to visit, leftmost path first
+                private Node[] stack = new Node[16];
+                private int depth;
+
+                {
+                    push(root);
+                }
+
+                private void push(Node node) {
+                    for (; node != null; node = node.left) {
+                        if (depth == stack.length) {
+                            stack = Arrays.copyOf(stack, depth * 2);
+                        }
+                        stack[depth++] = node;
+                    }
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return depth > 0;
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public T next() {
+                    if (depth == 0) {
+                        throw new NoSuchElementException();
+                    }
+                    Node node = stack[--depth];
+                    push(node.right);
+                    return (T) node.value;
+                }
+            };
+        }
+    }
+}
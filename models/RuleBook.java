@@ -0,0 +1,263 @@
+package Main.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A world's {@link UseRule}s and {@link GiveRule}s, compiled into two hashed
+ * decision tables so that finding the rule for a command is a single probe
+ * however many rules the world has.
+ * <p>
+ * Use rules are keyed by the item IDs of the item used and the object it is
+ * used on ({@link #NO_TARGET} for "use X" on its own); give rules by the
+ * item's ID and the NPC's {@link NPC#getId()}. Both halves of a key go into
+ * one long, and the tables are open-addressed arrays of those longs kept at
+ * most half full, so a lookup hashes the key, compares longs and allocates
+ * nothing. A book never changes once built and can be shared by every game
+ * on the world.
+ * </p>
+ * @author Makaato
+ */
+public final class RuleBook {
+
+    /** The target of a use rule for using an item on nothing in particular. */
+    public static final int NO_TARGET = -1;
+
+    /** A book with no rules, for worlds that declare none. */
+    public static final RuleBook EMPTY = new Builder().build();
+
+    private final Table use;
+    private final Table give;
+
+    private RuleBook(Table use, Table give) {
+        this.use = use;
+        this.give = give;
+    }
+
+    /**
+     * Finds the rule for using an item.
+     *
+     * @param itemId   the item being used
+     * @param targetId the object it is used on, or {@link #NO_TARGET}
+     * @return what the rule does, or {@code null} if there is no rule
+     */
+    public Effect use(int itemId, int targetId) {
+        return use.get(key(itemId, targetId));
+    }
+
+    /**
+     * Finds the rule for giving an item to an NPC.
+     *
+     * @param itemId the item being given
+     * @param npcId  the NPC's ID
+     * @return what the rule does, or {@code null} if there is no rule
+     */
+    public Effect give(int itemId, int npcId) {
+        return give.get(key(itemId, npcId));
+    }
+
+    /** @return how many use rules there are */
+    public int getUseRuleCount() {
+        return use.size;
+    }
+
+    /** @return how many give rules there are */
+    public int getGiveRuleCount() {
+        return give.size;
+    }
+
+    /** @return true if the world has no rules at all */
+    public boolean isEmpty() {
+        return use.size == 0 && give.size == 0;
+    }
+
+    /**
+     * Receives the rules of a book, e.g. to write them out.
+     */
+    public interface Visitor {
+        /**
+         * @param give     true for a give rule, false for a use rule
+         * @param itemId   the item used or given
+         * @param targetId the object used on ({@link #NO_TARGET} for none) or the NPC's ID
+         * @param effect   what the rule does
+         */
+        void rule(boolean give, int itemId, int targetId, Effect effect);
+    }
+
+    /**
+     * Calls the visitor for every rule, use rules first, in no particular order otherwise.
+     *
+     * @param visitor receives each rule
+     */
+    public void forEach(Visitor visitor) {
+        use.forEach(false, visitor);
+        give.forEach(true, visitor);
+    }
+
+    private static long key(int first, int second) {
+        return ((long) first << 32) | (second & 0xFFFFFFFFL);
+    }
+
+    /**
+     * What a rule does when it fires, with every name already resolved.
+     */
+    public static final class Effect {
+        private final String message;
+        private final boolean endsGame;
+        private final boolean win;
+        private final boolean consumesItem;
+        private final List<GameObject> givenItems;
+        private final List<Location> unlocks;
+
+        /**
+         * @param message      what the player is told, or {@code null} for the default message
+         * @param endsGame     whether the game ends when the rule fires
+         * @param win          whether an ending game is won rather than lost
+         * @param consumesItem whether the item used or given is used up
+         * @param givenItems   objects handed to the player
+         * @param unlocks      locations that become accessible
+         */
+        public Effect(String message, boolean endsGame, boolean win, boolean consumesItem,
+                      List<GameObject> givenItems, List<Location> unlocks) {
+            this.message = message;
+            this.endsGame = endsGame;
+            this.win = win;
+            this.consumesItem = consumesItem;
+            this.givenItems = givenItems == null ? List.of() : Collections.unmodifiableList(givenItems);
+            this.unlocks = unlocks == null ? List.of() : Collections.unmodifiableList(unlocks);
+        }
+
+        /** @return what the player is told, or {@code null} for the default message */
+        public String getMessage() { return message; }
+
+        /** @return true if the game ends when the rule fires */
+        public boolean endsGame() { return endsGame; }
+
+        /** @return true if the game is won when the rule ends it */
+        public boolean isWin() { return win; }
+
+        /** @return true if the item used or given is used up */
+        public boolean consumesItem() { return consumesItem; }
+
+        /** @return the objects handed to the player, taken from wherever they are */
+        public List<GameObject> getGivenItems() { return givenItems; }
+
+        /** @return the locations that become accessible */
+        public List<Location> getUnlocks() { return unlocks; }
+    }
+
+    /**
+     * Collects rules and compiles them into a book. When two rules share a key
+     * the first one added is kept.
+     */
+    public static final class Builder {
+        private final Table use = new Table();
+        private final Table give = new Table();
+
+        /**
+         * Adds a use rule.
+         *
+         * @param itemId   the item being used
+         * @param targetId the object it is used on, or {@link #NO_TARGET}
+         * @param effect   what the rule does
+         * @return false if an earlier rule already has this key
+         */
+        public boolean addUse(int itemId, int targetId, Effect effect) {
+            return use.add(key(itemId, targetId), effect);
+        }
+
+        /**
+         * Adds a give rule.
+         *
+         * @param itemId the item being given
+         * @param npcId  the NPC's ID
+         * @param effect what the rule does
+         * @return false if an earlier rule already has this key
+         */
+        public boolean addGive(int itemId, int npcId, Effect effect) {
+            return give.add(key(itemId, npcId), effect);
+        }
+
+        /**
+         * @return the rules added so far, compiled; the builder can keep being used
+         */
+        public RuleBook build() {
+            return new RuleBook(use.copy(), give.copy());
+        }
+    }
+
+    /**
+     * An open-addressing hash table from long keys to effects.
+     * An empty slot is one whose effect is null.
+     */
+    private static final class Table {
+        long[] keys = new long[2];
+        Effect[] effects = new Effect[2];
+        int size;
+
+        Effect get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+                Effect effect = effects[slot];
+                if (effect == null || keys[slot] == key) {
+                    return effect;
+                }
+            }
+        }
+
+        boolean add(long key, Effect effect) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (effects[slot] != null) {
+                if (keys[slot] == key) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            effects[slot] = effect;
+            size++;
+            return true;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            Effect[] oldEffects = effects;
+            keys = new long[oldKeys.length * 2];
+            effects = new Effect[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldEffects[i] != null) {
+                    add(oldKeys[i], oldEffects[i]);
+                }
+            }
+        }
+
+        void forEach(boolean give, Visitor visitor) {
+            for (int i = 0; i < keys.length; i++) {
+                if (effects[i] != null) {
+                    visitor.rule(give, (int) (keys[i] >>> 32), (int) keys[i], effects[i]);
+                }
+            }
+        }
+
+        Table copy() {
+            Table copy = new Table();
+            copy.keys = Arrays.copyOf(keys, keys.length);
+            copy.effects = Arrays.copyOf(effects, effects.length);
+            copy.size = size;
+            return copy;
+        }
+
+        // SplitMix64's finalizer: item IDs are small and dense, so their bits need spreading
+        private static int hash(long key) {
+            key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+            key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+            return (int) (key ^ (key >>> 31));
+        }
+    }
+}
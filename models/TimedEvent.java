@@ -0,0 +1,73 @@
+package Main.model;
+
+import java.util.ArrayList;
+import java.util.List;
+/**
+ * A world event that happens on a given turn rather than because of a command,
+ * as declared in the world JSON ("timedEvents")
+ * @author Makaato
+ */
+public class TimedEvent {
+	/**
+	 * name = what other events call this one by (optional)
+	 * atTurn = the turn it happens on, or turnsLeft = how many turns before the limit
+	 * (leave both out for an event that only happens once another one schedules it)
+	 * after = how many turns after being scheduled by another event it happens
+	 * message = what the player is told
+	 * Check if it ends the game, and if so whether the player wins
+	 * givenItems = items the player gets, unlocks / closes = locations that open up or close,
+	 * departs = NPCs who leave, schedules / cancels = other events started or called off
+	 */
+    private String name;
+    private int atTurn;
+    private int turnsLeft;
+    private int after;
+    private String message;
+    private boolean endsGame;
+    private boolean win;
+    private List<String> givenItems = new ArrayList<>();
+    private List<String> unlocks = new ArrayList<>();
+    private List<String> closes = new ArrayList<>();
+    private List<String> departs = new ArrayList<>();
+    private List<String> schedules = new ArrayList<>();
+    private List<String> cancels = new ArrayList<>();
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public int getAtTurn() { return atTurn; }
+    public void setAtTurn(int atTurn) { this.atTurn = atTurn; }
+
+    public int getTurnsLeft() { return turnsLeft; }
+    public void setTurnsLeft(int turnsLeft) { this.turnsLeft = turnsLeft; }
+
+    public int getAfter() { return after; }
+    public void setAfter(int after) { this.after = after; }
+
+    public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
+
+    public boolean isEndsGame() { return endsGame; }
+    public void setEndsGame(boolean endsGame) { this.endsGame = endsGame; }
+
+    public boolean isWin() { return win; }
+    public void setWin(boolean win) { this.win = win; }
+
+    public List<String> getGivenItems() { return givenItems; }
+    public void setGivenItems(List<String> givenItems) { this.givenItems = givenItems; }
+
+    public List<String> getUnlocks() { return unlocks; }
+    public void setUnlocks(List<String> unlocks) { this.unlocks = unlocks; }
+
+    public List<String> getCloses() { return closes; }
+    public void setCloses(List<String> closes) { this.closes = closes; }
+
+    public List<String> getDeparts() { return departs; }
+    public void setDeparts(List<String> departs) { this.departs = departs; }
+
+    public List<String> getSchedules() { return schedules; }
+    public void setSchedules(List<String> schedules) { this.schedules = schedules; }
+
+    public List<String> getCancels() { return cancels; }
+    public void setCancels(List<String> cancels) { this.cancels = cancels; }
+}
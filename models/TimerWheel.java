@@ -0,0 +1,381 @@
+package Main.model;
+
+import java.util.Arrays;
+
+/**
+ * The timed events still to come in one game, kept on a hierarchical timing
+ * wheel keyed on the turn count so that scheduling, cancelling and moving on
+ * a turn each cost O(1) however many events are waiting.
+ * <p>
+ * The wheel has four levels of 64 slots. Level 0 holds the events due in the
+ * current block of 64 turns, one slot per turn; level 1 the rest of the
+ * current block of 4096 turns, one slot per 64, and so on up to 2^24 turns,
+ * with anything further out in one overflow list. Each time the turn count
+ * enters a new block, the matching slot one level up is spread over the level
+ * below, so an event moves down at most four times before it is due. Slots
+ * are doubly linked lists threaded through arrays indexed by event, so the
+ * wheel allocates nothing once built.
+ * </p>
+ * <p>
+ * Which events are waiting, and for which turn, is also kept in a
+ * {@link PersistentMap}, which is all a {@link Snapshot} holds: saving the
+ * wheel is O(1), and restoring it relinks the waiting events the next time
+ * the wheel moves on.
+ * </p>
+ * Not thread-safe; it belongs to the game it is part of.
+ * @author Makaato
+ */
+public final class TimerWheel {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final int FAR = LEVELS * SLOTS;
+    private static final int NONE = -1;
+
+    /**
+     * Told about every change to the waiting events made after the wheel was
+     * built (e.g. to write it to a journal), including events that fire.
+     */
+    public interface Listener {
+        /**
+         * @param event the event's index in the {@link Timetable}
+         * @param turn  the turn it is now due on
+         */
+        void timerSet(int event, int turn);
+
+        /**
+         * @param event an event that fired or was called off
+         */
+        void timerCleared(int event);
+    }
+
+    private final Timetable timetable;
+    // event index -> the turn it is due on; the slots below are rebuilt from this after a restore
+    private final PersistentMap<Integer, Integer> waiting = new PersistentMap<>();
+
+    private final int[] heads = new int[FAR + 1];
+    private final int[] next;
+    private final int[] prev;
+    private final int[] slotOf;
+    // the turn each linked event is due on, so cascading never looks in the map
+    private final int[] due;
+    private int now;
+    // set by restore: the slots no longer match the waiting events
+    private boolean stale;
+
+    // events due by now that have not fired yet, lowest index first
+    private int[] ready = new int[4];
+    private int readyCount;
+
+    private Listener listener;
+
+    /**
+     * Creates a wheel for a new game at turn 0, with every event that has a
+     * turn of its own already scheduled (the listener is not told about those).
+     *
+     * @param timetable the world's events
+     * @param turnLimit the game's turn limit, for events given in turns left
+     */
+    public TimerWheel(Timetable timetable, int turnLimit) {
+        this.timetable = timetable;
+        int n = timetable.size();
+        next = new int[n];
+        prev = new int[n];
+        slotOf = new int[n];
+        due = new int[n];
+        Arrays.fill(heads, NONE);
+        Arrays.fill(slotOf, NONE);
+        for (int event = 0; event < n; event++) {
+            int turn = timetable.get(event).firstTurn(turnLimit);
+            if (turn > 0) {
+                waiting.put(event, turn);
+                link(event, turn);
+            }
+        }
+    }
+
+    /**
+     * Sets who is told about changes to the waiting events.
+     *
+     * @param listener the listener, or {@code null} for none
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** @return the events this wheel runs */
+    public Timetable getTimetable() {
+        return timetable;
+    }
+
+    /** @return the turn the wheel has moved on to */
+    public int getTurn() {
+        return now;
+    }
+
+    /** @return how many events are waiting to fire */
+    public int getWaitingCount() {
+        return waiting.size();
+    }
+
+    /**
+     * @param event an event's index
+     * @return the turn it is due on, or 0 if it is not waiting
+     */
+    public int getDueTurn(int event) {
+        Integer turn = waiting.get(event);
+        return turn == null ? 0 : turn;
+    }
+
+    /**
+     * Schedules an event, or moves it if it is already waiting.
+     *
+     * @param event an event's index
+     * @param turn  the turn it should fire on, after the current one
+     * @throws IllegalArgumentException if the turn has already been reached
+     */
+    public void schedule(int event, int turn) {
+        if (turn <= now) {
+            throw new IllegalArgumentException("Turn " + turn + " has already been reached (now " + now + ")");
+        }
+        unlink(event);
+        waiting.put(event, turn);
+        if (!stale) {
+            link(event, turn);
+        }
+        if (listener != null) {
+            listener.timerSet(event, turn);
+        }
+    }
+
+    /**
+     * Calls off an event that is waiting.
+     *
+     * @param event an event's index
+     * @return true if it was waiting
+     */
+    public boolean cancel(int event) {
+        if (waiting.get(event) == null) {
+            return false;
+        }
+        unlink(event);
+        waiting.remove(event);
+        if (listener != null) {
+            listener.timerCleared(event);
+        }
+        return true;
+    }
+
+    /**
+     * Moves the wheel on to a turn, gathering the events due by then. Take
+     * them with {@link #next()}.
+     *
+     * @param turn the game's turn count
+     */
+    public void advance(int turn) {
+        if (stale) {
+            relinkAll();
+        }
+        if (waiting.size() == readyCount) {
+            // nothing left in the slots, so there is nothing to walk past
+            now = Math.max(now, turn);
+            return;
+        }
+        while (now < turn) {
+            now++;
+            if ((now & MASK) == 0) {
+                cascade();
+            }
+            int slot = now & MASK;
+            for (int event = heads[slot]; event != NONE; event = next[event]) {
+                slotOf[event] = NONE;
+                addReady(event);
+            }
+            heads[slot] = NONE;
+        }
+    }
+
+    /**
+     * Takes the next event that is due, lowest index first, and stops it waiting.
+     *
+     * @return the event's index, or -1 if none is due
+     */
+    public int next() {
+        if (readyCount == 0) {
+            return NONE;
+        }
+        int event = ready[0];
+        System.arraycopy(ready, 1, ready, 0, --readyCount);
+        waiting.remove(event);
+        if (listener != null) {
+            listener.timerCleared(event);
+        }
+        return event;
+    }
+
+    /**
+     * Moves the events given in turns left to match a new turn limit. Events
+     * that already fired or were called off stay that way, and any whose new
+     * turn has passed are called off.
+     *
+     * @param oldLimit the limit the events were scheduled for
+     * @param newLimit the new limit
+     */
+    public void limitChanged(int oldLimit, int newLimit) {
+        for (int event = 0; event < timetable.size(); event++) {
+            Timetable.Event e = timetable.get(event);
+            if (e.getAtTurn() > 0 || e.getTurnsLeft() <= 0) {
+                continue;
+            }
+            int before = e.firstTurn(oldLimit);
+            if (before > 0 && waiting.get(event) == null) {
+                continue;
+            }
+            int after = e.firstTurn(newLimit);
+            if (after > now) {
+                schedule(event, after);
+            } else {
+                cancel(event);
+            }
+        }
+    }
+
+    /**
+     * The waiting events at one moment. Never changes, so it can be restored
+     * any number of times, into this wheel or another on the same timetable.
+     */
+    public static final class Snapshot {
+        private final Timetable timetable;
+        private final PersistentMap<Integer, Integer> waiting;
+        private final int now;
+
+        private Snapshot(TimerWheel wheel) {
+            timetable = wheel.timetable;
+            waiting = wheel.waiting.copy();
+            now = wheel.now;
+        }
+    }
+
+    /**
+     * Saves the waiting events, in O(1).
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Puts the waiting events back as they were in a snapshot, in O(1); the
+     * wheel relinks them the next time it moves on. The listener is not told.
+     *
+     * @param snapshot a snapshot of a wheel on the same timetable
+     */
+    public void restore(Snapshot snapshot) {
+        if (snapshot.timetable != timetable) {
+            throw new IllegalArgumentException("Snapshot was taken on a different timetable");
+        }
+        waiting.setTo(snapshot.waiting);
+        now = snapshot.now;
+        readyCount = 0;
+        stale = true;
+    }
+
+    // Puts an event in the slot for its turn: the lowest level whose block holds both it and now
+    private void link(int event, int turn) {
+        due[event] = turn;
+        if (turn <= now) {
+            slotOf[event] = NONE;
+            addReady(event);
+            return;
+        }
+        int slot = FAR;
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = BITS * (level + 1);
+            if ((turn >>> shift) == (now >>> shift)) {
+                slot = level * SLOTS + ((turn >>> (BITS * level)) & MASK);
+                break;
+            }
+        }
+        int head = heads[slot];
+        next[event] = head;
+        prev[event] = NONE;
+        if (head != NONE) {
+            prev[head] = event;
+        }
+        heads[slot] = event;
+        slotOf[event] = slot;
+    }
+
+    private void unlink(int event) {
+        int slot = slotOf[event];
+        if (slot == NONE) {
+            removeReady(event);
+            return;
+        }
+        if (prev[event] != NONE) {
+            next[prev[event]] = next[event];
+        } else {
+            heads[slot] = next[event];
+        }
+        if (next[event] != NONE) {
+            prev[next[event]] = prev[event];
+        }
+        slotOf[event] = NONE;
+    }
+
+    // now has just entered a new block of 64 turns: spread the slots above that it has reached
+    private void cascade() {
+        int level = 1;
+        while (level < LEVELS && ((now >>> (BITS * level)) & MASK) == 0) {
+            level++;
+        }
+        if (level == LEVELS) {
+            relink(FAR);
+            level--;
+        }
+        for (; level >= 1; level--) {
+            relink(level * SLOTS + ((now >>> (BITS * level)) & MASK));
+        }
+    }
+
+    private void relink(int slot) {
+        int event = heads[slot];
+        heads[slot] = NONE;
+        while (event != NONE) {
+            int following = next[event];
+            link(event, due[event]);
+            event = following;
+        }
+    }
+
+    private void relinkAll() {
+        Arrays.fill(heads, NONE);
+        Arrays.fill(slotOf, NONE);
+        stale = false;
+        waiting.forEach(this::link);
+    }
+
+    private void addReady(int event) {
+        if (readyCount == ready.length) {
+            ready = Arrays.copyOf(ready, readyCount * 2);
+        }
+        int i = readyCount++;
+        while (i > 0 && ready[i - 1] > event) {
+            ready[i] = ready[i - 1];
+            i--;
+        }
+        ready[i] = event;
+    }
+
+    private void removeReady(int event) {
+        for (int i = 0; i < readyCount; i++) {
+            if (ready[i] == event) {
+                System.arraycopy(ready, i + 1, ready, i, --readyCount - i);
+                return;
+            }
+        }
+    }
+}
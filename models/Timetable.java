@@ -0,0 +1,141 @@
+package Main.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A world's {@link TimedEvent}s with every name resolved, numbered by their
+ * position in the world JSON. Each game keeps its own {@link TimerWheel} of
+ * which of them are still to come; this only says what they do. Never
+ * changes once built, so every game on the world shares it.
+ * @author Makaato
+ */
+public final class Timetable {
+
+    /** A timetable with no events, for worlds that declare none. */
+    public static final Timetable EMPTY = new Timetable(List.of());
+
+    private final List<Event> events;
+    private final Map<String, Integer> byName = new HashMap<>();
+
+    /**
+     * @param events the events, each with its position in the list as its index
+     */
+    public Timetable(List<Event> events) {
+        this.events = Collections.unmodifiableList(events);
+        for (int i = 0; i < events.size(); i++) {
+            String name = events.get(i).getName();
+            if (name != null) {
+                byName.putIfAbsent(name.toLowerCase(Locale.ROOT), i);
+            }
+        }
+    }
+
+    /** @return how many events there are */
+    public int size() {
+        return events.size();
+    }
+
+    /** @return true if the world has no timed events */
+    public boolean isEmpty() {
+        return events.isEmpty();
+    }
+
+    /**
+     * @param index an event's index
+     * @return the event
+     */
+    public Event get(int index) {
+        return events.get(index);
+    }
+
+    /** @return every event, by index */
+    public List<Event> getEvents() {
+        return events;
+    }
+
+    /**
+     * Finds an event by name, ignoring case.
+     *
+     * @param name the event's name
+     * @return its index, or -1 if no event has that name
+     */
+    public int indexOf(String name) {
+        Integer index = name == null ? null : byName.get(name.toLowerCase(Locale.ROOT));
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * One event, resolved. When it happens is given by at most one of
+     * {@code atTurn} and {@code turnsLeft}; {@code after} is used when another
+     * event schedules it.
+     */
+    public static final class Event {
+        private final String name;
+        private final int atTurn;
+        private final int turnsLeft;
+        private final int after;
+        private final RuleBook.Effect effect;
+        private final List<Location> closes;
+        private final List<NPC> departs;
+        private final int[] schedules;
+        private final int[] cancels;
+
+        /**
+         * @param name      the event's name, or {@code null}
+         * @param atTurn    the turn it happens on, 0 for none
+         * @param turnsLeft how many turns before the limit it happens, 0 for none
+         * @param after     how many turns after being scheduled it happens
+         * @param effect    its message, ending, given items and unlocked locations
+         * @param closes    locations that close
+         * @param departs   NPCs who leave
+         * @param schedules indexes of the events it schedules
+         * @param cancels   indexes of the events it calls off
+         */
+        public Event(String name, int atTurn, int turnsLeft, int after, RuleBook.Effect effect,
+                     List<Location> closes, List<NPC> departs, int[] schedules, int[] cancels) {
+            this.name = name;
+            this.atTurn = atTurn;
+            this.turnsLeft = turnsLeft;
+            this.after = after;
+            this.effect = effect;
+            this.closes = Collections.unmodifiableList(closes);
+            this.departs = Collections.unmodifiableList(departs);
+            this.schedules = schedules;
+            this.cancels = cancels;
+        }
+
+        public String getName() { return name; }
+        public int getAtTurn() { return atTurn; }
+        public int getTurnsLeft() { return turnsLeft; }
+        public int getAfter() { return after; }
+
+        /** @return the message, ending, given items and unlocked locations */
+        public RuleBook.Effect getEffect() { return effect; }
+
+        public List<Location> getCloses() { return closes; }
+        public List<NPC> getDeparts() { return departs; }
+
+        /** @return indexes of the events this one schedules; do not change */
+        public int[] getSchedules() { return schedules; }
+
+        /** @return indexes of the events this one calls off; do not change */
+        public int[] getCancels() { return cancels; }
+
+        /**
+         * Works out the turn the event first happens on in a game.
+         *
+         * @param turnLimit the game's turn limit (0 means no limit)
+         * @return the turn, or 0 if it only happens once scheduled by another event
+         */
+        public int firstTurn(int turnLimit) {
+            if (atTurn > 0) {
+                return atTurn;
+            }
+            return turnsLeft > 0 && turnLimit > turnsLeft ? turnLimit - turnsLeft : 0;
+        }
+    }
+}
@@ -1,4 +1,7 @@
 package Main.model;
+
+import java.util.ArrayList;
+import java.util.List;
 /** 
  * Used to create the rules that the use action is supposed to follow in the game
  * @author Terence
@@ -6,20 +9,42 @@ package Main.model;
 public class UseRule {
 	/**
 	 * obj1 = the item being used
-	 * obj2 = the item being used on
+	 * obj2 = the item being used on (leave out for using obj1 on its own)
 	 * message = Success message 
-	 * Check if doing this action will cause the game to end 
+	 * Check if doing this action will cause the game to end, and if so whether the player wins
+	 * consumed = obj1 is used up
+	 * givenItems = items the player gets, unlocks = locations that open up
 	 */
     private String obj1;
     private String obj2;
     private String message;
     private boolean endsGame;
+    private boolean win;
+    private boolean consumed;
+    private List<String> givenItems = new ArrayList<>();
+    private List<String> unlocks = new ArrayList<>();
 
     public String getObj1() { return obj1; }
+    public void setObj1(String obj1) { this.obj1 = obj1; }
 
     public String getObj2() { return obj2; }
+    public void setObj2(String obj2) { this.obj2 = obj2; }
 
     public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
 
     public boolean isEndsGame() { return endsGame; }
-}
\ No newline at end of file
+    public void setEndsGame(boolean endsGame) { this.endsGame = endsGame; }
+
+    public boolean isWin() { return win; }
+    public void setWin(boolean win) { this.win = win; }
+
+    public boolean isConsumed() { return consumed; }
+    public void setConsumed(boolean consumed) { this.consumed = consumed; }
+
+    public List<String> getGivenItems() { return givenItems; }
+    public void setGivenItems(List<String> givenItems) { this.givenItems = givenItems; }
+
+    public List<String> getUnlocks() { return unlocks; }
+    public void setUnlocks(List<String> unlocks) { this.unlocks = unlocks; }
+}
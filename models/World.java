@@ -1,7 +1,12 @@
 package Main.model;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 /**
  * Stores all the static information about the world 
  * @author Terence
@@ -19,6 +24,32 @@ public class World {
     private List<String> endLocations = new ArrayList<>();
     private int turnLimit;
     private List<GameObject> inventoryItems = new ArrayList<>(); 
+    private List<UseRule> useRules = new ArrayList<>();
+    private List<GiveRule> giveRules = new ArrayList<>();
+    private List<TimedEvent> timedEvents = new ArrayList<>();
+
+    /**
+     * Case-insensitive lookup tables built from the lists above.
+     * They are transient so Gson skips them; {@link #buildIndexes()} fills them after loading
+     */
+    private transient Map<String, Location> locationIndex;
+    private transient Set<String> endLocationIndex;
+
+    /**
+     * Interned item names: every distinct item name gets a dense ID (0, 1, 2...)
+     * so gates and NPC wants can compare ints instead of strings
+     */
+    private transient Map<String, Integer> itemIds = new HashMap<>();
+    private transient List<String> itemNames = new ArrayList<>();
+    private transient ItemRegistry itemRegistry;
+    // Set once the world is shared as a template; locations then refuse changes
+    private transient boolean frozen;
+    // The rules above with every name resolved, filled in by the world link step
+    private transient RuleBook rules;
+    // The timed events above with every name resolved, filled in by the world link step
+    private transient Timetable timetable;
+    // Every object, NPC and exit name, for typo-tolerant lookups; built on first use
+    private transient volatile NameIndex nameIndex;
 
     public World() {}
     /** 
@@ -26,7 +57,10 @@ public class World {
      * @return
      */
     public List<Location> getLocations() { return locations; }
-    public void setLocations(List<Location> locations) { this.locations = locations; }
+    public void setLocations(List<Location> locations) {
+        this.locations = locations;
+        this.locationIndex = null;
+    }
     
     public List<GameObject> getInventoryItems() { return inventoryItems; }
     public void setInventoryItems(List<GameObject> inventoryItems) { this.inventoryItems = inventoryItems; }
@@ -35,19 +69,99 @@ public class World {
     public void setStartLocation(String startLocation) { this.startLocation = startLocation; }
 
     public List<String> getEndLocationNames() { return endLocations; }
-    public void setEndLocations(List<String> endLocations) { this.endLocations = endLocations; }
+    public void setEndLocations(List<String> endLocations) {
+        this.endLocations = endLocations;
+        this.endLocationIndex = null;
+    }
 
     public int getTurnLimit() { return turnLimit; }
     public void setTurnLimit(int turnLimit) { this.turnLimit = turnLimit; }
+
+    public List<UseRule> getUseRules() { return useRules; }
+    public void setUseRules(List<UseRule> useRules) { this.useRules = useRules; }
+
+    public List<GiveRule> getGiveRules() { return giveRules; }
+    public void setGiveRules(List<GiveRule> giveRules) { this.giveRules = giveRules; }
+
+    /**
+     * Returns the compiled use and give rules the engine consults
+     * @return the rules, or {@link RuleBook#EMPTY} if the world has none or is not linked yet
+     */
+    public RuleBook getRules() {
+        return rules == null ? RuleBook.EMPTY : rules;
+    }
+    public void setRules(RuleBook rules) { this.rules = rules; }
+
+    public List<TimedEvent> getTimedEvents() { return timedEvents; }
+    public void setTimedEvents(List<TimedEvent> timedEvents) { this.timedEvents = timedEvents; }
+
+    /**
+     * Returns the compiled timed events each game schedules on its timer wheel
+     * @return the events, or {@link Timetable#EMPTY} if the world has none or is not linked yet
+     */
+    public Timetable getTimetable() {
+        return timetable == null ? Timetable.EMPTY : timetable;
+    }
+    public void setTimetable(Timetable timetable) { this.timetable = timetable; }
+    /**
+     * Adds a location to the world and registers it in the name index.
+     * Use this instead of getLocations().add(...) so lookups can find it
+     * @param location
+     */
+    public void addLocation(Location location) {
+        if (frozen) {
+            throw new IllegalStateException("Cannot add locations to a read-only world template");
+        }
+        locations.add(location);
+        if (locationIndex != null) {
+            indexLocation(location);
+        }
+        NameIndex index = nameIndex;
+        if (index != null) {
+            addNames(index, location);
+        }
+    }
+
+    /**
+     * Connects a location that is not kept in the locations list to this world,
+     * for worlds that decode their locations on first use. The location's
+     * indexes are built straight away and it becomes read-only if the world is.
+     * @param location
+     */
+    public void adopt(Location location) {
+        location.setWorld(this);
+        location.buildIndexes();
+    }
+
+    /**
+     * Builds the name lookups for locations and end locations.
+     * Called by the loader once the JSON has been read, safe to call again
+     */
+    public void buildIndexes() {
+        locationIndex = new HashMap<>(locations.size() * 2);
+        for (Location loc : locations) {
+            indexLocation(loc);
+        }
+        endLocationIndex = new HashSet<>();
+        for (String end : endLocations) {
+            if (end != null) {
+                endLocationIndex.add(key(end));
+            }
+        }
+    }
+
     /**
      * Returns the location Object of the specified location
      * Used in the go method in GameEngine.java
      **/
     public Location getLocation(String name) {
-        return locations.stream()
-                .filter(l -> l.getName().equalsIgnoreCase(name))
-                .findFirst()
-                .orElse(null);
+        if (name == null) {
+            return null;
+        }
+        if (locationIndex == null) {
+            buildIndexes();
+        }
+        return locationIndex.get(key(name));
     }
     
     /** Gets player's starting position (the bedroom)
@@ -63,7 +177,202 @@ public class World {
      * @return
      */
     public boolean isEndLocation(String name) {
-        return endLocations.stream()
-                .anyMatch(n -> n.equalsIgnoreCase(name));
+        if (name == null) {
+            return false;
+        }
+        if (endLocationIndex == null) {
+            buildIndexes();
+        }
+        return endLocationIndex.contains(key(name));
+    }
+
+    /**
+     * Returns the ID for an item name, creating one if the name is new
+     * @param name
+     * @return
+     */
+    public int internItem(String name) {
+        if (itemIds == null) {
+            itemIds = new HashMap<>();
+            itemNames = new ArrayList<>();
+        }
+        Integer id = itemIds.get(key(name));
+        if (id == null) {
+            id = itemNames.size();
+            itemIds.put(key(name), id);
+            itemNames.add(name);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the ID for an item name, or -1 if no such item exists
+     * @param name
+     * @return
+     */
+    public int getItemId(String name) {
+        if (name == null || itemIds == null) {
+            return -1;
+        }
+        Integer id = itemIds.get(key(name));
+        return id == null ? -1 : id;
+    }
+
+    /** @return how many distinct item names have been interned */
+    public int getItemCount() {
+        return itemNames == null ? 0 : itemNames.size();
+    }
+
+    /**
+     * Returns the registry that tracks where each item currently is
+     * @return
+     */
+    public ItemRegistry getItemRegistry() {
+        if (itemRegistry == null) {
+            itemRegistry = new ItemRegistry(this);
+        }
+        return itemRegistry;
+    }
+
+    /**
+     * Makes the world read-only so it can be shared by many games at once.
+     * Every lazy index is built first, so later reads never write.
+     */
+    public void freeze() {
+        if (frozen) {
+            return;
+        }
+        if (locationIndex == null || endLocationIndex == null) {
+            buildIndexes();
+        }
+        for (Location loc : locations) {
+            loc.buildIndexes();
+        }
+        getItemRegistry();
+        frozen = true;
+    }
+
+    /**
+     * Returns the index of every object, NPC and exit name in the world,
+     * used to make sense of misspelled names. Built the first time it is asked for,
+     * then kept up to date as locations gain or lose objects and characters
+     * @return
+     */
+    public NameIndex getNameIndex() {
+        NameIndex index = nameIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = nameIndex;
+                if (index == null) {
+                    index = new NameIndex();
+                    for (Location loc : getLocations()) {
+                        addNames(index, loc);
+                    }
+                    if (getInventoryItems() != null) {
+                        for (GameObject obj : getInventoryItems()) {
+                            addNames(index, obj);
+                        }
+                    }
+                    nameIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Keeps the name index up to date when an object is added to or removed from a location
+     * @param obj
+     * @param added
+     */
+    void objectChanged(GameObject obj, boolean added) {
+        NameIndex index = nameIndex;
+        if (index == null || obj == null) {
+            return;
+        }
+        if (added) {
+            addNames(index, obj);
+        } else {
+            removeNames(index, obj);
+        }
+    }
+
+    /**
+     * Keeps the name index up to date when a character is added to or removed from a location
+     * @param npc
+     * @param added
+     */
+    void characterChanged(NPC npc, boolean added) {
+        NameIndex index = nameIndex;
+        if (index == null || npc == null) {
+            return;
+        }
+        if (added) {
+            index.add(npc.getName());
+        } else {
+            index.remove(npc.getName());
+        }
+    }
+
+    private static void addNames(NameIndex index, Location loc) {
+        for (Connection con : loc.getConnections()) {
+            index.add(con.getLabel());
+        }
+        for (NPC npc : loc.getCharacters()) {
+            index.add(npc.getName());
+        }
+        for (GameObject obj : loc.getObjects()) {
+            addNames(index, obj);
+        }
+    }
+
+    private static void addNames(NameIndex index, GameObject obj) {
+        index.add(obj.getName());
+        if (obj.getContainedObjects() != null) {
+            for (GameObject inner : obj.getContainedObjects()) {
+                addNames(index, inner);
+            }
+        }
+    }
+
+    private static void removeNames(NameIndex index, GameObject obj) {
+        index.remove(obj.getName());
+        if (obj.getContainedObjects() != null) {
+            for (GameObject inner : obj.getContainedObjects()) {
+                removeNames(index, inner);
+            }
+        }
+    }
+
+    /** @return true once {@link #freeze()} has been called */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Moves a location to its new key after {@link Location#setName(String)}
+     * @param location
+     * @param oldName
+     */
+    void locationRenamed(Location location, String oldName) {
+        if (locationIndex == null) {
+            return;
+        }
+        if (oldName != null && locationIndex.get(key(oldName)) == location) {
+            locationIndex.remove(key(oldName));
+        }
+        indexLocation(location);
+    }
+
+    private void indexLocation(Location loc) {
+        loc.setWorld(this);
+        if (loc.getName() != null) {
+            // first match wins, same as the old stream lookup
+            locationIndex.putIfAbsent(key(loc.getName()), loc);
+        }
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
     }
 }
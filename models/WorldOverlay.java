@@ -0,0 +1,575 @@
+package Main.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Everything one game has changed about a shared, read-only {@link World}.
+ * The engine reads and writes rooms, locks, dialogue, containers and NPCs through
+ * this class instead of changing the world itself, so any number of games can
+ * play the same {@link WorldTemplate}. Only what has changed is stored: a room
+ * is copied the first time something is picked up from it or dropped in it.
+ * <p>
+ * Changes are kept in {@link PersistentMap}s, so {@link #snapshot()} and
+ * {@link #restore(Snapshot)} take O(1) and saved snapshots share everything
+ * but what changed in between. A room is copied again the first time it
+ * changes after a snapshot, which is O(1) for large rooms (they share a
+ * {@link PersistentSequence}) and a small array copy otherwise.
+ * </p>
+ * @author Makaato
+ */
+public class WorldOverlay {
+
+    private final World world;
+    // Set by create(), once this overlay is built, since the registry keeps a reference to it
+    private ItemRegistry registry;
+
+    private final PersistentMap<Location, ObjectIndex> rooms = new PersistentMap<>();
+    private final PersistentMap<Location, Boolean> unlocked = new PersistentMap<>();
+    private final PersistentMap<NPC, Integer> dialogue = new PersistentMap<>();
+    private final PersistentMap<GameObject, Boolean> opened = new PersistentMap<>();
+    private final PersistentMap<Location, Boolean> closed = new PersistentMap<>();
+    private final PersistentMap<NPC, Boolean> departed = new PersistentMap<>();
+    private final PersistentMap<GameObject, Boolean> handedOut = new PersistentMap<>();
+
+    // XOR of the Zobrist keys of everything this game has changed
+    private long hash;
+
+    // Rooms copied under this token may be changed in place; a snapshot replaces it
+    private Object edit = new Object();
+
+    private Listener listener;
+
+    /**
+     * Told about every change this game makes to the world, as it is made
+     * (e.g. to write it to a journal). Changes made while replaying a journal
+     * into a game with no listener are not reported.
+     */
+    public interface Listener {
+        /**
+         * @param item   the item that moved
+         * @param place  what kind of place it is now in, or {@code null} if it is gone
+         * @param holder the location, container, inventory or world now holding it
+         */
+        void itemMoved(GameObject item, ItemRegistry.Place place, Object holder);
+
+        /**
+         * @param loc a location that has just been unlocked
+         */
+        void unlocked(Location loc);
+
+        /**
+         * @param npc   the NPC who spoke
+         * @param index how many of their lines have now been heard
+         */
+        void talked(NPC npc, int index);
+
+        /**
+         * @param container an object that has just been opened (its contents are moved next)
+         */
+        void opened(GameObject container);
+
+        /**
+         * @param loc a location that has just been closed
+         */
+        void closed(Location loc);
+
+        /**
+         * @param npc an NPC who has just left the game
+         */
+        void departed(NPC npc);
+
+        /**
+         * @param reward a reward that has just been handed over (it is moved to the inventory next)
+         */
+        void handedOut(GameObject reward);
+    }
+
+    private WorldOverlay(World world) {
+        this.world = world;
+    }
+
+    /**
+     * Creates an empty overlay: the game starts exactly as the world describes.
+     *
+     * @param world the linked world being played
+     * @return the overlay, with its item registry
+     */
+    public static WorldOverlay create(World world) {
+        WorldOverlay overlay = new WorldOverlay(world);
+        overlay.registry = new ItemRegistry(world.getItemRegistry(), overlay);
+        return overlay;
+    }
+
+    /**
+     * Sets who is told about the changes this game makes.
+     *
+     * @param listener the listener, or {@code null} for none
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return the world this overlay sits on
+     */
+    public World getWorld() {
+        return world;
+    }
+
+    /**
+     * @return this game's item registry (only moved items are stored in it)
+     */
+    public ItemRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Checks whether a location can be entered in this game.
+     *
+     * @param loc the location
+     * @return true if it started accessible or has been unlocked, and has not been closed
+     */
+    public boolean isAccessible(Location loc) {
+        return (loc.getAccessible() || unlocked.get(loc) != null) && closed.get(loc) == null;
+    }
+
+    /**
+     * Unlocks a location for the rest of this game, reopening it if it was closed.
+     *
+     * @param loc the location
+     */
+    public void unlock(Location loc) {
+        boolean changed = false;
+        if (closed.get(loc) != null) {
+            closed.remove(loc);
+            hash ^= Zobrist.closed(loc);
+            changed = true;
+        }
+        if (!loc.getAccessible() && unlocked.get(loc) == null) {
+            unlocked.put(loc, Boolean.TRUE);
+            hash ^= Zobrist.unlocked(loc);
+            changed = true;
+        }
+        if (changed && listener != null) {
+            listener.unlocked(loc);
+        }
+    }
+
+    /**
+     * Closes a location: nobody can go in again, whatever they carry, until
+     * something unlocks it. Anyone already inside can still leave.
+     *
+     * @param loc the location
+     */
+    public void close(Location loc) {
+        if (closed.get(loc) == null) {
+            closed.put(loc, Boolean.TRUE);
+            hash ^= Zobrist.closed(loc);
+            if (listener != null) {
+                listener.closed(loc);
+            }
+        }
+    }
+
+    /**
+     * @param loc a location
+     * @return true if it has been closed in this game (and not unlocked since)
+     */
+    public boolean isClosed(Location loc) {
+        return closed.get(loc) != null;
+    }
+
+    /**
+     * Takes an NPC out of the game: they are no longer found in their location.
+     *
+     * @param npc the NPC
+     */
+    public void depart(NPC npc) {
+        if (departed.get(npc) == null) {
+            departed.put(npc, Boolean.TRUE);
+            hash ^= Zobrist.departed(npc);
+            if (listener != null) {
+                listener.departed(npc);
+            }
+        }
+    }
+
+    /**
+     * @param npc an NPC
+     * @return true if they have left the game
+     */
+    public boolean hasDeparted(NPC npc) {
+        return departed.get(npc) != null;
+    }
+
+    /**
+     * Takes a reward out of the world to be handed to the player, at most once
+     * per game: wherever it lies (the world's pool, a container, or a room it
+     * was placed in or revealed into), unless it has been handed over before,
+     * is already carried, or has been used up.
+     *
+     * @param reward the item an NPC, rule or timed event hands over
+     * @return true if it was unclaimed and has been taken; the caller adds it to the inventory
+     */
+    public boolean claimReward(GameObject reward) {
+        if (handedOut.get(reward) != null) {
+            return false;
+        }
+        ItemRegistry.Place place = registry.placeOf(reward);
+        if (place == null || place == ItemRegistry.Place.INVENTORY || !registry.take(reward)) {
+            return false;
+        }
+        handOut(reward);
+        return true;
+    }
+
+    /**
+     * Records that a reward has been handed over, without moving it (e.g. when
+     * replaying a journal, which moves items separately).
+     *
+     * @param reward the reward
+     */
+    public void handOut(GameObject reward) {
+        if (handedOut.get(reward) == null) {
+            handedOut.put(reward, Boolean.TRUE);
+            hash ^= Zobrist.handedOut(reward);
+            if (listener != null) {
+                listener.handedOut(reward);
+            }
+        }
+    }
+
+    /**
+     * @param reward an item an NPC, rule or timed event hands over
+     * @return true if it has been handed over in this game
+     */
+    public boolean isHandedOut(GameObject reward) {
+        return handedOut.get(reward) != null;
+    }
+
+    /**
+     * Returns the NPCs in a location as this game sees them.
+     *
+     * @param loc the location
+     * @return read-only list, without anyone who has left
+     */
+    public List<NPC> getCharacters(Location loc) {
+        List<NPC> all = loc.getCharacters();
+        if (departed.size() == 0) {
+            return Collections.unmodifiableList(all);
+        }
+        List<NPC> here = new ArrayList<>(all.size());
+        for (NPC npc : all) {
+            if (departed.get(npc) == null) {
+                here.add(npc);
+            }
+        }
+        return Collections.unmodifiableList(here);
+    }
+
+    /**
+     * Finds an NPC in a location by name, ignoring anyone who has left.
+     *
+     * @param loc  the location
+     * @param name the NPC's name
+     * @return the NPC, or {@code null} if nobody by that name is here
+     */
+    public NPC findCharacter(Location loc, String name) {
+        NPC npc = loc.findCharacter(name);
+        if (npc == null || departed.size() == 0 || departed.get(npc) == null) {
+            return npc;
+        }
+        for (NPC other : loc.getCharacters()) {
+            if (other.getName().equalsIgnoreCase(name) && departed.get(other) == null) {
+                return other;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the objects in a location as this game sees them.
+     *
+     * @param loc the location
+     * @return read-only list in arrival order
+     */
+    public List<GameObject> getObjects(Location loc) {
+        return room(loc).list();
+    }
+
+    /**
+     * Finds an object in a location by name (case-insensitive).
+     *
+     * @param loc  the location
+     * @param name the object name
+     * @return the object, or null if it is not there in this game
+     */
+    public GameObject findObject(Location loc, String name) {
+        return room(loc).find(name);
+    }
+
+    /**
+     * Puts an object in a location.
+     *
+     * @param loc the location
+     * @param obj the object
+     */
+    public void addObject(Location loc, GameObject obj) {
+        if (writableRoom(loc).add(obj)) {
+            registry.placed(obj, ItemRegistry.Place.LOCATION, loc);
+        }
+    }
+
+    /**
+     * Takes an object out of a location.
+     *
+     * @param loc the location
+     * @param obj the object
+     */
+    public void removeObject(Location loc, GameObject obj) {
+        if (room(loc).contains(obj) && writableRoom(loc).remove(obj)) {
+            registry.removed(obj, loc);
+        }
+    }
+
+    /**
+     * Returns the NPC's next line and moves the conversation on.
+     *
+     * @param npc the NPC
+     * @return the line spoken
+     */
+    public String talk(NPC npc) {
+        int index = getDialogueIndex(npc);
+        if (index < npc.getPhrases().size()) {
+            dialogue.put(npc, index + 1);
+            hash ^= Zobrist.dialogue(npc, index) ^ Zobrist.dialogue(npc, index + 1);
+            if (listener != null) {
+                listener.talked(npc, index + 1);
+            }
+        }
+        return npc.phraseAt(index);
+    }
+
+    /**
+     * @param npc the NPC
+     * @return how many of the NPC's lines have been heard in this game
+     */
+    public int getDialogueIndex(NPC npc) {
+        Integer index = dialogue.get(npc);
+        return index == null ? 0 : index;
+    }
+
+    /**
+     * Opens a container: returns what is still hidden inside and marks it empty.
+     * Anything already taken out another way (e.g. an NPC reward) is skipped.
+     *
+     * @param container the object being examined
+     * @return the hidden objects, or an empty list if there are none left
+     */
+    public List<GameObject> openContainer(GameObject container) {
+        List<GameObject> inside = container.getContainedObjects();
+        if (inside == null || inside.isEmpty() || opened.get(container) != null) {
+            return Collections.emptyList();
+        }
+        opened.put(container, Boolean.TRUE);
+        hash ^= Zobrist.opened(container);
+        if (listener != null) {
+            listener.opened(container);
+        }
+        List<GameObject> hidden = new ArrayList<>();
+        for (GameObject obj : inside) {
+            if (registry.holderOf(obj) == container) {
+                hidden.add(obj);
+                registry.removed(obj, container);
+            }
+        }
+        return hidden;
+    }
+
+    /**
+     * @param container an object
+     * @return true if it has been opened in this game
+     */
+    public boolean isOpened(GameObject container) {
+        return opened.get(container) != null;
+    }
+
+    /**
+     * @return the containers opened in this game
+     */
+    public Set<GameObject> getOpened() {
+        return opened.keys();
+    }
+
+    /**
+     * Returns the fingerprint of everything this game has changed about the
+     * world: moved items, unlocked and closed locations, dialogue, opened
+     * containers and NPCs who have left.
+     * Kept up to date as changes are made (see {@link Zobrist}).
+     *
+     * @return the hash, 0 while nothing has changed
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Works the hash out again from scratch, for checking the one kept up to date.
+     *
+     * @return what {@link #getHash()} should be
+     */
+    public long recomputeHash() {
+        long h = 0;
+        ItemRegistry root = world.getItemRegistry();
+        for (int id = 0; id < world.getItemCount(); id++) {
+            GameObject now = registry.find(id);
+            GameObject before = root.find(id);
+            if (now != null) {
+                h ^= Zobrist.item(now, registry.placeOf(now), registry.holderOf(now));
+            }
+            if (before != null) {
+                h ^= Zobrist.item(before, root.placeOf(before), root.holderOf(before));
+            }
+        }
+        for (Location loc : unlocked.keys()) {
+            h ^= Zobrist.unlocked(loc);
+        }
+        for (NPC npc : dialogue.keys()) {
+            h ^= Zobrist.dialogue(npc, dialogue.get(npc));
+        }
+        for (GameObject container : opened.keys()) {
+            h ^= Zobrist.opened(container);
+        }
+        for (Location loc : closed.keys()) {
+            h ^= Zobrist.closed(loc);
+        }
+        for (NPC npc : departed.keys()) {
+            h ^= Zobrist.departed(npc);
+        }
+        for (GameObject reward : handedOut.keys()) {
+            h ^= Zobrist.handedOut(reward);
+        }
+        return h;
+    }
+
+    /**
+     * Applies a change to the hash; used by this game's item registry as items move.
+     *
+     * @param keys the XOR of the keys leaving and entering the state
+     */
+    void toggleHash(long keys) {
+        hash ^= keys;
+    }
+
+    /**
+     * Reports an item's new place to the listener; used by this game's item registry.
+     */
+    void itemMoved(GameObject item, ItemRegistry.Place place, Object holder) {
+        if (listener != null) {
+            listener.itemMoved(item, place, holder);
+        }
+    }
+
+    /**
+     * @return the locations unlocked in this game
+     */
+    public Set<Location> getUnlocked() {
+        return unlocked.keys();
+    }
+
+    /**
+     * @return the locations whose contents this game has changed
+     */
+    public Set<Location> getChangedRooms() {
+        return rooms.keys();
+    }
+
+    /**
+     * Everything this game had changed at one moment. Never changes itself, so
+     * it can be kept (e.g. for undo) and restored any number of times, into
+     * this overlay or into a new one on the same world to fork the game.
+     */
+    public static final class Snapshot {
+        private final World world;
+        private final PersistentMap<Location, ObjectIndex> rooms;
+        private final PersistentMap<Location, Boolean> unlocked;
+        private final PersistentMap<NPC, Integer> dialogue;
+        private final PersistentMap<GameObject, Boolean> opened;
+        private final PersistentMap<Location, Boolean> closed;
+        private final PersistentMap<NPC, Boolean> departed;
+        private final PersistentMap<GameObject, Boolean> handedOut;
+        private final PersistentMap<Integer, ItemRegistry.Slot> items;
+        private final long hash;
+
+        private Snapshot(WorldOverlay overlay) {
+            world = overlay.world;
+            rooms = overlay.rooms.copy();
+            unlocked = overlay.unlocked.copy();
+            dialogue = overlay.dialogue.copy();
+            opened = overlay.opened.copy();
+            closed = overlay.closed.copy();
+            departed = overlay.departed.copy();
+            handedOut = overlay.handedOut.copy();
+            items = overlay.registry.copyChanges();
+            hash = overlay.hash;
+        }
+
+        /**
+         * @return what {@link WorldOverlay#getHash()} was when the snapshot was taken
+         */
+        public long getHash() {
+            return hash;
+        }
+    }
+
+    /**
+     * Saves what this game has changed so far, in O(1).
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        edit = new Object();
+        return new Snapshot(this);
+    }
+
+    /**
+     * Puts this game's changes back to a snapshot, in O(1). The listener is not
+     * told, since nothing moved one change at a time.
+     *
+     * @param snapshot a snapshot of this overlay or of another on the same world
+     */
+    public void restore(Snapshot snapshot) {
+        if (snapshot.world != world) {
+            throw new IllegalArgumentException("Snapshot was taken on a different world");
+        }
+        edit = new Object();
+        rooms.setTo(snapshot.rooms);
+        unlocked.setTo(snapshot.unlocked);
+        dialogue.setTo(snapshot.dialogue);
+        opened.setTo(snapshot.opened);
+        closed.setTo(snapshot.closed);
+        departed.setTo(snapshot.departed);
+        handedOut.setTo(snapshot.handedOut);
+        registry.restoreChanges(snapshot.items);
+        hash = snapshot.hash;
+    }
+
+    private ObjectIndex room(Location loc) {
+        ObjectIndex changed = rooms.get(loc);
+        return changed != null ? changed : loc.objectIndex();
+    }
+
+    private ObjectIndex writableRoom(Location loc) {
+        ObjectIndex changed = rooms.get(loc);
+        if (changed == null || changed.owner != edit) {
+            // first change since the game started or since the last snapshot
+            changed = new ObjectIndex(changed != null ? changed : loc.objectIndex());
+            changed.owner = edit;
+            rooms.put(loc, changed);
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,29 @@
+package Main.model;
+
+/**
+ * A loaded world frozen so it can be shared by every game played on it.
+ * Games keep their own changes in a {@link WorldOverlay}, so starting or
+ * restarting one needs no file access and no copying of the world.
+ * @author Makaato
+ */
+public final class WorldTemplate {
+
+    private final World world;
+
+    /**
+     * Freezes a linked world and wraps it as a template.
+     *
+     * @param world a world that has been through the link step
+     */
+    public WorldTemplate(World world) {
+        world.freeze();
+        this.world = world;
+    }
+
+    /**
+     * @return the read-only world
+     */
+    public World getWorld() {
+        return world;
+    }
+}
@@ -0,0 +1,145 @@
+package Main.model;
+
+/**
+ * The random-looking 64-bit keys used to fingerprint a game's state.
+ * A game's hash is the XOR of the keys of everything about it that differs
+ * from the world as loaded: where each moved item is, which locations are
+ * unlocked or closed, how far each conversation has got, which containers
+ * are open, which NPCs have left, which rewards have been handed out, and
+ * where the player stands. Changing one of those toggles its old and new
+ * keys, so the hash is kept up to date in constant time per change.
+ * Keys are worked out from names and item IDs rather than drawn from a table,
+ * so worlds of any size need no setup and the same state always gets the same
+ * hash, even in another run.
+ * @author Makaato
+ */
+public final class Zobrist {
+
+    private static final long AT = 0x1F83D9ABFB41BD6BL;
+    private static final long ITEM = 0x5BE0CD19137E2179L;
+    private static final long UNLOCKED = 0x6A09E667F3BCC908L;
+    private static final long DIALOGUE = 0x3C6EF372FE94F82BL;
+    private static final long OPENED = 0xA54FF53A5F1D36F1L;
+    private static final long GONE = 0x510E527FADE682D1L;
+    private static final long CARRIED = 0x9B05688C2B3E6C1FL;
+    private static final long POOL = 0xCBBB9D5DC1059ED8L;
+    private static final long CLOSED = 0x7137449123EF65CDL;
+    private static final long DEPARTED = 0x428A2F98D728AE22L;
+    private static final long HANDED_OUT = 0xB5C0FBCFEC4D3B2FL;
+
+    /** Key mixed in once the game has ended. */
+    public static final long GAME_OVER = mix(0x629A292A367CD507L);
+    /** Key mixed in once the game has been won. */
+    public static final long WIN = mix(0x9159015A3070DD17L);
+
+    private Zobrist() {}
+
+    /**
+     * @param loc a location
+     * @return the key for the player standing there
+     */
+    public static long at(Location loc) {
+        return loc == null ? 0 : mix(AT ^ name(loc.getName()));
+    }
+
+    /**
+     * Returns the key for an item being in a given place.
+     *
+     * @param obj    the item
+     * @param place  what kind of place it is in, or {@code null} if it is gone
+     * @param holder the location, container, inventory or world holding it
+     * @return the key
+     */
+    public static long item(GameObject obj, ItemRegistry.Place place, Object holder) {
+        if (obj == null || obj.getId() < 0) {
+            return 0;
+        }
+        long where;
+        if (place == null) {
+            where = GONE;
+        } else {
+            switch (place) {
+                case LOCATION:
+                    where = name(((Location) holder).getName());
+                    break;
+                case CONTAINER:
+                    where = mix(((GameObject) holder).getId() + OPENED);
+                    break;
+                case INVENTORY:
+                    where = CARRIED;
+                    break;
+                default:
+                    where = POOL;
+            }
+        }
+        return mix(mix(ITEM + obj.getId()) ^ where);
+    }
+
+    /**
+     * @param loc a location that starts locked
+     * @return the key for it having been unlocked
+     */
+    public static long unlocked(Location loc) {
+        return mix(UNLOCKED ^ name(loc.getName()));
+    }
+
+    /**
+     * @param npc   an NPC
+     * @param index how many of their lines have been heard
+     * @return the key for the conversation having got that far (0 for not started)
+     */
+    public static long dialogue(NPC npc, int index) {
+        return index == 0 ? 0 : mix(mix(DIALOGUE ^ name(npc.getName())) + index);
+    }
+
+    /**
+     * @param container an object with things hidden in it
+     * @return the key for it having been opened
+     */
+    public static long opened(GameObject container) {
+        return mix(OPENED ^ mix(container.getId() + GONE) ^ name(container.getName()));
+    }
+
+    /**
+     * @param loc a location
+     * @return the key for it having been closed
+     */
+    public static long closed(Location loc) {
+        return mix(CLOSED ^ name(loc.getName()));
+    }
+
+    /**
+     * @param npc an NPC
+     * @return the key for them having left the game
+     */
+    public static long departed(NPC npc) {
+        return mix(mix(DEPARTED ^ name(npc.getName())) + npc.getId());
+    }
+
+    /**
+     * @param reward an item an NPC, rule or timed event hands over
+     * @return the key for it having been handed over
+     */
+    public static long handedOut(GameObject reward) {
+        return mix(HANDED_OUT ^ mix(reward.getId() + GONE) ^ name(reward.getName()));
+    }
+
+    // 64-bit FNV-1a, so names that share a String.hashCode still get different keys
+    private static long name(String name) {
+        if (name == null) {
+            return 0;
+        }
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            h = (h ^ name.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    // SplitMix64 finaliser: spreads every input bit over the whole result
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -14,24 +14,27 @@ package Main.ui;
 // Imports
 import Main.GameEngine.CommandResult;
 import Main.GameEngine.GameEngine;
+import Main.GameEngine.GameSession;
 import Main.GameEngine.GameState;
+import Main.data.SpriteAtlas;
 import Main.model.Connection;
 import Main.model.GameObject;
 import Main.model.Location;
 import Main.model.NPC;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
+import javafx.scene.Cursor;
 import javafx.scene.control.Button;
 import javafx.scene.control.ChoiceDialog;
 import javafx.scene.control.TextArea;
-import javafx.scene.control.Tooltip;
 import javafx.scene.layout.AnchorPane;
-import javafx.scene.paint.Color;
-import javafx.scene.shape.Polyline;
 import javafx.stage.Stage;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 public class GameUI {
@@ -54,24 +57,55 @@ public class GameUI {
 
 
     private Stage stage;
-    private GameEngine engine;
-    private GameState state;
-
-    // dynamically created arrows
-    private List<Polyline> arrows = new ArrayList<>();
+    // The game runs in a session so commands never block the FX thread
+    private GameSession session;
+    // What the UI shows, copied from the game after each command
+    private SceneView view;
+    // Commands sent but not yet answered
+    private int commandsInFlight = 0;
+    // Only show the game over dialog once per game
+    private boolean gameOverShown = false;
+
+    // Draws the NPCs, items and arrows of the current room
+    private SceneRenderer renderer;
+
+    // The selected arrow, NPC and item
     private String selectedExitLabel = null;
-    
-    // dynamically created NPC images
-    private List<ImageView> npcImages = new ArrayList<>();
     private String selectedNPCName = null;
-    
-    // dynamically created item images
-    private List<ImageView> itemImages = new ArrayList<>();
     private String selectedItemName = null;
 
     // Check if the users inventory is shown
     private boolean showingInventory = false;
 
+    // Decoded images shared by every game window, decoded off the FX thread (64 MB budget)
+    private static final ImageCache imageCache = new ImageCache(64L * 1024 * 1024);
+    // Where each NPC and item sprite sits in the baked atlas, null if the assets were not baked
+    private static final SpriteAtlas atlas = SpriteAtlas.load();
+    // Runs the game sessions' commands
+    private static final ExecutorService engineExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Everything the UI reads from the game, copied on the engine's thread after a command
+     * so the FX thread never reads state the engine may be changing
+     */
+    private static final class SceneView {
+        private final CommandResult result;
+        private final Location location;
+        private final int turnCount;
+        private final List<GameObject> items;
+        private final List<NPC> characters;
+        private final List<String> inventory;
+
+        private SceneView(CommandResult result, GameState state) {
+            this.result = result;
+            this.location = state.getCurrentLocation();
+            this.turnCount = state.getTurnCount();
+            this.items = location == null ? List.of() : List.copyOf(state.getOverlay().getObjects(location));
+            this.characters = location == null ? List.of() : List.copyOf(state.getOverlay().getCharacters(location));
+            this.inventory = List.copyOf(state.getInventory().invItemNames());
+        }
+    }
+
     public GameUI() {
     }
 
@@ -88,20 +122,71 @@ public class GameUI {
 
 
     /**
-     * Method to initialize the interface with the stage, engine, and state
+     * Method to initialize the interface with the stage, engine, and state.
+     * From here on the engine is only used through a game session, off the FX thread
      * @param stage
      * @param engine
      * @param state
      */
     public void init(Stage stage, GameEngine engine, GameState state) {
         this.stage = stage;
-        this.engine = engine;
-        this.state = state;
+        startSession(engine);
 
+        renderer = new SceneRenderer(arrowContainer, imageCache, atlas, new SceneRenderer.Listener() {
+            @Override public void npcClicked(String name) { selectNPC(name); }
+            @Override public void itemClicked(String name) { selectItem(name); }
+            @Override public void exitClicked(int connectionIndex) { selectArrow(connectionIndex); }
+        });
         wireButtonHandlers();
         refreshUI();
-        if (state != null && state.getCurrentLocation() != null) {
-            infoBox.setText(state.getCurrentLocation().getDescription());
+        if (view.location != null) {
+            infoBox.setText(view.location.getDescription());
+        }
+    }
+
+    /**
+     * Method to start playing a new game. Results still on their way from an older game are ignored
+     * @param engine
+     */
+    private void startSession(GameEngine engine) {
+        // Nothing is queued on a new engine yet, so it is safe to read it here
+        view = new SceneView(null, engine.getState());
+        session = new GameSession(engine, engineExecutor);
+        commandsInFlight = 0;
+        gameOverShown = false;
+        setBusy(false);
+    }
+
+    /**
+     * Method to queue a command on the game session. It runs in order after any command
+     * already in flight, and the result is applied on the FX thread once it is ready
+     * @param verb
+     * @param args
+     */
+    private void send(String verb, String... args) {
+        GameSession sentTo = session;
+        commandsInFlight++;
+        setBusy(true);
+        sentTo.call(engine -> new SceneView(engine.processCommand(verb, args), engine.getState()))
+                .whenComplete((next, err) -> Platform.runLater(() -> {
+                    if (sentTo != session) return; // the game was restarted while this ran
+                    if (--commandsInFlight == 0) setBusy(false);
+                    if (err != null) {
+                        showMessage("Error: " + err.getMessage());
+                        return;
+                    }
+                    view = next;
+                    handleResult(next.result);
+                }));
+    }
+
+    /**
+     * Method to show the busy cursor while commands are running
+     * @param busy
+     */
+    private void setBusy(boolean busy) {
+        if (stage != null && stage.getScene() != null) {
+            stage.getScene().setCursor(busy ? Cursor.WAIT : Cursor.DEFAULT);
         }
     }
     
@@ -118,17 +203,50 @@ public class GameUI {
             return;
         }
 
-        try {
-        	// Set the scene images dimensions
-            Image img = new Image(getClass().getResourceAsStream(path));
-            sceneImage.setImage(img);
-            sceneImage.setPreserveRatio(false);
-            sceneImage.setFitWidth(603);
-            sceneImage.setFitHeight(300);
-            sceneImage.setMouseTransparent(true);
-        } catch (Exception e) {
-            System.err.println("Could not load image for " + loc.getName() + " from " + path);
-            sceneImage.setImage(null);
+        // Set the scene images dimensions
+        sceneImage.setPreserveRatio(false);
+        sceneImage.setFitWidth(603);
+        sceneImage.setFitHeight(300);
+        sceneImage.setMouseTransparent(true);
+
+        Image cached = imageCache.getIfReady(path);
+        if (cached != null) {
+            sceneImage.setImage(cached);
+            return;
+        }
+
+        // Show the placeholder and swap the real image in once it has been decoded
+        sceneImage.setImage(ImageCache.PLACEHOLDER);
+        imageCache.load(path).whenComplete((img, err) -> Platform.runLater(() -> {
+            // the player may have moved on while the image was decoding
+            Location now = view.location;
+            if (now == null || !path.equals(now.getImagePath())) return;
+            if (err != null) {
+                System.err.println("Could not load image for " + loc.getName() + " from " + path);
+                sceneImage.setImage(null);
+            } else {
+                sceneImage.setImage(img);
+            }
+        }));
+    }
+
+    /**
+     * Method to start decoding the images of every room the player can walk to next
+     * @param loc
+     */
+    private void prefetchNeighbours(Location loc) {
+        if (loc.getConnections() == null) return;
+        for (Connection con : loc.getConnections()) {
+            Location next = con.getTarget();
+            if (next == null) continue;
+            imageCache.prefetch(next.getImagePath());
+            for (NPC npc : next.getCharacters()) {
+                imageCache.prefetch(renderer.sourceOf(npc.getImagePath()));
+            }
+            // the room's objects as the template has them, which is close enough to warm the cache
+            for (GameObject obj : next.getObjects()) {
+                imageCache.prefetch(renderer.sourceOf(obj.getImagePath()));
+            }
         }
     }
 
@@ -152,7 +270,7 @@ public class GameUI {
      * @param connectionIndex
      */
     private void selectArrow(int connectionIndex) {
-        Location loc = state.getCurrentLocation();
+        Location loc = view.location;
         if (loc == null || loc.getConnections() == null) return;
 
         List<Connection> cons = loc.getConnections();
@@ -181,59 +299,6 @@ public class GameUI {
         showMessage("Selected " + itemName + ". Click 'Pick Up' or 'Examine' to interact.");
     }
     
-    /**
-     * Method to configure the ImageView with the correct settings
-     * @param iv
-     * @param name
-     * @param onClick
-     */
-    private void setupClickable(ImageView iv, String name, Runnable onClick) {
-        iv.setOnMouseClicked(e -> { onClick.run(); e.consume(); });
-        iv.setOnMouseEntered(e -> iv.setOpacity(0.8));
-        iv.setOnMouseExited(e -> iv.setOpacity(1.0));
-        Tooltip t = new Tooltip(name + " (Click to select)");
-        t.setStyle("-fx-font-size: 12px; -fx-font-weight: bold;");
-        Tooltip.install(iv, t);
-    }
-    /**
-     * Method for error catching, if an image is not working then replace it with a label
-     * @param label
-     * @param name
-     * @param onClick
-     */
-    private void setupClickableLabel(javafx.scene.control.Label label, String name, Runnable onClick) {
-        label.setOnMouseClicked(e -> { onClick.run(); e.consume(); });
-        label.setOnMouseEntered(e -> label.setOpacity(0.8));
-        label.setOnMouseExited(e -> label.setOpacity(1.0));
-        Tooltip t = new Tooltip(name + " (Click to select)");
-        t.setStyle("-fx-font-size: 12px; -fx-font-weight: bold;");
-        Tooltip.install(label, t);
-    }
-    
-    /**
-     * Method to create an image for the given image path with the specific dimensions
-     * @param imagePath
-     * @param width
-     * @param height
-     * @return
-     */
-    private ImageView createImage(String imagePath, double width, double height) {
-        if (imagePath == null || imagePath.isBlank()) return null;
-        try {
-            ImageView iv = new ImageView(new Image(getClass().getResourceAsStream(imagePath)));
-            iv.setFitWidth(width);
-            iv.setFitHeight(height);
-            iv.setPreserveRatio(true);
-            iv.setPickOnBounds(true);
-            iv.setMouseTransparent(false);
-            iv.setStyle("-fx-cursor: hand;");
-            return iv;
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
-
     /**
      * Method to handle the go command
      */
@@ -242,42 +307,39 @@ public class GameUI {
             showMessage("Select an arrow (exit) first.");
             return;
         }
-        CommandResult res = engine.processCommand("go", selectedExitLabel);
+        send("go", selectedExitLabel);
         selectedExitLabel = null;
         showingInventory = false;
-        handleResult(res);
     }
 
     /**
      * Method to handle the pickup command
      */
     private void handlePickUp() {
-        Location loc = state.getCurrentLocation();
-        if (loc == null || loc.getObjects() == null || loc.getObjects().isEmpty()) {
+        Location loc = view.location;
+        if (loc == null || view.items.isEmpty()) {
             showMessage("There is nothing to pick up here.");
             return;
         }
 
         String target = selectedItemName;
         if (target == null) {
-            List<String> names = loc.getObjects().stream()
+            List<String> names = view.items.stream()
                     .map(GameObject::getName).toList();
             target = pickOne("Pick up which item?", names);
             if (target == null) return;
         }
 
-        CommandResult res = engine.processCommand("pick", target);
+        send("pick", target);
         selectedItemName = null; 
         showingInventory = false;
-        handleResult(res);
     }
 
     /**
      * Method to handle the drop command
      */
     private void handleDrop() {
-        List<String> names = state.getInventory().listItems().stream()
-                .map(GameObject::getName).toList();
+        List<String> names = view.inventory;
         if (names.isEmpty()) {
             showMessage("You have nothing to drop.");
             return;
@@ -285,25 +347,20 @@ public class GameUI {
         String target = pickOne("Drop which item?", names);
         if (target == null) return;
 
-        CommandResult res = engine.processCommand("drop", target);
+        send("drop", target);
         showingInventory = false;
-        handleResult(res);
     }
 
     /**
      * Method to handle the examine command
      */
     private void handleExamine() {
-        Location loc = state.getCurrentLocation();
-
         String target = selectedItemName;
         if (target == null) {
-            List<String> names = loc.getObjects().stream()
+            List<String> names = view.items.stream()
                     .map(GameObject::getName)
                     .collect(Collectors.toList());
-            names.addAll(state.getInventory().listItems().stream()
-                    .map(GameObject::getName)
-                    .toList());
+            names.addAll(view.inventory);
 
             if (names.isEmpty()) {
                 showMessage("There is nothing to examine.");
@@ -314,56 +371,51 @@ public class GameUI {
             if (target == null) return;
         }
 
-        CommandResult res = engine.processCommand("examine", target);
+        send("examine", target);
         selectedItemName = null; 
         showingInventory = false;
-        handleResult(res);
     }
 
     /**
      * Method to handle the talk command
      */
     private void handleTalk() {
-        Location loc = state.getCurrentLocation();
-        if (loc.getCharacters() == null || loc.getCharacters().isEmpty()) {
+        if (view.characters.isEmpty()) {
             showMessage("There is no one here.");
             return;
         }
 
         String npcName = selectedNPCName;
         if (npcName == null) {
-            List<String> names = loc.getCharacters().stream()
+            List<String> names = view.characters.stream()
                     .map(NPC::getName).toList();
             npcName = pickOne("Talk to whom?", names);
             if (npcName == null) return;
         }
 
-        CommandResult res = engine.processCommand("talk", npcName);
+        send("talk", npcName);
         selectedNPCName = null; 
         showingInventory = false;
-        handleResult(res);
     }
 
     /**
      * Method to handle the give command
      */
     private void handleGive() {
-        Location loc = state.getCurrentLocation();
-        if (loc.getCharacters() == null || loc.getCharacters().isEmpty()) {
+        if (view.characters.isEmpty()) {
             showMessage("There is no one here.");
             return;
         }
 
         String npc = selectedNPCName;
         if (npc == null) {
-            List<String> npcNames = loc.getCharacters().stream()
+            List<String> npcNames = view.characters.stream()
                     .map(NPC::getName).toList();
             npc = pickOne("Give to whom?", npcNames);
             if (npc == null) return;
         }
 
-        List<String> itemNames = state.getInventory().listItems().stream()
-                .map(GameObject::getName).toList();
+        List<String> itemNames = view.inventory;
         if (itemNames.isEmpty()) {
             showMessage("You have nothing to give.");
             return;
@@ -372,22 +424,17 @@ public class GameUI {
         String item = pickOne("Give which item to " + npc + "?", itemNames);
         if (item == null) return;
 
-        CommandResult res = engine.processCommand("give", item, npc);
+        send("give", item, npc);
         selectedNPCName = null; 
         showingInventory = false;
-        handleResult(res);
     }
 
     /**
      * Method to handle the use command
      */
     private void handleUse() {
-        Location loc = state.getCurrentLocation();
-
-        List<String> itemNames = state.getInventory().listItems().stream()
-                .map(GameObject::getName)
-                .collect(Collectors.toList());
-        itemNames.addAll(loc.getObjects().stream().map(GameObject::getName).toList());
+        List<String> itemNames = new ArrayList<>(view.inventory);
+        itemNames.addAll(view.items.stream().map(GameObject::getName).toList());
 
         if (itemNames.isEmpty()) {
             showMessage("There is nothing to use.");
@@ -397,19 +444,20 @@ public class GameUI {
         String item = pickOne("Use what?", itemNames);
         if (item == null) return;
 
-        List<String> targetNames = loc.getObjects().stream()
+        List<String> targetNames = view.items.stream()
                 .map(GameObject::getName).toList();
         String target = null;
         if (!targetNames.isEmpty()) {
             target = pickOne("Use " + item + " on what? (Cancel for none)", targetNames);
         }
 
-        CommandResult res = (target == null)
-                ? engine.processCommand("use", item)
-                : engine.processCommand("use", item, target);
+        if (target == null) {
+            send("use", item);
+        } else {
+            send("use", item, target);
+        }
 
         showingInventory = false;
-        handleResult(res);
     }
 
     /**
@@ -419,15 +467,14 @@ public class GameUI {
         showingInventory = !showingInventory;
 
         if (showingInventory) {
-            List<String> items = state.getInventory().listItems().stream()
-                    .map(GameObject::getName).toList();
+            List<String> items = view.inventory;
             if (items.isEmpty()) {
                 infoBox.setText("Inventory is empty.");
             } else {
                 infoBox.setText("Inventory:\n" + String.join("\n", items));
             }
         } else {
-            Location loc = state.getCurrentLocation();
+            Location loc = view.location;
             if (loc != null) {
                 infoBox.setText(loc.getDescription());
             }
@@ -445,7 +492,8 @@ public class GameUI {
         showMessage(result.getMessage());
         refreshUI();
 
-        if (result.isGameOver()) {
+        if (result.isGameOver() && !gameOverShown) {
+            gameOverShown = true;
             String endText = result.isWin()
                     ? "\n*** You win! ***"
                     : "\n*** Game over. ***";
@@ -487,13 +535,12 @@ public class GameUI {
      */
     private void restartGame() {
         try {
-            Main.model.World world = Main.data.JsonWorldLoader.loadWorld("/games/midterm_madness.json");
-            Main.model.Inventory startingInventory = new Main.model.Inventory();
-            Main.GameEngine.GameState newGameState = new Main.GameEngine.GameState(world, world.getStartLocation(), startingInventory);
+            // The template is cached, so this is a fresh game with no reloading
+            Main.model.WorldTemplate template = Main.data.JsonWorldLoader.loadTemplate("/games/midterm_madness.json");
+            Main.GameEngine.GameState newGameState = Main.GameEngine.GameState.newGame(template);
             Main.GameEngine.GameEngine newEngine = new Main.GameEngine.GameEngine(newGameState);
             
-            this.engine = newEngine;
-            this.state = newGameState;
+            startSession(newEngine);
             
             selectedExitLabel = null;
             selectedNPCName = null;
@@ -501,8 +548,8 @@ public class GameUI {
             showingInventory = false;
             
             refreshUI();
-            if (state != null && state.getCurrentLocation() != null) {
-                infoBox.setText(state.getCurrentLocation().getDescription());
+            if (view.location != null) {
+                infoBox.setText(view.location.getDescription());
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -514,120 +561,22 @@ public class GameUI {
      * Method to refresh the dynamic UI 
      */
     private void refreshUI() {
-        if (state == null) return;
-        Location loc = state.getCurrentLocation();
+        if (view == null) return;
+        Location loc = view.location;
         if (loc == null) return;
 
         locationButton.setText(loc.getName());
-        turnCountButton.setText("Turns: " + state.getTurnCount());
-        updateSceneImage(loc);
-        List<Connection> cons = loc.getConnections();
+        turnCountButton.setText("Turns: " + view.turnCount);
         selectedExitLabel = null;
         selectedNPCName = null;
         selectedItemName = null;
-        arrowContainer.getChildren().clear();
-        arrows.clear();
-        npcImages.clear();
-        itemImages.clear();
-        arrowContainer.setMouseTransparent(false);
-        
-        // Create NPC images
-        List<NPC> npcs = loc.getCharacters();
-        if (npcs != null && !npcs.isEmpty()) {
-            for (int i = 0; i < npcs.size(); i++) {
-                NPC npc = npcs.get(i);
-                ImageView iv = createImage(npc.getImagePath(), 100, 150);
-                if (iv != null) {
-                	// NPC positions (100.5 is the x value)
-                    iv.setLayoutX(100.5 + (i - (npcs.size() - 1) / 2.0) * 120);
-                    iv.setLayoutY(80);
-                    setupClickable(iv, npc.getName(), () -> selectNPC(npc.getName()));
-                    arrowContainer.getChildren().add(iv);
-                    npcImages.add(iv);
-                }
-            }
-        }
-        
-        // Create item images
-        List<GameObject> items = loc.getObjects();
-        if (items != null && !items.isEmpty()) {
-            for (int i = 0; i < items.size(); i++) {
-                GameObject item = items.get(i);
-                ImageView iv = createImage(item.getImagePath(), 80, 80);
-                if (iv != null) {
-                	// Item positions (603 is the x value)
-                    iv.setLayoutX((603 - (items.size() - 1) * 100) / 2.0 + i * 100);
-                    iv.setLayoutY(220);
-                    setupClickable(iv, item.getName(), () -> selectItem(item.getName()));
-                    arrowContainer.getChildren().add(iv);
-                    itemImages.add(iv);
-                } else {
-                    javafx.scene.control.Label label = new javafx.scene.control.Label(item.getName());
-                    label.setStyle("-fx-background-color: rgba(255,255,255,0.9); -fx-padding: 5px; -fx-cursor: hand; -fx-border-color: #9612c7; -fx-border-width: 2px;");
-                    label.setLayoutX((603 - (items.size() - 1) * 100) / 2.0 + i * 100);
-                    label.setLayoutY(200);
-                    setupClickableLabel(label, item.getName(), () -> selectItem(item.getName()));
-                    arrowContainer.getChildren().add(label);
-                }
-            }
-        }
 
-        if (cons != null && !cons.isEmpty()) {
-            String[] dirs = {"up", "down", "left", "right"};
-            for (int i = 0; i < cons.size(); i++) {
-                String dir = cons.size() == 1 ? "right" : 
-                            cons.size() == 2 ? (i == 0 ? "left" : "right") :
-                            cons.size() == 3 ? (i == 0 ? "left" : i == 1 ? "right" : "up") :
-                            dirs[i % 4];
-                Polyline arrow = createDirectionalArrow(dir);
-                arrow.setMouseTransparent(false);
-                arrow.setPickOnBounds(true);
-                Tooltip t = new Tooltip(cons.get(i).getLabel());
-                t.setStyle("-fx-font-size: 12px; -fx-font-weight: bold;");
-                Tooltip.install(arrow, t);
-                positionArrow(arrow, dir, 603, 300);
-                final int idx = i;
-                arrow.setOnMouseClicked(e -> { selectArrow(idx); e.consume(); });
-                arrowContainer.getChildren().add(arrow);
-                arrows.add(arrow);
-            }
-        }
-
-    }
-
-
-    /**
-     * Creates the arrows that represent connected locations
-     * @param direction
-     * @return
-     */
-    private Polyline createDirectionalArrow(String direction) {
-        Polyline arrow = new Polyline();
-        arrow.setFill(Color.web("#ad00ff"));
-        arrow.setStrokeType(javafx.scene.shape.StrokeType.INSIDE);
-        arrow.setStyle("-fx-cursor: hand;");
-        switch (direction) {
-            case "up": arrow.getPoints().addAll(0.0, -25.0, -18.0, 12.0, 18.0, 12.0, 0.0, -25.0); break;
-            case "down": arrow.getPoints().addAll(0.0, 25.0, -18.0, -12.0, 18.0, -12.0, 0.0, 25.0); break;
-            case "left": arrow.getPoints().addAll(-25.0, 0.0, 12.0, -18.0, 12.0, 18.0, -25.0, 0.0); break;
-            default: arrow.getPoints().addAll(25.0, 0.0, -12.0, -18.0, -12.0, 18.0, 25.0, 0.0);
-        }
-        return arrow;
-    }
-    
-    /**
-     * Method to handle the position of the arrows
-     * @param arrow
-     * @param direction
-     * @param w
-     * @param h
-     */
-    private void positionArrow(Polyline arrow, String direction, double w, double h) {
-        switch (direction) {
-            case "up": arrow.setLayoutX(w/2); arrow.setLayoutY(25); break;
-            case "down": arrow.setLayoutX(w/2); arrow.setLayoutY(h-25); break;
-            case "left": arrow.setLayoutX(25); arrow.setLayoutY(h/2); break;
-            default: arrow.setLayoutX(w-25); arrow.setLayoutY(h/2);
+        // Only touches the nodes that changed, and nothing at all if the room looks the same
+        boolean changed = renderer.render(loc, view.characters,
+                view.items, loc.getConnections());
+        if (changed) {
+            updateSceneImage(loc);
+            prefetchNeighbours(loc);
         }
     }
 
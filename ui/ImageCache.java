@@ -0,0 +1,172 @@
+/**
+ * CS2212A Group 27 Point and Click Adventure Game
+ * 
+ * Cache for the scene and sprite images shown by the game UI.
+ * Images are decoded on background threads so the FX thread never waits on a PNG,
+ * and the most recently used ones are kept in memory up to a byte budget.
+ * When the assets have been baked, the pre-scaled copy of an image is loaded instead of the original.
+ * 
+ * @author Mohammed Kadri
+ */
+
+package Main.ui;
+
+import Main.data.SpriteAtlas;
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ImageCache {
+
+    // Shown while an image is still decoding (a 1x1 grey pixel, stretched by the ImageView)
+    public static final Image PLACEHOLDER = createPlaceholder();
+
+    private final long budgetBytes;
+    private long usedBytes = 0;
+
+    // Decoded images in least-recently-used order
+    private final LinkedHashMap<String, Image> images = new LinkedHashMap<>(64, 0.75f, true);
+    // Decodes that have started but not finished
+    private final Map<String, CompletableFuture<Image>> pending = new HashMap<>();
+    // Paths that could not be loaded, so they are not retried on every refresh
+    private final Set<String> failed = new HashSet<>();
+
+    private final ExecutorService decoder = Executors.newFixedThreadPool(2, r -> {
+        Thread t = new Thread(r, "image-decoder");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Creates a cache that keeps at most the given number of decoded bytes
+     * @param budgetBytes
+     */
+    public ImageCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Returns the image if it has already been decoded, otherwise null
+     * @param path
+     * @return
+     */
+    public synchronized Image getIfReady(String path) {
+        return images.get(path);
+    }
+
+    /**
+     * Checks if an image is known to be missing or broken
+     * @param path
+     * @return
+     */
+    public synchronized boolean hasFailed(String path) {
+        return failed.contains(path);
+    }
+
+    /**
+     * Returns the decoded image, starting a background decode if needed.
+     * The future fails if the image cannot be found or decoded.
+     * Callbacks run on the decoder thread, use Platform.runLater to touch the UI
+     * @param path
+     * @return
+     */
+    public synchronized CompletableFuture<Image> load(String path) {
+        Image ready = images.get(path);
+        if (ready != null) {
+            return CompletableFuture.completedFuture(ready);
+        }
+        if (failed.contains(path)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Could not load " + path));
+        }
+        CompletableFuture<Image> inFlight = pending.get(path);
+        if (inFlight != null) {
+            return inFlight;
+        }
+        CompletableFuture<Image> future = CompletableFuture.supplyAsync(() -> decode(path), decoder);
+        pending.put(path, future);
+        future.whenComplete((img, err) -> finished(path, img));
+        return future;
+    }
+
+    /**
+     * Starts decoding an image in the background so it is ready when needed
+     * @param path
+     */
+    public void prefetch(String path) {
+        if (path != null && !path.isBlank() && !hasFailed(path)) {
+            load(path);
+        }
+    }
+
+    /**
+     * Method that stores a finished decode and evicts old images over the budget
+     * @param path
+     * @param img
+     */
+    private synchronized void finished(String path, Image img) {
+        pending.remove(path);
+        if (img == null) {
+            failed.add(path);
+            return;
+        }
+        images.put(path, img);
+        usedBytes += sizeOf(img);
+
+        Iterator<Map.Entry<String, Image>> it = images.entrySet().iterator();
+        while (usedBytes > budgetBytes && it.hasNext()) {
+            Map.Entry<String, Image> eldest = it.next();
+            if (eldest.getKey().equals(path)) {
+                continue; // always keep the image that was just asked for
+            }
+            usedBytes -= sizeOf(eldest.getValue());
+            it.remove();
+        }
+    }
+
+    /**
+     * Method that decodes an image from the classpath on the calling thread,
+     * preferring the copy that AssetBaker already scaled to display size
+     * @param path
+     * @return
+     */
+    private Image decode(String path) {
+        InputStream baked = getClass().getResourceAsStream(SpriteAtlas.bakedScenePath(path));
+        try (InputStream in = baked != null ? baked : getClass().getResourceAsStream(path)) {
+            if (in == null) {
+                throw new IllegalArgumentException("No image at " + path);
+            }
+            Image img = new Image(in);
+            if (img.isError()) {
+                throw new IllegalArgumentException("Could not decode " + path, img.getException());
+            }
+            return img;
+        } catch (java.io.IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Decoded size in bytes (4 bytes per pixel)
+     * @param img
+     * @return
+     */
+    private static long sizeOf(Image img) {
+        return (long) img.getWidth() * (long) img.getHeight() * 4L;
+    }
+
+    private static Image createPlaceholder() {
+        WritableImage img = new WritableImage(1, 1);
+        img.getPixelWriter().setColor(0, 0, Color.web("#2b2b2b"));
+        return img;
+    }
+}
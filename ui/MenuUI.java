@@ -77,9 +77,8 @@ public class MenuUI {
             GameUI gameUI = loader.getController();
             
             // Create objects
-            Main.model.World world = Main.data.JsonWorldLoader.loadWorld("/games/midterm_madness.json");
-            Main.model.Inventory startingInventory = new Main.model.Inventory();
-            Main.GameEngine.GameState gameState = new Main.GameEngine.GameState(world, world.getStartLocation(), startingInventory);
+            Main.model.WorldTemplate template = Main.data.JsonWorldLoader.loadTemplate("/games/midterm_madness.json");
+            Main.GameEngine.GameState gameState = Main.GameEngine.GameState.newGame(template);
             Main.GameEngine.GameEngine engine = new Main.GameEngine.GameEngine(gameState);
             
             gameUI.init(stage, engine, gameState);
@@ -0,0 +1,399 @@
+/**
+ * CS2212A Group 27 Point and Click Adventure Game
+ *
+ * Draws the clickable parts of a room (NPCs, items and exit arrows) on top of the scene image.
+ * Instead of rebuilding every node after each command, it compares the room with what
+ * was drawn last time and only adds, removes or moves the nodes that changed.
+ * Nodes that leave the screen are kept in pools and reused.
+ *
+ * @author Mohammed Kadri
+ */
+
+package Main.ui;
+
+import Main.data.SpriteAtlas;
+import Main.model.Connection;
+import Main.model.GameObject;
+import Main.model.Location;
+import Main.model.NPC;
+import javafx.application.Platform;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tooltip;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Polyline;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SceneRenderer {
+
+    /**
+     * Told when the player clicks something in the scene
+     */
+    public interface Listener {
+        void npcClicked(String name);
+        void itemClicked(String name);
+        void exitClicked(int connectionIndex);
+    }
+
+    // Size of the scene area
+    private static final double WIDTH = 603;
+    private static final double HEIGHT = 300;
+
+    // Keys for the node properties used to remember what a pooled node shows
+    private static final String TOOLTIP = "sceneRenderer.tooltip";
+    private static final String SHOWS = "sceneRenderer.shows";
+
+    private final ImageCache images;
+    private final SpriteAtlas atlas;
+    private final Listener listener;
+
+    // One layer each, so NPCs are always under items and items under arrows
+    private final Group npcLayer = new Group();
+    private final Group itemLayer = new Group();
+    private final Group arrowLayer = new Group();
+
+    // Nodes on screen, by the NPC, item or connection they show
+    private Map<Object, Node> shown = new IdentityHashMap<>();
+
+    // Nodes that are off screen and ready to be reused
+    private final ArrayDeque<ImageView> freeImages = new ArrayDeque<>();
+    private final ArrayDeque<Label> freeLabels = new ArrayDeque<>();
+    private final ArrayDeque<Polyline> freeArrows = new ArrayDeque<>();
+
+    // What was drawn last time
+    private Location lastLocation;
+    private List<NPC> lastNpcs = List.of();
+    private List<GameObject> lastItems = List.of();
+    private List<Connection> lastConnections = List.of();
+
+    /**
+     * Creates a renderer that draws into the given pane
+     * @param container
+     * @param images
+     * @param atlas the baked sprite atlas, or null to draw sprites from their own images
+     * @param listener
+     */
+    public SceneRenderer(Pane container, ImageCache images, SpriteAtlas atlas, Listener listener) {
+        this.images = images;
+        this.atlas = atlas;
+        this.listener = listener;
+        container.getChildren().setAll(npcLayer, itemLayer, arrowLayer);
+        container.setMouseTransparent(false);
+    }
+
+    /**
+     * Brings the scene up to date with a room. Does nothing if the room, its NPCs,
+     * its items and its exits are the same objects that were drawn last time.
+     * @param loc
+     * @param npcs
+     * @param items
+     * @param connections
+     * @return true if anything on screen changed
+     */
+    public boolean render(Location loc, List<NPC> npcs, List<GameObject> items, List<Connection> connections) {
+        npcs = npcs == null ? List.of() : npcs;
+        items = items == null ? List.of() : items;
+        connections = connections == null ? List.of() : connections;
+        if (loc == lastLocation && sameObjects(npcs, lastNpcs)
+                && sameObjects(items, lastItems) && sameObjects(connections, lastConnections)) {
+            return false;
+        }
+
+        Map<Object, Node> next = new IdentityHashMap<>();
+        for (int i = 0; i < npcs.size(); i++) {
+            placeNpc(npcs.get(i), i, npcs.size(), next);
+        }
+        for (int i = 0; i < items.size(); i++) {
+            placeItem(items.get(i), i, items.size(), next);
+        }
+        for (int i = 0; i < connections.size(); i++) {
+            placeArrow(connections.get(i), i, connections.size(), next);
+        }
+
+        // Whatever was not reused has left the room
+        for (Node node : shown.values()) {
+            release(node);
+        }
+        shown = next;
+
+        lastLocation = loc;
+        lastNpcs = new ArrayList<>(npcs);
+        lastItems = new ArrayList<>(items);
+        lastConnections = new ArrayList<>(connections);
+        return true;
+    }
+
+    /**
+     * Returns the image a sprite is drawn from: the atlas if it was baked into it
+     * @param imagePath
+     * @return
+     */
+    public String sourceOf(String imagePath) {
+        return atlas != null && atlas.find(imagePath) != null ? SpriteAtlas.IMAGE : imagePath;
+    }
+
+    /**
+     * Method to draw an NPC, reusing its node if it is already on screen
+     */
+    private void placeNpc(NPC npc, int i, int count, Map<Object, Node> next) {
+        String path = npc.getImagePath();
+        if (path == null || path.isBlank() || images.hasFailed(sourceOf(path))) {
+            return; // NPCs without a picture are only reachable through the buttons
+        }
+        ImageView iv = takeImage(npc, npcLayer);
+        bindImage(iv, npc, path, 100, 150);
+        // NPC positions (100.5 is the x value)
+        iv.setLayoutX(100.5 + (i - (count - 1) / 2.0) * 120);
+        iv.setLayoutY(80);
+        bindClick(iv, npc, npc.getName(), () -> listener.npcClicked(npc.getName()));
+        next.put(npc, iv);
+    }
+
+    /**
+     * Method to draw an item, as a label if its picture cannot be shown
+     */
+    private void placeItem(GameObject item, int i, int count, Map<Object, Node> next) {
+        // Item positions (603 is the x value)
+        double x = (WIDTH - (count - 1) * 100) / 2.0 + i * 100;
+        String path = item.getImagePath();
+        Node node;
+        if (path == null || path.isBlank() || images.hasFailed(sourceOf(path))) {
+            Label label = takeLabel(item);
+            label.setText(item.getName());
+            label.setLayoutY(200);
+            node = label;
+        } else {
+            ImageView iv = takeImage(item, itemLayer);
+            bindImage(iv, item, path, 80, 80);
+            iv.setLayoutY(220);
+            node = iv;
+        }
+        node.setLayoutX(x);
+        bindClick(node, item, item.getName(), () -> listener.itemClicked(item.getName()));
+        next.put(item, node);
+    }
+
+    /**
+     * Method to draw the arrow for an exit
+     */
+    private void placeArrow(Connection con, int i, int count, Map<Object, Node> next) {
+        String[] dirs = {"up", "down", "left", "right"};
+        String dir = count == 1 ? "right" :
+                    count == 2 ? (i == 0 ? "left" : "right") :
+                    count == 3 ? (i == 0 ? "left" : i == 1 ? "right" : "up") :
+                    dirs[i % 4];
+
+        Node old = shown.remove(con);
+        Polyline arrow = old instanceof Polyline ? (Polyline) old : null;
+        if (arrow == null) {
+            if (old != null) release(old);
+            arrow = freeArrows.isEmpty() ? createArrow() : freeArrows.pop();
+            arrowLayer.getChildren().add(arrow);
+        }
+        if (!dir.equals(arrow.getUserData())) {
+            shapeArrow(arrow, dir);
+            positionArrow(arrow, dir, WIDTH, HEIGHT);
+            arrow.setUserData(dir);
+        }
+        final int idx = i;
+        bindClick(arrow, con, con.getLabel(), () -> listener.exitClicked(idx));
+        next.put(con, arrow);
+    }
+
+    /**
+     * Method to get an image node for a model object: its current one, a pooled one, or a new one
+     */
+    private ImageView takeImage(Object key, Group layer) {
+        Node old = shown.remove(key);
+        if (old instanceof ImageView) {
+            return (ImageView) old;
+        }
+        if (old != null) release(old);
+        ImageView iv = freeImages.isEmpty() ? new ImageView() : freeImages.pop();
+        iv.setPreserveRatio(true);
+        iv.setPickOnBounds(true);
+        iv.setMouseTransparent(false);
+        iv.setStyle("-fx-cursor: hand;");
+        layer.getChildren().add(iv);
+        return iv;
+    }
+
+    /**
+     * Method to get a label node for an item whose picture cannot be shown
+     */
+    private Label takeLabel(Object key) {
+        Node old = shown.remove(key);
+        if (old instanceof Label) {
+            return (Label) old;
+        }
+        if (old != null) release(old);
+        Label label = freeLabels.isEmpty() ? new Label() : freeLabels.pop();
+        label.setStyle("-fx-background-color: rgba(255,255,255,0.9); -fx-padding: 5px; -fx-cursor: hand; -fx-border-color: #9612c7; -fx-border-width: 2px;");
+        itemLayer.getChildren().add(label);
+        return label;
+    }
+
+    /**
+     * Method to point an image node at a sprite. Does nothing if it already shows that sprite.
+     * While the image decodes the placeholder is shown.
+     */
+    private void bindImage(ImageView iv, Object key, String path, double width, double height) {
+        iv.setFitWidth(width);
+        iv.setFitHeight(height);
+        if (path.equals(iv.getUserData())) {
+            return;
+        }
+        iv.setUserData(path);
+
+        // Sprites in the atlas are shown as a viewport into the one shared atlas image
+        SpriteAtlas.Region region = atlas == null ? null : atlas.find(path);
+        String source = sourceOf(path);
+        Rectangle2D viewport = region == null ? null
+                : new Rectangle2D(region.getX(), region.getY(), region.getWidth(), region.getHeight());
+
+        Image cached = images.getIfReady(source);
+        if (cached != null) {
+            iv.setImage(cached);
+            iv.setViewport(viewport);
+            return;
+        }
+        iv.setImage(ImageCache.PLACEHOLDER);
+        iv.setViewport(null);
+        images.load(source).whenComplete((img, err) -> Platform.runLater(() -> {
+            // the node may have been reused for another sprite while this was decoding
+            if (!path.equals(iv.getUserData()) || shown.get(key) != iv) return;
+            if (img != null) {
+                iv.setImage(img);
+                iv.setViewport(viewport);
+            } else {
+                imageFailed(key);
+            }
+        }));
+    }
+
+    /**
+     * Method that drops a sprite whose image could not be loaded: NPCs disappear, items become labels
+     */
+    private void imageFailed(Object key) {
+        Node node = shown.remove(key);
+        if (node == null) return;
+        double x = node.getLayoutX();
+        release(node);
+        if (key instanceof GameObject) {
+            GameObject item = (GameObject) key;
+            Label label = takeLabel(item);
+            label.setText(item.getName());
+            label.setLayoutX(x);
+            label.setLayoutY(200);
+            bindClick(label, item, item.getName(), () -> listener.itemClicked(item.getName()));
+            shown.put(item, label);
+        }
+    }
+
+    /**
+     * Method to set up the click of a node, and its hover and tooltip unless they are already set up for this object.
+     * The click is always set since an exit's index can change while the connection stays the same
+     */
+    private void bindClick(Node node, Object key, String name, Runnable onClick) {
+        node.setOnMouseClicked(e -> { onClick.run(); e.consume(); });
+        if (node.getProperties().get(SHOWS) == key) {
+            return;
+        }
+        node.getProperties().put(SHOWS, key);
+        node.setOnMouseEntered(e -> node.setOpacity(0.8));
+        node.setOnMouseExited(e -> node.setOpacity(1.0));
+
+        Tooltip t = (Tooltip) node.getProperties().get(TOOLTIP);
+        if (t == null) {
+            t = new Tooltip();
+            t.setStyle("-fx-font-size: 12px; -fx-font-weight: bold;");
+            Tooltip.install(node, t);
+            node.getProperties().put(TOOLTIP, t);
+        }
+        t.setText(node instanceof Polyline ? name : name + " (Click to select)");
+    }
+
+    /**
+     * Method that takes a node off screen and returns it to its pool
+     */
+    private void release(Node node) {
+        ((Group) node.getParent()).getChildren().remove(node);
+        node.setOpacity(1.0);
+        if (node instanceof ImageView) {
+            // forget the sprite, so a reuse for the same picture loads it again under its new key
+            ImageView iv = (ImageView) node;
+            iv.setUserData(null);
+            iv.setImage(null);
+            iv.setViewport(null);
+            freeImages.push(iv);
+        } else if (node instanceof Label) {
+            freeLabels.push((Label) node);
+        } else if (node instanceof Polyline) {
+            freeArrows.push((Polyline) node);
+        }
+    }
+
+    /**
+     * Creates an arrow node, its shape is set by shapeArrow
+     * @return
+     */
+    private Polyline createArrow() {
+        Polyline arrow = new Polyline();
+        arrow.setFill(Color.web("#ad00ff"));
+        arrow.setStrokeType(javafx.scene.shape.StrokeType.INSIDE);
+        arrow.setStyle("-fx-cursor: hand;");
+        arrow.setMouseTransparent(false);
+        arrow.setPickOnBounds(true);
+        return arrow;
+    }
+
+    /**
+     * Sets the points of an arrow to face the given direction
+     * @param arrow
+     * @param direction
+     */
+    private void shapeArrow(Polyline arrow, String direction) {
+        switch (direction) {
+            case "up": arrow.getPoints().setAll(0.0, -25.0, -18.0, 12.0, 18.0, 12.0, 0.0, -25.0); break;
+            case "down": arrow.getPoints().setAll(0.0, 25.0, -18.0, -12.0, 18.0, -12.0, 0.0, 25.0); break;
+            case "left": arrow.getPoints().setAll(-25.0, 0.0, 12.0, -18.0, 12.0, 18.0, -25.0, 0.0); break;
+            default: arrow.getPoints().setAll(25.0, 0.0, -12.0, -18.0, -12.0, 18.0, 25.0, 0.0);
+        }
+    }
+
+    /**
+     * Method to handle the position of the arrows
+     * @param arrow
+     * @param direction
+     * @param w
+     * @param h
+     */
+    private void positionArrow(Polyline arrow, String direction, double w, double h) {
+        switch (direction) {
+            case "up": arrow.setLayoutX(w/2); arrow.setLayoutY(25); break;
+            case "down": arrow.setLayoutX(w/2); arrow.setLayoutY(h-25); break;
+            case "left": arrow.setLayoutX(25); arrow.setLayoutY(h/2); break;
+            default: arrow.setLayoutX(w-25); arrow.setLayoutY(h/2);
+        }
+    }
+
+    /**
+     * Checks if two lists hold the same objects in the same order
+     */
+    private static boolean sameObjects(List<?> a, List<?> b) {
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i) != b.get(i)) return false;
+        }
+        return true;
+    }
+}